@@ -131,6 +131,12 @@ public class CodeEditorFragment extends Fragment implements Savable,
     private boolean mCanSave;
     private boolean mReading;
 
+    /**
+     * Whether this editor is changing the snapshot of its file, the file manager notifies it
+     * of its own changes while this is set
+     */
+    private boolean mUpdatingSnapshot;
+
     public static CodeEditorFragment newInstance(File file) {
         CodeEditorFragment fragment = new CodeEditorFragment();
         Bundle args = new Bundle();
@@ -373,7 +379,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
             });
         });
         mEditor.subscribeEvent(ContentChangeEvent.class, (event, unsubscribe) ->
-                updateFile(event.getEditor().getText()));
+                updateFile(event));
 
         LogViewModel logViewModel =
                 new ViewModelProvider(requireActivity()).get(LogViewModel.class);
@@ -455,6 +461,10 @@ public class CodeEditorFragment extends Fragment implements Savable,
 
     @Override
     public void onSnapshotChanged(File file, CharSequence contents) {
+        if (mUpdatingSnapshot) {
+            // the change came from this editor
+            return;
+        }
         if (mCurrentFile.equals(file)) {
             if (mEditor != null) {
                 mEditor.setText(contents);
@@ -571,15 +581,59 @@ public class CodeEditorFragment extends Fragment implements Savable,
         }
     }
 
-    private void updateFile(CharSequence contents) {
+    private void updateFile(ContentChangeEvent event) {
         Project project = ProjectManager.getInstance().getCurrentProject();
         if (project == null) {
             return;
         }
         Module module = project.getModule(mCurrentFile);
-        if (module != null) {
-            module.getFileManager().setSnapshotContent(mCurrentFile, contents.toString(), false);
+        if (module == null) {
+            return;
+        }
+        FileManager fileManager = module.getFileManager();
+        Content contents = event.getEditor().getText();
+
+        // listeners are notified so they can apply the edit to their own copies of the file,
+        // this editor already has it
+        mUpdatingSnapshot = true;
+        try {
+            updateSnapshot(fileManager, event, contents);
+        } finally {
+            mUpdatingSnapshot = false;
+        }
+    }
+
+    private void updateSnapshot(FileManager fileManager, ContentChangeEvent event,
+                                Content contents) {
+        // only the changed range is sent so the snapshot does not copy the whole file
+        int start = event.getChangeStart().index;
+        int end;
+        CharSequence text;
+        switch (event.getAction()) {
+            case ContentChangeEvent.ACTION_INSERT:
+                end = start;
+                text = event.getChangedText();
+                break;
+            case ContentChangeEvent.ACTION_DELETE:
+                end = start + event.getChangedText().length();
+                text = "";
+                break;
+            default:
+                fileManager.setSnapshotContent(mCurrentFile, contents.toString(), true);
+                return;
+        }
+
+        Optional<CharSequence> snapshot = fileManager.getFileContent(mCurrentFile);
+        if (!snapshot.isPresent()) {
+            return;
+        }
+        int length = snapshot.get().length();
+        if (end > length || length - (end - start) + text.length() != contents.length()) {
+            // the snapshot is out of sync with the editor, replace it as a whole
+            fileManager.setSnapshotContent(mCurrentFile, contents.toString(), true);
+            return;
         }
+        fileManager.editSnapshotContent(mCurrentFile, start, end, text, true);
     }
 
     public Editor getEditor() {
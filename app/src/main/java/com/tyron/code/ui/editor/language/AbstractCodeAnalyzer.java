@@ -9,13 +9,11 @@ import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.editor.Editor;
 
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.Token;
-import org.apache.commons.io.input.CharSequenceReader;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +29,24 @@ import io.github.rosemoe.sora2.text.DiagnosticSpanMapUpdater;
 public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T> {
 
     private final Map<Integer, Integer> mColorMap = new HashMap<>();
+    private final IncrementalTokenizer mTokenizer =
+            new IncrementalTokenizer(new IncrementalTokenizer.LexerProvider() {
+                @Override
+                public Lexer getLexer(CharStream input) {
+                    return AbstractCodeAnalyzer.this.getLexer(input);
+                }
+
+                @Nullable
+                @Override
+                public Object getState(Lexer lexer) {
+                    return getLexerState(lexer);
+                }
+
+                @Override
+                public void restoreState(Lexer lexer, @Nullable Object state) {
+                    restoreLexerState(lexer, state);
+                }
+            });
 
     private StyleReceiver mReceiver;
     private Token mPreviousToken;
@@ -94,6 +110,7 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
 
     @Override
     public void reset(@NonNull ContentReference content, @NonNull Bundle extraArguments) {
+        mTokenizer.reset();
         super.reset(content, extraArguments);
     }
 
@@ -131,6 +148,25 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
      */
     public abstract Lexer getLexer(CharStream input);
 
+    /**
+     * The tokens of the previous analysis are reused, the lexer is resumed at the start of the
+     * first edited line. Lexers that keep state in their own fields besides the mode stack
+     * have to return it here so it can be restored.
+     *
+     * @return the state of the lexer that is not part of its modes, null if there is none
+     */
+    @Nullable
+    protected Object getLexerState(Lexer lexer) {
+        return null;
+    }
+
+    /**
+     * Restores the state returned by {@link #getLexerState(Lexer)} on a new lexer
+     */
+    protected void restoreLexerState(Lexer lexer, @Nullable Object state) {
+
+    }
+
     public abstract void analyzeInBackground(CharSequence contents);
 
     public Integer getColor(int tokenType) {
@@ -152,51 +188,58 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
         Styles styles = new Styles();
         MappedSpans.Builder result = new MappedSpans.Builder(1024);
 
-        try {
-            Lexer lexer = getLexer(CharStreams.fromReader(new CharSequenceReader(text)));
-            while (!delegate.isCancelled()) {
-                Token token = lexer.nextToken();
-                if (token == null) {
-                    break;
-                }
-                if (token.getType() == Token.EOF) {
-                    break;
-                }
-
-                boolean skip = onNextToken(token, styles, result);
-                if (skip) {
-                    mPreviousToken = token;
-                    continue;
-                }
-
-                Integer id = getColor(token.getType());
-                if (id == null) {
-                    id = EditorColorScheme.TEXT_NORMAL;
-                }
-                result.addIfNeeded(token.getLine() - 1, token.getCharPositionInLine(), id);
+        List<Token> tokens = tokenize(text, delegate);
+        for (Token token : tokens) {
+            if (delegate.isCancelled()) {
+                break;
+            }
 
+            boolean skip = onNextToken(token, styles, result);
+            if (skip) {
                 mPreviousToken = token;
+                continue;
             }
 
-            if (mPreviousToken != null) {
-                result.determine(mPreviousToken.getLine() - 1);
+            Integer id = getColor(token.getType());
+            if (id == null) {
+                id = EditorColorScheme.TEXT_NORMAL;
             }
+            result.addIfNeeded(token.getLine() - 1, token.getCharPositionInLine(), id);
 
-            styles.spans = result.build();
-            styles.finishBuilding();
-            afterAnalyze(text, styles, result);
+            mPreviousToken = token;
+        }
 
-            if (mShouldAnalyzeInBg) {
-                analyzeInBackground(text);
-            }
-        } catch (IOException e) {
-            // ignored
+        if (mPreviousToken != null) {
+            result.determine(mPreviousToken.getLine() - 1);
+        }
+
+        styles.spans = result.build();
+        styles.finishBuilding();
+        afterAnalyze(text, styles, result);
+
+        if (mShouldAnalyzeInBg) {
+            analyzeInBackground(text);
         }
 
         mLastStyles = styles;
         return styles;
     }
 
+    /**
+     * Tokenizes the text with the lexer of {@link #getLexer(CharStream)}, the tokens of the
+     * lines before the first edit since the previous call are reused
+     *
+     * @return the tokens of the text, empty if the analysis has been cancelled
+     */
+    @NonNull
+    protected List<Token> tokenize(CharSequence text, Delegate<T> delegate) {
+        List<Token> tokens = mTokenizer.tokenize(text, delegate::isCancelled);
+        if (tokens == null) {
+            return Collections.emptyList();
+        }
+        return tokens;
+    }
+
     @Nullable
     protected Styles getLastStyles() {
         return mLastStyles;
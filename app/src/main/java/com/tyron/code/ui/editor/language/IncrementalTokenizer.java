@@ -0,0 +1,478 @@
+package com.tyron.code.ui.editor.language;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tokenizes a document with an ANTLR lexer and remembers the state of the lexer at the start
+ * of each line, so that after an edit only the lines from the edit onwards are tokenized again.
+ * Tokenizing stops as soon as the lexer reaches a line in the unchanged part of the document in
+ * the same state as it was before the edit, the tokens after that line are reused.
+ *
+ * The edited range is found by comparing the new text with the previous one, so it does not
+ * matter how many edits happened between two calls to {@link #tokenize(CharSequence, BooleanSupplier)}.
+ *
+ * The state of a line is the mode stack of the lexer, lexers that keep additional state in
+ * fields have to provide it through {@link LexerProvider#getState(Lexer)}.
+ */
+public class IncrementalTokenizer {
+
+    public interface LexerProvider {
+
+        Lexer getLexer(CharStream input);
+
+        /**
+         * @return the state kept by the lexer besides its modes, null if there is none. The
+         * returned object must implement {@link Object#equals(Object)}.
+         */
+        @Nullable
+        Object getState(Lexer lexer);
+
+        void restoreState(Lexer lexer, @Nullable Object state);
+    }
+
+    private final LexerProvider mProvider;
+
+    private String mText;
+    private List<Token> mTokens = Collections.emptyList();
+    /**
+     * Offset of the first character of each line
+     */
+    private int[] mLineStarts;
+    /**
+     * Index of the first token that starts at or after the start of each line, -1 if the line
+     * starts in the middle of a token
+     */
+    private int[] mLineTokens;
+    /**
+     * The state of the lexer before it read the token in {@link #mLineTokens}
+     */
+    private LexerState[] mLineStates;
+    /**
+     * The furthest offset the lexer has read before it reached the token in
+     * {@link #mLineTokens}, the lexer may look ahead past the end of a token to decide where
+     * it ends
+     */
+    private int[] mLineLookahead;
+
+    private int mRelexedTokens;
+
+    public IncrementalTokenizer(LexerProvider provider) {
+        mProvider = provider;
+    }
+
+    /**
+     * Discards the tokens of the previous document, the next call will tokenize the whole text.
+     */
+    public synchronized void reset() {
+        mText = null;
+        mTokens = Collections.emptyList();
+        mLineStarts = null;
+        mLineTokens = null;
+        mLineStates = null;
+        mLineLookahead = null;
+    }
+
+    /**
+     * @return the number of tokens produced by the lexer during the last call to
+     * {@link #tokenize(CharSequence, BooleanSupplier)}, the rest were reused
+     */
+    public int getRelexedTokenCount() {
+        return mRelexedTokens;
+    }
+
+    /**
+     * @param text      the current contents of the document
+     * @param cancelled checked periodically, the previous tokens are kept if the call is
+     *                  cancelled
+     * @return the tokens of the document without the EOF token, or null if cancelled. The
+     * tokens do not reference the text and must not be modified.
+     */
+    @Nullable
+    public synchronized List<Token> tokenize(@NonNull CharSequence text,
+                                             @NonNull BooleanSupplier cancelled) {
+        int[] lineStarts = getLineStarts(text);
+        if (mText == null) {
+            return lex(text, lineStarts, 0, cancelled);
+        }
+
+        int oldLength = mText.length();
+        int newLength = text.length();
+        int prefix = 0;
+        int max = Math.min(oldLength, newLength);
+        while (prefix < max && mText.charAt(prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            mRelexedTokens = 0;
+            return mTokens;
+        }
+
+        // resume at the last line whose preceding tokens have not read any of the edited text
+        int line = findLine(mLineStarts, prefix);
+        while (line > 0 && (mLineTokens[line] == -1 || mLineLookahead[line] >= prefix)) {
+            line--;
+        }
+        return lex(text, lineStarts, line, cancelled);
+    }
+
+    private List<Token> lex(CharSequence text, int[] lineStarts, int startLine,
+                            BooleanSupplier cancelled) {
+        boolean incremental = mText != null;
+        int delta = incremental ? text.length() - mText.length() : 0;
+        int suffixStart = incremental ? text.length() - commonSuffix(text) : text.length();
+
+        List<Token> tokens = new ArrayList<>(incremental ? mTokens.size() + 16 : 1024);
+        int[] lineTokens = new int[lineStarts.length];
+        LexerState[] lineStates = new LexerState[lineStarts.length];
+        int[] lineLookahead = new int[lineStarts.length];
+        if (incremental) {
+            System.arraycopy(mLineTokens, 0, lineTokens, 0, startLine + 1);
+            System.arraycopy(mLineStates, 0, lineStates, 0, startLine + 1);
+            System.arraycopy(mLineLookahead, 0, lineLookahead, 0, startLine + 1);
+        } else {
+            lineTokens[0] = 0;
+            lineStates[0] = LexerState.INITIAL;
+            lineLookahead[0] = -1;
+        }
+        int startToken = lineTokens[startLine];
+        LexerState startState = lineStates[startLine];
+        if (incremental) {
+            tokens.addAll(mTokens.subList(0, startToken));
+        }
+
+        int position = startToken == 0 ? 0 : tokens.get(startToken - 1).getStopIndex() + 1;
+        int positionLine = findLine(lineStarts, position);
+        CharSequenceCharStream input = new CharSequenceCharStream(text, position);
+        Lexer lexer = mProvider.getLexer(input);
+        lexer.setLine(positionLine + 1);
+        lexer.setCharPositionInLine(position - lineStarts[positionLine]);
+        startState.restore(lexer, mProvider);
+
+        int relexed = 0;
+        int nextLine = startLine + 1;
+        LexerState state = startState;
+        int lookahead = lineLookahead[startLine];
+        while (true) {
+            if ((relexed & 0xFF) == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+
+            Token token = lexer.nextToken();
+            int start = token.getType() == Token.EOF ? text.length() : token.getStartIndex();
+            int stop = token.getType() == Token.EOF ? text.length() : token.getStopIndex();
+
+            int firstBoundary = -1;
+            for (; nextLine < lineStarts.length && lineStarts[nextLine] <= stop; nextLine++) {
+                if (lineStarts[nextLine] <= start) {
+                    lineTokens[nextLine] = tokens.size();
+                    lineStates[nextLine] = state;
+                    lineLookahead[nextLine] = lookahead;
+                    if (firstBoundary == -1) {
+                        firstBoundary = nextLine;
+                    }
+                } else {
+                    lineTokens[nextLine] = -1;
+                }
+            }
+
+            if (token.getType() == Token.EOF) {
+                for (; nextLine < lineStarts.length; nextLine++) {
+                    lineTokens[nextLine] = tokens.size();
+                    lineStates[nextLine] = state;
+                    lineLookahead[nextLine] = lookahead;
+                }
+                break;
+            }
+
+            if (incremental && firstBoundary != -1 && lineStarts[firstBoundary] >= suffixStart
+                    && reuse(tokens, lineTokens, lineStates, lineLookahead, lineStarts,
+                    firstBoundary, token, delta)) {
+                mRelexedTokens = relexed;
+                return commit(text, tokens, lineStarts, lineTokens, lineStates, lineLookahead);
+            }
+
+            tokens.add(copy(token));
+            relexed++;
+            state = state.next(lexer, mProvider);
+            lookahead = Math.max(lookahead, input.getLookahead());
+        }
+
+        mRelexedTokens = relexed;
+        return commit(text, tokens, lineStarts, lineTokens, lineStates, lineLookahead);
+    }
+
+    /**
+     * Appends the old tokens starting from the given line if the lexer is in the same state
+     * and has produced the same token as it did before the edit.
+     */
+    private boolean reuse(List<Token> tokens, int[] lineTokens, LexerState[] lineStates,
+                          int[] lineLookahead, int[] lineStarts, int line, Token token,
+                          int delta) {
+        int oldLine = Arrays.binarySearch(mLineStarts, lineStarts[line] - delta);
+        if (oldLine < 0 || mLineTokens[oldLine] == -1 ||
+                !mLineStates[oldLine].equals(lineStates[line])) {
+            return false;
+        }
+        int oldToken = mLineTokens[oldLine];
+        if (oldToken >= mTokens.size()) {
+            return false;
+        }
+        Token old = mTokens.get(oldToken);
+        if (old.getType() != token.getType() ||
+                old.getChannel() != token.getChannel() ||
+                old.getStartIndex() + delta != token.getStartIndex() ||
+                old.getStopIndex() + delta != token.getStopIndex()) {
+            return false;
+        }
+
+        int lineDelta = line - oldLine;
+        int tokenDelta = tokens.size() - oldToken;
+        for (int i = oldToken; i < mTokens.size(); i++) {
+            tokens.add(shift(mTokens.get(i), delta, lineDelta));
+        }
+        for (int i = oldLine; i < mLineStarts.length; i++) {
+            int oldIndex = mLineTokens[i];
+            lineTokens[i + lineDelta] = oldIndex == -1 ? -1 : oldIndex + tokenDelta;
+            lineStates[i + lineDelta] = mLineStates[i];
+            lineLookahead[i + lineDelta] = Math.max(lineLookahead[line],
+                    mLineLookahead[i] + delta);
+        }
+        return true;
+    }
+
+    private List<Token> commit(CharSequence text, List<Token> tokens, int[] lineStarts,
+                               int[] lineTokens, LexerState[] lineStates,
+                               int[] lineLookahead) {
+        mText = text.toString();
+        mTokens = Collections.unmodifiableList(tokens);
+        mLineStarts = lineStarts;
+        mLineTokens = lineTokens;
+        mLineStates = lineStates;
+        mLineLookahead = lineLookahead;
+        return mTokens;
+    }
+
+    private int commonSuffix(CharSequence text) {
+        int oldLength = mText.length();
+        int newLength = text.length();
+        int max = Math.min(oldLength, newLength);
+        int suffix = 0;
+        while (suffix < max &&
+                mText.charAt(oldLength - suffix - 1) == text.charAt(newLength - suffix - 1)) {
+            suffix++;
+        }
+        return suffix;
+    }
+
+    /**
+     * Copies the token without the reference to its input stream so the text of the document
+     * is not retained by the cached tokens
+     */
+    private static Token copy(Token token) {
+        CommonToken copy = new CommonToken(token.getType(), token.getText());
+        copy.setChannel(token.getChannel());
+        copy.setLine(token.getLine());
+        copy.setCharPositionInLine(token.getCharPositionInLine());
+        copy.setStartIndex(token.getStartIndex());
+        copy.setStopIndex(token.getStopIndex());
+        return copy;
+    }
+
+    private static Token shift(Token token, int delta, int lineDelta) {
+        if (delta == 0 && lineDelta == 0) {
+            return token;
+        }
+        CommonToken copy = new CommonToken(token.getType(), token.getText());
+        copy.setChannel(token.getChannel());
+        copy.setLine(token.getLine() + lineDelta);
+        copy.setCharPositionInLine(token.getCharPositionInLine());
+        copy.setStartIndex(token.getStartIndex() + delta);
+        copy.setStopIndex(token.getStopIndex() + delta);
+        return copy;
+    }
+
+    private static int[] getLineStarts(CharSequence text) {
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        int[] starts = new int[count];
+        int line = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                starts[line++] = i + 1;
+            }
+        }
+        return starts;
+    }
+
+    private static int findLine(int[] lineStarts, int offset) {
+        int index = Arrays.binarySearch(lineStarts, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * The mode stack of the lexer along with the state provided by the {@link LexerProvider}.
+     * Consecutive lines usually share the same state, so the previous instance is reused when
+     * nothing has changed.
+     */
+    private static final class LexerState {
+
+        static final LexerState INITIAL = new LexerState(Lexer.DEFAULT_MODE, new int[0], null);
+
+        final int mode;
+        final int[] modeStack;
+        final Object extra;
+
+        LexerState(int mode, int[] modeStack, Object extra) {
+            this.mode = mode;
+            this.modeStack = modeStack;
+            this.extra = extra;
+        }
+
+        LexerState next(Lexer lexer, LexerProvider provider) {
+            Object extra = provider.getState(lexer);
+            if (lexer._mode == mode && lexer._modeStack.size() == modeStack.length &&
+                    Objects.equals(extra, this.extra)) {
+                int[] stack = lexer._modeStack.toArray();
+                if (Arrays.equals(stack, modeStack)) {
+                    return this;
+                }
+                return new LexerState(lexer._mode, stack, extra);
+            }
+            return new LexerState(lexer._mode, lexer._modeStack.toArray(), extra);
+        }
+
+        void restore(Lexer lexer, LexerProvider provider) {
+            lexer._mode = mode;
+            lexer._modeStack.clear();
+            for (int m : modeStack) {
+                lexer._modeStack.push(m);
+            }
+            provider.restoreState(lexer, extra);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LexerState)) {
+                return false;
+            }
+            LexerState that = (LexerState) o;
+            return mode == that.mode && Arrays.equals(modeStack, that.modeStack) &&
+                    Objects.equals(extra, that.extra);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * mode + Arrays.hashCode(modeStack)) + Objects.hashCode(extra);
+        }
+    }
+
+    /**
+     * A char stream over the document that starts at the given offset, unlike
+     * {@link org.antlr.v4.runtime.CharStreams} it does not copy the text.
+     */
+    private static final class CharSequenceCharStream implements CharStream {
+
+        private final CharSequence mText;
+        private int mIndex;
+        private int mLookahead;
+
+        CharSequenceCharStream(CharSequence text, int index) {
+            mText = text;
+            mIndex = index;
+            mLookahead = index - 1;
+        }
+
+        /**
+         * @return the furthest offset that has been read, the length of the text if the lexer
+         * has looked past its end
+         */
+        int getLookahead() {
+            return mLookahead;
+        }
+
+        @Override
+        public String getText(Interval interval) {
+            int start = Math.max(0, interval.a);
+            int stop = Math.min(mText.length() - 1, interval.b);
+            if (stop < start) {
+                return "";
+            }
+            return mText.subSequence(start, stop + 1).toString();
+        }
+
+        @Override
+        public void consume() {
+            if (mIndex >= mText.length()) {
+                throw new IllegalStateException("cannot consume EOF");
+            }
+            mIndex++;
+        }
+
+        @Override
+        public int LA(int i) {
+            if (i == 0) {
+                return 0;
+            }
+            int index = i > 0 ? mIndex + i - 1 : mIndex + i;
+            if (index > mLookahead) {
+                mLookahead = Math.min(index, mText.length());
+            }
+            if (index < 0 || index >= mText.length()) {
+                return IntStream.EOF;
+            }
+            return mText.charAt(index);
+        }
+
+        @Override
+        public int mark() {
+            return -1;
+        }
+
+        @Override
+        public void release(int marker) {
+
+        }
+
+        @Override
+        public int index() {
+            return mIndex;
+        }
+
+        @Override
+        public void seek(int index) {
+            mIndex = Math.min(index, mText.length());
+        }
+
+        @Override
+        public int size() {
+            return mText.length();
+        }
+
+        @Override
+        public String getSourceName() {
+            return IntStream.UNKNOWN_SOURCE_NAME;
+        }
+    }
+}
@@ -32,6 +32,16 @@ public class GroovyAnalyzer extends AbstractCodeAnalyzer<Object> {
         return new GroovyLexer(input);
     }
 
+    @Override
+    protected Object getLexerState(Lexer lexer) {
+        return ((GroovyLexer) lexer).getLexerState();
+    }
+
+    @Override
+    protected void restoreLexerState(Lexer lexer, Object state) {
+        ((GroovyLexer) lexer).restoreLexerState(state);
+    }
+
     @Override
     public void setup() {
         putColor(EditorColorScheme.KEYWORD, GroovyLexer.KW_DO,
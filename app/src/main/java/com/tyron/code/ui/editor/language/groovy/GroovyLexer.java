@@ -1,11 +1,13 @@
 // Generated from C:/Users/bounc/AndroidStudioProjects/CodeAssist/app/src/main/java/com/tyron/code/ui/editor/language/groovy\GroovyLexer.g4 by ANTLR 4.9.1
 package com.tyron.code.ui.editor.language.groovy;
 
+    import java.util.ArrayList;
     import java.util.ArrayDeque;
     import java.util.Arrays;
     import java.util.Deque;
     import java.util.Set;
     import java.util.HashSet;
+    import java.util.List;
 
 import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.CharStream;
@@ -230,6 +232,31 @@ public class GroovyLexer extends Lexer {
 	        return res;
 	    }
 
+	    /**
+	     * @return the state of this lexer besides its modes, only whether the token counters
+	     * are equal matters so the counters themselves are not part of it
+	     */
+	    public Object getLexerState() {
+	        return Arrays.asList(new ArrayList<Brace>(braceStack), lastTokenType, tokenIndex == 0,
+	                tlePos == tokenIndex);
+	    }
+
+	    public void restoreLexerState(Object state) {
+	        if (state == null) {
+	            // the initial state
+	            return;
+	        }
+	        List<?> list = (List<?>) state;
+	        braceStack.clear();
+	        for (Object brace : (List<?>) list.get(0)) {
+	            braceStack.addLast((Brace) brace);
+	        }
+	        topBrace = braceStack.peekFirst();
+	        lastTokenType = (Integer) list.get(1);
+	        tokenIndex = (Boolean) list.get(2) ? 0 : 1;
+	        tlePos = (Boolean) list.get(3) ? tokenIndex : -1;
+	    }
+
 
 
 	public GroovyLexer(CharStream input) {
@@ -13,7 +13,6 @@ import com.tyron.code.BuildConfig;
 import com.tyron.code.ui.editor.impl.text.rosemoe.CodeEditorView;
 import com.tyron.code.ui.editor.language.AbstractCodeAnalyzer;
 import com.tyron.code.ui.editor.language.HighlightUtil;
-import com.tyron.code.ui.editor.language.kotlin.KotlinLexer;
 import com.tyron.code.ui.project.ProjectManager;
 import com.tyron.common.SharedPreferenceKeys;
 import com.tyron.common.util.Debouncer;
@@ -30,6 +29,7 @@ import com.tyron.editor.Editor;
 
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
 import org.openjdk.javax.tools.Diagnostic;
 import org.openjdk.javax.tools.JavaFileObject;
 import org.openjdk.source.tree.BlockTree;
@@ -48,17 +48,17 @@ import java.lang.ref.WeakReference;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 import java.util.stream.Collectors;
 
-import io.github.rosemoe.editor.langs.java.JavaTextTokenizer;
-import io.github.rosemoe.editor.langs.java.Tokens;
 import io.github.rosemoe.sora.lang.styling.CodeBlock;
 import io.github.rosemoe.sora.lang.styling.MappedSpans;
 import io.github.rosemoe.sora.lang.styling.Styles;
-import io.github.rosemoe.sora.text.LineNumberCalculator;
 import io.github.rosemoe.sora.widget.schemes.EditorColorScheme;
 import kotlin.Unit;
 import kotlin.jvm.functions.Function0;
@@ -70,12 +70,9 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
     /**
      * These are tokens that cannot exist before a valid function identifier
      */
-    private static final Tokens[] sKeywordsBeforeFunctionName = new Tokens[]{Tokens.RETURN,
-            Tokens.BREAK, Tokens.IF, Tokens.AND, Tokens.OR, Tokens.OREQ, Tokens.OROR,
-            Tokens.ANDAND, Tokens.ANDEQ, Tokens.RPAREN, Tokens.LPAREN, Tokens.LBRACE, Tokens.NEW,
-            Tokens.DOT, Tokens.SEMICOLON, Tokens.EQ, Tokens.NOTEQ, Tokens.NOT, Tokens.RBRACE,
-            Tokens.COMMA, Tokens.PLUS, Tokens.PLUSEQ, Tokens.MINUS, Tokens.MINUSEQ, Tokens.MULT,
-            Tokens.MULTEQ, Tokens.DIV, Tokens.DIVEQ};
+    private static final Set<String> sKeywordsBeforeFunctionName = new HashSet<>(Arrays.asList(
+            "return", "break", "if", "&", "|", "|=", "||", "&&", "&=", ")", "(", "{", "new",
+            ".", ";", "=", "!=", "!", "}", ",", "+", "+=", "-", "-=", "*", "*=", "/", "/="));
 
     private final WeakReference<Editor> mEditorReference;
     private List<DiagnosticWrapper> mDiagnostics;
@@ -95,7 +92,7 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
 
     @Override
     public Lexer getLexer(CharStream input) {
-        return new KotlinLexer(input);
+        return new JavaLexer(input);
     }
 
     @Override
@@ -166,6 +163,15 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
                     ProgressManager.getInstance().runLater(() -> editor.setAnalyzing(false));
                 }
             }
+        } else {
+            // diagnostics are not shown, but compile the file anyway so the next completion
+            // request does not have to
+            JavaCompilerService service = getCompiler(editor);
+            if (service != null) {
+                service.preAnalyze(Collections.singletonList(
+                        new SourceFileObject(editor.getCurrentFile().toPath(),
+                                contents.toString(), Instant.now())));
+            }
         }
     }
 
@@ -218,201 +224,126 @@ public class JavaAnalyzer extends AbstractCodeAnalyzer<Object> {
     @Override
     protected Styles analyze(StringBuilder text, Delegate<Object> delegate) {
         Styles styles = new Styles();
-        MappedSpans.Builder colors = new MappedSpans.Builder();
 
         Editor editor = mEditorReference.get();
         if (editor == null) {
             return styles;
         }
-        JavaTextTokenizer tokenizer = new JavaTextTokenizer(text);
-        tokenizer.setCalculateLineColumn(false);
-        Tokens token, previous = Tokens.UNKNOWN;
-        int line = 0, column = 0;
-        LineNumberCalculator helper = new LineNumberCalculator(text);
-
-        Stack<CodeBlock> stack = new Stack<>();
-        int maxSwitch = 1, currSwitch = 0;
+        List<Token> tokens = tokenize(text, delegate);
+        styles.spans = highlight(tokens, delegate);
+        addCodeBlocks(tokens, styles);
 
-        boolean first = true;
-
-        while (!delegate.isCancelled()) {
-            try {
-                // directNextToken() does not skip any token
-                token = tokenizer.directNextToken();
-            } catch (RuntimeException e) {
-                //When a spelling input is in process, this will happen because of format mismatch
-                token = Tokens.CHARACTER_LITERAL;
-            }
-            if (token == Tokens.EOF) {
-                break;
-            }
-            // Backup values because looking ahead in function name match will change them
-            int thisIndex = tokenizer.getIndex();
-            int thisLength = tokenizer.getTokenLength();
+        if (mShouldAnalyzeInBg) {
+            analyzeInBackground(text);
+        }
+        HighlightUtil.markDiagnostics(editor, mDiagnostics, styles);
+        return styles;
+    }
 
-            switch (token) {
-                case WHITESPACE:
-                case NEWLINE:
-                    if (first) {
+    private static MappedSpans highlight(List<Token> tokens, Delegate<Object> delegate) {
+        MappedSpans.Builder colors = new MappedSpans.Builder();
+        Token previous = null;
+        int lastLine = 0;
+        for (int i = 0; i < tokens.size() && !delegate.isCancelled(); i++) {
+            Token token = tokens.get(i);
+            int line = token.getLine() - 1;
+            int column = token.getCharPositionInLine();
+            lastLine = line;
+
+            switch (token.getType()) {
+                case JavaLexer.WHITESPACE:
+                case JavaLexer.NEWLINE:
+                    if (i == 0) {
                         colors.addNormalIfNull();
                     }
                     break;
-                case IDENTIFIER:
-                    //Add a identifier to auto complete
-
+                case JavaLexer.IDENTIFIER:
                     //The previous so this will be the annotation's type name
-                    if (previous == Tokens.AT) {
+                    if (previous != null && previous.getType() == JavaLexer.AT) {
                         colors.addIfNeeded(line, column, EditorColorScheme.ANNOTATION);
                         break;
                     }
-                    //Here we have to get next token to see if it is function
-                    //We can only get the next token in stream.
-                    //If more tokens required, we have to use a stack in tokenizer
-                    Tokens next = tokenizer.directNextToken();
                     //The next is LPAREN,so this is function name or type name
-                    if (next == Tokens.LPAREN) {
-                        boolean found = false;
-                        for (Tokens before : sKeywordsBeforeFunctionName) {
-                            if (before == previous) {
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (!found) {
-                            colors.addIfNeeded(line, column, EditorColorScheme.FUNCTION_NAME);
-                            tokenizer.pushBack(tokenizer.getTokenLength());
-                            break;
-                        }
+                    if (i + 1 < tokens.size() &&
+                            tokens.get(i + 1).getType() == JavaLexer.LPAREN &&
+                            (previous == null ||
+                                    !sKeywordsBeforeFunctionName.contains(previous.getText()))) {
+                        colors.addIfNeeded(line, column, EditorColorScheme.FUNCTION_NAME);
+                        break;
                     }
-                    //Push back the next token
-                    tokenizer.pushBack(tokenizer.getTokenLength());
-                    //This is a class definition
-
                     colors.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
                     break;
-                case CHARACTER_LITERAL:
-                case STRING:
-                case FLOATING_POINT_LITERAL:
-                case INTEGER_LITERAL:
+                case JavaLexer.CHARACTER_LITERAL:
+                case JavaLexer.STRING_LITERAL:
+                case JavaLexer.TEXT_BLOCK:
+                case JavaLexer.FLOATING_POINT_LITERAL:
+                case JavaLexer.INTEGER_LITERAL:
                     colors.addIfNeeded(line, column, EditorColorScheme.LITERAL);
                     break;
-                case INT:
-                case LONG:
-                case BOOLEAN:
-                case BYTE:
-                case CHAR:
-                case FLOAT:
-                case DOUBLE:
-                case SHORT:
-                case VOID:
-                case ABSTRACT:
-                case ASSERT:
-                case CLASS:
-                case DO:
-                case FINAL:
-                case FOR:
-                case IF:
-                case NEW:
-                case PUBLIC:
-                case PRIVATE:
-                case PROTECTED:
-                case PACKAGE:
-                case RETURN:
-                case STATIC:
-                case SUPER:
-                case SWITCH:
-                case ELSE:
-                case VOLATILE:
-                case SYNCHRONIZED:
-                case STRICTFP:
-                case GOTO:
-                case CONTINUE:
-                case BREAK:
-                case TRANSIENT:
-                case TRY:
-                case CATCH:
-                case FINALLY:
-                case WHILE:
-                case CASE:
-                case DEFAULT:
-                case CONST:
-                case ENUM:
-                case EXTENDS:
-                case IMPLEMENTS:
-                case IMPORT:
-                case INSTANCEOF:
-                case INTERFACE:
-                case NATIVE:
-                case THIS:
-                case THROW:
-                case THROWS:
-                case TRUE:
-                case FALSE:
-                case NULL:
-                case SEMICOLON:
+                case JavaLexer.KEYWORD:
+                case JavaLexer.SEMICOLON:
                     colors.addIfNeeded(line, column, EditorColorScheme.KEYWORD);
                     break;
-                case LBRACE: {
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                    if (stack.isEmpty()) {
-                        if (currSwitch > maxSwitch) {
-                            maxSwitch = currSwitch;
-                        }
-                        currSwitch = 0;
-                    }
-                    currSwitch++;
-                    CodeBlock block = styles.obtainNewBlock();
-                    block.startLine = line;
-                    block.startColumn = column;
-                    stack.push(block);
-                    break;
-                }
-                case RBRACE: {
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                    if (!stack.isEmpty()) {
-                        CodeBlock block = stack.pop();
-                        block.endLine = line;
-                        block.endColumn = column;
-                        if (block.startLine != block.endLine) {
-                            styles.addCodeBlock(block);
-                        }
-                    }
-                    break;
-                }
-                case LINE_COMMENT:
-                case LONG_COMMENT:
+                case JavaLexer.LINE_COMMENT:
+                case JavaLexer.BLOCK_COMMENT:
                     colors.addIfNeeded(line, column, EditorColorScheme.COMMENT);
                     break;
                 default:
-                    if (token == Tokens.LBRACK || (token == Tokens.RBRACK && previous == Tokens.LBRACK)) {
-                        colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                        break;
-                    }
                     colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
             }
 
-
-            first = false;
-            helper.update(thisLength);
-            line = helper.getLine();
-            column = helper.getColumn();
-            if (token != Tokens.WHITESPACE && token != Tokens.NEWLINE) {
+            if (token.getType() != JavaLexer.WHITESPACE &&
+                    token.getType() != JavaLexer.NEWLINE) {
                 previous = token;
             }
+            // comments and text blocks may end on a later line
+            String tokenText = token.getText();
+            for (int j = 0; j < tokenText.length(); j++) {
+                if (tokenText.charAt(j) == '\n') {
+                    lastLine++;
+                }
+            }
+        }
+        colors.determine(lastLine);
+        return colors.build();
+    }
+
+    /**
+     * Finds the code blocks from the braces of the tokens, separately from the highlighting
+     * since a brace may close a block that started many lines before the edited line
+     */
+    private static void addCodeBlocks(List<Token> tokens, Styles styles) {
+        Stack<CodeBlock> stack = new Stack<>();
+        int maxSwitch = 1, currSwitch = 0;
+        for (Token token : tokens) {
+            int line = token.getLine() - 1;
+            int column = token.getCharPositionInLine();
+            if (token.getType() == JavaLexer.LBRACE) {
+                if (stack.isEmpty()) {
+                    if (currSwitch > maxSwitch) {
+                        maxSwitch = currSwitch;
+                    }
+                    currSwitch = 0;
+                }
+                currSwitch++;
+                CodeBlock block = styles.obtainNewBlock();
+                block.startLine = line;
+                block.startColumn = column;
+                stack.push(block);
+            } else if (token.getType() == JavaLexer.RBRACE && !stack.isEmpty()) {
+                CodeBlock block = stack.pop();
+                block.endLine = line;
+                block.endColumn = column;
+                if (block.startLine != block.endLine) {
+                    styles.addCodeBlock(block);
+                }
+            }
         }
         if (stack.isEmpty()) {
             if (currSwitch > maxSwitch) {
                 maxSwitch = currSwitch;
             }
         }
-        colors.determine(line);
         styles.setSuppressSwitch(maxSwitch + 10);
-        styles.spans = colors.build();
-
-        if (mShouldAnalyzeInBg) {
-            analyzeInBackground(text);
-        }
-        HighlightUtil.markDiagnostics(editor, mDiagnostics, styles);
-        return styles;
     }
-}
\ No newline at end of file
+}
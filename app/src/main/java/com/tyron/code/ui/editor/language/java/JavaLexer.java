@@ -0,0 +1,379 @@
+package com.tyron.code.ui.editor.language.java;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATN;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A lexer for highlighting java files with the {@link
+ * com.tyron.code.ui.editor.language.IncrementalTokenizer}. There is no generated ANTLR lexer
+ * for java, so the tokens are read by hand, the input is only read through {@link
+ * CharStream#LA(int)} so the tokenizer knows how far each token has looked ahead.
+ *
+ * The lexer keeps no state between tokens, comments and text blocks that span multiple lines
+ * are single tokens. Line breaks are tokens of their own so every line starts with a token.
+ */
+public class JavaLexer extends Lexer {
+
+    public static final int WHITESPACE = 1;
+    public static final int NEWLINE = 2;
+    public static final int LINE_COMMENT = 3;
+    public static final int BLOCK_COMMENT = 4;
+    public static final int IDENTIFIER = 5;
+    public static final int KEYWORD = 6;
+    public static final int INTEGER_LITERAL = 7;
+    public static final int FLOATING_POINT_LITERAL = 8;
+    public static final int CHARACTER_LITERAL = 9;
+    public static final int STRING_LITERAL = 10;
+    public static final int TEXT_BLOCK = 11;
+    public static final int LPAREN = 12;
+    public static final int RPAREN = 13;
+    public static final int LBRACE = 14;
+    public static final int RBRACE = 15;
+    public static final int LBRACK = 16;
+    public static final int RBRACK = 17;
+    public static final int SEMICOLON = 18;
+    public static final int COMMA = 19;
+    public static final int DOT = 20;
+    public static final int AT = 21;
+    public static final int OPERATOR = 22;
+    public static final int ERROR = 23;
+
+    private static final String[] TOKEN_NAMES = {"<INVALID>", "WHITESPACE", "NEWLINE",
+            "LINE_COMMENT", "BLOCK_COMMENT", "IDENTIFIER", "KEYWORD", "INTEGER_LITERAL",
+            "FLOATING_POINT_LITERAL", "CHARACTER_LITERAL", "STRING_LITERAL", "TEXT_BLOCK",
+            "LPAREN", "RPAREN", "LBRACE", "RBRACE", "LBRACK", "RBRACK", "SEMICOLON", "COMMA",
+            "DOT", "AT", "OPERATOR", "ERROR"};
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("int", "long",
+            "boolean", "byte", "char", "float", "double", "short", "void", "abstract", "assert",
+            "class", "do", "final", "for", "if", "new", "public", "private", "protected",
+            "package", "return", "static", "super", "switch", "else", "volatile",
+            "synchronized", "strictfp", "goto", "continue", "break", "transient", "try",
+            "catch", "finally", "while", "case", "default", "const", "enum", "extends",
+            "implements", "import", "instanceof", "interface", "native", "this", "throw",
+            "throws", "true", "false", "null"));
+
+    /**
+     * Operators of more than one character, longer ones first
+     */
+    private static final String[] OPERATORS = {">>>=", "<<=", ">>=", ">>>", "...", "->", "::",
+            "++", "--", "&&", "||", "==", "!=", "<=", ">=", "+=", "-=", "*=", "/=", "&=", "|=",
+            "^=", "%=", "<<", ">>"};
+
+    private int mLine = 1;
+    private int mColumn;
+
+    public JavaLexer(CharStream input) {
+        super(input);
+    }
+
+    @Override
+    public Token nextToken() {
+        int start = _input.index();
+        int line = mLine;
+        int column = mColumn;
+        int type = readToken();
+        if (type == Token.EOF) {
+            CommonToken eof = new CommonToken(_tokenFactorySourcePair, Token.EOF,
+                    Token.DEFAULT_CHANNEL, start, start - 1);
+            eof.setLine(line);
+            eof.setCharPositionInLine(column);
+            return eof;
+        }
+        CommonToken token = new CommonToken(_tokenFactorySourcePair, type,
+                Token.DEFAULT_CHANNEL, start, _input.index() - 1);
+        token.setLine(line);
+        token.setCharPositionInLine(column);
+        return token;
+    }
+
+    private int readToken() {
+        int c = _input.LA(1);
+        if (c == IntStream.EOF) {
+            return Token.EOF;
+        }
+        if (c == '\n') {
+            consume();
+            return NEWLINE;
+        }
+        if (c == '\r' && _input.LA(2) == '\n') {
+            consume();
+            consume();
+            return NEWLINE;
+        }
+        if (isWhitespace(c)) {
+            while (isWhitespace(_input.LA(1))) {
+                consume();
+            }
+            return WHITESPACE;
+        }
+        if (c == '/' && _input.LA(2) == '/') {
+            while (_input.LA(1) != IntStream.EOF && _input.LA(1) != '\n') {
+                consume();
+            }
+            return LINE_COMMENT;
+        }
+        if (c == '/' && _input.LA(2) == '*') {
+            consume();
+            consume();
+            while (_input.LA(1) != IntStream.EOF) {
+                if (_input.LA(1) == '*' && _input.LA(2) == '/') {
+                    consume();
+                    consume();
+                    break;
+                }
+                consume();
+            }
+            return BLOCK_COMMENT;
+        }
+        if (Character.isJavaIdentifierStart(c)) {
+            StringBuilder name = new StringBuilder();
+            while (_input.LA(1) != IntStream.EOF &&
+                    Character.isJavaIdentifierPart(_input.LA(1))) {
+                name.append((char) _input.LA(1));
+                consume();
+            }
+            return KEYWORDS.contains(name.toString()) ? KEYWORD : IDENTIFIER;
+        }
+        if (isDigit(c) || (c == '.' && isDigit(_input.LA(2)))) {
+            return readNumber();
+        }
+        if (c == '\'') {
+            consume();
+            readQuoted('\'');
+            return CHARACTER_LITERAL;
+        }
+        if (c == '"') {
+            if (_input.LA(2) == '"' && _input.LA(3) == '"') {
+                consume();
+                consume();
+                consume();
+                readTextBlock();
+                return TEXT_BLOCK;
+            }
+            consume();
+            readQuoted('"');
+            return STRING_LITERAL;
+        }
+
+        for (String operator : OPERATORS) {
+            if (matches(operator)) {
+                for (int i = 0; i < operator.length(); i++) {
+                    consume();
+                }
+                return OPERATOR;
+            }
+        }
+        consume();
+        switch (c) {
+            case '(':
+                return LPAREN;
+            case ')':
+                return RPAREN;
+            case '{':
+                return LBRACE;
+            case '}':
+                return RBRACE;
+            case '[':
+                return LBRACK;
+            case ']':
+                return RBRACK;
+            case ';':
+                return SEMICOLON;
+            case ',':
+                return COMMA;
+            case '.':
+                return DOT;
+            case '@':
+                return AT;
+            case '=':
+            case '>':
+            case '<':
+            case '!':
+            case '~':
+            case '?':
+            case ':':
+            case '+':
+            case '-':
+            case '*':
+            case '/':
+            case '&':
+            case '|':
+            case '^':
+            case '%':
+                return OPERATOR;
+            default:
+                return ERROR;
+        }
+    }
+
+    private int readNumber() {
+        boolean floating = false;
+        if (_input.LA(1) == '0' && (_input.LA(2) == 'x' || _input.LA(2) == 'X')) {
+            consume();
+            consume();
+            while (isHexDigit(_input.LA(1)) || _input.LA(1) == '_' || _input.LA(1) == '.') {
+                floating |= _input.LA(1) == '.';
+                consume();
+            }
+            if (_input.LA(1) == 'p' || _input.LA(1) == 'P') {
+                floating = true;
+                readExponent();
+            }
+        } else {
+            while (isDigit(_input.LA(1)) || _input.LA(1) == '_') {
+                consume();
+            }
+            if (_input.LA(1) == '.' && _input.LA(2) != '.') {
+                floating = true;
+                consume();
+                while (isDigit(_input.LA(1)) || _input.LA(1) == '_') {
+                    consume();
+                }
+            }
+            if (_input.LA(1) == 'e' || _input.LA(1) == 'E') {
+                floating = true;
+                readExponent();
+            }
+        }
+        switch (_input.LA(1)) {
+            case 'l':
+            case 'L':
+                consume();
+                break;
+            case 'f':
+            case 'F':
+            case 'd':
+            case 'D':
+                floating = true;
+                consume();
+                break;
+        }
+        return floating ? FLOATING_POINT_LITERAL : INTEGER_LITERAL;
+    }
+
+    private void readExponent() {
+        consume();
+        if (_input.LA(1) == '+' || _input.LA(1) == '-') {
+            consume();
+        }
+        while (isDigit(_input.LA(1)) || _input.LA(1) == '_') {
+            consume();
+        }
+    }
+
+    /**
+     * Reads a string or character literal after its opening quote, an unclosed literal ends
+     * at the end of the line
+     */
+    private void readQuoted(char quote) {
+        while (true) {
+            int c = _input.LA(1);
+            if (c == IntStream.EOF || c == '\n' || c == '\r') {
+                return;
+            }
+            consume();
+            if (c == quote) {
+                return;
+            }
+            if (c == '\\' && _input.LA(1) != IntStream.EOF && _input.LA(1) != '\n') {
+                consume();
+            }
+        }
+    }
+
+    private void readTextBlock() {
+        while (_input.LA(1) != IntStream.EOF) {
+            if (matches("\"\"\"")) {
+                consume();
+                consume();
+                consume();
+                return;
+            }
+            if (_input.LA(1) == '\\' && _input.LA(2) != IntStream.EOF) {
+                consume();
+            }
+            consume();
+        }
+    }
+
+    private boolean matches(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (_input.LA(i + 1) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void consume() {
+        if (_input.LA(1) == '\n') {
+            mLine++;
+            mColumn = 0;
+        } else {
+            mColumn++;
+        }
+        _input.consume();
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(int c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    @Override
+    public int getLine() {
+        return mLine;
+    }
+
+    @Override
+    public void setLine(int line) {
+        mLine = line;
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return mColumn;
+    }
+
+    @Override
+    public void setCharPositionInLine(int charPositionInLine) {
+        mColumn = charPositionInLine;
+    }
+
+    @Override
+    @Deprecated
+    public String[] getTokenNames() {
+        return TOKEN_NAMES;
+    }
+
+    @Override
+    public String[] getRuleNames() {
+        return new String[0];
+    }
+
+    @Override
+    public String getGrammarFileName() {
+        return "JavaLexer";
+    }
+
+    @Override
+    public ATN getATN() {
+        return null;
+    }
+}
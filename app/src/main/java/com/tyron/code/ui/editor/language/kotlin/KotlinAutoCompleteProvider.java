@@ -61,10 +61,6 @@ public class KotlinAutoCompleteProvider extends AbstractAutoCompleteProvider {
 
         CompletionEngine engine = CompletionEngine.getInstance((AndroidModule) currentModule);
 
-        if (engine.isIndexing()) {
-            return null;
-        }
-
         // waiting for code editor to support async code completions
         return engine.complete(mEditor.getCurrentFile(),
                 String.valueOf(mEditor.getContent()),
@@ -11,6 +11,7 @@ import android.os.Bundle;
 import android.util.Log;
 import android.view.Display;
 import android.view.DragEvent;
+import android.view.InflateException;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -48,7 +49,10 @@ import com.tyron.code.ui.layoutEditor.model.EditorDragState;
 import com.tyron.code.ui.project.ProjectManager;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.listener.FileListener;
+import com.tyron.builder.project.listener.ModuleFileListener;
 import com.tyron.code.R;
 import com.tyron.code.ui.layoutEditor.attributeEditor.AttributeEditorDialogFragment;
 import com.tyron.code.ui.layoutEditor.model.ViewPalette;
@@ -57,7 +61,11 @@ import com.tyron.layoutpreview.BoundaryDrawingFrameLayout;
 import com.tyron.layoutpreview.convert.LayoutToXmlConverter;
 import com.tyron.layoutpreview.inflate.PreviewLayoutInflater;
 
+import org.apache.commons.io.FileUtils;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -72,6 +80,8 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
 
     public static final String KEY_SAVE = "KEY_SAVE";
 
+    private static final long UPDATE_DELAY = 300;
+
     /**
      * Creates a new LayoutEditorFragment instance for a layout xml file.
      * Make sure that the file exists and is a valid layout file and that
@@ -90,7 +100,36 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
 
     private File mCurrentFile;
     private PreviewLayoutInflater mInflater;
+    private Module mModule;
+    private FileManager mFileManager;
     private BoundaryDrawingFrameLayout mEditorRoot;
+    private final Runnable mUpdatePreview = () -> {
+        if (getPreviewView() != null) {
+            inflateFile(mCurrentFile);
+        }
+    };
+    private final FileListener mFileListener = (file, contents) -> onFileChanged(file);
+
+    /**
+     * Called from the thread that watches the files of the module when they are changed
+     * outside of the editor
+     */
+    private final ModuleFileListener mModuleListener = new ModuleFileListener() {
+        @Override
+        public void onFileCreated(File file) {
+            onFileChanged(file);
+        }
+
+        @Override
+        public void onFileDeleted(File file) {
+            onFileChanged(file);
+        }
+
+        @Override
+        public void onFileModified(File file) {
+            onFileChanged(file);
+        }
+    };
     private EditorDragListener mDragListener;
 
     private LinearLayout mLoadingLayout;
@@ -294,6 +333,32 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
         super.onDestroyView();
 
         ProjectManager.getInstance().removeOnProjectOpenListener(this);
+        mEditorRoot.removeCallbacks(mUpdatePreview);
+        if (mFileManager != null) {
+            mFileManager.removeSnapshotListener(mFileListener);
+            mFileManager = null;
+        }
+        if (mModule != null) {
+            mModule.removeFileListener(mModuleListener);
+            mModule = null;
+        }
+    }
+
+    /**
+     * Resources that have been changed while the preview is open are parsed again when they
+     * are used, the preview itself is updated when its own xml changes
+     */
+    private void onFileChanged(File file) {
+        PreviewLayoutInflater inflater = mInflater;
+        if (inflater != null) {
+            inflater.invalidate(file);
+        }
+        View root = mEditorRoot;
+        if (root != null && file.equals(mCurrentFile)) {
+            // the preview follows the edits of its xml once the typing stops
+            root.removeCallbacks(mUpdatePreview);
+            root.postDelayed(mUpdatePreview, UPDATE_DELAY);
+        }
     }
 
     private Dialog exit(String title, String message) {
@@ -323,6 +388,18 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
         // material widgets wont use CodeAssist's theme
         ContextThemeWrapper wrapper = new ContextThemeWrapper(requireContext(), R.style.Theme_MaterialComponents_DayNight);
         mInflater = new PreviewLayoutInflater(wrapper, (AndroidModule) module);
+        // the edits in the editor are notified through the snapshots, the changes on the
+        // disk through the module
+        if (mFileManager != null) {
+            mFileManager.removeSnapshotListener(mFileListener);
+        }
+        mFileManager = module.getFileManager();
+        mFileManager.addSnapshotListener(mFileListener);
+        if (mModule != null) {
+            mModule.removeFileListener(mModuleListener);
+        }
+        mModule = module;
+        mModule.addFileListener(mModuleListener);
         mInflater.parseResources(mService).whenComplete((inflater, exception) ->
                 requireActivity().runOnUiThread(() -> {
                     if (inflater == null) {
@@ -340,7 +417,17 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
         inflateFile(mCurrentFile);
     }
 
+    /**
+     * Inflates the layout of the file, if it has been inflated before the views are updated
+     * to the current contents of the file instead
+     */
     private void inflateFile(File file) {
+        ProteusView current = getPreviewView();
+        if (current != null) {
+            updatePreview(current, file);
+            return;
+        }
+
         Optional<ProteusView> optionalView;
 
         try {
@@ -363,6 +450,47 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
         }
     }
 
+    private void updatePreview(ProteusView current, File file) {
+        Optional<CharSequence> contents = mFileManager != null
+                ? mFileManager.getFileContent(file)
+                : Optional.empty();
+        String xml;
+        try {
+            xml = contents.isPresent()
+                    ? contents.get().toString()
+                    : FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return;
+        }
+
+        ProteusView updated;
+        try {
+            updated = mInflater.update(current, xml);
+        } catch (InflateException e) {
+            // the xml is being edited, the preview is kept until it can be inflated again
+            return;
+        }
+        if (updated.getAsView().getParent() != mEditorRoot) {
+            mEditorRoot.removeAllViews();
+            mEditorRoot.addView(updated.getAsView());
+        }
+        // the views that have been inflated again do not have the listeners yet
+        setDragListeners(mEditorRoot);
+        setClickListeners(mEditorRoot);
+    }
+
+    /**
+     * @return The root view of the inflated layout, null if it has not been inflated yet
+     */
+    @Nullable
+    private ProteusView getPreviewView() {
+        if (mEditorRoot == null || mEditorRoot.getChildCount() == 0) {
+            return null;
+        }
+        View child = mEditorRoot.getChildAt(0);
+        return child instanceof ProteusView ? (ProteusView) child : null;
+    }
+
     private void resizeLayoutEditor(View root) {
         final Point point = new Point();
         ((WindowManager)requireActivity().getSystemService(Context.WINDOW_SERVICE))
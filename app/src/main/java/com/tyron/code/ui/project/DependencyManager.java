@@ -7,6 +7,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.Library;
 import com.tyron.builder.project.api.JavaModule;
@@ -16,6 +17,7 @@ import com.tyron.common.util.AndroidUtilities;
 import com.tyron.code.util.DependencyUtils;
 import com.tyron.common.util.Decompress;
 import com.tyron.resolver.DependencyResolver;
+import com.tyron.resolver.ResolvedGraph;
 import com.tyron.resolver.RepositoryModel;
 import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
@@ -137,11 +139,21 @@ public class DependencyManager {
             }
         });
         List<Dependency> declaredDependencies = DependencyUtils.parseLibraries(project.getLibraryFile(), logger);
-        List<Pom> resolvedPoms = mResolver.resolveDependencies(declaredDependencies);
+        File graphFile = new File(project.getBuildDirectory(), "intermediate/dependencies.lock");
+        ResolvedGraph graph = mResolver.resolveDependencies(declaredDependencies, graphFile);
+        List<Pom> resolvedPoms = graph.getPoms();
 
         listener.onTaskStarted("Downloading dependencies");
         List<Library> files = getFiles(resolvedPoms, logger);
 
+        List<File> sourceFiles = new ArrayList<>(files.size());
+        for (Library library : files) {
+            library.setChecksum(graph.getChecksum(library.getSourceFile()));
+            sourceFiles.add(library.getSourceFile());
+        }
+        graph.retainChecksums(sourceFiles);
+        graph.write(graphFile);
+
         listener.onTaskStarted("Checking dependencies");
         checkLibraries(project, logger, files);
     }
@@ -187,7 +199,7 @@ public class DependencyManager {
 
         Map<String, Library> md5Map = new HashMap<>();
         libraries.forEach(it ->
-                md5Map.put(AndroidUtilities.calculateMD5(it.getSourceFile()), it));
+                md5Map.put(CheckLibrariesTask.getChecksum(it), it));
         File buildLibs = new File(project.getBuildDirectory(), "libs");
         File[] buildLibraryDirs = buildLibs.listFiles(File::isDirectory);
         if (buildLibraryDirs != null) {
@@ -242,18 +254,13 @@ public class DependencyManager {
 
     public List<Library> getFiles(List<Pom> resolvedPoms, ILogger logger) {
         List<Library> files = new ArrayList<>();
-        for (Pom resolvedPom : resolvedPoms) {
-            try {
-                File file = mRepository.getLibrary(resolvedPom);
-                if (file != null) {
-                    Library library = new Library();
-                    library.setSourceFile(file);
-                    library.setDeclaration(resolvedPom.getDeclarationString());
-                    files.add(library);
-                }
-            } catch (IOException e) {
-                logger.error("Unable to download " + resolvedPom + ": " + e.getMessage());
-            }
+        // failures are reported to the listener of the resolver
+        Map<Pom, File> libraries = mResolver.getLibraries(resolvedPoms);
+        for (Map.Entry<Pom, File> entry : libraries.entrySet()) {
+            Library library = new Library();
+            library.setSourceFile(entry.getValue());
+            library.setDeclaration(entry.getKey().getDeclarationString());
+            files.add(library);
         }
         return files;
     }
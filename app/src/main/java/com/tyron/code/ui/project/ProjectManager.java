@@ -93,6 +93,10 @@ public class ProjectManager {
             return;
         }
 
+        if (mCurrentProject != null && mCurrentProject != project) {
+            // stops watching the files of the previous project
+            mCurrentProject.getModules().forEach(Module::close);
+        }
         mCurrentProject = project;
 
         if (module instanceof JavaModule) {
@@ -162,6 +166,7 @@ public class ProjectManager {
 
     public void closeProject(@NonNull Project project) {
         if (project.equals(mCurrentProject)) {
+            mCurrentProject.getModules().forEach(Module::close);
             mCurrentProject = null;
         }
     }
@@ -0,0 +1,256 @@
+package com.tyron.code.ui.editor.language;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import androidx.annotation.Nullable;
+
+import com.tyron.code.ui.editor.language.groovy.GroovyLexer;
+import com.tyron.code.ui.editor.language.java.JavaLexer;
+import com.tyron.code.ui.editor.language.kotlin.KotlinLexer;
+import com.tyron.completion.xml.lexer.XMLLexer;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Compares the tokens of an incrementally tokenized document with the tokens of the whole
+ * document after random edits
+ */
+public class IncrementalTokenizerTest {
+
+    private static final String[] INSERTIONS = {"a", "\n", " ", "\"", "'", "/*", "*/", "//",
+            "{", "}", "(", ")", "x = 1\n", "\"\"\"", "$", "${", "<", ">", "/>", "<!--", "-->",
+            "=\"", "<![CDATA[", "]]>", "\\", "1.5e", "0x", ">>>=", "@"};
+
+    private static final String KOTLIN = "package com.test\n" +
+            "\n" +
+            "/**\n" +
+            " * A documented class\n" +
+            " */\n" +
+            "class Main(val name: String) {\n" +
+            "    // a line comment\n" +
+            "    fun greet(): String {\n" +
+            "        val template = \"Hello ${name.length} $name\"\n" +
+            "        val raw = \"\"\"\n" +
+            "            multi line ${template}\n" +
+            "        \"\"\"\n" +
+            "        return template + raw + 'c'\n" +
+            "    }\n" +
+            "}\n";
+
+    private static final String JAVA = "package com.test;\n" +
+            "\n" +
+            "/**\n" +
+            " * A documented class\n" +
+            " */\n" +
+            "@Deprecated\n" +
+            "public class Main {\n" +
+            "    // a line comment\n" +
+            "    private static final long MASK = 0xFF_FFL >>> 2;\n" +
+            "    public String greet(char c) {\n" +
+            "        double d = 1.5e-3 + .5f;\n" +
+            "        String text = \"\"\"\n" +
+            "            multi line \\\"\"\"\n" +
+            "            \"\"\";\n" +
+            "        return \"Hello \\\"\" + c + '\\'' + text;\n" +
+            "    }\n" +
+            "}\n";
+
+    private static final String GROOVY = "plugins {\n" +
+            "    id 'com.android.application'\n" +
+            "}\n" +
+            "\n" +
+            "/* block\n" +
+            "   comment */\n" +
+            "android {\n" +
+            "    compileSdk 31\n" +
+            "    def name = \"app-${version}\"\n" +
+            "    def text = '''multi\n" +
+            "line'''\n" +
+            "    defaultConfig {\n" +
+            "        minSdk 21\n" +
+            "    }\n" +
+            "}\n" +
+            "\n" +
+            "dependencies {\n" +
+            "    implementation \"androidx.core:core:${coreVersion}\"\n" +
+            "}\n";
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<!-- a comment\n" +
+            "     over two lines -->\n" +
+            "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+            "    android:layout_width=\"match_parent\"\n" +
+            "    android:orientation=\"vertical\">\n" +
+            "\n" +
+            "    <TextView\n" +
+            "        android:id=\"@+id/text\"\n" +
+            "        android:text=\"Hello &amp; welcome\" />\n" +
+            "\n" +
+            "    <![CDATA[ some <data> ]]>\n" +
+            "</LinearLayout>\n";
+
+    @Test
+    public void testKotlin() {
+        assertRandomEdits(KOTLIN, new AntlrLexerProvider(KotlinLexer::new));
+    }
+
+    @Test
+    public void testJava() {
+        assertRandomEdits(JAVA, new AntlrLexerProvider(JavaLexer::new));
+    }
+
+    @Test
+    public void testJavaTokens() {
+        List<Token> tokens = tokenize("a /* x\ny */\"\"\"\nb\"\"\" 1.5f\n'c'",
+                new AntlrLexerProvider(JavaLexer::new));
+        assertThat(dump(tokens)).containsExactly(
+                JavaLexer.IDENTIFIER + ":0 0..0 1:0 a",
+                JavaLexer.WHITESPACE + ":0 1..1 1:1  ",
+                JavaLexer.BLOCK_COMMENT + ":0 2..10 1:2 /* x\ny */",
+                JavaLexer.TEXT_BLOCK + ":0 11..18 2:4 \"\"\"\nb\"\"\"",
+                JavaLexer.WHITESPACE + ":0 19..19 3:4  ",
+                JavaLexer.FLOATING_POINT_LITERAL + ":0 20..23 3:5 1.5f",
+                JavaLexer.NEWLINE + ":0 24..24 3:9 \n",
+                JavaLexer.CHARACTER_LITERAL + ":0 25..27 4:0 'c'").inOrder();
+    }
+
+    @Test
+    public void testGroovy() {
+        assertRandomEdits(GROOVY, new AntlrLexerProvider(GroovyLexer::new) {
+            @Nullable
+            @Override
+            public Object getState(Lexer lexer) {
+                return ((GroovyLexer) lexer).getLexerState();
+            }
+
+            @Override
+            public void restoreState(Lexer lexer, @Nullable Object state) {
+                ((GroovyLexer) lexer).restoreLexerState(state);
+            }
+        });
+    }
+
+    @Test
+    public void testXml() {
+        assertRandomEdits(XML, new AntlrLexerProvider(XMLLexer::new));
+    }
+
+    @Test
+    public void testUnchangedLinesAreReused() {
+        IncrementalTokenizer tokenizer =
+                new IncrementalTokenizer(new AntlrLexerProvider(KotlinLexer::new));
+        List<Token> tokens = tokenizer.tokenize(KOTLIN, () -> false);
+        assertThat(tokens).isNotNull();
+
+        String edited = KOTLIN.replace("fun greet()", "fun greeting()");
+        assertThat(dump(tokenizer.tokenize(edited, () -> false))).isEqualTo(dump(tokenize(
+                edited, new AntlrLexerProvider(KotlinLexer::new))));
+        assertThat(tokenizer.getRelexedTokenCount()).isLessThan(tokens.size() / 2);
+
+        assertThat(tokenizer.tokenize(edited, () -> false)).isNotNull();
+        assertThat(tokenizer.getRelexedTokenCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCancelledKeepsPreviousTokens() {
+        IncrementalTokenizer tokenizer =
+                new IncrementalTokenizer(new AntlrLexerProvider(KotlinLexer::new));
+        List<String> before = dump(tokenizer.tokenize(KOTLIN, () -> false));
+
+        String edited = "/*" + KOTLIN;
+        assertThat(tokenizer.tokenize(edited, () -> true)).isNull();
+        assertThat(dump(tokenizer.tokenize(KOTLIN, () -> false))).isEqualTo(before);
+    }
+
+    private static void assertRandomEdits(String text, IncrementalTokenizer.LexerProvider provider) {
+        IncrementalTokenizer tokenizer = new IncrementalTokenizer(provider);
+        Random random = new Random(42);
+        StringBuilder document = new StringBuilder(text);
+        for (int i = 0; i < 1000; i++) {
+            int position = random.nextInt(document.length() + 1);
+            String edit;
+            if (random.nextBoolean() && document.length() > 0) {
+                int end = Math.min(document.length(), position + random.nextInt(6));
+                edit = "delete " + position + ".." + end;
+                document.delete(position, end);
+            } else {
+                String inserted = INSERTIONS[random.nextInt(INSERTIONS.length)];
+                edit = "insert " + position + " " + inserted;
+                document.insert(position, inserted);
+            }
+
+            List<String> expected;
+            try {
+                expected = dump(tokenize(document.toString(), provider));
+            } catch (RuntimeException e) {
+                // the lexer does not accept the document, start again with the next edit
+                tokenizer.reset();
+                continue;
+            }
+            List<Token> actual = tokenizer.tokenize(document, () -> false);
+            assertWithMessage("edit %s: %s of %s", i, edit, document)
+                    .that(dump(actual)).isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Tokenizes the whole text with the lexer alone
+     */
+    private static List<Token> tokenize(String text, IncrementalTokenizer.LexerProvider provider) {
+        Lexer lexer = provider.getLexer(CharStreams.fromString(text));
+        List<Token> tokens = new ArrayList<>();
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF;
+             token = lexer.nextToken()) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    private static List<String> dump(List<Token> tokens) {
+        List<String> result = new ArrayList<>();
+        for (Token token : tokens) {
+            result.add(token.getType() + ":" + token.getChannel() + " " +
+                    token.getStartIndex() + ".." + token.getStopIndex() + " " +
+                    token.getLine() + ":" + token.getCharPositionInLine() + " " +
+                    token.getText());
+        }
+        return result;
+    }
+
+    private static class AntlrLexerProvider implements IncrementalTokenizer.LexerProvider {
+
+        private final Function<CharStream, Lexer> mFactory;
+
+        AntlrLexerProvider(Function<CharStream, Lexer> factory) {
+            mFactory = factory;
+        }
+
+        @Override
+        public Lexer getLexer(CharStream input) {
+            Lexer lexer = mFactory.apply(input);
+            lexer.removeErrorListeners();
+            return lexer;
+        }
+
+        @Nullable
+        @Override
+        public Object getState(Lexer lexer) {
+            return null;
+        }
+
+        @Override
+        public void restoreState(Lexer lexer, @Nullable Object state) {
+
+        }
+    }
+}
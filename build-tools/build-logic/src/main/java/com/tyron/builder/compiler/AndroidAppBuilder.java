@@ -1,8 +1,6 @@
 package com.tyron.builder.compiler;
 
 import com.tyron.builder.compiler.apk.PackageTask;
-import com.tyron.builder.compiler.apk.SignTask;
-import com.tyron.builder.compiler.apk.ZipAlignTask;
 import com.tyron.builder.compiler.dex.R8Task;
 import com.tyron.builder.compiler.firebase.GenerateFirebaseConfigTask;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
@@ -51,10 +49,6 @@ public class AndroidAppBuilder extends BuilderImpl<AndroidModule> {
             tasks.add(new IncrementalD8Task(module, logger));
         }
         tasks.add(new PackageTask(module, logger));
-        if (module.getSettings().getBoolean(ModuleSettings.ZIP_ALIGN_ENABLED, false)) {
-            tasks.add(new ZipAlignTask(module, logger));
-        }
-        tasks.add(new SignTask(module, logger));
         return tasks;
     }
 }
@@ -2,51 +2,72 @@ package com.tyron.builder.compiler;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.android.apksig.DefaultApkSignerEngine;
 import com.tyron.builder.BuildModule;
 import com.tyron.common.util.Decompress;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Collections;
 
 
 public class ApkSigner {
 
-    public static class Mode {
-        public static int TEST = 0;
-        //ToDo add more modes
-    }
-
-
-    private final ArrayList<String> commands ;
-    private final String mApkInputPath ;
-    private final String mApkOutputPath;
+    /**
+     * The first version that verifies the v2 signature scheme
+     */
+    private static final int MIN_SDK_V2_SIGNATURE = 24;
+
+    /**
+     * Creates an engine that signs an APK with the test key while it is written. The v1
+     * signature needs the contents of every entry so it is only created if the APK can be
+     * installed on a version that does not verify v2 signatures.
+     */
+    public static DefaultApkSignerEngine createTestSignerEngine(int minSdkVersion)
+            throws IOException, GeneralSecurityException {
+        PrivateKey key = readPrivateKey(new File(getTestKeyFilePath()));
+        X509Certificate certificate;
+        try (InputStream in = new FileInputStream(getTestCertFilePath())) {
+            certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(in);
+        }
 
-    public ApkSigner(String inputPath ,String outputPath,int mode){
-        commands = new ArrayList<>();
-        mApkInputPath = inputPath;
-        mApkOutputPath = outputPath;
+        DefaultApkSignerEngine.SignerConfig config = new DefaultApkSignerEngine.SignerConfig
+                .Builder("CERT", key, Collections.singletonList(certificate))
+                .build();
+        return new DefaultApkSignerEngine.Builder(Collections.singletonList(config),
+                minSdkVersion)
+                .setV1SigningEnabled(minSdkVersion < MIN_SDK_V2_SIGNATURE)
+                .setV2SigningEnabled(true)
+                .setV3SigningEnabled(true)
+                .build();
     }
 
-    //TODO: Adjust min and max sdk
-    public void sign() throws Exception {
-        commands.add("sign");
-        commands.add("--key");
-        commands.add(getTestKeyFilePath());
-        commands.add("--cert");
-        commands.add(getTestCertFilePath());
-        commands.add("--min-sdk-version");
-        commands.add("21");
-        commands.add("--max-sdk-version");
-        commands.add("30");
-        commands.add("--out");
-        commands.add(mApkOutputPath);
-        commands.add("--in");
-        commands.add(mApkInputPath);
-        com.android.apksigner.ApkSignerTool.main(commands.toArray(new String[0]));
+    private static PrivateKey readPrivateKey(File file) throws IOException,
+            GeneralSecurityException {
+        PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(Files.readAllBytes(file.toPath()));
+        InvalidKeySpecException exception = null;
+        for (String algorithm : new String[]{"RSA", "EC", "DSA"}) {
+            try {
+                return KeyFactory.getInstance(algorithm).generatePrivate(spec);
+            } catch (InvalidKeySpecException e) {
+                exception = e;
+            }
+        }
+        throw exception;
     }
 
-
-    private String getTestKeyFilePath() {
+    private static String getTestKeyFilePath() {
         if (sTestKeyFile != null) {
             return sTestKeyFile.getAbsolutePath();
         }
@@ -63,7 +84,7 @@ public class ApkSigner {
         return check.getAbsolutePath();
     }
 
-    private String getTestCertFilePath() {
+    private static String getTestCertFilePath() {
         if (sTestCertFile != null) {
             return sTestCertFile.getAbsolutePath();
         }
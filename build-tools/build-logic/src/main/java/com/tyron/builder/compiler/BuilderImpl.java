@@ -7,11 +7,23 @@ import androidx.annotation.VisibleForTesting;
 
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
+import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.Module;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public abstract class BuilderImpl<T extends Module> implements Builder<T> {
 
@@ -25,7 +37,7 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
         mProject = project;
         mLogger = logger;
         mMainHandler = new Handler(Looper.getMainLooper());
-        mTasksRan = new ArrayList<>();
+        mTasksRan = Collections.synchronizedList(new ArrayList<>());
     }
 
     @Override
@@ -48,6 +60,17 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
     public final void build(BuildType type) throws CompilationFailedException, IOException {
         mTasksRan.clear();
         List<Task<? super T>> tasks = getTasks(type);
+        ModuleSettings settings = mProject.getSettings();
+        if (settings != null && settings.getBoolean(ModuleSettings.PARALLEL_BUILD, false)) {
+            buildParallel(type, tasks);
+        } else {
+            buildSequential(type, tasks);
+        }
+        mTasksRan.forEach(Task::clean);
+    }
+
+    private void buildSequential(BuildType type, List<Task<? super T>> tasks)
+            throws CompilationFailedException, IOException {
         for (int i = 0, tasksSize = tasks.size(); i < tasksSize; i++) {
             Task<? super T> task = tasks.get(i);
             final float current = i;
@@ -69,7 +92,110 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
             }
             mTasksRan.add(task);
         }
+    }
+
+    /**
+     * Runs the tasks on a worker pool, a task is started as soon as every task it depends on
+     * according to the {@link TaskGraph} has finished. Once a task fails, no new tasks are
+     * started and the build fails after the running tasks have finished.
+     */
+    private void buildParallel(BuildType type, List<Task<? super T>> tasks)
+            throws CompilationFailedException, IOException {
+        TaskGraph<T> graph = new TaskGraph<>(tasks);
+
+        Map<Task<? super T>, Integer> remaining = new HashMap<>();
+        Deque<Task<? super T>> ready = new ArrayDeque<>();
+        for (Task<? super T> task : tasks) {
+            int count = graph.getDependencies(task).size();
+            remaining.put(task, count);
+            if (count == 0) {
+                ready.add(task);
+            }
+        }
+
+        int workers = Math.max(1, Math.min(tasks.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        CompletionService<Task<? super T>> completionService =
+                new ExecutorCompletionService<>(executor);
+        Map<Future<Task<? super T>>, Task<? super T>> running = new HashMap<>();
+        List<Task<? super T>> failedTasks = new ArrayList<>();
+        Throwable failure = null;
+        int started = 0;
+
+        try {
+            while (true) {
+                while (failure == null && !ready.isEmpty()) {
+                    Task<? super T> task = ready.poll();
+                    final float current = started++;
+                    getLogger().info("Running " + task.getName());
+                    mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
+                            (int) ((current / (float) tasks.size()) * 100f)));
+                    running.put(completionService.submit(() -> {
+                        task.prepare(type);
+                        task.run();
+                        return task;
+                    }), task);
+                }
+
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                Future<Task<? super T>> future = completionService.take();
+                Task<? super T> task = running.remove(future);
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failedTasks.add(task);
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    continue;
+                }
+
+                mTasksRan.add(task);
+                for (Task<? super T> dependent : graph.getDependents(task)) {
+                    int count = remaining.get(dependent) - 1;
+                    remaining.put(dependent, count);
+                    if (count == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure == null) {
+            return;
+        }
+
+        if (failure instanceof OutOfMemoryError) {
+            tasks.clear();
+            mTasksRan.clear();
+            throw new CompilationFailedException("Builder ran out of memory", failure);
+        }
+
+        failedTasks.forEach(Task::clean);
         mTasksRan.forEach(Task::clean);
+
+        if (failure instanceof CompilationFailedException) {
+            throw (CompilationFailedException) failure;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new CompilationFailedException("Build was interrupted", failure);
     }
 
     public abstract List<Task<? super T>> getTasks(BuildType type);
@@ -1,5 +1,6 @@
 package com.tyron.builder.compiler;
 
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
 import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
 import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
@@ -14,6 +15,7 @@ import org.apache.commons.io.FileUtils;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 public class CleanTask extends Task<AndroidModule> {
 
@@ -30,6 +32,18 @@ public class CleanTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<File> getInputs() {
+        return ImmutableSet.of(getModule().getJavaDirectory(), getModule().getKotlinDirectory());
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(new File(buildDir, "bin"), new File(buildDir, "gen"),
+                new File(buildDir, "intermediate"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
@@ -4,7 +4,10 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.project.api.Module;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  *
@@ -51,6 +54,23 @@ public abstract class Task<T extends Module> {
      */
     public abstract void run() throws IOException, CompilationFailedException;
 
+    /**
+     * Files and directories read by this task. Used by {@link TaskGraph} to determine which
+     * tasks can run at the same time, a task that declares neither inputs nor outputs is
+     * never run alongside other tasks.
+     */
+    public Set<File> getInputs() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Files and directories written by this task.
+     * @see #getInputs()
+     */
+    public Set<File> getOutputs() {
+        return Collections.emptySet();
+    }
+
     /**
      * Called after the compilation has finished successfully on every tasks
      */
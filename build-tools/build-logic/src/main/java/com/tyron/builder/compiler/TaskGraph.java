@@ -0,0 +1,137 @@
+package com.tyron.builder.compiler;
+
+import com.tyron.builder.api.internal.graph.CachingDirectedGraphWalker;
+import com.tyron.builder.api.internal.graph.DirectedGraph;
+import com.tyron.builder.project.api.Module;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency graph of the tasks of a single build, derived from the files that each task
+ * declares through {@link Task#getInputs()} and {@link Task#getOutputs()}.
+ *
+ * A task depends on an earlier task in the list when one of them writes a file that the other
+ * one reads or writes. Tasks that do not declare anything depend on every task before them and
+ * every task after them depends on it, so they keep their sequential position.
+ */
+public class TaskGraph<T extends Module> implements DirectedGraph<Task<? super T>, Task<? super T>> {
+
+    private final List<Task<? super T>> mTasks;
+    private final Map<Task<? super T>, Set<Task<? super T>>> mDependencies = new HashMap<>();
+    private final Map<Task<? super T>, Set<Task<? super T>>> mDependents = new HashMap<>();
+
+    public TaskGraph(List<Task<? super T>> tasks) {
+        mTasks = tasks;
+
+        Map<Task<? super T>, Set<Task<? super T>>> direct = new HashMap<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            Task<? super T> task = tasks.get(i);
+            Set<Task<? super T>> dependencies = new LinkedHashSet<>();
+            for (int j = 0; j < i; j++) {
+                Task<? super T> previous = tasks.get(j);
+                if (conflicts(previous, task)) {
+                    dependencies.add(previous);
+                }
+            }
+            direct.put(task, dependencies);
+        }
+        mDependencies.putAll(direct);
+
+        // only keep the edges which are not implied by another dependency, the scheduler
+        // then has less bookkeeping to do when a task finishes
+        CachingDirectedGraphWalker<Task<? super T>, Task<? super T>> walker =
+                new CachingDirectedGraphWalker<>(this);
+        Map<Task<? super T>, Set<Task<? super T>>> reduced = new HashMap<>();
+        for (Task<? super T> task : tasks) {
+            Set<Task<? super T>> implied = new LinkedHashSet<>();
+            for (Task<? super T> dependency : direct.get(task)) {
+                walker.add(Collections.singletonList(dependency));
+                implied.addAll(walker.findValues());
+            }
+            Set<Task<? super T>> dependencies = new LinkedHashSet<>(direct.get(task));
+            dependencies.removeAll(implied);
+            reduced.put(task, dependencies);
+        }
+
+        mDependencies.clear();
+        mDependencies.putAll(reduced);
+        for (Task<? super T> task : tasks) {
+            mDependents.put(task, new LinkedHashSet<>());
+        }
+        for (Task<? super T> task : tasks) {
+            for (Task<? super T> dependency : mDependencies.get(task)) {
+                mDependents.get(dependency).add(task);
+            }
+        }
+    }
+
+    @Override
+    public void getNodeValues(Task<? super T> node, Collection<? super Task<? super T>> values,
+                              Collection<? super Task<? super T>> connectedNodes) {
+        Set<Task<? super T>> dependencies = mDependencies.get(node);
+        if (dependencies != null) {
+            values.addAll(dependencies);
+            connectedNodes.addAll(dependencies);
+        }
+    }
+
+    public List<Task<? super T>> getTasks() {
+        return mTasks;
+    }
+
+    /**
+     * @return the tasks that must finish before the given task can start
+     */
+    public Set<Task<? super T>> getDependencies(Task<? super T> task) {
+        Set<Task<? super T>> dependencies = mDependencies.get(task);
+        return dependencies == null ? Collections.emptySet() : dependencies;
+    }
+
+    /**
+     * @return the tasks that are waiting for the given task to finish
+     */
+    public Set<Task<? super T>> getDependents(Task<? super T> task) {
+        Set<Task<? super T>> dependents = mDependents.get(task);
+        return dependents == null ? Collections.emptySet() : dependents;
+    }
+
+    private static boolean conflicts(Task<?> first, Task<?> second) {
+        Set<File> firstInputs = first.getInputs();
+        Set<File> firstOutputs = first.getOutputs();
+        Set<File> secondInputs = second.getInputs();
+        Set<File> secondOutputs = second.getOutputs();
+
+        if ((firstInputs.isEmpty() && firstOutputs.isEmpty()) ||
+                (secondInputs.isEmpty() && secondOutputs.isEmpty())) {
+            return true;
+        }
+
+        return overlaps(firstOutputs, secondInputs) ||
+                overlaps(firstOutputs, secondOutputs) ||
+                overlaps(firstInputs, secondOutputs);
+    }
+
+    private static boolean overlaps(Set<File> first, Set<File> second) {
+        for (File a : first) {
+            for (File b : second) {
+                if (isAncestorOrSelf(a, b) || isAncestorOrSelf(b, a)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAncestorOrSelf(File parent, File child) {
+        String parentPath = parent.getAbsolutePath();
+        String childPath = child.getAbsolutePath();
+        return childPath.equals(parentPath) || childPath.startsWith(parentPath + File.separator);
+    }
+}
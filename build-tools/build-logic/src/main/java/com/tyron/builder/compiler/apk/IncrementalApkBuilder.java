@@ -0,0 +1,755 @@
+package com.tyron.builder.compiler.apk;
+
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.apk.ApkFormatException;
+import com.android.apksig.util.DataSink;
+import com.android.apksig.util.DataSources;
+import com.tyron.builder.exception.CompilationFailedException;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Writes an aligned and signed APK, reusing the APK written by the previous build.
+ *
+ * <p>Entries are written in the order they are added, so the ones that change least often
+ * should be added first. The entries of the written APK are recorded in a state file, on the
+ * next build the APK is kept up to the first entry that changed and only the entries after it
+ * are written again. Entries of zip files are copied without being decompressed. Uncompressed
+ * entries are aligned to 4 bytes and uncompressed native libraries to a page while they are
+ * written, and the APK is signed in the same pass.
+ */
+public class IncrementalApkBuilder {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int EOCD_SIZE = 22;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int UTF_8_FLAG = 0x0800;
+
+    private static final int ALIGNMENT = 4;
+    private static final int PAGE_ALIGNMENT = 4096;
+    private static final short ALIGNMENT_EXTRA_ID = (short) 0xd935;
+    private static final int ALIGNMENT_EXTRA_SIZE = 6;
+
+    /**
+     * 1981-01-01 00:00, a fixed time keeps the APK the same for the same inputs
+     */
+    private static final short DOS_TIME = 0;
+    private static final short DOS_DATE = (1 << 9) | (1 << 5) | 1;
+
+    private final File mApk;
+    private final File mStateFile;
+    private final ApkSignerEngine mSignerEngine;
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+
+    private int mReusedEntries;
+
+    /**
+     * @param apk the APK to write, its entries are reused if it has been written before
+     * @param stateFile the file that records the entries of the APK
+     * @param signerEngine the engine that signs the APK
+     */
+    public IncrementalApkBuilder(File apk, File stateFile, ApkSignerEngine signerEngine) {
+        mApk = apk;
+        mStateFile = stateFile;
+        mSignerEngine = signerEngine;
+    }
+
+    public void addFile(File file, String archivePath) throws CompilationFailedException {
+        add(new Entry(archivePath, "file:" + file.length() + ":" + file.lastModified(),
+                file, null));
+    }
+
+    /**
+     * Adds the entries of a zip file whose path is accepted by the filter
+     */
+    public void addZipEntries(File zip, Predicate<String> filter)
+            throws IOException, CompilationFailedException {
+        for (ZipRecord record : readCentralDirectory(zip)) {
+            if (record.name.endsWith("/") || !filter.test(record.name)) {
+                continue;
+            }
+            add(new Entry(record.name, "zip:" + record.crc + ":" + record.size + ":" +
+                    record.compressedSize + ":" + record.method, zip, record));
+        }
+    }
+
+    /**
+     * Adds the java resources of a jar file
+     */
+    public void addResourcesFromJar(File jar) throws IOException, CompilationFailedException {
+        addZipEntries(jar, IncrementalApkBuilder::isJavaResource);
+    }
+
+    /**
+     * Adds the java resources in a folder
+     */
+    public void addSourceFolder(File folder) throws CompilationFailedException {
+        addSourceFolder(folder, "");
+    }
+
+    private void addSourceFolder(File folder, String path) throws CompilationFailedException {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            String childPath = path + child.getName();
+            if (child.isDirectory()) {
+                addSourceFolder(child, childPath + "/");
+            } else if (isJavaResource(childPath)) {
+                addFile(child, childPath);
+            }
+        }
+    }
+
+    /**
+     * Adds the native libraries of a folder that has a folder for each ABI
+     */
+    public void addNativeLibraries(File folder) throws CompilationFailedException {
+        File[] abis = folder.listFiles(File::isDirectory);
+        if (abis == null) {
+            return;
+        }
+        Arrays.sort(abis);
+        for (File abi : abis) {
+            File[] libraries = abi.listFiles(file -> file.isFile() &&
+                    file.getName().endsWith(".so"));
+            if (libraries == null) {
+                continue;
+            }
+            Arrays.sort(libraries);
+            for (File library : libraries) {
+                addFile(library, "lib/" + abi.getName() + "/" + library.getName());
+            }
+        }
+    }
+
+    private void add(Entry entry) throws CompilationFailedException {
+        Entry existing = mEntries.putIfAbsent(entry.name, entry);
+        if (existing != null) {
+            String message = "Duplicate files from two libraries detected. \n";
+            message += "File1: " + existing.file + " \n";
+            message += "File2: " + entry.file + " \n";
+            message += "Archive path: " + entry.name;
+            throw new CompilationFailedException(message);
+        }
+    }
+
+    /**
+     * @return the number of entries that were kept from the previous APK by the last build
+     */
+    public int getReusedEntries() {
+        return mReusedEntries;
+    }
+
+    public void build() throws IOException, CompilationFailedException {
+        List<Entry> entries = new ArrayList<>(mEntries.values());
+        List<WrittenEntry> previous = readState();
+        // the state no longer matches the APK if the build fails while it is written
+        Files.deleteIfExists(mStateFile.toPath());
+
+        int kept = 0;
+        while (kept < entries.size() && kept < previous.size() &&
+                entries.get(kept).name.equals(previous.get(kept).name) &&
+                entries.get(kept).fingerprint.equals(previous.get(kept).fingerprint)) {
+            kept++;
+        }
+        mReusedEntries = kept;
+        List<WrittenEntry> written = new ArrayList<>(previous.subList(0, kept));
+        long offset = kept == 0 ? 0 : written.get(kept - 1).end;
+
+        Map<File, RandomAccessFile> openZips = new HashMap<>();
+        try (RandomAccessFile apk = new RandomAccessFile(mApk, "rw")) {
+            apk.setLength(offset);
+            FileChannel channel = apk.getChannel();
+            channel.position(offset);
+
+            // the v1 signature needs the contents of the entries that are kept
+            for (WrittenEntry entry : written) {
+                inspectKeptEntry(channel, entry);
+            }
+
+            CountingOutputStream out = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024),
+                    offset);
+            for (Entry entry : entries.subList(kept, entries.size())) {
+                written.add(writeEntry(out, entry, openZips));
+            }
+
+            List<WrittenEntry> signatureEntries = new ArrayList<>();
+            ApkSignerEngine.OutputJarSignatureRequest signatureRequest =
+                    mSignerEngine.outputJarEntries();
+            if (signatureRequest != null) {
+                for (ApkSignerEngine.OutputJarSignatureRequest.JarEntry entry :
+                        signatureRequest.getAdditionalJarEntries()) {
+                    signatureEntries.add(writeEntry(out, entry.getName(), entry.getData()));
+                }
+                signatureRequest.done();
+            }
+            out.flush();
+
+            long centralDirectoryOffset = out.getPosition();
+            List<WrittenEntry> all = new ArrayList<>(written);
+            all.addAll(signatureEntries);
+            ByteBuffer centralDirectory = createCentralDirectory(all);
+            ByteBuffer eocd = createEocd(all.size(), centralDirectory.capacity(),
+                    centralDirectoryOffset);
+
+            ApkSignerEngine.OutputApkSigningBlockRequest2 blockRequest =
+                    mSignerEngine.outputZipSections2(
+                            DataSources.asDataSource(apk, 0, centralDirectoryOffset),
+                            DataSources.asDataSource(centralDirectory.duplicate()),
+                            DataSources.asDataSource(eocd.duplicate()));
+            apk.seek(centralDirectoryOffset);
+            if (blockRequest != null) {
+                byte[] block = blockRequest.getApkSigningBlock();
+                int padding = blockRequest.getPaddingSizeBeforeApkSigningBlock();
+                apk.write(new byte[padding]);
+                apk.write(block);
+                eocd.putInt(16, (int) (centralDirectoryOffset + padding + block.length));
+            }
+            apk.write(centralDirectory.array());
+            apk.write(eocd.array());
+            apk.setLength(apk.getFilePointer());
+            if (blockRequest != null) {
+                blockRequest.done();
+            }
+            mSignerEngine.outputDone();
+        } catch (GeneralSecurityException | ApkFormatException e) {
+            throw new CompilationFailedException(e);
+        } finally {
+            for (RandomAccessFile zip : openZips.values()) {
+                zip.close();
+            }
+        }
+
+        writeState(written);
+    }
+
+    private void inspectKeptEntry(FileChannel apk, WrittenEntry entry)
+            throws IOException, CompilationFailedException {
+        ApkSignerEngine.InspectJarEntryRequest request = mSignerEngine.outputJarEntry(entry.name);
+        if (request == null) {
+            return;
+        }
+        DataInspector inspector = new DataInspector(request.getDataSink(), entry.method);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = entry.dataStart;
+        while (position < entry.end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), entry.end - position));
+            int read = apk.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + mApk);
+            }
+            inspector.consume(buffer.array(), 0, read);
+            position += read;
+        }
+        inspector.finish();
+        request.done();
+    }
+
+    private WrittenEntry writeEntry(CountingOutputStream out, Entry entry,
+                                    Map<File, RandomAccessFile> openZips)
+            throws IOException, CompilationFailedException {
+        ApkSignerEngine.InspectJarEntryRequest request = mSignerEngine.outputJarEntry(entry.name);
+        DataSink sink = request == null ? null : request.getDataSink();
+
+        WrittenEntry written;
+        if (entry.record == null) {
+            // files are compressed into memory first, the sizes are written before the data
+            CRC32 crc = new CRC32();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            long size = 0;
+            try (InputStream in = new FileInputStream(entry.file);
+                 DeflaterOutputStream deflaterOut =
+                         new DeflaterOutputStream(compressed, deflater, 64 * 1024)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    deflaterOut.write(buffer, 0, read);
+                    if (sink != null) {
+                        sink.consume(buffer, 0, read);
+                    }
+                    size += read;
+                }
+            } finally {
+                deflater.end();
+            }
+            written = writeLocalHeader(out, entry.name, entry.fingerprint, DEFLATED,
+                    crc.getValue(), compressed.size(), size);
+            compressed.writeTo(out);
+        } else {
+            ZipRecord record = entry.record;
+            RandomAccessFile zip = openZips.get(entry.file);
+            if (zip == null) {
+                zip = new RandomAccessFile(entry.file, "r");
+                openZips.put(entry.file, zip);
+            }
+            written = writeLocalHeader(out, entry.name, entry.fingerprint, record.method,
+                    record.crc, record.compressedSize, record.size);
+
+            DataInspector inspector = sink == null ? null : new DataInspector(sink, record.method);
+            byte[] buffer = new byte[64 * 1024];
+            long position = getDataOffset(zip, record);
+            long remaining = record.compressedSize;
+            while (remaining > 0) {
+                int length = (int) Math.min(buffer.length, remaining);
+                zip.seek(position);
+                zip.readFully(buffer, 0, length);
+                out.write(buffer, 0, length);
+                if (inspector != null) {
+                    inspector.consume(buffer, 0, length);
+                }
+                position += length;
+                remaining -= length;
+            }
+            if (inspector != null) {
+                inspector.finish();
+            }
+        }
+        if (request != null) {
+            request.done();
+        }
+        written.end = out.getPosition();
+        return written;
+    }
+
+    private WrittenEntry writeEntry(CountingOutputStream out, String name, byte[] data)
+            throws IOException {
+        ApkSignerEngine.InspectJarEntryRequest request = mSignerEngine.outputJarEntry(name);
+        if (request != null) {
+            request.getDataSink().consume(data, 0, data.length);
+            request.done();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(compressed, deflater)) {
+            deflaterOut.write(data);
+        } finally {
+            deflater.end();
+        }
+        WrittenEntry written = writeLocalHeader(out, name, "", DEFLATED, crc.getValue(),
+                compressed.size(), data.length);
+        compressed.writeTo(out);
+        written.end = out.getPosition();
+        return written;
+    }
+
+    private WrittenEntry writeLocalHeader(CountingOutputStream out, String name,
+                                          String fingerprint, int method, long crc,
+                                          long compressedSize, long size) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long start = out.getPosition();
+
+        int extraLength = 0;
+        int alignment = 0;
+        if (method == STORED) {
+            alignment = name.endsWith(".so") ? PAGE_ALIGNMENT : ALIGNMENT;
+            long dataStart = start + LOCAL_HEADER_SIZE + nameBytes.length + ALIGNMENT_EXTRA_SIZE;
+            extraLength = ALIGNMENT_EXTRA_SIZE + (int) ((alignment - dataStart % alignment) % alignment);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length + extraLength)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (method == STORED ? 10 : 20));
+        header.putShort((short) UTF_8_FLAG);
+        header.putShort((short) method);
+        header.putShort(DOS_TIME);
+        header.putShort(DOS_DATE);
+        header.putInt((int) crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) size);
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) extraLength);
+        header.put(nameBytes);
+        if (extraLength > 0) {
+            header.putShort(ALIGNMENT_EXTRA_ID);
+            header.putShort((short) (extraLength - 4));
+            header.putShort((short) alignment);
+        }
+        out.write(header.array());
+
+        WrittenEntry written = new WrittenEntry();
+        written.name = name;
+        written.fingerprint = fingerprint;
+        written.method = method;
+        written.crc = crc;
+        written.compressedSize = compressedSize;
+        written.size = size;
+        written.start = start;
+        written.dataStart = out.getPosition();
+        return written;
+    }
+
+    private static ByteBuffer createCentralDirectory(List<WrittenEntry> entries) {
+        List<byte[]> names = new ArrayList<>(entries.size());
+        int size = 0;
+        for (WrittenEntry entry : entries) {
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            size += CENTRAL_DIRECTORY_HEADER_SIZE + name.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < entries.size(); i++) {
+            WrittenEntry entry = entries.get(i);
+            byte[] name = names.get(i);
+            buffer.putInt(CENTRAL_DIRECTORY_SIGNATURE);
+            buffer.putShort((short) 20);
+            buffer.putShort((short) (entry.method == STORED ? 10 : 20));
+            buffer.putShort((short) UTF_8_FLAG);
+            buffer.putShort((short) entry.method);
+            buffer.putShort(DOS_TIME);
+            buffer.putShort(DOS_DATE);
+            buffer.putInt((int) entry.crc);
+            buffer.putInt((int) entry.compressedSize);
+            buffer.putInt((int) entry.size);
+            buffer.putShort((short) name.length);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putInt(0);
+            buffer.putInt((int) entry.start);
+            buffer.put(name);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer createEocd(int entries, int centralDirectorySize,
+                                         long centralDirectoryOffset) {
+        ByteBuffer buffer = ByteBuffer.allocate(EOCD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(EOCD_SIGNATURE);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) entries);
+        buffer.putShort((short) entries);
+        buffer.putInt(centralDirectorySize);
+        buffer.putInt((int) centralDirectoryOffset);
+        buffer.putShort((short) 0);
+        buffer.flip();
+        return buffer;
+    }
+
+    private List<WrittenEntry> readState() throws IOException {
+        List<WrittenEntry> entries = new ArrayList<>();
+        if (!mStateFile.exists() || !mApk.exists()) {
+            return entries;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(mStateFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.equals(mApk.length() + "\t" + mApk.lastModified())) {
+                return entries;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 9);
+                if (parts.length != 9) {
+                    return new ArrayList<>();
+                }
+                WrittenEntry entry = new WrittenEntry();
+                entry.start = Long.parseLong(parts[0]);
+                entry.dataStart = Long.parseLong(parts[1]);
+                entry.end = Long.parseLong(parts[2]);
+                entry.method = Integer.parseInt(parts[3]);
+                entry.crc = Long.parseLong(parts[4]);
+                entry.compressedSize = Long.parseLong(parts[5]);
+                entry.size = Long.parseLong(parts[6]);
+                entry.fingerprint = parts[7];
+                entry.name = parts[8];
+                entries.add(entry);
+            }
+        } catch (NumberFormatException e) {
+            return new ArrayList<>();
+        }
+        return entries;
+    }
+
+    private void writeState(List<WrittenEntry> entries) throws IOException {
+        File parent = mStateFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(mStateFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            writer.write(mApk.length() + "\t" + mApk.lastModified());
+            writer.newLine();
+            for (WrittenEntry entry : entries) {
+                writer.write(entry.start + "\t" + entry.dataStart + "\t" + entry.end + "\t" +
+                        entry.method + "\t" + entry.crc + "\t" + entry.compressedSize + "\t" +
+                        entry.size + "\t" + entry.fingerprint + "\t" + entry.name);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static long getDataOffset(RandomAccessFile zip, ZipRecord record) throws IOException {
+        byte[] header = new byte[LOCAL_HEADER_SIZE];
+        zip.seek(record.localHeaderOffset);
+        zip.readFully(header);
+        ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Malformed local header of " + record.name);
+        }
+        int nameLength = buffer.getShort(26) & 0xffff;
+        int extraLength = buffer.getShort(28) & 0xffff;
+        return record.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * Reads the records of the central directory of a zip file without reading its entries
+     */
+    private static List<ZipRecord> readCentralDirectory(File zip) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(zip, "r")) {
+            long length = file.length();
+            if (length < EOCD_SIZE) {
+                throw new IOException(zip + " is not a zip file");
+            }
+            int tailLength = (int) Math.min(length, EOCD_SIZE + 0xffff);
+            ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+            file.seek(length - tailLength);
+            file.readFully(tail.array());
+
+            int eocd = -1;
+            for (int i = tailLength - EOCD_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == EOCD_SIGNATURE) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd == -1) {
+                throw new IOException("Unable to find the central directory of " + zip);
+            }
+            int count = tail.getShort(eocd + 10) & 0xffff;
+            int size = tail.getInt(eocd + 12);
+            long offset = tail.getInt(eocd + 16) & 0xffffffffL;
+
+            ByteBuffer centralDirectory = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            file.seek(offset);
+            file.readFully(centralDirectory.array());
+
+            List<ZipRecord> records = new ArrayList<>(count);
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                if (centralDirectory.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                    throw new IOException("Malformed central directory of " + zip);
+                }
+                int nameLength = centralDirectory.getShort(position + 28) & 0xffff;
+                int extraLength = centralDirectory.getShort(position + 30) & 0xffff;
+                int commentLength = centralDirectory.getShort(position + 32) & 0xffff;
+
+                ZipRecord record = new ZipRecord();
+                record.method = centralDirectory.getShort(position + 10) & 0xffff;
+                record.crc = centralDirectory.getInt(position + 16) & 0xffffffffL;
+                record.compressedSize = centralDirectory.getInt(position + 20) & 0xffffffffL;
+                record.size = centralDirectory.getInt(position + 24) & 0xffffffffL;
+                record.localHeaderOffset = centralDirectory.getInt(position + 42) & 0xffffffffL;
+                record.name = new String(centralDirectory.array(),
+                        position + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength,
+                        StandardCharsets.UTF_8);
+                records.add(record);
+
+                position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength +
+                        commentLength;
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Whether a file of a jar or a source folder is packaged as a java resource, this follows
+     * the rules of the sdklib ApkBuilder.
+     */
+    public static boolean isJavaResource(String path) {
+        String[] segments = path.split("/");
+        if (segments.length == 0) {
+            return false;
+        }
+        for (int i = 0; i < segments.length - 1; i++) {
+            String folder = segments[i];
+            if (folder.equalsIgnoreCase("CVS") || folder.equalsIgnoreCase(".svn") ||
+                    folder.equalsIgnoreCase("SCCS") || folder.equalsIgnoreCase("META-INF") ||
+                    folder.startsWith("_")) {
+                return false;
+            }
+        }
+
+        String fileName = segments[segments.length - 1];
+        if (fileName.isEmpty() || fileName.charAt(0) == '.' ||
+                fileName.charAt(fileName.length() - 1) == '~') {
+            return false;
+        }
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot > 0 ? fileName.substring(dot + 1) : "";
+        for (String excluded : new String[]{"aidl", "rs", "fs", "rsh", "d", "java", "class",
+                "scc", "swp"}) {
+            if (excluded.equalsIgnoreCase(extension)) {
+                return false;
+            }
+        }
+        return !fileName.equalsIgnoreCase("thumbs.db") &&
+                !fileName.equalsIgnoreCase("picasa.ini") &&
+                !fileName.equalsIgnoreCase("package.html") &&
+                !fileName.equalsIgnoreCase("overview.html");
+    }
+
+    private static class Entry {
+        final String name;
+        final String fingerprint;
+        final File file;
+        /**
+         * The record of the entry if the file is a zip, null if the file is the contents of
+         * the entry
+         */
+        final ZipRecord record;
+
+        Entry(String name, String fingerprint, File file, ZipRecord record) {
+            this.name = name;
+            this.fingerprint = fingerprint;
+            this.file = file;
+            this.record = record;
+        }
+    }
+
+    private static class ZipRecord {
+        String name;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+    }
+
+    private static class WrittenEntry {
+        String name;
+        String fingerprint;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        long start;
+        long dataStart;
+        long end;
+    }
+
+    /**
+     * Passes the uncompressed contents of an entry to the signer engine
+     */
+    private static class DataInspector {
+
+        private final DataSink mSink;
+        private final Inflater mInflater;
+        private final byte[] mBuffer;
+
+        DataInspector(DataSink sink, int method) throws CompilationFailedException {
+            mSink = sink;
+            if (method == STORED) {
+                mInflater = null;
+                mBuffer = null;
+            } else if (method == DEFLATED) {
+                mInflater = new Inflater(true);
+                mBuffer = new byte[64 * 1024];
+            } else {
+                throw new CompilationFailedException("Unsupported compression method " + method);
+            }
+        }
+
+        void consume(byte[] data, int offset, int length) throws IOException {
+            if (mInflater == null) {
+                mSink.consume(data, offset, length);
+                return;
+            }
+            mInflater.setInput(data, offset, length);
+            try {
+                int inflated;
+                while ((inflated = mInflater.inflate(mBuffer)) > 0) {
+                    mSink.consume(mBuffer, 0, inflated);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+
+        void finish() {
+            if (mInflater != null) {
+                mInflater.end();
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private final OutputStream mOut;
+        private long mPosition;
+
+        CountingOutputStream(OutputStream out, long position) {
+            mOut = out;
+            mPosition = position;
+        }
+
+        long getPosition() {
+            return mPosition;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            mOut.write(b);
+            mPosition++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mOut.write(b, off, len);
+            mPosition += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+    }
+}
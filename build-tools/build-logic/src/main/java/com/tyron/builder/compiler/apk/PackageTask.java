@@ -1,11 +1,6 @@
 package com.tyron.builder.compiler.apk;
 
-import android.net.Uri;
-
-import com.android.sdklib.build.ApkBuilder;
-import com.android.sdklib.build.ApkCreationException;
-import com.android.sdklib.build.DuplicateFileException;
-import com.android.sdklib.build.SealedApkException;
+import com.tyron.builder.compiler.ApkSigner;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -14,7 +9,10 @@ import com.tyron.builder.project.api.AndroidModule;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 public class PackageTask extends Task<AndroidModule> {
@@ -36,9 +34,13 @@ public class PackageTask extends Task<AndroidModule> {
      */
     private File mGeneratedRes;
     /**
-     * The output apk file
+     * The output apk file, it is aligned and signed
      */
     private File mApk;
+    /**
+     * The entries of the output apk file as of the last build
+     */
+    private File mStateFile;
     private BuildType mBuildType;
 
     public PackageTask(AndroidModule project, ILogger logger) {
@@ -56,7 +58,8 @@ public class PackageTask extends Task<AndroidModule> {
 
         File mBinDir = new File(getModule().getBuildDirectory(), "bin");
 
-        mApk = new File(mBinDir, "generated.apk");
+        mApk = new File(mBinDir, "signed.apk");
+        mStateFile = new File(getModule().getBuildDirectory(), "intermediate/apk-entries");
         mDexFile = new File(mBinDir, "classes.dex");
         mGeneratedRes = new File(mBinDir, "generated.apk.res");
         File[] binFiles = mBinDir.listFiles();
@@ -71,6 +74,7 @@ public class PackageTask extends Task<AndroidModule> {
             }
         }
 
+        mDexFiles.sort(Comparator.comparing(File::getName));
         mLibraries.addAll(getModule().getLibraries());
 
         getLogger().debug("Packaging APK.");
@@ -78,68 +82,63 @@ public class PackageTask extends Task<AndroidModule> {
 
     @Override
     public void run() throws IOException, CompilationFailedException {
-
-        int dexCount = 1;
+        IncrementalApkBuilder builder;
         try {
-            ApkBuilder builder = new ApkBuilder(
-                    mApk.getAbsolutePath(),
-                    mGeneratedRes.getAbsolutePath(),
-                    mDexFile.getAbsolutePath(),
-                    null,
-                    null);
-
-            for (File extraDex : mDexFiles) {
-                dexCount++;
-                builder.addFile(extraDex, Uri.parse(extraDex.getAbsolutePath()).getLastPathSegment());
-            }
+            builder = new IncrementalApkBuilder(mApk, mStateFile,
+                    ApkSigner.createTestSignerEngine(getModule().getMinSdk()));
+        } catch (GeneralSecurityException e) {
+            throw new CompilationFailedException(e);
+        }
 
-            for (File library : mLibraries) {
-                builder.addResourcesFromJar(library);
+        // entries that rarely change are added first, the APK is only written again
+        // from the first entry that changed
+        for (File library : mLibraries) {
+            builder.addResourcesFromJar(library);
 
-                File parent = library.getParentFile();
-                if (parent != null) {
-                    File jniFolder = new File(parent, "jni");
-                    if (jniFolder.exists() && jniFolder.isDirectory()) {
-                        builder.addNativeLibraries(jniFolder);
-                    }
+            File parent = library.getParentFile();
+            if (parent != null) {
+                File jniFolder = new File(parent, "jni");
+                if (jniFolder.exists() && jniFolder.isDirectory()) {
+                    builder.addNativeLibraries(jniFolder);
                 }
             }
+        }
 
-            if (getModule().getNativeLibrariesDirectory().exists()) {
-                builder.addNativeLibraries(getModule().getNativeLibrariesDirectory());
-            }
+        if (getModule().getNativeLibrariesDirectory().exists()) {
+            builder.addNativeLibraries(getModule().getNativeLibrariesDirectory());
+        }
+
+        File resourcesDir = getModule().getResourcesDir();
+        if (resourcesDir.exists()) {
+            builder.addSourceFolder(resourcesDir);
+        }
 
-            if (mBuildType == BuildType.DEBUG) {
-                builder.setDebugMode(true);
-                // For debug mode, dex files are not merged to save up compile time
-                for (File it : getModule().getLibraries()) {
-                    File parent = it.getParentFile();
-                    if (parent != null) {
-                        File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
-                        if (dexFiles != null) {
-                            for (File dexFile : dexFiles) {
-                                dexCount++;
-                                builder.addFile(dexFile, "classes" + dexCount + ".dex");
-                            }
+        builder.addZipEntries(mGeneratedRes, path -> true);
+
+        int dexCount = 1 + mDexFiles.size();
+        if (mBuildType == BuildType.DEBUG) {
+            // For debug mode, dex files are not merged to save up compile time
+            for (File it : getModule().getLibraries()) {
+                File parent = it.getParentFile();
+                if (parent != null) {
+                    File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
+                    if (dexFiles != null) {
+                        Arrays.sort(dexFiles);
+                        for (File dexFile : dexFiles) {
+                            dexCount++;
+                            builder.addFile(dexFile, "classes" + dexCount + ".dex");
                         }
                     }
                 }
             }
+        }
 
-            File resourcesDir = getModule().getResourcesDir();
-            if (resourcesDir.exists()) {
-                builder.addSourceFolder(resourcesDir);
-            }
-
-            builder.sealApk();
-        } catch (ApkCreationException | SealedApkException e) {
-            throw new CompilationFailedException(e);
-        } catch (DuplicateFileException e) {
-            String message = "Duplicate files from two libraries detected. \n";
-            message += "File1: " + e.getFile1() + " \n";
-            message += "File2: " + e.getFile2() + " \n";
-            message += "Archive path: " + e.getArchivePath();
-            throw new CompilationFailedException(message);
+        for (File extraDex : mDexFiles) {
+            builder.addFile(extraDex, extraDex.getName());
         }
+        builder.addFile(mDexFile, "classes.dex");
+
+        builder.build();
+        getLogger().debug("Reused " + builder.getReusedEntries() + " entries of the previous APK.");
     }
 }
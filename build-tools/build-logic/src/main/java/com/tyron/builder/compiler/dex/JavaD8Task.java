@@ -68,7 +68,7 @@ public class JavaD8Task extends Task<JavaModule> {
         mClassFiles = new ArrayList<>(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/java/classes")));
         mClassFiles.addAll(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
+            if (!mClassFiles.contains(key.file)) {
                 File file = mDexCache.get(key.file, "dex").iterator().next();
                 deleteAllFiles(file, ".dex");
                 mDexCache.remove(key.file, "dex");
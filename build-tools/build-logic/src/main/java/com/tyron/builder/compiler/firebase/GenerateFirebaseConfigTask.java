@@ -2,6 +2,7 @@ package com.tyron.builder.compiler.firebase;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -21,6 +22,7 @@ import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
 
@@ -56,6 +58,16 @@ public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<File> getInputs() {
+        return ImmutableSet.of(new File(getModule().getRootFile(), GOOGLE_SERVICES_JSON));
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        return ImmutableSet.of(new File(getModule().getAndroidResourcesDirectory(), VALUES));
+    }
+
     private File mConfigFile;
 
     @Override
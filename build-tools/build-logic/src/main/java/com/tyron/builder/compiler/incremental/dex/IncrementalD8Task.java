@@ -5,12 +5,15 @@ import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.reflect.TypeToken;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.dex.D8Task;
 import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
+import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
@@ -25,16 +28,31 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
+/**
+ * Converts the class files of the module into dex files, only the class files that have changed
+ * since the last build are converted.
+ *
+ * Each class is dexed into its own file which are then merged into one dex shard per package.
+ * Only the shards of the packages that have changed are merged again before all the shards are
+ * merged into the final dex file. Libraries and shards are dexed concurrently when
+ * {@link ModuleSettings#DEX_THREADS} is greater than one.
+ */
 public class IncrementalD8Task extends Task<AndroidModule> {
 
     private static final String TAG = IncrementalD8Task.class.getSimpleName();
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("dexCache");
+            new CacheHolder.CacheKey<>("dexCache", String.class,
+                    new TypeToken<List<File>>() {}.getType());
 
     private DiagnosticsHandler diagnosticsHandler;
     private List<Path> mClassFiles;
@@ -42,6 +60,9 @@ public class IncrementalD8Task extends Task<AndroidModule> {
 
     private Cache<String, List<File>> mDexCache;
     private Path mOutputPath;
+    private File mShardsDir;
+    private Set<String> mChangedPackages;
+    private int mThreads;
 
     private BuildType mBuildType;
 
@@ -55,32 +76,68 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<File> getInputs() {
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(new File(buildDir, "bin/java"), new File(buildDir, "bin/kotlin"),
+                new File(buildDir, "libs"));
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        // libraries are dexed next to their classes.jar
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(new File(buildDir, "intermediate/classes"),
+                new File(buildDir, "intermediate/dex-shards"),
+                new File(buildDir, "bin/classes.dex"), new File(buildDir, "libs"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
         diagnosticsHandler = new DexDiagnosticHandler(getLogger(), getModule());
         mDexCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mThreads = Math.max(1, getModule().getSettings().getInt(ModuleSettings.DEX_THREADS, 1));
 
         File output = new File(getModule().getBuildDirectory(), "intermediate/classes");
         if (!output.exists() && !output.mkdirs()) {
             throw new IOException("Unable to create output directory");
         }
         mOutputPath = output.toPath();
+        mShardsDir = new File(getModule().getBuildDirectory(), "intermediate/dex-shards");
+        mChangedPackages = new HashSet<>();
 
         mFilesToCompile = new ArrayList<>();
         mClassFiles = new ArrayList<>(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/java/classes")));
         mClassFiles.addAll(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
+        Set<Path> classFiles = new HashSet<>(mClassFiles);
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
-                File file = mDexCache.get(key.file, "dex").iterator().next();
-                deleteAllFiles(file, ".dex");
+            if (!classFiles.contains(key.file)) {
+                deleteAllFiles(key.file.toFile(), ".dex");
                 mDexCache.remove(key.file, "dex");
+                mChangedPackages.add(getPackageName(key.file.toFile()));
             }
         }
 
+        Set<String> shardNames = new HashSet<>();
         for (Path file : mClassFiles) {
+            String packageName = getPackageName(file.toFile());
+            shardNames.add(getShardDirectory(packageName).getName());
             if (mDexCache.needs(file, "dex")) {
                 mFilesToCompile.add(file);
+                mChangedPackages.add(packageName);
+            } else if (!getShardDirectory(packageName).exists()) {
+                mChangedPackages.add(packageName);
+            }
+        }
+
+        // shards of packages that no longer have any classes
+        File[] shards = mShardsDir.listFiles(File::isDirectory);
+        if (shards != null) {
+            for (File shard : shards) {
+                if (!shardNames.contains(shard.getName())) {
+                    FileUtils.deleteDirectory(shard);
+                }
             }
         }
     }
@@ -99,55 +156,34 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         super.clean();
     }
 
-    private void doRelease() throws CompilationFailedException {
+    private void doRelease() throws CompilationFailedException, IOException {
         try {
             ensureDexedLibraries();
-            D8Command command = D8Command.builder(diagnosticsHandler)
-                    .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
-                    .addProgramFiles(mFilesToCompile)
-                    .addLibraryFiles(getLibraryFiles())
-                    .setMinApiLevel(getModule().getMinSdk())
-                    .setMode(CompilationMode.RELEASE)
-                    .setIntermediate(true)
-                    .setOutput(mOutputPath, OutputMode.DexFilePerClassFile)
-                    .build();
-            D8.run(command);
-            for (Path file : mFilesToCompile) {
-                mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
-            }
-
+            dexClasses(CompilationMode.RELEASE);
+            mergeShards(CompilationMode.RELEASE);
             mergeRelease();
         } catch (com.android.tools.r8.CompilationFailedException e) {
             throw new CompilationFailedException(e);
         }
     }
 
-    private void doDebug() throws CompilationFailedException {
+    private void doDebug() throws CompilationFailedException, IOException {
         try {
             ensureDexedLibraries();
+            dexClasses(CompilationMode.DEBUG);
+            mergeShards(CompilationMode.DEBUG);
 
-            D8Command command = D8Command.builder(diagnosticsHandler)
-                    .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
-                    .addProgramFiles(mFilesToCompile)
-                    .addLibraryFiles(getLibraryFiles())
-                    .setMinApiLevel(getModule().getMinSdk())
-                    .setMode(CompilationMode.DEBUG)
-                    .setIntermediate(true)
-                    .setOutput(mOutputPath, OutputMode.DexFilePerClassFile)
-                    .build();
-            D8.run(command);
-
-            for (Path file : mFilesToCompile) {
-                mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
+            File output = new File(getModule().getBuildDirectory(), "bin");
+            if (mChangedPackages.isEmpty() && new File(output, "classes.dex").exists()) {
+                return;
             }
 
             D8Command.Builder builder = D8Command.builder(diagnosticsHandler)
-                    .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
+                    .addProgramFiles(getAllDexFiles(mShardsDir))
                     .addLibraryFiles(getLibraryFiles())
                     .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
                     .setMinApiLevel(getModule().getMinSdk());
 
-            File output = new File(getModule().getBuildDirectory(), "bin");
             builder.setMode(CompilationMode.DEBUG);
             builder.setOutput(output.toPath(), OutputMode.DexIndexed);
             D8.run(builder.build());
@@ -157,13 +193,94 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         }
     }
 
+    /**
+     * Dexes the changed class files into a dex file per class, the classes of each package
+     * are dexed separately so the packages can be processed concurrently.
+     */
+    private void dexClasses(CompilationMode mode) throws CompilationFailedException {
+        Map<String, List<Path>> packages = new TreeMap<>();
+        for (Path file : mFilesToCompile) {
+            String packageName = getPackageName(file.toFile());
+            List<Path> files = packages.get(packageName);
+            if (files == null) {
+                files = new ArrayList<>();
+                packages.put(packageName, files);
+            }
+            files.add(file);
+        }
+
+        List<Path> classpath = getModule().getLibraries().stream()
+                .map(File::toPath)
+                .collect(Collectors.toList());
+        classpath.addAll(getClassRoots());
+        List<DexAction> actions = new ArrayList<>();
+        for (List<Path> files : packages.values()) {
+            actions.add(() -> {
+                D8Command command = D8Command.builder(diagnosticsHandler)
+                        .addClasspathFiles(classpath)
+                        .addProgramFiles(files)
+                        .addLibraryFiles(getLibraryFiles())
+                        .setMinApiLevel(getModule().getMinSdk())
+                        .setMode(mode)
+                        .setIntermediate(true)
+                        .setOutput(mOutputPath, OutputMode.DexFilePerClassFile)
+                        .build();
+                D8.run(command);
+            });
+        }
+        runAll(actions);
+
+        for (Path file : mFilesToCompile) {
+            mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
+        }
+    }
+
+    /**
+     * Merges the dex files of each changed package into a single shard
+     */
+    private void mergeShards(CompilationMode mode) throws CompilationFailedException, IOException {
+        List<DexAction> actions = new ArrayList<>();
+        for (String packageName : mChangedPackages) {
+            File shard = getShardDirectory(packageName);
+            if (shard.exists()) {
+                FileUtils.deleteDirectory(shard);
+            }
+
+            File packageDir = packageName.isEmpty()
+                    ? mOutputPath.toFile()
+                    : new File(mOutputPath.toFile(), packageName.replace('.', '/'));
+            File[] dexFiles = packageDir.listFiles(c -> c.isFile() && c.getName().endsWith(".dex"));
+            if (dexFiles == null || dexFiles.length == 0) {
+                continue;
+            }
+            if (!shard.mkdirs()) {
+                throw new IOException("Unable to create dex shard " + shard);
+            }
+            List<Path> programFiles = Arrays.stream(dexFiles)
+                    .map(File::toPath)
+                    .collect(Collectors.toList());
+            actions.add(() -> {
+                D8Command command = D8Command.builder(diagnosticsHandler)
+                        .addProgramFiles(programFiles)
+                        .addLibraryFiles(getLibraryFiles())
+                        .setMinApiLevel(getModule().getMinSdk())
+                        .setMode(mode)
+                        .setIntermediate(true)
+                        .setOutput(shard.toPath(), OutputMode.DexIndexed)
+                        .build();
+                D8.run(command);
+            });
+        }
+        runAll(actions);
+    }
+
     private void mergeRelease() throws com.android.tools.r8.CompilationFailedException {
         File output = new File(getModule().getBuildDirectory(), "bin");
         D8Command command = D8Command.builder(diagnosticsHandler)
                 .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath)
                         .collect(Collectors.toList()))
                 .addLibraryFiles(getLibraryFiles())
-                .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
+                .addProgramFiles(getAllDexFiles(mShardsDir))
                 .addProgramFiles(getLibraryDexes())
                 .setMinApiLevel(getModule().getMinSdk())
                 .setMode(CompilationMode.RELEASE)
@@ -188,26 +305,51 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     }
 
 
+    private List<Path> getClassRoots() {
+        return Arrays.asList(
+                new File(getModule().getBuildDirectory(), "bin/java/classes").toPath(),
+                new File(getModule().getBuildDirectory(), "bin/kotlin/classes").toPath());
+    }
+
+    /**
+     * @return the path of the class file relative to the directory it was compiled to
+     */
+    private String getRelativePath(File file) {
+        Path path = file.toPath();
+        for (Path root : getClassRoots()) {
+            if (path.startsWith(root)) {
+                return root.relativize(path).toString();
+            }
+        }
+        return file.getName();
+    }
+
+    private String getPackageName(File classFile) {
+        File parent = new File(getRelativePath(classFile)).getParentFile();
+        if (parent == null) {
+            return "";
+        }
+        return parent.getPath().replace(File.separatorChar, '.');
+    }
+
+    private File getShardDirectory(String packageName) {
+        return new File(mShardsDir, packageName.isEmpty() ? "default" : packageName);
+    }
+
     private File getDexFile(File file) {
-        File output = new File(getModule().getBuildDirectory(), "bin/classes/");
-        String packageName = file.getAbsolutePath()
-                .replace(output.getAbsolutePath(), "")
-                .substring(1)
-                .replace(".class", ".dex");
-
-        File intermediate = new File(getModule().getBuildDirectory(), "intermediate/classes");
-        File file1 = new File(intermediate, packageName);
-        return file1;
+        String packageName = getRelativePath(file).replace(".class", ".dex");
+        return new File(mOutputPath.toFile(), packageName);
     }
 
     /**
      * Ensures that all libraries of the project has been dex-ed
      *
-     * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
+     * @throws CompilationFailedException if the compilation has failed
      */
-    protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
+    protected void ensureDexedLibraries() throws CompilationFailedException {
         List<File> libraries = getModule().getLibraries();
 
+        List<DexAction> actions = new ArrayList<>();
         for (File lib : libraries) {
             File parentFile = lib.getParentFile();
             if (parentFile == null) {
@@ -224,19 +366,71 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                     continue;
                 }
                 if (lib.exists()) {
-                    getLogger().debug("Dexing jar " + parentFile.getName());
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                            .addLibraryFiles(getLibraryFiles())
-                            .addClasspathFiles(libraries.stream().map(File::toPath)
-                                    .collect(Collectors.toList()))
-                            .setMinApiLevel(getModule().getMinSdk())
-                            .addProgramFiles(lib.toPath())
-                            .setMode(CompilationMode.RELEASE)
-                            .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                            .build();
-                    D8.run(command);
+                    actions.add(() -> {
+                        getLogger().debug("Dexing jar " + parentFile.getName());
+                        D8Command command = D8Command.builder(diagnosticsHandler)
+                                .addLibraryFiles(getLibraryFiles())
+                                .addClasspathFiles(libraries.stream().map(File::toPath)
+                                        .collect(Collectors.toList()))
+                                .setMinApiLevel(getModule().getMinSdk())
+                                .addProgramFiles(lib.toPath())
+                                .setMode(CompilationMode.RELEASE)
+                                .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
+                                .build();
+                        D8.run(command);
+                    });
+                }
+            }
+        }
+        runAll(actions);
+    }
+
+    private interface DexAction {
+        void run() throws com.android.tools.r8.CompilationFailedException;
+    }
+
+    /**
+     * Runs the given actions on a pool of {@link #mThreads} threads, or on the calling thread
+     * if only one thread is configured.
+     */
+    private void runAll(List<DexAction> actions) throws CompilationFailedException {
+        if (mThreads <= 1 || actions.size() <= 1) {
+            try {
+                for (DexAction action : actions) {
+                    action.run();
                 }
+            } catch (com.android.tools.r8.CompilationFailedException e) {
+                throw new CompilationFailedException(e);
             }
+            return;
+        }
+
+        ExecutorService service = Executors.newFixedThreadPool(Math.min(mThreads, actions.size()));
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (DexAction action : actions) {
+                futures.add(service.submit(() -> {
+                    action.run();
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompilationFailedException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompilationFailedException(e);
+        } finally {
+            service.shutdownNow();
         }
     }
 
@@ -4,9 +4,11 @@ import androidx.annotation.VisibleForTesting;
 
 import org.openjdk.source.util.JavacTask;
 import org.openjdk.tools.javac.api.JavacTaskImpl;
-import org.openjdk.tools.javac.api.JavacTool;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.reflect.TypeToken;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.java.ReusableCompiler;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
@@ -21,7 +23,6 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -30,8 +31,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
+import java.util.Set;
 
 import org.openjdk.javax.tools.DiagnosticListener;
 import org.openjdk.javax.tools.JavaFileObject;
@@ -42,13 +43,16 @@ import org.openjdk.javax.tools.StandardLocation;
 public class IncrementalJavaTask extends Task<JavaModule> {
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("javaCache");
+            new CacheHolder.CacheKey<>("javaCache", String.class,
+                    new TypeToken<List<File>>() {}.getType());
     private static final String TAG = IncrementalJavaTask.class.getSimpleName();
 
     private File mOutputDir;
     private List<File> mJavaFiles;
     private List<File> mFilesToCompile;
     private Cache<String, List<File>> mClassCache;
+    private File mDependencyFile;
+    private JavaDependencyGraph mDependencyGraph;
 
     public IncrementalJavaTask(JavaModule project, ILogger logger) {
         super(project, logger);
@@ -59,6 +63,20 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return TAG;
     }
 
+    @Override
+    public Set<File> getInputs() {
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(getModule().getJavaDirectory(), new File(buildDir, "gen"),
+                new File(buildDir, "libs"), new File(buildDir, "bin/kotlin"));
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(new File(buildDir, "bin/java"),
+                new File(buildDir, "intermediate/java"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mOutputDir = new File(getModule().getBuildDirectory(), "bin/java/classes");
@@ -68,20 +86,44 @@ public class IncrementalJavaTask extends Task<JavaModule> {
 
         mFilesToCompile = new ArrayList<>();
         mClassCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mDependencyFile = new File(getModule().getBuildDirectory(),
+                "intermediate/java/dependencies.json");
+        mDependencyGraph = JavaDependencyGraph.load(mDependencyFile);
 
         mJavaFiles = new ArrayList<>(getModule().getJavaFiles().values());
 
+        Set<String> deleted = new HashSet<>();
+        for (String source : mDependencyGraph.getSources()) {
+            if (!mJavaFiles.contains(new File(source))) {
+                deleted.add(source);
+            }
+        }
         for (Cache.Key<String> key : new HashSet<>(mClassCache.getKeys())) {
             if (!mJavaFiles.contains(key.file.toFile())) {
                 File file = mClassCache.get(key.file, "class").iterator().next();
                 deleteAllFiles(file, ".class");
                 mClassCache.remove(key.file, "class", "dex");
+                deleted.add(key.file.toFile().getAbsolutePath());
             }
         }
 
+        // files which referenced a deleted class have to be compiled again so errors are reported
+        Set<String> dependents = mDependencyGraph.getTransitiveDependents(deleted);
+        if (!deleted.isEmpty()) {
+            // the deleted classes are still known to the compiler from the previous build
+            JavaCompilerHolder.getInstance(getModule()).invalidate();
+        }
+        for (String source : deleted) {
+            mDependencyGraph.remove(source);
+        }
+
         for (File file : mJavaFiles) {
             Path filePath = file.toPath();
-            if (mClassCache.needs(filePath, "class")) {
+            // files missing from the graph have not been analyzed yet, this is also the case
+            // for every file the first time this task runs with an existing class cache
+            if (mClassCache.needs(filePath, "class") ||
+                    !mDependencyGraph.contains(file.getAbsolutePath()) ||
+                    dependents.contains(file.getAbsolutePath())) {
                 mFilesToCompile.add(file);
             }
         }
@@ -96,7 +138,35 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             return;
         }
 
+        Set<File> compiled = new HashSet<>(mFilesToCompile);
+        List<File> round = new ArrayList<>(mFilesToCompile);
+        while (!round.isEmpty()) {
+            Set<String> changed = compile(round);
+            mDependencyGraph.save(mDependencyFile);
+
+            // the files which use a class whose api has changed may no longer compile or may
+            // have inlined a constant that has changed, the rest are left untouched
+            Set<String> dependents = mDependencyGraph.getTransitiveDependents(changed);
+            round = new ArrayList<>();
+            for (File file : mJavaFiles) {
+                if (dependents.contains(file.getAbsolutePath()) && compiled.add(file)) {
+                    // forget the old output so the file is compiled again if this round fails
+                    mClassCache.remove(file.toPath(), "class");
+                    round.add(file);
+                }
+            }
+            mFilesToCompile.addAll(round);
+        }
+    }
+
+    /**
+     * Compiles the given files and records their dependencies in the dependency graph
+     *
+     * @return the absolute paths of the compiled sources whose api has changed
+     */
+    private Set<String> compile(List<File> files) throws CompilationFailedException {
         getLogger().debug("Compiling java files");
+        mHasErrors = false;
 
         DiagnosticListener<JavaFileObject> diagnosticCollector = diagnostic -> {
             switch (diagnostic.getKind()) {
@@ -109,20 +179,17 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             }
         };
 
-        JavacTool tool = JavacTool.create();
-
-        StandardJavaFileManager standardJavaFileManager =
-                tool.getStandardFileManager(diagnosticCollector, Locale.getDefault(),
-                        Charset.defaultCharset());
+        JavaCompilerHolder holder = JavaCompilerHolder.getInstance(getModule());
         List<File> classpath = new ArrayList<>(getModule().getLibraries());
-        classpath.add(mOutputDir);
-
+        StandardJavaFileManager standardJavaFileManager;
         try {
+            standardJavaFileManager = holder.getFileManager(
+                    Arrays.asList(getModule().getBootstrapJarFile(),
+                            getModule().getLambdaStubsJarFile()),
+                    classpath, diagnosticCollector);
+            classpath.add(mOutputDir);
             standardJavaFileManager.setLocation(StandardLocation.CLASS_OUTPUT,
                     Collections.singletonList(mOutputDir));
-            standardJavaFileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH,
-                    Arrays.asList(getModule().getBootstrapJarFile(),
-                            getModule().getLambdaStubsJarFile()));
             standardJavaFileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
             standardJavaFileManager.setLocation(StandardLocation.SOURCE_PATH, mJavaFiles);
         } catch (IOException e) {
@@ -130,7 +197,7 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         }
 
         List<JavaFileObject> javaFileObjects = new ArrayList<>();
-        for (File file : mFilesToCompile) {
+        for (File file : files) {
             javaFileObjects.add(new SimpleJavaFileObject(file.toURI(), JavaFileObject.Kind.SOURCE) {
                 @Override
                 public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
@@ -139,10 +206,14 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             });
         }
 
-        JavacTask task = tool.getTask(null, standardJavaFileManager, diagnosticCollector,
-                Collections.emptyList(), null, javaFileObjects);
+        ReusableCompiler.Borrow borrow = holder.getCompiler().getTask(standardJavaFileManager,
+                diagnosticCollector, Collections.emptyList(), null, javaFileObjects);
+        JavacTask task = borrow.task;
+        JavaDependencyCollector collector = new JavaDependencyCollector();
+        task.addTaskListener(collector);
 
         HashMap<String, List<File>> compiledFiles = new HashMap<>();
+        boolean reusable = false;
         try {
 
             task.parse();
@@ -157,7 +228,10 @@ public class IncrementalJavaTask extends Task<JavaModule> {
                     if (classFile.getName().indexOf('$') != -1) {
                         classPath = classPath.substring(0, classPath.indexOf('$')) + ".java";
                     }
-                    File file = new File(classPath);
+                    File file = collector.getSource(mOutputDir, classFile);
+                    if (file == null) {
+                        file = new File(classPath);
+                    }
                     if (!file.exists()) {
                         file = new File(classPath.replace("src/main/java", "build/gen"));
                     }
@@ -197,13 +271,29 @@ public class IncrementalJavaTask extends Task<JavaModule> {
                     }
                 }
             });
+            reusable = true;
         } catch (Exception e) {
             throw new CompilationFailedException(e);
+        } finally {
+            borrow.close();
+            if (!reusable) {
+                // the context may be left in a broken state
+                invalidateCompiler(holder);
+            }
         }
 
         if (mHasErrors) {
             throw new CompilationFailedException("Compilation failed, check logs for more details");
         }
+        return collector.update(mDependencyGraph);
+    }
+
+    private void invalidateCompiler(JavaCompilerHolder holder) {
+        try {
+            holder.invalidate();
+        } catch (IOException e) {
+            getLogger().warning("Failed to close the java file manager: " + e.getMessage());
+        }
     }
 
     @VisibleForTesting
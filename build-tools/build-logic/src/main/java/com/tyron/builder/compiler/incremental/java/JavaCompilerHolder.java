@@ -0,0 +1,112 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import com.tyron.builder.compiler.java.ReusableCompiler;
+import com.tyron.builder.project.api.JavaModule;
+
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
+import org.openjdk.javax.tools.DiagnosticListener;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.javax.tools.StandardJavaFileManager;
+import org.openjdk.javax.tools.StandardLocation;
+import org.openjdk.tools.javac.api.JavacTool;
+import org.openjdk.tools.javac.file.JavacFileManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps the javac context and the file manager used by {@link IncrementalJavaTask} alive between
+ * builds of a module, so the platform classes and the libraries are not opened and loaded again
+ * on every build.
+ *
+ * Both are recreated when the platform or library jars change. Classes that were loaded
+ * from sources stay in the symbol table of the context, callers have to {@link #invalidate()} it
+ * when a source file has been deleted.
+ */
+public class JavaCompilerHolder {
+
+    private static final Key<JavaCompilerHolder> KEY = Key.create("incrementalJavaCompiler");
+
+    public static JavaCompilerHolder getInstance(JavaModule module) {
+        JavaCompilerHolder holder = module.getUserData(KEY);
+        if (holder == null) {
+            holder = module.putUserDataIfAbsent(KEY, new JavaCompilerHolder());
+        }
+        return holder;
+    }
+
+    private ReusableCompiler mCompiler;
+    private StandardJavaFileManager mFileManager;
+    private List<String> mClasspathKey;
+    private DiagnosticListener<? super JavaFileObject> mListener;
+
+    /**
+     * @param platformClasspath the bootstrap classpath
+     * @param libraries         the libraries of the module, the compiled classes of the module
+     *                          should not be included as they change on every build
+     * @param listener          receives the diagnostics reported by the file manager
+     * @return a file manager with the {@link StandardLocation#PLATFORM_CLASS_PATH} set, which
+     * is reused as long as the given jars stay the same
+     */
+    public synchronized StandardJavaFileManager getFileManager(List<File> platformClasspath,
+                                                               List<File> libraries,
+                                                               DiagnosticListener<? super JavaFileObject> listener)
+            throws IOException {
+        mListener = listener;
+
+        List<String> key = new ArrayList<>();
+        for (File file : platformClasspath) {
+            key.add(file.getAbsolutePath() + ':' + file.lastModified());
+        }
+        key.add("");
+        for (File file : libraries) {
+            key.add(file.getAbsolutePath() + ':' + file.lastModified());
+        }
+
+        if (mFileManager == null || !key.equals(mClasspathKey)) {
+            invalidate();
+            StandardJavaFileManager fileManager = JavacTool.create().getStandardFileManager(
+                    diagnostic -> {
+                        DiagnosticListener<? super JavaFileObject> current = mListener;
+                        if (current != null) {
+                            current.report(diagnostic);
+                        }
+                    }, Locale.getDefault(), Charset.defaultCharset());
+            if (fileManager instanceof JavacFileManager) {
+                ((JavacFileManager) fileManager).setMappedArchivesEnabled(true);
+            }
+            fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, platformClasspath);
+            mFileManager = fileManager;
+            mClasspathKey = key;
+        }
+        return mFileManager;
+    }
+
+    /**
+     * @return the compiler whose context is reused between builds
+     */
+    public synchronized ReusableCompiler getCompiler() {
+        if (mCompiler == null) {
+            mCompiler = new ReusableCompiler();
+        }
+        return mCompiler;
+    }
+
+    /**
+     * Discards the compiler context and closes the file manager, the next build will start
+     * with a fresh one.
+     */
+    public synchronized void invalidate() throws IOException {
+        mCompiler = null;
+        mClasspathKey = null;
+        if (mFileManager != null) {
+            StandardJavaFileManager fileManager = mFileManager;
+            mFileManager = null;
+            fileManager.close();
+        }
+    }
+}
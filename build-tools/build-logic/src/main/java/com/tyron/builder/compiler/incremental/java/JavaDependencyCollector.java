@@ -0,0 +1,228 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.util.TaskEvent;
+import org.openjdk.source.util.TaskListener;
+import org.openjdk.tools.javac.code.Flags;
+import org.openjdk.tools.javac.code.Kinds;
+import org.openjdk.tools.javac.code.Symbol;
+import org.openjdk.tools.javac.code.Type;
+import org.openjdk.tools.javac.tree.JCTree;
+import org.openjdk.tools.javac.tree.TreeScanner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Listens to the analyze phase of javac and records the classes that each compiled source
+ * declares and references, along with a fingerprint of its non private members. The results
+ * are written to a {@link JavaDependencyGraph} through {@link #update(JavaDependencyGraph)}.
+ */
+public class JavaDependencyCollector implements TaskListener {
+
+    private static final long ABI_FLAGS = Flags.AccessFlags | Flags.STATIC | Flags.FINAL |
+            Flags.ABSTRACT | Flags.INTERFACE | Flags.ENUM | Flags.ANNOTATION | Flags.DEFAULT |
+            Flags.VARARGS;
+
+    private final Map<String, Set<String>> mDeclared = new HashMap<>();
+    private final Map<String, Set<String>> mReferences = new HashMap<>();
+    private final Map<String, List<String>> mAbi = new HashMap<>();
+    private final Set<CompilationUnitTree> mScannedImports = new HashSet<>();
+
+    @Override
+    public void finished(TaskEvent e) {
+        if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getCompilationUnit() == null ||
+                e.getSourceFile() == null || !(e.getTypeElement() instanceof Symbol.ClassSymbol)) {
+            return;
+        }
+        JavaFileObject sourceFile = e.getSourceFile();
+        if (!"file".equals(sourceFile.toUri().getScheme())) {
+            return;
+        }
+        String source = new File(sourceFile.toUri()).getAbsolutePath();
+        Symbol.ClassSymbol symbol = (Symbol.ClassSymbol) e.getTypeElement();
+        JCTree.JCCompilationUnit unit = (JCTree.JCCompilationUnit) e.getCompilationUnit();
+
+        Set<String> references = get(mReferences, source);
+        ReferenceScanner scanner = new ReferenceScanner(references);
+        if (mScannedImports.add(unit)) {
+            for (JCTree.JCImport anImport : unit.getImports()) {
+                scanner.scan(anImport);
+            }
+        }
+        for (JCTree tree : unit.defs) {
+            if (tree instanceof JCTree.JCClassDecl && ((JCTree.JCClassDecl) tree).sym == symbol) {
+                scanner.scan(tree);
+            }
+        }
+
+        get(mDeclared, source).add(symbol.flatName().toString());
+        List<String> abi = mAbi.get(source);
+        if (abi == null) {
+            abi = new ArrayList<>();
+            mAbi.put(source, abi);
+        }
+        addAbi(symbol, abi);
+    }
+
+    /**
+     * @return the source that declares the class written to the given class file, or null if
+     * the class was not analyzed by this collector
+     */
+    public File getSource(File outputDir, File classFile) {
+        String path = outputDir.toPath().relativize(classFile.toPath()).toString();
+        if (path.endsWith(".class")) {
+            path = path.substring(0, path.length() - ".class".length());
+        }
+        int index = path.indexOf('$');
+        if (index != -1) {
+            path = path.substring(0, index);
+        }
+        String className = path.replace(File.separatorChar, '.');
+        for (Map.Entry<String, Set<String>> entry : mDeclared.entrySet()) {
+            if (entry.getValue().contains(className)) {
+                return new File(entry.getKey());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the collected information to the graph
+     *
+     * @return the sources whose API fingerprint differs from the one stored in the graph
+     */
+    public Set<String> update(JavaDependencyGraph graph) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Set<String>> entry : mDeclared.entrySet()) {
+            String source = entry.getKey();
+            List<String> lines = mAbi.get(source);
+            Collections.sort(lines);
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            for (String line : lines) {
+                hasher.putString(line, StandardCharsets.UTF_8);
+                hasher.putChar('\n');
+            }
+            String abi = hasher.hash().toString();
+            if (!abi.equals(graph.getAbi(source))) {
+                changed.add(source);
+            }
+
+            Set<String> references = get(mReferences, source);
+            references.removeAll(entry.getValue());
+            graph.update(source, entry.getValue(), references, abi);
+        }
+        return changed;
+    }
+
+    private static void addAbi(Symbol.ClassSymbol symbol, List<String> abi) {
+        StringBuilder header = new StringBuilder();
+        header.append(symbol.flatName()).append(' ').append(symbol.flags() & ABI_FLAGS);
+        if (symbol.type != null) {
+            header.append(' ').append(symbol.type);
+        }
+        if (symbol.getSuperclass() != null) {
+            header.append(" extends ").append(symbol.getSuperclass());
+        }
+        for (Type type : symbol.getInterfaces()) {
+            header.append(" implements ").append(type);
+        }
+        abi.add(header.toString());
+
+        for (Symbol member : symbol.members().getSymbols()) {
+            if ((member.flags() & (Flags.PRIVATE | Flags.SYNTHETIC)) != 0) {
+                continue;
+            }
+            if (member instanceof Symbol.ClassSymbol) {
+                addAbi((Symbol.ClassSymbol) member, abi);
+                continue;
+            }
+
+            StringBuilder line = new StringBuilder();
+            line.append(symbol.flatName()).append('#')
+                    .append(member.kind).append(' ')
+                    .append(member.name).append(' ')
+                    .append(member.flags() & ABI_FLAGS).append(' ')
+                    .append(member.type);
+            if (member instanceof Symbol.MethodSymbol) {
+                for (Type thrown : ((Symbol.MethodSymbol) member).getThrownTypes()) {
+                    line.append(" throws ").append(thrown);
+                }
+            } else if (member instanceof Symbol.VarSymbol) {
+                // constants are inlined by the compiler, their values are part of the api
+                Object value = ((Symbol.VarSymbol) member).getConstValue();
+                if (value != null) {
+                    line.append(" = ").append(value);
+                }
+            }
+            abi.add(line.toString());
+        }
+    }
+
+    private static Set<String> get(Map<String, Set<String>> map, String source) {
+        Set<String> set = map.get(source);
+        if (set == null) {
+            set = new HashSet<>();
+            map.put(source, set);
+        }
+        return set;
+    }
+
+    private static class ReferenceScanner extends TreeScanner {
+
+        private final Set<String> mReferences;
+
+        ReferenceScanner(Set<String> references) {
+            mReferences = references;
+        }
+
+        @Override
+        public void visitIdent(JCTree.JCIdent tree) {
+            add(tree.sym);
+            super.visitIdent(tree);
+        }
+
+        @Override
+        public void visitSelect(JCTree.JCFieldAccess tree) {
+            add(tree.sym);
+            super.visitSelect(tree);
+        }
+
+        @Override
+        public void visitNewClass(JCTree.JCNewClass tree) {
+            add(tree.constructor);
+            super.visitNewClass(tree);
+        }
+
+        @Override
+        public void visitReference(JCTree.JCMemberReference tree) {
+            add(tree.sym);
+            super.visitReference(tree);
+        }
+
+        private void add(Symbol symbol) {
+            if (symbol == null || symbol.owner == null) {
+                return;
+            }
+            if (symbol.kind != Kinds.Kind.TYP && symbol.kind != Kinds.Kind.VAR &&
+                    symbol.kind != Kinds.Kind.MTH) {
+                return;
+            }
+            Symbol.ClassSymbol outermost = symbol.outermostClass();
+            if (outermost != null) {
+                mReferences.add(outermost.flatName().toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which classes each java source file declares and references along with a fingerprint
+ * of the API the file exposes to other files. Used by {@link IncrementalJavaTask} to find the
+ * files that have to be recompiled when the API of a file changes.
+ *
+ * Sources are identified by their absolute path and classes by their flat name.
+ */
+public class JavaDependencyGraph {
+
+    private static final String TAG = JavaDependencyGraph.class.getSimpleName();
+
+    private static class Node {
+        Set<String> declared = new HashSet<>();
+        Set<String> references = new HashSet<>();
+        String abi;
+    }
+
+    private Map<String, Node> nodes = new HashMap<>();
+
+    public static JavaDependencyGraph load(File file) {
+        if (file.exists()) {
+            try {
+                String contents = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                JavaDependencyGraph graph = new Gson().fromJson(contents, JavaDependencyGraph.class);
+                if (graph != null && graph.nodes != null) {
+                    return graph;
+                }
+            } catch (IOException | JsonParseException e) {
+                Log.w(TAG, "Unable to read java dependency graph, it will be rebuilt", e);
+            }
+        }
+        return new JavaDependencyGraph();
+    }
+
+    public void save(File file) throws IOException {
+        FileUtils.writeStringToFile(file, new Gson().toJson(this), StandardCharsets.UTF_8);
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    public boolean contains(String source) {
+        return nodes.containsKey(source);
+    }
+
+    public Set<String> getSources() {
+        return Collections.unmodifiableSet(nodes.keySet());
+    }
+
+    /**
+     * @return the previously recorded API fingerprint of the source, or null if the source has
+     * not been compiled before
+     */
+    public String getAbi(String source) {
+        Node node = nodes.get(source);
+        return node == null ? null : node.abi;
+    }
+
+    public void update(String source, Set<String> declared, Set<String> references, String abi) {
+        Node node = new Node();
+        node.declared = declared;
+        node.references = references;
+        node.abi = abi;
+        nodes.put(source, node);
+    }
+
+    public void remove(String source) {
+        nodes.remove(source);
+    }
+
+    public Set<String> getDeclaredClasses(String source) {
+        Node node = nodes.get(source);
+        return node == null ? Collections.emptySet() : node.declared;
+    }
+
+    /**
+     * @return every source that directly references one of the given classes
+     */
+    public Set<String> getReferencingSources(Collection<String> classes) {
+        Set<String> sources = new HashSet<>();
+        for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+            for (String reference : entry.getValue().references) {
+                if (classes.contains(reference)) {
+                    sources.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @return every source that directly or indirectly references a class declared in one of
+     * the given sources, not including the given sources themselves
+     */
+    public Set<String> getTransitiveDependents(Collection<String> sources) {
+        Map<String, Set<String>> referencedBy = new HashMap<>();
+        for (Map.Entry<String, Node> entry : nodes.entrySet()) {
+            for (String reference : entry.getValue().references) {
+                Set<String> set = referencedBy.get(reference);
+                if (set == null) {
+                    set = new HashSet<>();
+                    referencedBy.put(reference, set);
+                }
+                set.add(entry.getKey());
+            }
+        }
+
+        Set<String> dependents = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>(sources);
+        while (!queue.isEmpty()) {
+            String source = queue.poll();
+            for (String declared : getDeclaredClasses(source)) {
+                Set<String> set = referencedBy.get(declared);
+                if (set == null) {
+                    continue;
+                }
+                for (String dependent : set) {
+                    if (!sources.contains(dependent) && dependents.add(dependent)) {
+                        queue.add(dependent);
+                    }
+                }
+            }
+        }
+        return dependents;
+    }
+}
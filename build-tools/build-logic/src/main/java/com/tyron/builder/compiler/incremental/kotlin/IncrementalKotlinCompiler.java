@@ -5,6 +5,7 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -30,6 +31,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import kotlin.jvm.functions.Function0;
@@ -53,6 +55,20 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<File> getInputs() {
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(getModule().getKotlinDirectory(), getModule().getJavaDirectory(),
+                new File(buildDir, "gen"), new File(buildDir, "libs"));
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(new File(buildDir, "bin/kotlin"),
+                new File(buildDir, "intermediate/kotlin"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mFilesToCompile = new ArrayList<>();
@@ -3,6 +3,7 @@ package com.tyron.builder.compiler.incremental.resource;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.tools.aapt2.Aapt2Jni;
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.BuildModule;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
@@ -27,6 +28,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class IncrementalAapt2Task extends Task<AndroidModule> {
@@ -45,6 +47,25 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<File> getInputs() {
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(getModule().getAndroidResourcesDirectory(),
+                getModule().getAssetsDirectory(),
+                new File(buildDir, "bin/AndroidManifest.xml"),
+                new File(buildDir, "libs"));
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        File buildDir = getModule().getBuildDirectory();
+        return ImmutableSet.of(new File(buildDir, "bin/res"),
+                new File(buildDir, "bin/generated.apk.res"),
+                new File(buildDir, "bin/proto-format.zip"),
+                new File(buildDir, "intermediate/resources"),
+                new File(buildDir, "gen"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -2,6 +2,7 @@ package com.tyron.builder.compiler.java;
 
 import android.util.Log;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.tyron.builder.compiler.BuildType;
@@ -36,6 +37,9 @@ import java.util.zip.ZipFile;
  */
 public class CheckLibrariesTask extends Task<JavaModule> {
 
+    private static final String LIBRARIES_KEY = "libraries";
+    private static final String FILE_LIBRARIES_KEY = "fileLibraries";
+
     public CheckLibrariesTask(JavaModule project, ILogger logger) {
         super(project, logger);
     }
@@ -45,6 +49,16 @@ public class CheckLibrariesTask extends Task<JavaModule> {
         return CheckLibrariesTask.class.getSimpleName();
     }
 
+    @Override
+    public Set<File> getInputs() {
+        return ImmutableSet.of(getModule().getLibraryDirectory(), getModule().getLibraryFile());
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        return ImmutableSet.of(new File(getModule().getBuildDirectory(), "libs"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -58,16 +72,30 @@ public class CheckLibrariesTask extends Task<JavaModule> {
     private void checkLibraries(JavaModule project, ILogger logger, List<File> newLibraries) throws IOException {
         Set<Library> libraries = new HashSet<>();
 
+        // the checksums of the libraries that have not changed since the last build are reused
+        Map<File, Library> previousFileLibraries = new HashMap<>();
+        for (Library library : parseLibraries(project, FILE_LIBRARIES_KEY)) {
+            previousFileLibraries.put(library.getSourceFile(), library);
+        }
+
         Map<String, Library> fileLibsHashes = new HashMap<>();
         File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
                 c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
         if (fileLibraries != null) {
             for (File fileLibrary : fileLibraries) {
+                Library library = previousFileLibraries.get(fileLibrary);
+                if (library != null && library.getChecksum() != null) {
+                    fileLibsHashes.put(library.getChecksum(), library);
+                    continue;
+                }
                 try {
-                    ZipFile zipFile = new ZipFile(fileLibrary);
-                    Library library = new Library();
+                    //noinspection EmptyTryBlock
+                    try (ZipFile ignored = new ZipFile(fileLibrary)) {
+                        // only checks if the library can be opened
+                    }
+                    library = new Library();
                     library.setSourceFile(fileLibrary);
-                    fileLibsHashes.put(calculateMD5(fileLibrary), library);
+                    fileLibsHashes.put(getChecksum(library), library);
                 } catch (IOException e) {
                     String message = "File " + fileLibrary +
                             " is corrupt! Ignoring.";
@@ -83,19 +111,11 @@ public class CheckLibrariesTask extends Task<JavaModule> {
             libraries.add(library);
         });
 
-        String librariesString = project.getSettings().getString("libraries", "[]");
-        try {
-            List<Library> parsedLibraries = new Gson().fromJson(librariesString, new TypeToken<List<Library>>() {}.getType());
-            if (parsedLibraries != null) {
-                libraries.addAll(parsedLibraries);
-            }
-        } catch (Exception ignore) {
-
-        }
+        libraries.addAll(parseLibraries(project, LIBRARIES_KEY));
 
         Map<String, Library> md5Map = new HashMap<>();
         libraries.forEach(it ->
-                md5Map.put(calculateMD5(it.getSourceFile()), it));
+                md5Map.put(getChecksum(it), it));
         File buildLibs = new File(project.getBuildDirectory(), "libs");
         File[] buildLibraryDirs = buildLibs.listFiles(File::isDirectory);
         if (buildLibraryDirs != null) {
@@ -142,10 +162,38 @@ public class CheckLibrariesTask extends Task<JavaModule> {
 
         String librariesString = new Gson().toJson(libraries.values());
         module.getSettings().edit()
-                .putString("libraries", librariesString)
+                .putString(LIBRARIES_KEY, librariesString)
+                .putString(FILE_LIBRARIES_KEY, new Gson().toJson(fileLibraries.values()))
                 .apply();
     }
 
+    private static List<Library> parseLibraries(Module module, String key) {
+        String librariesString = module.getSettings().getString(key, "[]");
+        try {
+            List<Library> parsedLibraries = new Gson().fromJson(librariesString,
+                    new TypeToken<List<Library>>() {}.getType());
+            if (parsedLibraries != null) {
+                return parsedLibraries;
+            }
+        } catch (Exception ignore) {
+
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the checksum recorded in the library if its file has not changed, otherwise the
+     * checksum is computed and recorded in the library
+     */
+    public static String getChecksum(Library library) {
+        String checksum = library.getChecksum();
+        if (checksum == null) {
+            checksum = calculateMD5(library.getSourceFile());
+            library.setChecksum(checksum);
+        }
+        return checksum;
+    }
+
     public static String calculateMD5(File updateFile) {
         InputStream is;
         try {
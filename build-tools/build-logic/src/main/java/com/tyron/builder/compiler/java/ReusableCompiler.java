@@ -1,4 +1,4 @@
-package com.tyron.completion.java.compiler;
+package com.tyron.builder.compiler.java;
 
 import org.openjdk.javax.tools.Diagnostic;
 import org.openjdk.javax.tools.DiagnosticListener;
@@ -37,8 +37,6 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
-import me.xdrop.diffutils.DiffUtils;
-
 /**
  * A pool of reusable JavacTasks. When a task is no valid anymore, it is returned to the pool, and its Context may be
  * reused for future processing in some cases. The reuse is achieved by replacing some components (most notably
@@ -100,7 +98,7 @@ public class ReusableCompiler {
         List<String> opts =
 			StreamSupport.stream(options.spliterator(), false)
                     .collect(Collectors.toList());
-        if (!opts.equals(currentOptions)) {
+        if (currentContext == null || !opts.equals(currentOptions)) {
             List<String> difference = new ArrayList<>(currentOptions);
             difference.removeAll(opts);
             LOG.warning("Options changed, creating new compiler \n difference: " + difference);
@@ -122,7 +120,7 @@ public class ReusableCompiler {
     }
 
     public class Borrow implements AutoCloseable {
-        final JavacTask task;
+        public final JavacTask task;
         boolean closed;
 
         Borrow(JavacTask task, ReusableContext ctx) {
@@ -147,7 +145,7 @@ public class ReusableCompiler {
         }
     }
 
-    static class ReusableContext extends Context implements TaskListener {
+    public static class ReusableContext extends Context implements TaskListener {
 
         List<String> arguments;
 
@@ -3,6 +3,7 @@ package com.tyron.builder.compiler.log;
 import android.util.Log;
 import android.util.Pair;
 
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -32,6 +33,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class InjectLoggerTask extends Task<AndroidModule> {
 
@@ -144,6 +146,18 @@ public class InjectLoggerTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<File> getInputs() {
+        return ImmutableSet.of(new File(getModule().getBuildDirectory(), "bin/AndroidManifest.xml"),
+                getModule().getJavaDirectory(), getModule().getKotlinDirectory());
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        return ImmutableSet.of(new File(getModule().getBuildDirectory(), "bin/AndroidManifest.xml"),
+                getModule().getJavaDirectory());
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         getModule().getJavaFiles();
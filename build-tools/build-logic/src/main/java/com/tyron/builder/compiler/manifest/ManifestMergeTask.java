@@ -1,5 +1,6 @@
 package com.tyron.builder.compiler.manifest;
 
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.manifest.ManifestMerger2.SystemProperty;
@@ -19,6 +20,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class ManifestMergeTask extends Task<AndroidModule> {
 
@@ -36,6 +38,17 @@ public class ManifestMergeTask extends Task<AndroidModule> {
         return "ManifestMerger";
     }
 
+    @Override
+    public Set<File> getInputs() {
+        return ImmutableSet.of(getModule().getManifestFile(),
+                new File(getModule().getBuildDirectory(), "libs"));
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        return ImmutableSet.of(new File(getModule().getBuildDirectory(), "bin/AndroidManifest.xml"));
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mPackageName = getApplicationId();
@@ -3,12 +3,16 @@ package com.tyron.builder.compiler.symbol;
 import android.util.Log;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
+import com.tyron.builder.compiler.incremental.java.JavaDependencyGraph;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
+import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
@@ -21,18 +25,31 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Class that loads R.txt files generated by AAPT/AAPT2  and converts them
  * to R.java class files
+ *
+ * When {@link ModuleSettings#GENERATE_R_JAR} is enabled the R classes of the libraries are
+ * written as class files to a jar per package instead, which is added to the libraries of the
+ * module so the compilers never see them as sources.
  */
 public class MergeSymbolsTask extends Task<AndroidModule> {
 
     public static final CacheHolder.CacheKey<Void, Void> CACHE_KEY =
-            new CacheHolder.CacheKey<>("mergeSymbolsCache");
+            new CacheHolder.CacheKey<>("mergeSymbolsCache", Void.class, Void.class);
+
+    /**
+     * Keyed by the R.txt of the module and the package of the R jar, used to know whether
+     * the final values have changed since the jar has been written
+     */
+    public static final CacheHolder.CacheKey<String, Void> JAR_CACHE_KEY =
+            new CacheHolder.CacheKey<>("mergeSymbolsJarCache", String.class, Void.class);
 
     private File mSymbolOutputDir;
     private File mFullResourceFile;
+    private File mJarOutputDir;
 
     public MergeSymbolsTask(AndroidModule project, ILogger logger) {
         super(project, logger);
@@ -43,10 +60,36 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
         return "SymbolProcessor";
     }
 
+    @Override
+    public Set<File> getInputs() {
+        return ImmutableSet.of(new File(getModule().getBuildDirectory(), "bin/res"),
+                new File(getModule().getBuildDirectory(), "libs"));
+    }
+
+    @Override
+    public Set<File> getOutputs() {
+        return ImmutableSet.of(new File(getModule().getBuildDirectory(), "gen"),
+                getJarOutputDirectory(getModule()));
+    }
+
+    /**
+     * @return The directory containing a directory per package with the classes.jar of its
+     * R class, only used when {@link ModuleSettings#GENERATE_R_JAR} is enabled
+     */
+    public static File getJarOutputDirectory(AndroidModule module) {
+        return new File(module.getBuildDirectory(), "intermediate/r-jars");
+    }
+
+    public static boolean isJarEnabled(AndroidModule module) {
+        ModuleSettings settings = module.getSettings();
+        return settings != null && settings.getBoolean(ModuleSettings.GENERATE_R_JAR, false);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mSymbolOutputDir = new File(getModule().getBuildDirectory(), "gen");
         mFullResourceFile = new File(getModule().getBuildDirectory(), "bin/res/R.txt");
+        mJarOutputDir = getJarOutputDirectory(getModule());
     }
 
     @Override
@@ -55,31 +98,7 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
         SymbolLoader fullSymbolValues = null;
         Multimap<String, SymbolLoader> libMap = ArrayListMultimap.create();
 
-        List<File> RFiles = new ArrayList<>();
-        for (File library : getModule().getLibraries()) {
-            File parent = library.getParentFile();
-            if (parent == null) {
-                getLogger().error("Unable to access parent directory for " + library);
-                continue;
-            }
-
-            String packageName = AAPT2Compiler.getPackageName(new File(parent, "AndroidManifest.xml"));
-            if (packageName == null) {
-                continue;
-            }
-
-            if (packageName.equals(getModule().getPackageName())) {
-                // only generate libraries
-                continue;
-            }
-
-            File rFile = new File(parent, "R.txt");
-            if (!rFile.exists()) {
-                continue;
-            }
-
-            RFiles.add(rFile);
-        }
+        List<File> RFiles = getLibraryRFiles();
 
         for (Cache.Key<Void> key : new HashSet<>(cache.getKeys())) {
             if (!RFiles.contains(key.file.toFile())) {
@@ -89,6 +108,17 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
             }
         }
 
+        if (isJarEnabled(getModule())) {
+            writeJars(cache, RFiles);
+            return;
+        }
+        if (mJarOutputDir.exists()) {
+            // the R classes are compiled from sources again, write every R.java
+            FileUtils.deleteDirectory(mJarOutputDir);
+            getModule().getCache(JAR_CACHE_KEY, new Cache<>()).clear();
+            cache.clear();
+        }
+
         for (File rFile : RFiles) {
 
             if (!cache.needs(rFile.toPath(), null)) {
@@ -132,4 +162,140 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
             cache.load(file.toPath(), null, null);
         }
     }
+
+    /**
+     * @return The R.txt files of the libraries, not including the ones that share the
+     * package name of the module
+     */
+    private List<File> getLibraryRFiles() throws IOException {
+        List<File> RFiles = new ArrayList<>();
+        for (File library : getModule().getLibraries()) {
+            File parent = library.getParentFile();
+            if (parent == null) {
+                getLogger().error("Unable to access parent directory for " + library);
+                continue;
+            }
+
+            String packageName = AAPT2Compiler.getPackageName(new File(parent, "AndroidManifest.xml"));
+            if (packageName == null) {
+                continue;
+            }
+
+            if (packageName.equals(getModule().getPackageName())) {
+                // only generate libraries
+                continue;
+            }
+
+            File rFile = new File(parent, "R.txt");
+            if (!rFile.exists()) {
+                continue;
+            }
+
+            RFiles.add(rFile);
+        }
+        return RFiles;
+    }
+
+    /**
+     * Writes the R classes of each package to its own jar. A jar is only written again when
+     * one of the R.txt files of its package or the R.txt of the module has changed, the
+     * latter contains the final values which change whenever a resource is added or removed.
+     */
+    private void writeJars(Cache<Void, Void> cache, List<File> RFiles) throws IOException {
+        Cache<String, Void> jarCache = getModule().getCache(JAR_CACHE_KEY, new Cache<>());
+
+        Multimap<String, File> packageMap = ArrayListMultimap.create();
+        for (File rFile : RFiles) {
+            String packageName = AAPT2Compiler.getPackageName(
+                    new File(rFile.getParentFile(), "AndroidManifest.xml"));
+            if (packageName != null) {
+                packageMap.put(packageName, rFile);
+            }
+        }
+
+        for (Cache.Key<String> key : new HashSet<>(jarCache.getKeys())) {
+            if (!packageMap.containsKey(key.key)) {
+                jarCache.remove(key.file, key.key);
+                FileUtils.deleteDirectory(new File(mJarOutputDir, key.key));
+            }
+        }
+        File[] directories = mJarOutputDir.listFiles(File::isDirectory);
+        if (directories != null) {
+            for (File directory : directories) {
+                if (!packageMap.containsKey(directory.getName())) {
+                    FileUtils.deleteDirectory(directory);
+                }
+            }
+        }
+
+        SymbolLoader fullSymbolValues = null;
+        Set<String> written = new HashSet<>();
+        for (String packageName : packageMap.keySet()) {
+            File directory = new File(mJarOutputDir, packageName);
+            File jar = new File(directory, "classes.jar");
+            Collection<File> files = packageMap.get(packageName);
+
+            boolean needs = !jar.exists() ||
+                    jarCache.needs(mFullResourceFile.toPath(), packageName);
+            for (File rFile : files) {
+                needs |= cache.needs(rFile.toPath(), null);
+            }
+
+            if (needs) {
+                if (fullSymbolValues == null) {
+                    fullSymbolValues = new SymbolLoader(mFullResourceFile, getLogger());
+                    fullSymbolValues.load();
+                }
+                SymbolJarWriter writer = new SymbolJarWriter(jar, packageName, fullSymbolValues);
+                for (File rFile : files) {
+                    SymbolLoader libSymbols = new SymbolLoader(rFile, getLogger());
+                    libSymbols.load();
+                    writer.addSymbolsToWrite(libSymbols);
+                }
+                writer.write();
+
+                // the jar is dexed again by the dex task
+                FileUtils.deleteQuietly(new File(directory, "classes.dex"));
+                jarCache.load(mFullResourceFile.toPath(), packageName, null);
+                for (File rFile : files) {
+                    cache.load(rFile.toPath(), null, null);
+                }
+                written.add(packageName + ".R");
+            }
+
+            removeGeneratedSource(packageName);
+            getModule().addLibrary(jar);
+        }
+
+        if (!written.isEmpty()) {
+            invalidateDependents(written);
+        }
+    }
+
+    /**
+     * Removes the R.java written for the package when the jar was not used
+     */
+    private void removeGeneratedSource(String packageName) throws IOException {
+        File source = new File(mSymbolOutputDir,
+                packageName.replace('.', File.separatorChar) + File.separator + "R.java");
+        if (source.exists()) {
+            FileUtils.delete(source);
+        }
+        getModule().removeJavaFile(packageName + ".R");
+    }
+
+    /**
+     * The int fields of the R classes are constants which javac inlines, the sources that use
+     * a class that has been written again are compiled again so they use the new values
+     */
+    private void invalidateDependents(Set<String> classes) {
+        File dependencyFile = new File(getModule().getBuildDirectory(),
+                "intermediate/java/dependencies.json");
+        JavaDependencyGraph graph = JavaDependencyGraph.load(dependencyFile);
+        Cache<String, List<File>> classCache =
+                getModule().getCache(IncrementalJavaTask.CACHE_KEY, new Cache<>());
+        for (String source : graph.getReferencingSources(classes)) {
+            classCache.remove(new File(source).toPath(), "class");
+        }
+    }
 }
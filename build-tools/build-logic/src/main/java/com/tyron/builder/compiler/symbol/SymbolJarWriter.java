@@ -0,0 +1,410 @@
+package com.tyron.builder.compiler.symbol;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * A class to write the R class of a package straight to a jar as class files, based on data
+ * read from text symbol files generated by AAPT/AAPT2 with the --output-text-symbols option.
+ *
+ * The classes are the same as the ones compiled from the R.java written by
+ * {@link SymbolWriter}: the int fields are constants so compilers inline them, the int[]
+ * fields are created by the static initializer of their class.
+ */
+public class SymbolJarWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int JAVA_8 = 52;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int MAX_CODE_LENGTH = 65535;
+    private static final int MAX_CONSTANTS = 65535;
+
+    private static final int T_INT = 10;
+
+    private final File mJarFile;
+    private final String mPackageName;
+    private final List<SymbolLoader> mSymbols = Lists.newArrayList();
+    private final SymbolLoader mValues;
+
+    /**
+     * @param jarFile The jar to write, it is replaced if it exists
+     * @param values The symbols with the final values, usually the R.txt of the application
+     */
+    public SymbolJarWriter(File jarFile, String packageName, SymbolLoader values) {
+        mJarFile = jarFile;
+        mPackageName = packageName;
+        mValues = values;
+    }
+
+    public void addSymbolsToWrite(SymbolLoader symbols) {
+        mSymbols.add(symbols);
+    }
+
+    private Table<String, String, SymbolLoader.SymbolEntry> getAllSymbols() {
+        Table<String, String, SymbolLoader.SymbolEntry> symbols = HashBasedTable.create();
+
+        for (SymbolLoader symbolLoader : mSymbols) {
+            symbols.putAll(symbolLoader.getSymbols());
+        }
+
+        return symbols;
+    }
+
+    public void write() throws IOException {
+        File parent = mJarFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        String rClass = mPackageName.replace('.', '/') + "/R";
+        Table<String, String, SymbolLoader.SymbolEntry> symbols = getAllSymbols();
+        Table<String, String, SymbolLoader.SymbolEntry> values = mValues.getSymbols();
+
+        List<String> rowList = Lists.newArrayList(symbols.rowKeySet());
+        Collections.sort(rowList);
+
+        // written next to the jar first so a failure does not leave a broken jar behind
+        File temp = new File(parent, mJarFile.getName() + ".tmp");
+        try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)))) {
+            putEntry(out, rClass + ".class", writeOuterClass(rClass, rowList));
+
+            for (String row : rowList) {
+                List<String> symbolList = Lists.newArrayList(symbols.row(row).keySet());
+                Collections.sort(symbolList);
+
+                List<SymbolLoader.SymbolEntry> entries = new ArrayList<>();
+                for (String symbolName : symbolList) {
+                    // get the matching SymbolEntry from the values Table.
+                    SymbolLoader.SymbolEntry value = values.get(row, symbolName);
+                    if (value != null) {
+                        entries.add(value);
+                    }
+                }
+                putEntry(out, rClass + "$" + row + ".class",
+                        writeInnerClass(rClass, row, entries));
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        Files.move(temp.toPath(), mJarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void putEntry(JarOutputStream out, String name, byte[] bytes)
+            throws IOException {
+        JarEntry entry = new JarEntry(name);
+        // a fixed time so the same symbols give the same jar
+        entry.setTime(0);
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private byte[] writeOuterClass(String rClass, List<String> rows) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(pool.classRef(rClass));
+        out.writeShort(pool.classRef("java/lang/Object"));
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(0); // methods
+
+        out.writeShort(1); // attributes
+        writeInnerClasses(out, pool, rClass, rows);
+        return toClassFile(rClass, pool, body);
+    }
+
+    private byte[] writeInnerClass(String rClass, String row,
+                                   List<SymbolLoader.SymbolEntry> entries) throws IOException {
+        String className = rClass + "$" + row;
+        ConstantPool pool = new ConstantPool();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(pool.classRef(className));
+        out.writeShort(pool.classRef("java/lang/Object"));
+        out.writeShort(0); // interfaces
+
+        List<SymbolLoader.SymbolEntry> arrays = new ArrayList<>();
+        out.writeShort(entries.size());
+        for (SymbolLoader.SymbolEntry entry : entries) {
+            boolean array = isArray(entry);
+            out.writeShort(ACC_PUBLIC | ACC_STATIC | ACC_FINAL);
+            out.writeShort(pool.utf8(entry.getName()));
+            out.writeShort(pool.utf8(array ? "[I" : "I"));
+            if (array) {
+                arrays.add(entry);
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                out.writeShort(pool.utf8("ConstantValue"));
+                out.writeInt(2);
+                out.writeShort(pool.integer(parseInt(className, entry.getValue())));
+            }
+        }
+
+        if (arrays.isEmpty()) {
+            out.writeShort(0); // methods
+        } else {
+            out.writeShort(1);
+            writeStaticInitializer(out, pool, className, arrays);
+        }
+
+        out.writeShort(1); // attributes
+        writeInnerClasses(out, pool, rClass, Collections.singletonList(row));
+        return toClassFile(className, pool, body);
+    }
+
+    private static void writeStaticInitializer(DataOutputStream out, ConstantPool pool,
+                                               String className,
+                                               List<SymbolLoader.SymbolEntry> arrays)
+            throws IOException {
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(codeBytes);
+        for (SymbolLoader.SymbolEntry entry : arrays) {
+            int[] values = parseArray(className, entry.getValue());
+            pushInt(code, pool, values.length);
+            code.writeByte(0xbc); // newarray
+            code.writeByte(T_INT);
+            for (int i = 0; i < values.length; i++) {
+                code.writeByte(0x59); // dup
+                pushInt(code, pool, i);
+                pushInt(code, pool, values[i]);
+                code.writeByte(0x4f); // iastore
+            }
+            code.writeByte(0xb3); // putstatic
+            code.writeShort(pool.fieldRef(className, entry.getName(), "[I"));
+        }
+        code.writeByte(0xb1); // return
+
+        byte[] bytes = codeBytes.toByteArray();
+        if (bytes.length > MAX_CODE_LENGTH) {
+            throw new IOException("The arrays of " + className.replace('/', '.') +
+                    " are too large for a static initializer");
+        }
+
+        out.writeShort(ACC_STATIC);
+        out.writeShort(pool.utf8("<clinit>"));
+        out.writeShort(pool.utf8("()V"));
+        out.writeShort(1); // attributes
+        out.writeShort(pool.utf8("Code"));
+        out.writeInt(12 + bytes.length);
+        out.writeShort(4); // max stack: array, array, index, value
+        out.writeShort(0); // max locals
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private static void writeInnerClasses(DataOutputStream out, ConstantPool pool,
+                                          String rClass, List<String> rows)
+            throws IOException {
+        out.writeShort(pool.utf8("InnerClasses"));
+        out.writeInt(2 + rows.size() * 8);
+        out.writeShort(rows.size());
+        for (String row : rows) {
+            out.writeShort(pool.classRef(rClass + "$" + row));
+            out.writeShort(pool.classRef(rClass));
+            out.writeShort(pool.utf8(row));
+            out.writeShort(ACC_PUBLIC | ACC_STATIC | ACC_FINAL);
+        }
+    }
+
+    private static void pushInt(DataOutputStream code, ConstantPool pool, int value)
+            throws IOException {
+        if (value >= -1 && value <= 5) {
+            code.writeByte(0x03 + value); // iconst_<n>
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.writeByte(0x10); // bipush
+            code.writeByte(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.writeByte(0x11); // sipush
+            code.writeShort(value);
+        } else {
+            int index = pool.integer(value);
+            if (index <= 0xff) {
+                code.writeByte(0x12); // ldc
+                code.writeByte(index);
+            } else {
+                code.writeByte(0x13); // ldc_w
+                code.writeShort(index);
+            }
+        }
+    }
+
+    private static byte[] toClassFile(String className, ConstantPool pool,
+                                      ByteArrayOutputStream body) throws IOException {
+        if (pool.size() > MAX_CONSTANTS) {
+            throw new IOException("Too many constants in " + className.replace('/', '.'));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(0);
+        out.writeShort(JAVA_8);
+        out.writeShort(pool.size());
+        pool.writeTo(out);
+        body.writeTo(out);
+        return bytes.toByteArray();
+    }
+
+    private static boolean isArray(SymbolLoader.SymbolEntry entry) {
+        return "int[]".equals(entry.getType());
+    }
+
+    private static int parseInt(String className, String value) throws IOException {
+        try {
+            // ids such as 0x7f010000 are written in hex
+            return Long.decode(value.trim()).intValue();
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid value " + value + " in " +
+                    className.replace('/', '.'), e);
+        }
+    }
+
+    private static int[] parseArray(String className, String value) throws IOException {
+        String contents = value.trim();
+        if (contents.startsWith("{")) {
+            contents = contents.substring(1);
+        }
+        if (contents.endsWith("}")) {
+            contents = contents.substring(0, contents.length() - 1);
+        }
+        List<Integer> values = new ArrayList<>();
+        for (String element : contents.split(",")) {
+            if (!element.trim().isEmpty()) {
+                values.add(parseInt(className, element));
+            }
+        }
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * The constant pool of a class file, each constant is only added once
+     */
+    private static class ConstantPool {
+
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int CLASS = 7;
+        private static final int FIELD_REF = 9;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mOut = new DataOutputStream(mBytes);
+        private final Map<String, Integer> mIndexes = new HashMap<>();
+        private int mSize = 1;
+
+        int utf8(String value) throws IOException {
+            String key = "utf8:" + value;
+            Integer index = mIndexes.get(key);
+            if (index == null) {
+                mOut.writeByte(UTF8);
+                mOut.writeUTF(value);
+                index = add(key);
+            }
+            return index;
+        }
+
+        int integer(int value) throws IOException {
+            String key = "int:" + value;
+            Integer index = mIndexes.get(key);
+            if (index == null) {
+                mOut.writeByte(INTEGER);
+                mOut.writeInt(value);
+                index = add(key);
+            }
+            return index;
+        }
+
+        int classRef(String internalName) throws IOException {
+            String key = "class:" + internalName;
+            Integer index = mIndexes.get(key);
+            if (index == null) {
+                int name = utf8(internalName);
+                mOut.writeByte(CLASS);
+                mOut.writeShort(name);
+                index = add(key);
+            }
+            return index;
+        }
+
+        int fieldRef(String owner, String name, String descriptor) throws IOException {
+            String key = "field:" + owner + "." + name + ":" + descriptor;
+            Integer index = mIndexes.get(key);
+            if (index == null) {
+                int ownerIndex = classRef(owner);
+                int nameAndType = nameAndType(name, descriptor);
+                mOut.writeByte(FIELD_REF);
+                mOut.writeShort(ownerIndex);
+                mOut.writeShort(nameAndType);
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int nameAndType(String name, String descriptor) throws IOException {
+            String key = "nat:" + name + ":" + descriptor;
+            Integer index = mIndexes.get(key);
+            if (index == null) {
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                mOut.writeByte(NAME_AND_TYPE);
+                mOut.writeShort(nameIndex);
+                mOut.writeShort(descriptorIndex);
+                index = add(key);
+            }
+            return index;
+        }
+
+        /**
+         * @return The number of entries plus one, as written in the class file
+         */
+        int size() {
+            return mSize;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            mOut.flush();
+            mBytes.writeTo(out);
+        }
+
+        private int add(String key) {
+            int index = mSize++;
+            mIndexes.put(key, index);
+            return index;
+        }
+    }
+}
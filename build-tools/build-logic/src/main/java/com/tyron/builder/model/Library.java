@@ -19,6 +19,19 @@ public class Library {
     @SerializedName("declaration")
     private String declaration;
 
+    /**
+     * The MD5 checksum of the source file, only valid while the size and the modification
+     * time of the file are the same as when it was computed
+     */
+    @SerializedName("checksum")
+    private String checksum;
+
+    @SerializedName("length")
+    private long length;
+
+    @SerializedName("lastModified")
+    private long lastModified;
+
     public File getSourceFile() {
         return new File(sourceFile);
     }
@@ -31,6 +44,29 @@ public class Library {
         return declaration != null;
     }
 
+    /**
+     * @return The checksum of the source file or null if it is not known or the file has
+     * changed since it was computed
+     */
+    @Nullable
+    public String getChecksum() {
+        if (checksum == null) {
+            return null;
+        }
+        File file = getSourceFile();
+        if (file.length() != length || file.lastModified() != lastModified) {
+            return null;
+        }
+        return checksum;
+    }
+
+    public void setChecksum(@Nullable String checksum) {
+        this.checksum = checksum;
+        File file = getSourceFile();
+        length = file.length();
+        lastModified = file.lastModified();
+    }
+
     public void setSourceFile(File sourceFile) {
         this.sourceFile = sourceFile.getAbsolutePath();
     }
@@ -44,6 +44,9 @@ public class ModuleSettings implements SharedPreferences {
     public static final String JAVA_SOURCE_VERSION = "javaSourceVersion";
     public static final String MODULE_TYPE = "moduleType";
     public static final String ZIP_ALIGN_ENABLED = "zipAlignEnabled";
+    public static final String PARALLEL_BUILD = "parallelBuild";
+    public static final String DEX_THREADS = "dexThreads";
+    public static final String GENERATE_R_JAR = "generateRJar";
 
     private final File mConfigFile;
     private final Map<String, Object> mConfigMap;
@@ -74,6 +77,9 @@ public class ModuleSettings implements SharedPreferences {
         map.put(VERSION_NAME, "1.0");
         map.put(VERSION_CODE, 1);
         map.put(ZIP_ALIGN_ENABLED, false);
+        map.put(PARALLEL_BUILD, false);
+        map.put(DEX_THREADS, 1);
+        map.put(GENERATE_R_JAR, false);
         return map;
     }
 
@@ -69,7 +69,11 @@ public class Project {
             module.clear();
             module.index();
             File rootFile = module.getRootFile();
-            mModules.put(rootFile.getName(), module);
+            Module previous = mModules.put(rootFile.getName(), module);
+            if (previous != null && previous != module) {
+                // the sub modules are created again every time the project is opened
+                previous.close();
+            }
         }
     }
 
@@ -35,6 +35,25 @@ public interface FileManager {
         setSnapshotContent(file, content, true);
     }
 
+    /**
+     * Replace a range of the stored contents of this file only if it has been opened before,
+     * the rest of the previous snapshot is shared with the new one
+     * @param file The file
+     * @param start The start of the replaced range in the current snapshot
+     * @param end The end of the replaced range in the current snapshot
+     * @param text The text to replace the range with
+     * @param notify whether listeners should be notified
+     */
+    void editSnapshotContent(@NonNull File file, int start, int end, CharSequence text,
+                             boolean notify);
+
+    /**
+     * @param file The file
+     * @return The version of the stored contents of this file which is incremented on every
+     * change, -1 if the file is not opened
+     */
+    long getSnapshotVersion(@NonNull File file);
+
     /**
      * Mark the file as closed and save its stored snapshot to disk
      * @param file the file to be saved
@@ -47,7 +66,8 @@ public interface FileManager {
 
     /**
      * Get the contents of the file stored in memory. If the file is not yet opened,
-     * This returns {@link Optional#empty()}
+     * This returns {@link Optional#empty()}. The contents are an immutable snapshot, they
+     * are not changed by later edits
      * @param file The file
      * @return The contents stored in memory
      */
@@ -2,6 +2,7 @@ package com.tyron.builder.project.api;
 
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.builder.project.listener.ModuleFileListener;
 
 import org.jetbrains.kotlin.com.intellij.openapi.util.UserDataHolderEx;
 
@@ -28,12 +29,27 @@ public interface Module extends UserDataHolderEx, CacheHolder {
     void open() throws IOException;
 
     /**
-     * Remove all the indexed files
+     * Remove all the indexed files, implementations that keep the source files up to date
+     * with the disk keep them until {@link #close()} is called
      */
     void clear();
 
+    /**
+     * Index the files of this module, implementations may keep the index of the source files
+     * up to date with the disk after it has been indexed once
+     */
     void index();
 
+    /**
+     * Stop keeping the index up to date and remove all the indexed files, called when the
+     * module is no longer used
+     */
+    void close();
+
+    void addFileListener(ModuleFileListener listener);
+
+    void removeFileListener(ModuleFileListener listener);
+
     /**
      * @return The directory that this project can use to compile files
      */
@@ -2,19 +2,45 @@ package com.tyron.builder.project.cache;
 
 import com.tyron.common.util.Cache;
 
+import java.lang.reflect.Type;
+
 public interface CacheHolder {
 
     class CacheKey<K, V> {
 
         private final String name;
+        private final Type keyType;
+        private final Type valueType;
 
         public CacheKey(String name) {
+            this(name, null, null);
+        }
+
+        /**
+         * Creates a key whose cache is persisted to disk by holders that support it, the types
+         * are used to serialize the keys and values of the cache
+         */
+        public CacheKey(String name, Type keyType, Type valueType) {
             this.name = name;
+            this.keyType = keyType;
+            this.valueType = valueType;
         }
 
         public String getName() {
             return name;
         }
+
+        public Type getKeyType() {
+            return keyType;
+        }
+
+        public Type getValueType() {
+            return valueType;
+        }
+
+        public boolean isPersistent() {
+            return keyType != null && valueType != null;
+        }
     }
 
     public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue);
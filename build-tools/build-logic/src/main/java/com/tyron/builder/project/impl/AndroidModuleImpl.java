@@ -11,17 +11,14 @@ import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.common.util.StringSearch;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
-import org.apache.commons.io.filefilter.TrueFileFilter;
-
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
 
@@ -31,7 +28,7 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
     public AndroidModuleImpl(File root) {
         super(root);
 
-        mKotlinFiles = new HashMap<>();
+        mKotlinFiles = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -45,30 +42,49 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
     public void index() {
         super.index();
 
-        Consumer<File> kotlinConsumer = this::addKotlinFile;
-
-        if (getJavaDirectory().exists()) {
-            FileUtils.iterateFiles(getJavaDirectory(),
-                    FileFilterUtils.suffixFileFilter(".kt"),
-                    TrueFileFilter.INSTANCE
-            ).forEachRemaining(kotlinConsumer);
-        }
-
-        if (getKotlinDirectory().exists()) {
-            FileUtils.iterateFiles(getKotlinDirectory(),
-                    FileFilterUtils.suffixFileFilter(".kt"),
-                    TrueFileFilter.INSTANCE
-            ).forEachRemaining(kotlinConsumer);
+        if (MergeSymbolsTask.isJarEnabled(this)) {
+            File[] directories = MergeSymbolsTask.getJarOutputDirectory(this)
+                    .listFiles(File::isDirectory);
+            if (directories != null) {
+                for (File directory : directories) {
+                    File jar = new File(directory, "classes.jar");
+                    if (jar.exists()) {
+                        addLibrary(jar);
+                    }
+                }
+            }
         }
+    }
 
+    @Override
+    protected Collection<File> getSourceDirectories() {
+        List<File> directories = new ArrayList<>(super.getSourceDirectories());
+        directories.add(getKotlinDirectory());
         // R.java files
-        File gen = new File(getBuildDirectory(), "gen");
-        if (gen.exists()) {
-            FileUtils.iterateFiles(gen,
-                    FileFilterUtils.suffixFileFilter(".java"),
-                    TrueFileFilter.INSTANCE
-            ).forEachRemaining(this::addJavaFile);
+        directories.add(new File(getBuildDirectory(), "gen"));
+        return directories;
+    }
+
+    @Override
+    protected boolean addSourceFile(@NonNull File file) {
+        if (file.getName().endsWith(".kt")) {
+            putKotlinFile(file, getPackageName(file));
+            return true;
         }
+        return super.addSourceFile(file);
+    }
+
+    @Override
+    protected void clearSourceFiles() {
+        super.clearSourceFiles();
+        mKotlinFiles.clear();
+    }
+
+    @Override
+    protected List<File> removeSourceFiles(@NonNull File file) {
+        List<File> removed = super.removeSourceFiles(file);
+        removed.addAll(removeFiles(mKotlinFiles, file));
+        return removed;
     }
 
     @Override
@@ -153,7 +169,10 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
 
     @Override
     public void addKotlinFile(File file) {
-        String packageName = StringSearch.packageName(file);
+        putKotlinFile(file, StringSearch.packageName(file));
+    }
+
+    private void putKotlinFile(File file, String packageName) {
         if (packageName == null) {
             packageName = "";
         }
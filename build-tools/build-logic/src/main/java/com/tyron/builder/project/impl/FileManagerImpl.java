@@ -6,34 +6,52 @@ import androidx.annotation.NonNull;
 
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.listener.FileListener;
+import com.tyron.common.util.Rope;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Keeps the contents of the opened files as immutable {@link Rope} snapshots. An edit creates a
+ * new snapshot that shares the unchanged text with the previous one, so the snapshots handed
+ * out to the compilers stay valid while the file is being edited.
+ */
 public class FileManagerImpl implements FileManager {
 
     private static final String TAG = FileManagerImpl.class.getSimpleName();
 
+    private static class Snapshot {
+        final Rope contents;
+        final long version;
+
+        Snapshot(Rope contents, long version) {
+            this.contents = contents;
+            this.version = version;
+        }
+    }
+
     private final ExecutorService mService;
     private final File mRoot;
-    private final Map<File, String> mSnapshots;
+    private final Map<File, Snapshot> mSnapshots;
+    private final AtomicLong mVersion = new AtomicLong();
 
-    private final List<FileListener> mListeners = new ArrayList<>();
+    private final List<FileListener> mListeners = new CopyOnWriteArrayList<>();
 
     public FileManagerImpl(File root) {
         mRoot = root;
         mService = Executors.newSingleThreadExecutor();
-        mSnapshots = new HashMap<>();
+        mSnapshots = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -43,17 +61,40 @@ public class FileManagerImpl implements FileManager {
 
     @Override
     public void openFileForSnapshot(@NonNull File file, String content) {
-        mSnapshots.put(file, content);
+        if (content == null) {
+            mSnapshots.remove(file);
+            return;
+        }
+        mSnapshots.put(file, newSnapshot(Rope.of(content)));
     }
 
     @Override
     public void setSnapshotContent(@NonNull File file, String content, boolean notify) {
-        if (notify) {
+        Snapshot snapshot = mSnapshots.computeIfPresent(file,
+                (f, current) -> content == null ? null : newSnapshot(Rope.of(content)));
+        if (notify && snapshot != null) {
             for (FileListener listener : mListeners) {
-                listener.onSnapshotChanged(file, content);
+                listener.onSnapshotChanged(file, snapshot.contents);
             }
         }
-        mSnapshots.computeIfPresent(file, (f, c) -> content);
+    }
+
+    @Override
+    public void editSnapshotContent(@NonNull File file, int start, int end, CharSequence text,
+                                    boolean notify) {
+        Snapshot snapshot = mSnapshots.computeIfPresent(file,
+                (f, current) -> newSnapshot(current.contents.replace(start, end, text)));
+        if (notify && snapshot != null) {
+            for (FileListener listener : mListeners) {
+                listener.onSnapshotEdited(file, start, end, text, snapshot.contents);
+            }
+        }
+    }
+
+    @Override
+    public long getSnapshotVersion(@NonNull File file) {
+        Snapshot snapshot = mSnapshots.get(file);
+        return snapshot != null ? snapshot.version : -1;
     }
 
     @Override
@@ -61,31 +102,32 @@ public class FileManagerImpl implements FileManager {
         if (!file.exists()) {
             return;
         }
-        if (mSnapshots.containsKey(file)) {
+        Snapshot snapshot = mSnapshots.remove(file);
+        if (snapshot != null) {
             try {
-                FileUtils.writeStringToFile(file, mSnapshots.get(file), StandardCharsets.UTF_8);
+                FileUtils.writeStringToFile(file, snapshot.contents.toString(),
+                        StandardCharsets.UTF_8);
             } catch (IOException e) {
                 Log.d(TAG, "Failed to save file " + file.getName(), e);
             }
-            mSnapshots.remove(file);
         }
     }
 
     @Override
-    public synchronized void addSnapshotListener(FileListener listener) {
+    public void addSnapshotListener(FileListener listener) {
         mListeners.add(listener);
     }
 
     @Override
-    public synchronized void removeSnapshotListener(FileListener listener) {
+    public void removeSnapshotListener(FileListener listener) {
         mListeners.remove(listener);
     }
 
     @Override
     public Optional<CharSequence> getFileContent(File file) {
-        CharSequence content = mSnapshots.get(file);
-        if (content != null) {
-            return Optional.of(content);
+        Snapshot snapshot = mSnapshots.get(file);
+        if (snapshot != null) {
+            return Optional.of(snapshot.contents);
         }
         return Optional.empty();
     }
@@ -94,10 +136,14 @@ public class FileManagerImpl implements FileManager {
     public void shutdown() {
         mSnapshots.forEach((k, v) -> mService.execute(() -> {
             try {
-                FileUtils.writeStringToFile(k, v, StandardCharsets.UTF_8);
+                FileUtils.writeStringToFile(k, v.contents.toString(), StandardCharsets.UTF_8);
             } catch (IOException e) {
                 // ignored
             }
         }));
     }
-}
\ No newline at end of file
+
+    private Snapshot newSnapshot(Rope contents) {
+        return new Snapshot(contents, mVersion.incrementAndGet());
+    }
+}
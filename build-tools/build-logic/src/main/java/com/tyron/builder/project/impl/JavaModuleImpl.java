@@ -1,5 +1,7 @@
 package com.tyron.builder.project.impl;
 
+import android.util.Log;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -7,38 +9,70 @@ import com.google.common.collect.ImmutableList;
 import com.tyron.builder.BuildModule;
 import com.tyron.builder.model.Library;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.common.util.Cache;
 import com.tyron.common.util.StringSearch;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
+    private static final String TAG = JavaModuleImpl.class.getSimpleName();
+    private static final String CLASSES = "classes";
+    private static final String PACKAGE = "package";
+
+    /**
+     * The top level classes of each jar, a jar is only read again when its contents change
+     */
+    public static final CacheHolder.CacheKey<String, JarClasses> JAR_CLASSES_KEY =
+            new CacheHolder.CacheKey<>("moduleJarClasses", String.class, JarClasses.class);
+
+    /**
+     * The package names of the source files, so the sources do not have to be read when the
+     * module is indexed again
+     */
+    public static final CacheHolder.CacheKey<String, String> PACKAGE_NAMES_KEY =
+            new CacheHolder.CacheKey<>("modulePackageNames", String.class, String.class);
+
+    public static class JarClasses {
+        public List<String> classes = Collections.emptyList();
+    }
+
     // Map of fully qualified names and the jar they are contained in
     private final Map<String, File> mClassFiles;
     private final Map<String, File> mJavaFiles;
     private final Map<String, Library> mLibraryHashMap;
     private final Set<File> mLibraries;
 
+    /**
+     * Keeps the source files up to date after the module has been indexed, null if it is not
+     * indexed or if the file system cannot be watched
+     */
+    private SourceFileWatcher mWatcher;
+
     public JavaModuleImpl(File root) {
         super(root);
-        mJavaFiles = new HashMap<>();
-        mClassFiles = new HashMap<>();
-        mLibraries = new HashSet<>();
-        mLibraryHashMap = new HashMap<>();
+        // the watcher updates these maps while they are read by the compilers
+        mJavaFiles = new ConcurrentHashMap<>();
+        mClassFiles = new ConcurrentHashMap<>();
+        mLibraries = ConcurrentHashMap.newKeySet();
+        mLibraryHashMap = new ConcurrentHashMap<>();
     }
 
     @NonNull
@@ -63,9 +97,12 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         if (!javaFile.getName().endsWith(".java")) {
             return;
         }
-        String packageName = StringSearch.packageName(javaFile);
+        putJavaFile(javaFile, StringSearch.packageName(javaFile));
+    }
+
+    private void putJavaFile(@NonNull File javaFile, @Nullable String packageName) {
         String className;
-        if (packageName == null) {
+        if (packageName == null || packageName.isEmpty()) {
             className = javaFile.getName().replace(".java", "");
         } else {
             className = packageName + "." + javaFile.getName().replace(".java", "");
@@ -103,8 +140,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
             return;
         }
         try {
-            // noinspection unused, used to check if jar is valid.
-            JarFile jarFile = new JarFile(jar);
+            // throws if the jar is not valid
             putJar(jar);
             mLibraries.add(jar);
         } catch (IOException e) {
@@ -116,6 +152,25 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         if (file == null) {
             return;
         }
+        for (String className : getJarClasses(file)) {
+            mClassFiles.put(className, file);
+        }
+    }
+
+    private List<String> getJarClasses(File file) throws IOException {
+        Cache<String, JarClasses> cache = getCache(JAR_CLASSES_KEY, new Cache<>());
+        Path path = file.toPath();
+        // a cache that is not persisted is not thread safe
+        synchronized (cache) {
+            if (!cache.needs(path, CLASSES)) {
+                JarClasses cached = cache.get(path, CLASSES);
+                if (cached != null) {
+                    return cached.classes;
+                }
+            }
+        }
+
+        List<String> classes = new ArrayList<>();
         try (JarFile jar = new JarFile(file)) {
             Enumeration<JarEntry> entries = jar.entries();
             while (entries.hasMoreElements()) {
@@ -134,9 +189,16 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
                 String packageName = entry.getName().replace("/", ".")
                         .substring(0, entry.getName().length() - ".class".length());
 
-                mClassFiles.put(packageName, file);
+                classes.add(packageName);
             }
         }
+
+        JarClasses jarClasses = new JarClasses();
+        jarClasses.classes = classes;
+        synchronized (cache) {
+            cache.load(path, CLASSES, jarClasses);
+        }
+        return classes;
     }
 
     @NonNull
@@ -200,13 +262,6 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
             // ignored
         }
 
-        if (getJavaDirectory().exists()) {
-            FileUtils.iterateFiles(getJavaDirectory(),
-                    FileFilterUtils.suffixFileFilter(".java"),
-                    TrueFileFilter.INSTANCE
-            ).forEachRemaining(this::addJavaFile);
-        }
-
         File[] libraryDirectories = new File(getBuildDirectory(), "libs")
                 .listFiles(File::isDirectory);
         if (libraryDirectories != null) {
@@ -217,12 +272,160 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
                 }
             }
         }
+
+        indexSources();
+    }
+
+    /**
+     * Walks the source directories and starts watching them, does nothing if they are
+     * already watched since the watcher keeps the source files up to date
+     */
+    private synchronized void indexSources() {
+        if (mWatcher != null) {
+            return;
+        }
+
+        SourceFileWatcher watcher;
+        try {
+            watcher = new SourceFileWatcher("Watcher-" + getName(), mWatcherCallback);
+        } catch (IOException | UnsupportedOperationException e) {
+            Log.w(TAG, "Unable to watch the sources of " + getName(), e);
+            watcher = null;
+        }
+
+        for (File directory : getSourceDirectories()) {
+            try {
+                if (watcher != null) {
+                    watcher.watch(directory, this::addSourceFile);
+                    continue;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to watch " + directory, e);
+            }
+            if (directory.exists()) {
+                FileUtils.iterateFiles(directory, TrueFileFilter.INSTANCE,
+                        TrueFileFilter.INSTANCE).forEachRemaining(this::addSourceFile);
+            }
+        }
+
+        if (watcher != null) {
+            watcher.start();
+            mWatcher = watcher;
+        }
+    }
+
+    /**
+     * @return The directories whose files are indexed and watched by {@link #addSourceFile(File)}
+     */
+    protected Collection<File> getSourceDirectories() {
+        return Collections.singletonList(getJavaDirectory());
     }
 
+    /**
+     * Indexes the source file, the package name is read from the cache if the file has not
+     * changed since it was last indexed
+     *
+     * @return whether the file is a source file of this module
+     */
+    protected boolean addSourceFile(@NonNull File file) {
+        if (!file.getName().endsWith(".java")) {
+            return false;
+        }
+        putJavaFile(file, getPackageName(file));
+        return true;
+    }
+
+    /**
+     * Removes the source files that are the given file or that are under it
+     *
+     * @return The files that have been removed
+     */
+    protected List<File> removeSourceFiles(@NonNull File file) {
+        return removeFiles(mJavaFiles, file);
+    }
+
+    protected static List<File> removeFiles(Map<String, File> files, File file) {
+        Path path = file.toPath();
+        List<File> removed = new ArrayList<>();
+        files.entrySet().removeIf(entry -> {
+            if (entry.getValue().toPath().startsWith(path)) {
+                removed.add(entry.getValue());
+                return true;
+            }
+            return false;
+        });
+        return removed;
+    }
+
+    @Nullable
+    protected String getPackageName(@NonNull File file) {
+        Cache<String, String> cache = getCache(PACKAGE_NAMES_KEY, new Cache<>());
+        Path path = file.toPath();
+        synchronized (cache) {
+            if (!cache.needs(path, PACKAGE)) {
+                return cache.get(path, PACKAGE);
+            }
+        }
+
+        String packageName = StringSearch.packageName(file);
+        synchronized (cache) {
+            cache.load(path, PACKAGE, packageName);
+        }
+        return packageName;
+    }
+
+    private final SourceFileWatcher.Callback mWatcherCallback = new SourceFileWatcher.Callback() {
+        @Override
+        public void onCreated(@NonNull File file) {
+            if (addSourceFile(file)) {
+                notifyFileCreated(file);
+            }
+        }
+
+        @Override
+        public void onDeleted(@NonNull File file) {
+            for (File removed : removeSourceFiles(file)) {
+                notifyFileDeleted(removed);
+            }
+        }
+
+        @Override
+        public void onModified(@NonNull File file) {
+            // the package of the file may have changed
+            removeSourceFiles(file);
+            if (addSourceFile(file)) {
+                notifyFileModified(file);
+            }
+        }
+    };
+
     @Override
     public void clear() {
-        mJavaFiles.clear();
+        synchronized (this) {
+            if (mWatcher == null) {
+                clearSourceFiles();
+            }
+        }
+        mClassFiles.clear();
         mLibraries.clear();
         mLibraryHashMap.clear();
     }
-}
\ No newline at end of file
+
+    /**
+     * Removes all the indexed source files, called when they are not kept up to date
+     */
+    protected void clearSourceFiles() {
+        mJavaFiles.clear();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (mWatcher != null) {
+                mWatcher.close();
+                mWatcher = null;
+            }
+        }
+        super.close();
+    }
+}
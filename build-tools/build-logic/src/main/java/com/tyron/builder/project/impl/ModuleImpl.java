@@ -5,7 +5,9 @@ import androidx.annotation.Nullable;
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.listener.ModuleFileListener;
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.PersistentCache;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
@@ -15,8 +17,10 @@ import org.jetbrains.kotlin.com.intellij.util.keyFMap.KeyFMap;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ModuleImpl implements Module {
 
@@ -28,6 +32,7 @@ public class ModuleImpl implements Module {
     private final File mRoot;
     private ModuleSettings myModuleSettings;
     private FileManager mFileManager;
+    private final List<ModuleFileListener> mFileListeners = new CopyOnWriteArrayList<>();
 
     public ModuleImpl(File root) {
         mRoot = root;
@@ -49,6 +54,39 @@ public class ModuleImpl implements Module {
 
     }
 
+    @Override
+    public void close() {
+        clear();
+    }
+
+    @Override
+    public void addFileListener(ModuleFileListener listener) {
+        mFileListeners.add(listener);
+    }
+
+    @Override
+    public void removeFileListener(ModuleFileListener listener) {
+        mFileListeners.remove(listener);
+    }
+
+    protected void notifyFileCreated(File file) {
+        for (ModuleFileListener listener : mFileListeners) {
+            listener.onFileCreated(file);
+        }
+    }
+
+    protected void notifyFileDeleted(File file) {
+        for (ModuleFileListener listener : mFileListeners) {
+            listener.onFileDeleted(file);
+        }
+    }
+
+    protected void notifyFileModified(File file) {
+        for (ModuleFileListener listener : mFileListeners) {
+            listener.onFileModified(file);
+        }
+    }
+
     @Override
     public File getBuildDirectory() {
         File custom = getPathSetting("build_directory");
@@ -145,17 +183,27 @@ public class ModuleImpl implements Module {
 
     private static final AtomicFieldUpdater<ModuleImpl, KeyFMap> updater = AtomicFieldUpdater.forFieldOfType(ModuleImpl.class, KeyFMap.class);
 
-    private final Map<CacheKey<?, ?>, Cache<?, ?>> mCacheMap = new HashMap<>();
+    /**
+     * Tasks may request their caches concurrently when the build runs in parallel
+     */
+    private final Map<CacheKey<?, ?>, Cache<?, ?>> mCacheMap = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum size of the entries of a single persistent cache
+     */
+    private static final long MAX_CACHE_SIZE = 16 * 1024 * 1024;
 
     @Override
     public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
-        Object o = mCacheMap.get(key);
-        if (o == null) {
-            put(key, defaultValue);
-            return defaultValue;
-        }
         //noinspection unchecked
-        return (Cache<K, V>) o;
+        return (Cache<K, V>) mCacheMap.computeIfAbsent(key, k -> {
+            if (!key.isPersistent()) {
+                return defaultValue;
+            }
+            File journal = new File(getBuildDirectory(), "caches/" + key.getName() + ".journal");
+            return new PersistentCache<K, V>(journal, key.getKeyType(), key.getValueType(),
+                    MAX_CACHE_SIZE);
+        });
     }
 
     public <K, V> void removeCache(CacheKey<K, V> key) {
@@ -0,0 +1,269 @@
+package com.tyron.builder.project.impl;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Watches directory trees for files that are created, deleted or modified using a
+ * {@link WatchService}, which is backed by inotify on Linux and Android. Only the directories
+ * are registered, the events are delivered to the {@link Callback} from a single daemon thread.
+ *
+ * The files of a directory that is created are all reported as created since they may have
+ * been written before the directory was registered. A deleted directory is reported once, the
+ * receiver should forget every file under it. When the events of a directory have been lost,
+ * it is reported as deleted and walked again.
+ *
+ * A root that does not exist yet is watched through its closest existing parent until it is
+ * created.
+ */
+public class SourceFileWatcher implements Closeable {
+
+    private static final String TAG = SourceFileWatcher.class.getSimpleName();
+
+    public interface Callback {
+
+        void onCreated(@NonNull File file);
+
+        /**
+         * @param file The deleted file, or a deleted directory
+         */
+        void onDeleted(@NonNull File file);
+
+        void onModified(@NonNull File file);
+    }
+
+    private final WatchService mWatchService;
+    private final Callback mCallback;
+    private final Thread mThread;
+
+    /**
+     * The registered directories, the ones that are not in {@link #mTrees} are parents of a
+     * root that does not exist yet
+     */
+    private final Map<WatchKey, Path> mKeys = new HashMap<>();
+    private final Set<Path> mTrees = new HashSet<>();
+    private final Set<Path> mPendingRoots = new HashSet<>();
+    private final Set<Path> mRoots = new HashSet<>();
+
+    private volatile boolean mClosed;
+
+    public SourceFileWatcher(@NonNull String name, @NonNull Callback callback)
+            throws IOException {
+        mWatchService = FileSystems.getDefault().newWatchService();
+        mCallback = callback;
+        mThread = new Thread(this::run, name);
+        mThread.setDaemon(true);
+    }
+
+    /**
+     * Registers the directory and all of its sub directories, the files that are already in
+     * it are passed to the consumer on the calling thread.
+     */
+    public synchronized void watch(@NonNull File root, @NonNull Consumer<File> files)
+            throws IOException {
+        Path path = root.toPath().toAbsolutePath().normalize();
+        mRoots.add(path);
+        if (Files.isDirectory(path)) {
+            registerTree(path, files);
+        } else {
+            registerPending(path);
+        }
+    }
+
+    /**
+     * Starts delivering the events, the events of the files that changed after they have been
+     * registered are queued until then
+     */
+    public void start() {
+        mThread.start();
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        try {
+            mWatchService.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to close the watch service", e);
+        }
+        mThread.interrupt();
+    }
+
+    private void run() {
+        while (!mClosed) {
+            WatchKey key;
+            try {
+                key = mWatchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            try {
+                handle(key);
+            } catch (RuntimeException | IOException e) {
+                // keep watching, a single directory that cannot be read should not stop it
+                Log.w(TAG, "Unable to handle the events of " + key.watchable(), e);
+            }
+        }
+    }
+
+    private synchronized void handle(WatchKey key) throws IOException {
+        Path directory = mKeys.get(key);
+        if (directory == null) {
+            key.pollEvents();
+            key.reset();
+            return;
+        }
+        boolean tree = mTrees.contains(directory);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                if (tree) {
+                    mCallback.onDeleted(directory.toFile());
+                    registerTree(directory, mCallback::onCreated);
+                } else {
+                    checkPendingRoots();
+                }
+                continue;
+            }
+
+            Path child = directory.resolve((Path) event.context());
+            if (!tree) {
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    checkPendingRoots();
+                }
+                continue;
+            }
+
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                if (Files.isDirectory(child)) {
+                    registerTree(child, mCallback::onCreated);
+                } else {
+                    mCallback.onCreated(child.toFile());
+                }
+            } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                mCallback.onDeleted(child.toFile());
+            } else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
+                if (Files.isRegularFile(child)) {
+                    mCallback.onModified(child.toFile());
+                }
+            }
+        }
+
+        if (!key.reset()) {
+            // the directory itself has been deleted or moved
+            mKeys.remove(key);
+            mTrees.remove(directory);
+            if (mRoots.contains(directory)) {
+                mCallback.onDeleted(directory.toFile());
+                registerPending(directory);
+            }
+        }
+    }
+
+    private void registerTree(Path root, Consumer<File> files) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                register(dir, true);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.accept(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // the file may have been deleted while walking
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void registerPending(Path root) throws IOException {
+        mPendingRoots.add(root);
+        Path parent = root.getParent();
+        while (parent != null && !Files.isDirectory(parent)) {
+            parent = parent.getParent();
+        }
+        if (parent != null) {
+            register(parent, false);
+        }
+    }
+
+    /**
+     * Starts watching the pending roots that have been created, or moves closer to them if
+     * only some of their parents have been created
+     */
+    private void checkPendingRoots() throws IOException {
+        for (Path root : new HashSet<>(mPendingRoots)) {
+            if (Files.isDirectory(root)) {
+                mPendingRoots.remove(root);
+                registerTree(root, mCallback::onCreated);
+            } else {
+                mPendingRoots.remove(root);
+                registerPending(root);
+            }
+        }
+
+        // stop watching the parents that no root is waiting for
+        Iterator<Map.Entry<WatchKey, Path>> iterator = mKeys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<WatchKey, Path> entry = iterator.next();
+            Path dir = entry.getValue();
+            if (mTrees.contains(dir) || isPendingParent(dir)) {
+                continue;
+            }
+            entry.getKey().cancel();
+            iterator.remove();
+        }
+    }
+
+    private boolean isPendingParent(Path dir) {
+        for (Path root : mPendingRoots) {
+            if (root.startsWith(dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void register(Path dir, boolean tree) throws IOException {
+        WatchKey key = dir.register(mWatchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        mKeys.put(key, dir);
+        if (tree) {
+            mTrees.add(dir);
+        }
+    }
+}
@@ -5,4 +5,16 @@ import java.io.File;
 public interface FileListener {
 
     void onSnapshotChanged(File file, CharSequence contents);
+
+    /**
+     * Called when only a range of the snapshot has changed, the text between start and end
+     * of the previous snapshot has been replaced with the given text. Listeners that do not
+     * handle edits are given the whole new snapshot.
+     *
+     * @param contents The snapshot after the edit
+     */
+    default void onSnapshotEdited(File file, int start, int end, CharSequence text,
+                                  CharSequence contents) {
+        onSnapshotChanged(file, contents);
+    }
 }
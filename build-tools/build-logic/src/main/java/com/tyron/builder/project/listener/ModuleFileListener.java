@@ -0,0 +1,17 @@
+package com.tyron.builder.project.listener;
+
+import java.io.File;
+
+/**
+ * Notified when the indexed source files of a module are changed on the disk. The module has
+ * already been updated when the listener is called, the calls are made from the thread that
+ * watches the module.
+ */
+public interface ModuleFileListener {
+
+    void onFileCreated(File file);
+
+    void onFileDeleted(File file);
+
+    void onFileModified(File file);
+}
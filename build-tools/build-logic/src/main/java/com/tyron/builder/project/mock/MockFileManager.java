@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.listener.FileListener;
+import com.tyron.common.util.Rope;
 
 import org.apache.commons.io.FileUtils;
 
@@ -48,6 +49,17 @@ public class MockFileManager implements FileManager {
         mSnapshots.computeIfPresent(file, (f, c) -> content);
     }
 
+    @Override
+    public void editSnapshotContent(@NonNull File file, int start, int end, CharSequence text,
+                                    boolean notify) {
+        mSnapshots.computeIfPresent(file, (f, c) -> Rope.of(c).replace(start, end, text));
+    }
+
+    @Override
+    public long getSnapshotVersion(@NonNull File file) {
+        return -1;
+    }
+
     @Override
     public void closeFileForSnapshot(@NonNull File file) {
         mSnapshots.remove(file);
@@ -8,17 +8,39 @@ import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 public class FSInfo {
+
+    /**
+     * The Class-Path manifest attributes of the jars read so far by any file manager, keyed by
+     * the path of the jar and only valid while its size and modification time stay the same.
+     */
+    private static final Map<Path, JarClassPath> jarClassPaths = new ConcurrentHashMap<>();
+
+    private static class JarClassPath {
+        final long size;
+        final long lastModified;
+        final List<Path> classPath;
+
+        JarClassPath(long size, long lastModified, List<Path> classPath) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.classPath = classPath;
+        }
+    }
+
     private FileSystemProvider jarFSProvider;
 
     public static FSInfo instance(Context var0) {
@@ -58,6 +80,21 @@ public class FSInfo {
     }
 
     public List<Path> getJarClassPath(Path var1) throws IOException {
+        Path key = var1.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        JarClassPath cached = jarClassPaths.get(key);
+        if (cached != null && cached.size == attributes.size() &&
+                cached.lastModified == lastModified) {
+            return cached.classPath;
+        }
+
+        List<Path> classPath = Collections.unmodifiableList(readJarClassPath(var1));
+        jarClassPaths.put(key, new JarClassPath(attributes.size(), lastModified, classPath));
+        return classPath;
+    }
+
+    private List<Path> readJarClassPath(Path var1) throws IOException {
         Path var2 = var1.getParent();
         JarFile var3 = new JarFile(var1.toFile());
         Throwable var4 = null;
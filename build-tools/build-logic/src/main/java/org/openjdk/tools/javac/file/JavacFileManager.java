@@ -66,6 +66,7 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     private FSInfo fsInfo;
     private final Set<Kind> sourceOrClass;
     protected boolean symbolFileEnabled;
+    protected boolean mappedArchives;
     private PathFactory pathFactory;
     protected JavacFileManager.SortFiles sortFiles;
     private final Map<Path, JavacFileManager.Container> containers;
@@ -107,6 +108,7 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         super.setContext(var1);
         this.fsInfo = FSInfo.instance(var1);
         this.symbolFileEnabled = !this.options.isSet("ignore.symbol.file");
+        this.mappedArchives = this.options.isSet("mappedArchives");
         String var2 = this.options.get("sortFiles");
         if (var2 != null) {
             this.sortFiles = var2.equals("reverse") ? JavacFileManager.SortFiles.REVERSE : JavacFileManager.SortFiles.FORWARD;
@@ -131,6 +133,19 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         return this.symbolFileEnabled;
     }
 
+    /**
+     * When enabled, the contents of jar entries are read from a memory mapping of the jar
+     * shared by every file manager instead of a zip file system opened by this file manager.
+     * Only affects jars that are opened after this is set.
+     */
+    public void setMappedArchivesEnabled(boolean var1) {
+        this.mappedArchives = var1;
+    }
+
+    public boolean isMappedArchivesEnabled() {
+        return this.mappedArchives;
+    }
+
     public JavaFileObject getJavaFileObject(String var1) {
         return this.getJavaFileObjects(var1).iterator().next();
     }
@@ -761,9 +776,28 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         private final Path archivePath;
         private final FileSystem fileSystem;
         private final Map<RelativePath, Path> packages;
+        private final ZipIndex index;
 
         public ArchiveContainer(Path var2) throws IOException, ProviderNotFoundException, SecurityException {
             this.archivePath = var2;
+            ZipIndex var7 = null;
+            try {
+                var7 = ZipIndex.get(var2);
+            } catch (IOException ignored) {
+                // fall back to walking the zip file system
+            }
+            if (var7 != null && var7.isMultiRelease()) {
+                // versioned entries are only resolved by the multi-release zip file system
+                var7.release();
+                var7 = null;
+            }
+            this.index = var7;
+
+            if (this.index != null && JavacFileManager.this.mappedArchives) {
+                this.fileSystem = null;
+                this.packages = null;
+                return;
+            }
 //            if (JavacFileManager.this.multiReleaseValue != null && var2.toString().endsWith(".jar")) {
             Map<String, String> var3 = Collections.singletonMap("multi-release", JavacFileManager.this.multiReleaseValue);
             FileSystemProvider var4 = JavacFileManager.this.fsInfo.getJarFSProvider();
@@ -774,6 +808,10 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 //            }
 
             this.packages = new HashMap<>();
+            if (this.index != null) {
+                // the packages are known from the shared index, no need to walk the archive
+                return;
+            }
 
             for (Path var6 : this.fileSystem.getRootDirectories()) {
                 Files.walkFileTree(var6, EnumSet.noneOf(FileVisitOption.class), 2147483647, new SimpleFileVisitor<Path>() {
@@ -791,6 +829,15 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         }
 
         public void list(Path var1, RelativeDirectory var2, final Set<Kind> var3, boolean var4, final ListBuffer<JavaFileObject> var5) throws IOException {
+            if (this.index != null) {
+                java.util.List<ZipIndex.Entry> var9 = var4 ? this.index.listRecursive(var2) : this.index.list(var2);
+                for (ZipIndex.Entry var10 : var9) {
+                    if (var3.contains(BaseFileManager.getKind(var10.name))) {
+                        var5.append(this.createFileObject(var10, this.archivePath));
+                    }
+                }
+                return;
+            }
             Path var6 = (Path)this.packages.get(var2);
             if (var6 != null) {
                 int var7 = var4 ? 2147483647 : 1;
@@ -812,6 +859,13 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
             }
         }
 
+        private PathFileObject createFileObject(ZipIndex.Entry var1, Path var2) {
+            if (this.fileSystem == null) {
+                return new MappedJarFileObject(JavacFileManager.this, this.index, var1);
+            }
+            return PathFileObject.forJarPath(JavacFileManager.this, this.fileSystem.getPath("/" + var1.name), var2);
+        }
+
         private boolean isValid(Path var1) {
             if (var1 == null) {
                 return true;
@@ -826,6 +880,10 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         }
 
         public JavaFileObject getFileObject(Path var1, RelativeFile var2) throws IOException {
+            if (this.index != null) {
+                ZipIndex.Entry var6 = this.index.getEntry(var2);
+                return var6 == null ? null : this.createFileObject(var6, var1);
+            }
             RelativeDirectory var3 = var2.dirname();
             Path var4 = (Path)this.packages.get(var3);
             if (var4 != null) {
@@ -839,7 +897,13 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         }
 
         public void close() throws IOException {
-            this.fileSystem.close();
+            if (this.index != null) {
+                // the index is shared, it is mapped again when another file manager reads it
+                this.index.release();
+            }
+            if (this.fileSystem != null) {
+                this.fileSystem.close();
+            }
         }
     }
 
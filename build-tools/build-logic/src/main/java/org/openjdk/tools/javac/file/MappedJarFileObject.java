@@ -0,0 +1,104 @@
+package org.openjdk.tools.javac.file;
+
+import org.openjdk.javax.tools.JavaFileObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * A file object for an entry of a jar that is read from the memory mapped {@link ZipIndex} of
+ * the jar instead of a zip file system.
+ *
+ * The path of the file object is the path of the jar joined with the name of the entry so
+ * entries with the same name in different jars are never equal, it does not exist on disk.
+ */
+class MappedJarFileObject extends PathFileObject {
+
+    private final ZipIndex mIndex;
+    private final ZipIndex.Entry mEntry;
+
+    MappedJarFileObject(BaseFileManager fileManager, ZipIndex index, ZipIndex.Entry entry) {
+        super(fileManager, Paths.get(index.getArchive().toString(), entry.name));
+        mIndex = index;
+        mEntry = entry;
+    }
+
+    @Override
+    String inferBinaryName(Iterable<? extends Path> paths) {
+        return toBinaryName(new RelativePath.RelativeFile(mEntry.name));
+    }
+
+    @Override
+    PathFileObject getSibling(String baseName) {
+        String name = mEntry.name.substring(0, mEntry.name.length() -
+                mEntry.getBaseName().length()) + baseName;
+        ZipIndex.Entry sibling = mIndex.getEntry(new RelativePath.RelativeFile(name));
+        if (sibling == null) {
+            sibling = new ZipIndex.Entry(name, 0, 0, 0, -1);
+        }
+        return new MappedJarFileObject(fileManager, mIndex, sibling);
+    }
+
+    @Override
+    public String getName() {
+        return mIndex.getArchive() + "(/" + mEntry.name + ")";
+    }
+
+    @Override
+    public String getShortName() {
+        return mIndex.getArchive().getFileName() + "(/" + mEntry.name + ")";
+    }
+
+    @Override
+    public JavaFileObject.Kind getKind() {
+        return BaseFileManager.getKind(mEntry.name);
+    }
+
+    @Override
+    public URI toUri() {
+        String uri = "jar:" + mIndex.getArchive().toUri().normalize() + "!/" + mEntry.name;
+        try {
+            return new URI(uri);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Unable to create uri " + uri, e);
+        }
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        if (mEntry.offset < 0) {
+            throw new IOException(getName() + " does not exist");
+        }
+        ZipIndex index = mIndex;
+        ZipIndex.Entry entry = mEntry;
+        if (!index.isCurrent()) {
+            // the jar has been rewritten since it was listed, read the entry from its new index
+            index = ZipIndex.get(index.getArchive());
+            entry = index.getEntry(new RelativePath.RelativeFile(mEntry.name));
+            if (entry == null) {
+                throw new IOException(getName() + " does not exist");
+            }
+        }
+        return new ByteArrayInputStream(index.read(entry));
+    }
+
+    @Override
+    public long getLastModified() {
+        return mIndex.getLastModified();
+    }
+
+    @Override
+    public boolean delete() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedJarFileObject[" + mIndex.getArchive() + ":/" + mEntry.name + "]";
+    }
+}
@@ -0,0 +1,396 @@
+package org.openjdk.tools.javac.file;
+
+import org.openjdk.javax.lang.model.SourceVersion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Index of the entries of a jar file, read directly from its central directory through a
+ * memory mapped buffer.
+ *
+ * Indexes are shared by every file manager of the process, an index is only read again when the
+ * size or the modification time of the jar changes. The contents of an entry can be read from
+ * the mapped buffer as well, which avoids opening a zip file system for the jar at all.
+ *
+ * At most {@link #MAX_INDEXES} indexes are kept, the least recently used one is dropped first.
+ * Indexes of jars that no longer exist, such as old versions of a library, are dropped whenever
+ * a new jar is indexed.
+ *
+ * The mapping of a jar is only read while the size and the modification time of the jar are
+ * the ones it was indexed with, a jar that is rewritten in place must not be read through an
+ * old mapping. The mapping is released when the index is dropped or replaced and when a file
+ * manager that uses it is closed, it is mapped again the next time an entry is read.
+ */
+final class ZipIndex {
+
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final int MAX_INDEXES = 256;
+
+    /**
+     * Guarded by itself, in access order so the eldest entry is the least recently used one
+     */
+    private static final Map<Path, ZipIndex> sIndexes =
+            new LinkedHashMap<Path, ZipIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, ZipIndex> eldest) {
+                    if (size() > MAX_INDEXES) {
+                        eldest.getValue().release();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    /**
+     * @return the index of the given jar, read again if the jar has changed since it was last
+     * indexed
+     * @throws IOException if the jar could not be read or uses a format that is not supported
+     * here, such as zip64
+     */
+    static ZipIndex get(Path archive) throws IOException {
+        Path key = archive.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        ZipIndex index;
+        synchronized (sIndexes) {
+            index = sIndexes.get(key);
+        }
+        if (index != null && index.mSize == size && index.mLastModified == lastModified) {
+            return index;
+        }
+        // read outside of the lock, other jars can still be looked up meanwhile
+        index = new ZipIndex(key, size, lastModified);
+        synchronized (sIndexes) {
+            sIndexes.values().removeIf(it -> {
+                if (Files.exists(it.mArchive)) {
+                    return false;
+                }
+                it.release();
+                return true;
+            });
+            ZipIndex previous = sIndexes.put(key, index);
+            if (previous != null) {
+                previous.release();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return whether an index of the given jar is kept, used by tests
+     */
+    static boolean isCached(Path archive) {
+        synchronized (sIndexes) {
+            return sIndexes.containsKey(archive.toAbsolutePath().normalize());
+        }
+    }
+
+    static final class Entry {
+        final String name;
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long offset;
+
+        Entry(String name, int method, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+
+        String getBaseName() {
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+    }
+
+    private final Path mArchive;
+    private final long mSize;
+    private final long mLastModified;
+
+    /**
+     * Guarded by this, null while the archive is not mapped
+     */
+    private MappedByteBuffer mBuffer;
+    private boolean mMultiRelease;
+
+    /**
+     * Entries grouped by the directory they are in, directory names end with a slash like
+     * in {@link RelativePath.RelativeDirectory}, the root directory is the empty string.
+     */
+    private final SortedMap<String, List<Entry>> mDirectories = new TreeMap<>();
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    private ZipIndex(Path archive, long size, long lastModified) throws IOException {
+        mArchive = archive;
+        mSize = size;
+        mLastModified = lastModified;
+        if (size > Integer.MAX_VALUE) {
+            throw new ZipException("Archive is too large to be mapped: " + archive);
+        }
+        readCentralDirectory(map());
+    }
+
+    Path getArchive() {
+        return mArchive;
+    }
+
+    long getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * @return whether the jar has versioned entries under {@code META-INF/versions}, those are
+     * not indexed so the jar has to be read through a multi-release file system instead
+     */
+    boolean isMultiRelease() {
+        return mMultiRelease;
+    }
+
+    /**
+     * @return whether the jar still has the size and the modification time it was indexed with
+     */
+    boolean isCurrent() {
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(mArchive, BasicFileAttributes.class);
+            return attributes.size() == mSize &&
+                    attributes.lastModifiedTime().toMillis() == mLastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops the mapping of the archive, it is mapped again when an entry is read
+     */
+    synchronized void release() {
+        mBuffer = null;
+    }
+
+    /**
+     * @return whether the archive is mapped, used by tests
+     */
+    synchronized boolean isMapped() {
+        return mBuffer != null;
+    }
+
+    private synchronized ByteBuffer map() throws IOException {
+        if (mBuffer == null) {
+            try (FileChannel channel = FileChannel.open(mArchive, StandardOpenOption.READ)) {
+                if (channel.size() != mSize) {
+                    throw new ZipException("Archive has changed since it was indexed: " +
+                            mArchive);
+                }
+                mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, mSize);
+            }
+        }
+        return mBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the entries of the given directory, not including the entries of sub directories
+     */
+    List<Entry> list(RelativePath.RelativeDirectory directory) {
+        List<Entry> entries = mDirectories.get(directory.getPath());
+        return entries == null ? Collections.emptyList() : entries;
+    }
+
+    /**
+     * @return the entries of the given directory and all of its sub directories
+     */
+    List<Entry> listRecursive(RelativePath.RelativeDirectory directory) {
+        String path = directory.getPath();
+        List<Entry> entries = new ArrayList<>();
+        for (List<Entry> list : mDirectories.subMap(path, path + Character.MAX_VALUE).values()) {
+            entries.addAll(list);
+        }
+        return entries;
+    }
+
+    boolean containsDirectory(RelativePath.RelativeDirectory directory) {
+        String path = directory.getPath();
+        if (path.isEmpty()) {
+            return true;
+        }
+        SortedMap<String, List<Entry>> tail = mDirectories.tailMap(path);
+        return !tail.isEmpty() && tail.firstKey().startsWith(path);
+    }
+
+    Entry getEntry(RelativePath.RelativeFile file) {
+        return mEntries.get(file.getPath());
+    }
+
+    /**
+     * Reads the uncompressed contents of the entry from the mapped archive
+     *
+     * @throws ZipException if the archive has changed since it was indexed
+     */
+    byte[] read(Entry entry) throws IOException {
+        if (!isCurrent()) {
+            release();
+            throw new ZipException("Archive has changed since it was indexed: " + mArchive);
+        }
+        ByteBuffer buffer = map();
+        int offset = (int) entry.offset;
+        if (buffer.getInt(offset) != LOCSIG) {
+            throw new ZipException("Invalid local header for " + entry.name + " in " + mArchive);
+        }
+        int start = offset + LOCHDR + getShort(buffer, offset + 26) + getShort(buffer, offset + 28);
+        byte[] compressed = new byte[(int) entry.compressedSize];
+        buffer.position(start);
+        buffer.get(compressed);
+
+        if (entry.method == STORED) {
+            return compressed;
+        }
+        if (entry.method != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " +
+                    entry.name + " in " + mArchive);
+        }
+
+        byte[] contents = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < contents.length && !inflater.finished()) {
+                int count = inflater.inflate(contents, read, contents.length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != contents.length) {
+                throw new ZipException("Truncated entry " + entry.name + " in " + mArchive);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt entry " + entry.name + " in " + mArchive + ": " +
+                    e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return contents;
+    }
+
+    private void readCentralDirectory(ByteBuffer mapped) throws IOException {
+        int end = findEndOfCentralDirectory(mapped);
+        int count = getShort(mapped, end + 10);
+        long centralSize = getUnsignedInt(mapped, end + 12);
+        long centralOffset = getUnsignedInt(mapped, end + 16);
+        if (count == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL) {
+            throw new ZipException("Zip64 archives are not supported: " + mArchive);
+        }
+
+        int position = (int) centralOffset;
+        for (int i = 0; i < count; i++) {
+            if (position + CENHDR > mSize || mapped.getInt(position) != CENSIG) {
+                throw new ZipException("Invalid central directory in " + mArchive);
+            }
+            int method = getShort(mapped, position + 10);
+            long compressedSize = getUnsignedInt(mapped, position + 20);
+            long size = getUnsignedInt(mapped, position + 24);
+            int nameLength = getShort(mapped, position + 28);
+            int extraLength = getShort(mapped, position + 30);
+            int commentLength = getShort(mapped, position + 32);
+            long offset = getUnsignedInt(mapped, position + 42);
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+                throw new ZipException("Zip64 entries are not supported: " + mArchive);
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer buffer = mapped.duplicate();
+            buffer.position(position + CENHDR);
+            buffer.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            if (name.startsWith("/")) {
+                name = name.substring(1);
+            }
+            if (name.startsWith("META-INF/versions/")) {
+                mMultiRelease = true;
+            }
+
+            if (!name.endsWith("/")) {
+                int index = name.lastIndexOf('/');
+                String directory = name.substring(0, index + 1);
+                if (isValidDirectory(directory)) {
+                    Entry entry = new Entry(name, method, compressedSize, size, offset);
+                    List<Entry> entries = mDirectories.get(directory);
+                    if (entries == null) {
+                        entries = new ArrayList<>();
+                        mDirectories.put(directory, entries);
+                    }
+                    entries.add(entry);
+                    mEntries.put(name, entry);
+                }
+            }
+
+            position += CENHDR + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private int findEndOfCentralDirectory(ByteBuffer mapped) throws IOException {
+        int minimum = (int) Math.max(0, mSize - ENDHDR - 0xFFFF);
+        for (int position = (int) mSize - ENDHDR; position >= minimum; position--) {
+            if (mapped.getInt(position) == ENDSIG) {
+                return position;
+            }
+        }
+        throw new ZipException("End of central directory not found in " + mArchive);
+    }
+
+    /**
+     * Only entries in directories that can be packages are indexed, the same way
+     * {@link JavacFileManager} skips directories such as META-INF when walking an archive
+     */
+    private static boolean isValidDirectory(String directory) {
+        if (directory.isEmpty()) {
+            return true;
+        }
+        for (String name : directory.substring(0, directory.length() - 1).split("/")) {
+            if (!SourceVersion.isIdentifier(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getShort(ByteBuffer buffer, int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private static long getUnsignedInt(ByteBuffer buffer, int position) {
+        return buffer.getInt(position) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,106 @@
+package com.tyron.builder.compiler;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.api.Module;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+public class TaskGraphTest {
+
+    private static final File BUILD = new File("build");
+
+    @Test
+    public void testIndependentTasks() {
+        Task<Module> libraries = new FakeTask("libraries",
+                ImmutableSet.of(new File("libs")), ImmutableSet.of(new File(BUILD, "libs")));
+        Task<Module> firebase = new FakeTask("firebase",
+                ImmutableSet.of(new File("google-services.json")),
+                ImmutableSet.of(new File("res/values")));
+        Task<Module> resources = new FakeTask("resources",
+                ImmutableSet.of(new File("res"), new File(BUILD, "libs")),
+                ImmutableSet.of(new File(BUILD, "gen")));
+
+        TaskGraph<Module> graph = new TaskGraph<>(Arrays.asList(libraries, firebase, resources));
+        assertThat(graph.getDependencies(libraries)).isEmpty();
+        assertThat(graph.getDependencies(firebase)).isEmpty();
+        assertThat(graph.getDependencies(resources)).containsExactly(libraries, firebase);
+    }
+
+    @Test
+    public void testTransitiveDependenciesAreReduced() {
+        Task<Module> first = new FakeTask("first",
+                ImmutableSet.of(new File("src")), ImmutableSet.of(new File(BUILD, "gen")));
+        Task<Module> second = new FakeTask("second",
+                ImmutableSet.of(new File(BUILD, "gen")), ImmutableSet.of(new File(BUILD, "bin/java")));
+        Task<Module> third = new FakeTask("third",
+                ImmutableSet.of(new File(BUILD, "gen"), new File(BUILD, "bin/java/classes")),
+                ImmutableSet.of(new File(BUILD, "intermediate")));
+
+        TaskGraph<Module> graph = new TaskGraph<>(Arrays.asList(first, second, third));
+        assertThat(graph.getDependencies(third)).containsExactly(second);
+        assertThat(graph.getDependents(first)).containsExactly(second);
+    }
+
+    @Test
+    public void testUndeclaredTaskIsBarrier() {
+        Task<Module> first = new FakeTask("first",
+                ImmutableSet.of(new File("a")), ImmutableSet.of(new File(BUILD, "a")));
+        Task<Module> barrier = new FakeTask("barrier",
+                ImmutableSet.of(), ImmutableSet.of());
+        Task<Module> last = new FakeTask("last",
+                ImmutableSet.of(new File("b")), ImmutableSet.of(new File(BUILD, "b")));
+
+        List<Task<? super Module>> tasks = Arrays.asList(first, barrier, last);
+        TaskGraph<Module> graph = new TaskGraph<>(tasks);
+        assertThat(graph.getDependencies(barrier)).containsExactly(first);
+        assertThat(graph.getDependencies(last)).containsExactly(barrier);
+    }
+
+    private static class FakeTask extends Task<Module> {
+
+        private final String mName;
+        private final Set<File> mInputs;
+        private final Set<File> mOutputs;
+
+        FakeTask(String name, Set<File> inputs, Set<File> outputs) {
+            super(null, ILogger.STD_OUT);
+            mName = name;
+            mInputs = inputs;
+            mOutputs = outputs;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public Set<File> getInputs() {
+            return mInputs;
+        }
+
+        @Override
+        public Set<File> getOutputs() {
+            return mOutputs;
+        }
+
+        @Override
+        public void prepare(BuildType type) {
+
+        }
+
+        @Override
+        public void run() throws CompilationFailedException {
+
+        }
+    }
+}
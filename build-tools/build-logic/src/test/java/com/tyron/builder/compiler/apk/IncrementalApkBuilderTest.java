@@ -0,0 +1,167 @@
+package com.tyron.builder.compiler.apk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.apksig.ApkVerifier;
+import com.tyron.builder.compiler.ApkSigner;
+import com.tyron.common.TestUtil;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class IncrementalApkBuilderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mApk;
+    private File mState;
+    private File mLibrary;
+    private File mResources;
+    private File mDex;
+
+    @Before
+    public void setup() throws Exception {
+        File resourcesDir = TestUtil.getResourcesDirectory();
+        ApkSigner.setTestCertFile(new File(resourcesDir, "apksigner/testkey.x509.pem"));
+        ApkSigner.setTestKeyFile(new File(resourcesDir, "apksigner/testkey.pk8"));
+
+        mApk = new File(mFolder.getRoot(), "signed.apk");
+        mState = new File(mFolder.getRoot(), "apk-entries");
+
+        mLibrary = mFolder.newFile("library.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mLibrary))) {
+            out.putNextEntry(new ZipEntry("com/example/Library.class"));
+            out.write(new byte[]{1, 2, 3});
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("com/example/library.properties"));
+            out.write("name=library\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        mResources = mFolder.newFile("generated.apk.res");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mResources))) {
+            out.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            // the verifier reads the manifest
+            out.write(Files.readAllBytes(new File(resourcesDir,
+                    "apk/AndroidManifest.xml").toPath()));
+            out.putNextEntry(new ZipEntry("res/raw/data.txt"));
+            out.write("data".getBytes(StandardCharsets.UTF_8));
+            byte[] table = new byte[1001];
+            ZipEntry stored = new ZipEntry("resources.arsc");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(table.length);
+            CRC32 crc = new CRC32();
+            crc.update(table);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(table);
+        }
+
+        mDex = mFolder.newFile("classes.dex");
+        Files.write(mDex.toPath(), "dex\n035".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIncrementalBuild() throws Exception {
+        IncrementalApkBuilder builder = build();
+        assertThat(builder.getReusedEntries()).isEqualTo(0);
+        assertThat(verify()).isTrue();
+        try (ZipFile zip = new ZipFile(mApk)) {
+            assertThat(zip.getEntry("com/example/Library.class")).isNull();
+            assertThat(zip.getEntry("META-INF/MANIFEST.MF")).isNotNull();
+            assertThat(read(zip, "com/example/library.properties")).isEqualTo("name=library\n");
+            assertThat(read(zip, "res/raw/data.txt")).isEqualTo("data");
+            assertThat(read(zip, "classes.dex")).isEqualTo("dex\n035");
+        }
+
+        Files.write(mDex.toPath(), "dex\n035 changed".getBytes(StandardCharsets.UTF_8));
+        assertThat(mDex.setLastModified(mDex.lastModified() + 2000)).isTrue();
+        builder = build();
+        // only the dex file is written again
+        assertThat(builder.getReusedEntries()).isEqualTo(4);
+        assertThat(verify()).isTrue();
+        try (ZipFile zip = new ZipFile(mApk)) {
+            assertThat(read(zip, "com/example/library.properties")).isEqualTo("name=library\n");
+            assertThat(read(zip, "classes.dex")).isEqualTo("dex\n035 changed");
+        }
+
+        builder = build();
+        assertThat(builder.getReusedEntries()).isEqualTo(5);
+        assertThat(verify()).isTrue();
+    }
+
+    @Test
+    public void testStoredEntriesAreAligned() throws Exception {
+        build();
+        byte[] apk = Files.readAllBytes(mApk.toPath());
+        try (ZipFile zip = new ZipFile(mApk)) {
+            ZipEntry entry = zip.getEntry("resources.arsc");
+            assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+        }
+        // the data of the stored entry starts right after its local header
+        int header = indexOf(apk, "resources.arsc".getBytes(StandardCharsets.UTF_8));
+        int extraLength = (apk[header - 2] & 0xff) | ((apk[header - 1] & 0xff) << 8);
+        int dataStart = header + "resources.arsc".length() + extraLength;
+        assertThat(dataStart % 4).isEqualTo(0);
+    }
+
+    private IncrementalApkBuilder build() throws Exception {
+        IncrementalApkBuilder builder = new IncrementalApkBuilder(mApk, mState,
+                ApkSigner.createTestSignerEngine(21));
+        builder.addResourcesFromJar(mLibrary);
+        builder.addZipEntries(mResources, path -> true);
+        builder.addFile(mDex, "classes.dex");
+        builder.build();
+        return builder;
+    }
+
+    private boolean verify() throws Exception {
+        ApkVerifier.Result result = new ApkVerifier.Builder(mApk)
+                .setMinCheckedPlatformVersion(21)
+                .setMaxCheckedPlatformVersion(30)
+                .build()
+                .verify();
+        return result.isVerified() && result.isVerifiedUsingV1Scheme() &&
+                result.isVerifiedUsingV2Scheme();
+    }
+
+    private static String read(ZipFile zip, String name) throws IOException {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
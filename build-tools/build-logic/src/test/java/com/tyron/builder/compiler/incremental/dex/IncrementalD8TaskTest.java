@@ -0,0 +1,97 @@
+package com.tyron.builder.compiler.incremental.dex;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.compiler.BuildType;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.common.TestUtil;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+@RunWith(RobolectricTestRunner.class)
+public class IncrementalD8TaskTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockAndroidModule mModule;
+    private File mSources;
+    private File mClasses;
+
+    @Before
+    public void setup() throws Exception {
+        File resources = TestUtil.getResourcesDirectory();
+        File root = mFolder.newFolder("app");
+        mModule = new MockAndroidModule(root, new MockFileManager(root));
+        mModule.setLambdaStubsJarFile(new File(resources, "bootstraps/core-lambda-stubs.jar"));
+        mModule.setBootstrapFile(new File(resources, "bootstraps/rt.jar"));
+
+        mSources = mFolder.newFolder("src");
+        mClasses = new File(mModule.getBuildDirectory(), "bin/java/classes");
+        assertThat(mClasses.mkdirs()).isTrue();
+    }
+
+    @Test
+    public void testUnchangedDefaultPackageIsKept() throws Exception {
+        long past = System.currentTimeMillis() - 10_000;
+        compile("Default.java", "public class Default {}", past);
+        compile("com/test/Changed.java", "package com.test; public class Changed {}", past);
+        build();
+
+        File shards = new File(mModule.getBuildDirectory(), "intermediate/dex-shards");
+        assertThat(new File(shards, "default").isDirectory()).isTrue();
+        assertThat(dexContains("LDefault;")).isTrue();
+
+        // only the class of the other package has changed
+        compile("com/test/Changed.java",
+                "package com.test; public class Changed { int field; }",
+                System.currentTimeMillis() + 10_000);
+        build();
+
+        assertThat(new File(shards, "default").isDirectory()).isTrue();
+        assertThat(new File(shards, "com.test").isDirectory()).isTrue();
+        assertThat(dexContains("LDefault;")).isTrue();
+        assertThat(dexContains("Lcom/test/Changed;")).isTrue();
+    }
+
+    private void build() throws Exception {
+        IncrementalD8Task task = new IncrementalD8Task(mModule, ILogger.STD_OUT);
+        task.prepare(BuildType.DEBUG);
+        task.run();
+    }
+
+    private void compile(String path, String contents, long modified) throws Exception {
+        File file = new File(mSources, path);
+        File parent = file.getParentFile();
+        assertThat(parent.exists() || parent.mkdirs()).isTrue();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, null, "-source", "8", "-target", "8",
+                "-d", mClasses.getAbsolutePath(), file.getAbsolutePath());
+        assertThat(result).isEqualTo(0);
+        // the dex cache compares the modification time with the time it was dexed
+        assertThat(new File(mClasses, path.replace(".java", ".class"))
+                .setLastModified(modified)).isTrue();
+    }
+
+    private boolean dexContains(String descriptor) throws Exception {
+        File dex = new File(mModule.getBuildDirectory(), "bin/classes.dex");
+        String contents = new String(Files.readAllBytes(dex.toPath()), StandardCharsets.ISO_8859_1);
+        return contents.contains(descriptor);
+    }
+}
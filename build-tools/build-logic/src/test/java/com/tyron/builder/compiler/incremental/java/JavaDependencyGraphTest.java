@@ -0,0 +1,49 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+public class JavaDependencyGraphTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testTransitiveDependents() {
+        JavaDependencyGraph graph = createGraph();
+        assertThat(graph.getTransitiveDependents(Collections.singleton("A.java")))
+                .containsExactly("B.java", "C.java", "D.java");
+        assertThat(graph.getTransitiveDependents(Collections.singleton("C.java")))
+                .containsExactly("D.java");
+        assertThat(graph.getTransitiveDependents(Collections.singleton("D.java"))).isEmpty();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(mFolder.getRoot(), "dependencies.json");
+        createGraph().save(file);
+
+        JavaDependencyGraph graph = JavaDependencyGraph.load(file);
+        assertThat(graph.getSources()).containsExactly("A.java", "B.java", "C.java", "D.java");
+        assertThat(graph.getAbi("A.java")).isEqualTo("a");
+        assertThat(graph.getTransitiveDependents(Collections.singleton("B.java")))
+                .containsExactly("C.java", "D.java");
+    }
+
+    private static JavaDependencyGraph createGraph() {
+        JavaDependencyGraph graph = new JavaDependencyGraph();
+        graph.update("A.java", ImmutableSet.of("com.A"), ImmutableSet.of("java.lang.String"), "a");
+        graph.update("B.java", ImmutableSet.of("com.B"), ImmutableSet.of("com.A"), "b");
+        graph.update("C.java", ImmutableSet.of("com.C", "com.C2"), ImmutableSet.of("com.B"), "c");
+        graph.update("D.java", ImmutableSet.of("com.D"), ImmutableSet.of("com.C2"), "d");
+        return graph;
+    }
+}
@@ -0,0 +1,88 @@
+package com.tyron.builder.compiler.symbol;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.log.ILogger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class SymbolJarWriterTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testWrite() throws Exception {
+        StringBuilder styleable = new StringBuilder("int[] styleable Big { ");
+        for (int i = 0; i < 300; i++) {
+            if (i != 0) {
+                styleable.append(", ");
+            }
+            styleable.append("0x7f01").append(String.format("%04x", i));
+        }
+        styleable.append(" }");
+
+        // the values of the library are replaced by the final ones of the application
+        SymbolLoader library = load("library.txt",
+                "int id button 0x7f000001",
+                "int string app_name 0x7f000002",
+                "int[] styleable View { 0x7f000003, 0x0101000e }",
+                "int styleable View_enabled 1",
+                "int[] styleable Empty {  }",
+                styleable.toString());
+        SymbolLoader values = load("values.txt",
+                "int id button 0x7f0a0010",
+                "int id unused 0x7f0a0011",
+                "int string app_name 0x7f120000",
+                "int[] styleable View { 0x7f030005, 0x0101000e }",
+                "int styleable View_enabled 1",
+                "int[] styleable Empty {  }",
+                styleable.toString());
+
+        File jar = new File(mFolder.getRoot(), "r/classes.jar");
+        SymbolJarWriter writer = new SymbolJarWriter(jar, "com.test.library", values);
+        writer.addSymbolsToWrite(library);
+        writer.write();
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)) {
+            Class<?> id = loader.loadClass("com.test.library.R$id");
+            assertThat(id.getField("button").getInt(null)).isEqualTo(0x7f0a0010);
+            // only the symbols of the library are written
+            assertThat(id.getFields()).hasLength(1);
+            assertThat(Modifier.isFinal(id.getField("button").getModifiers())).isTrue();
+
+            Class<?> string = loader.loadClass("com.test.library.R$string");
+            assertThat(string.getField("app_name").getInt(null)).isEqualTo(0x7f120000);
+
+            Class<?> view = loader.loadClass("com.test.library.R$styleable");
+            assertThat((int[]) view.getField("View").get(null))
+                    .asList().containsExactly(0x7f030005, 0x0101000e).inOrder();
+            assertThat(view.getField("View_enabled").getInt(null)).isEqualTo(1);
+            assertThat((int[]) view.getField("Empty").get(null)).isEmpty();
+            int[] big = (int[]) view.getField("Big").get(null);
+            assertThat(big).hasLength(300);
+            assertThat(big[299]).isEqualTo(0x7f01012b);
+
+            Class<?> r = loader.loadClass("com.test.library.R");
+            assertThat(r.getDeclaredClasses()).hasLength(3);
+            assertThat(view.getDeclaringClass()).isEqualTo(r);
+        }
+    }
+
+    private SymbolLoader load(String name, String... lines) throws Exception {
+        File file = mFolder.newFile(name);
+        Files.write(file.toPath(), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        SymbolLoader loader = new SymbolLoader(file, ILogger.EMPTY);
+        loader.load();
+        return loader;
+    }
+}
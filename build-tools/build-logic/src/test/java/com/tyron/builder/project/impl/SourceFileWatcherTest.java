@@ -0,0 +1,115 @@
+package com.tyron.builder.project.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class SourceFileWatcherTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final BlockingQueue<String> mEvents = new LinkedBlockingQueue<>();
+    private SourceFileWatcher mWatcher;
+
+    @Before
+    public void setup() throws Exception {
+        mWatcher = new SourceFileWatcher("Test", new SourceFileWatcher.Callback() {
+            @Override
+            public void onCreated(@NonNull File file) {
+                mEvents.add("created " + file.getName());
+            }
+
+            @Override
+            public void onDeleted(@NonNull File file) {
+                mEvents.add("deleted " + file.getName());
+            }
+
+            @Override
+            public void onModified(@NonNull File file) {
+                mEvents.add("modified " + file.getName());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mWatcher.close();
+    }
+
+    @Test
+    public void testExistingFilesAreWalked() throws Exception {
+        File root = mFolder.newFolder("java");
+        File file = new File(root, "com/test/Main.java");
+        assertThat(file.getParentFile().mkdirs()).isTrue();
+        Files.write(file.toPath(), "package com.test;".getBytes());
+
+        List<File> files = new ArrayList<>();
+        mWatcher.watch(root, files::add);
+        assertThat(files).containsExactly(file);
+    }
+
+    @Test
+    public void testChangesAreReported() throws Exception {
+        File root = mFolder.newFolder("java");
+        mWatcher.watch(root, file -> {});
+        mWatcher.start();
+
+        File directory = new File(root, "com");
+        assertThat(directory.mkdir()).isTrue();
+        File file = new File(directory, "Main.java");
+        Files.write(file.toPath(), "package com;".getBytes());
+        awaitEvent("created Main.java");
+
+        Files.write(file.toPath(), "package com;\nclass Main {}".getBytes());
+        awaitEvent("modified Main.java");
+
+        assertThat(file.delete()).isTrue();
+        awaitEvent("deleted Main.java");
+    }
+
+    @Test
+    public void testRootIsWatchedOnceCreated() throws Exception {
+        File root = new File(mFolder.getRoot(), "build/gen");
+        mWatcher.watch(root, file -> {});
+        mWatcher.start();
+
+        File file = new File(root, "R.java");
+        assertThat(root.mkdirs()).isTrue();
+        // the directory may be registered after the file has been written
+        Files.write(file.toPath(), "class R {}".getBytes());
+        awaitEvent("created R.java");
+    }
+
+    private void awaitEvent(String expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        List<String> received = new ArrayList<>();
+        while (System.nanoTime() < deadline) {
+            String event = mEvents.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (event == null) {
+                break;
+            }
+            if (event.equals(expected)) {
+                return;
+            }
+            received.add(event);
+        }
+        assertThat(received).contains(expected);
+    }
+}
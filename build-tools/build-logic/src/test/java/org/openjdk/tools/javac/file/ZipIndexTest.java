@@ -0,0 +1,154 @@
+package org.openjdk.tools.javac.file;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+public class ZipIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testListAndRead() throws Exception {
+        File jar = mFolder.newFile("test.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("com/test/"));
+            putEntry(out, "com/test/A.class", "deflated", ZipEntry.DEFLATED);
+            putEntry(out, "com/test/inner/B.class", "stored", ZipEntry.STORED);
+        }
+
+        ZipIndex index = ZipIndex.get(jar.toPath());
+        assertThat(names(index.list(new RelativePath.RelativeDirectory("com/test/"))))
+                .containsExactly("com/test/A.class");
+        assertThat(names(index.listRecursive(new RelativePath.RelativeDirectory("com/"))))
+                .containsExactly("com/test/A.class", "com/test/inner/B.class");
+        assertThat(index.list(new RelativePath.RelativeDirectory("META-INF/"))).isEmpty();
+        assertThat(index.containsDirectory(new RelativePath.RelativeDirectory("com/"))).isTrue();
+
+        ZipIndex.Entry a = index.getEntry(new RelativePath.RelativeFile("com/test/A.class"));
+        ZipIndex.Entry b = index.getEntry(new RelativePath.RelativeFile("com/test/inner/B.class"));
+        assertThat(new String(index.read(a), StandardCharsets.UTF_8)).isEqualTo("deflated");
+        assertThat(new String(index.read(b), StandardCharsets.UTF_8)).isEqualTo("stored");
+        assertThat(ZipIndex.get(jar.toPath())).isSameInstanceAs(index);
+    }
+
+    @Test
+    public void testChangedArchiveIsIndexedAgain() throws Exception {
+        File jar = mFolder.newFile("changed.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            putEntry(out, "A.class", "a", ZipEntry.DEFLATED);
+        }
+        ZipIndex first = ZipIndex.get(jar.toPath());
+
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            putEntry(out, "A.class", "a", ZipEntry.DEFLATED);
+            putEntry(out, "B.class", "b", ZipEntry.DEFLATED);
+        }
+        assertThat(jar.setLastModified(first.getLastModified() + 2000)).isTrue();
+
+        // the old mapping must not be read once the jar has been rewritten
+        assertThat(first.isCurrent()).isFalse();
+        ZipIndex.Entry entry = first.getEntry(new RelativePath.RelativeFile("A.class"));
+        try {
+            first.read(entry);
+            fail("Expected the changed archive to not be read");
+        } catch (ZipException expected) {
+            assertThat(first.isMapped()).isFalse();
+        }
+
+        ZipIndex second = ZipIndex.get(jar.toPath());
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(names(second.list(new RelativePath.RelativeDirectory(""))))
+                .containsExactly("A.class", "B.class");
+    }
+
+    @Test
+    public void testReleasedArchiveIsMappedAgain() throws Exception {
+        File jar = mFolder.newFile("released.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            putEntry(out, "A.class", "a", ZipEntry.DEFLATED);
+        }
+        ZipIndex index = ZipIndex.get(jar.toPath());
+        assertThat(index.isMapped()).isTrue();
+        assertThat(index.isMultiRelease()).isFalse();
+
+        index.release();
+        assertThat(index.isMapped()).isFalse();
+        ZipIndex.Entry entry = index.getEntry(new RelativePath.RelativeFile("A.class"));
+        assertThat(new String(index.read(entry), StandardCharsets.UTF_8)).isEqualTo("a");
+        assertThat(index.isMapped()).isTrue();
+    }
+
+    @Test
+    public void testMultiReleaseArchive() throws Exception {
+        File jar = mFolder.newFile("multi-release.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Multi-Release: true\n".getBytes(StandardCharsets.UTF_8));
+            putEntry(out, "com/test/A.class", "a", ZipEntry.DEFLATED);
+            putEntry(out, "META-INF/versions/9/com/test/A.class", "a9", ZipEntry.DEFLATED);
+        }
+        assertThat(ZipIndex.get(jar.toPath()).isMultiRelease()).isTrue();
+    }
+
+    @Test
+    public void testDeletedArchiveIsDropped() throws Exception {
+        File deleted = mFolder.newFile("deleted.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(deleted))) {
+            putEntry(out, "A.class", "a", ZipEntry.DEFLATED);
+        }
+        ZipIndex.get(deleted.toPath());
+        assertThat(ZipIndex.isCached(deleted.toPath())).isTrue();
+        assertThat(deleted.delete()).isTrue();
+
+        File other = mFolder.newFile("other.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(other))) {
+            putEntry(out, "B.class", "b", ZipEntry.DEFLATED);
+        }
+        ZipIndex.get(other.toPath());
+        assertThat(ZipIndex.isCached(other.toPath())).isTrue();
+        assertThat(ZipIndex.isCached(deleted.toPath())).isFalse();
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, String contents, int method)
+            throws IOException {
+        byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static List<String> names(List<ZipIndex.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (ZipIndex.Entry entry : entries) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+}
@@ -74,11 +74,14 @@ public class Cache<K, V> {
     @SafeVarargs
     public final void remove(Path file, K... keys) {
         for (K k : keys) {
-            Key<K> key = new Key<>(file, k);
-            map.remove(key);
+            removeKey(new Key<>(file, k));
         }
     }
 
+    protected void removeKey(Key<K> key) {
+        map.remove(key);
+    }
+
     public Set<Key<K>> getKeys() {
         return map.keySet();
     }
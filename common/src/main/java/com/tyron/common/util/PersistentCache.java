@@ -0,0 +1,311 @@
+package com.tyron.common.util;
+
+import android.util.Log;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Cache} that survives process restarts. Instead of comparing the modification time
+ * against the time the value was loaded, a mapping is valid for as long as the content hash of
+ * the file stays the same, the modification time and size are only used to skip hashing files
+ * that have not been touched.
+ *
+ * Every change is appended to a journal file which is replayed when the cache is created and
+ * compacted once it grows too large. Entries are evicted in least recently used order when the
+ * total size of the entries exceeds the given budget.
+ */
+public class PersistentCache<K, V> extends Cache<K, V> {
+
+    private static final String TAG = PersistentCache.class.getSimpleName();
+
+    private static final String OP_PUT = "put";
+    private static final String OP_REMOVE = "remove";
+    private static final String OP_CLEAR = "clear";
+
+    private class Entry {
+        final String hash;
+        final long modified;
+        final long size;
+        final V value;
+        final String line;
+
+        Entry(String hash, long modified, long size, V value, String line) {
+            this.hash = hash;
+            this.modified = modified;
+            this.size = size;
+            this.value = value;
+            this.line = line;
+        }
+    }
+
+    private final File mJournal;
+    private final Type mKeyType;
+    private final Type mValueType;
+    private final long mMaxSize;
+    private final Gson mGson;
+
+    private final LinkedHashMap<Key<K>, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSize;
+    private int mJournalLines;
+
+    public PersistentCache(File journal, Type keyType, Type valueType, long maxSize) {
+        mJournal = journal;
+        mKeyType = keyType;
+        mValueType = valueType;
+        mMaxSize = maxSize;
+        mGson = new GsonBuilder()
+                .serializeNulls()
+                .registerTypeHierarchyAdapter(File.class, new FileAdapter())
+                .create();
+        readJournal();
+    }
+
+    @Override
+    public synchronized boolean needs(Path file, K k) {
+        Key<K> key = new Key<>(file, k);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return true;
+        }
+
+        File ioFile = file.toFile();
+        if (!ioFile.exists()) {
+            return true;
+        }
+
+        if (ioFile.lastModified() == entry.modified && ioFile.length() == entry.size) {
+            return false;
+        }
+
+        String hash = hash(ioFile);
+        if (hash == null || !hash.equals(entry.hash)) {
+            return true;
+        }
+
+        // the file was touched but its contents are the same, remember the new timestamp so
+        // the file does not have to be hashed again next time
+        put(key, hash, ioFile, entry.value);
+        return false;
+    }
+
+    @Override
+    public synchronized void load(Path file, K k, V v) {
+        File ioFile = file.toFile();
+        put(new Key<>(file, k), hash(ioFile), ioFile, v);
+    }
+
+    @Override
+    public synchronized V get(Path file, K k) {
+        Entry entry = mEntries.get(new Key<>(file, k));
+        if (entry == null) {
+            throw new IllegalArgumentException(k + " is not in cache " + mJournal.getName());
+        }
+        return entry.value;
+    }
+
+    @Override
+    public synchronized Set<Key<K>> getKeys() {
+        return mEntries.keySet();
+    }
+
+    @Override
+    public synchronized void clear() {
+        mEntries.clear();
+        mSize = 0;
+        JsonObject object = new JsonObject();
+        object.addProperty("op", OP_CLEAR);
+        append(object.toString());
+    }
+
+    @Override
+    protected synchronized void removeKey(Key<K> key) {
+        Entry removed = mEntries.remove(key);
+        if (removed == null) {
+            return;
+        }
+        mSize -= removed.line.length();
+        append(removeLine(key));
+    }
+
+    private void put(Key<K> key, String hash, File file, V value) {
+        JsonObject object = new JsonObject();
+        object.addProperty("op", OP_PUT);
+        object.addProperty("path", key.file.toString());
+        object.add("key", mGson.toJsonTree(key.key, mKeyType));
+        object.addProperty("hash", hash);
+        object.addProperty("modified", file.lastModified());
+        object.addProperty("size", file.length());
+        object.add("value", mGson.toJsonTree(value, mValueType));
+        String line = object.toString();
+
+        Entry old = mEntries.put(key, new Entry(hash, file.lastModified(), file.length(), value, line));
+        if (old != null) {
+            mSize -= old.line.length();
+        }
+        mSize += line.length();
+        append(line);
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<Key<K>, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<Key<K>, Entry> eldest = iterator.next();
+            iterator.remove();
+            mSize -= eldest.getValue().line.length();
+            append(removeLine(eldest.getKey()));
+        }
+    }
+
+    private String removeLine(Key<K> key) {
+        JsonObject object = new JsonObject();
+        object.addProperty("op", OP_REMOVE);
+        object.addProperty("path", key.file.toString());
+        object.add("key", mGson.toJsonTree(key.key, mKeyType));
+        return object.toString();
+    }
+
+    private void append(String line) {
+        // rewrite the journal once most of its lines no longer describe a live entry
+        if (mJournalLines > 2 * mEntries.size() + 64 && rebuildJournal()) {
+            return;
+        }
+        File parent = mJournal.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log.w(TAG, "Unable to create cache directory " + parent);
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(mJournal, true))) {
+            writer.write(line);
+            writer.newLine();
+            mJournalLines++;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write to cache journal " + mJournal, e);
+        }
+    }
+
+    private boolean rebuildJournal() {
+        File temp = new File(mJournal.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            for (Entry entry : mEntries.values()) {
+                writer.write(entry.line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to rebuild cache journal " + mJournal, e);
+            return false;
+        }
+        if (!temp.renameTo(mJournal)) {
+            Log.w(TAG, "Unable to replace cache journal " + mJournal);
+            return false;
+        }
+        mJournalLines = mEntries.size();
+        return true;
+    }
+
+    private void readJournal() {
+        if (!mJournal.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(mJournal))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                mJournalLines++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                JsonObject object = JsonParser.parseString(line).getAsJsonObject();
+                String op = object.get("op").getAsString();
+                if (OP_CLEAR.equals(op)) {
+                    mEntries.clear();
+                    mSize = 0;
+                    continue;
+                }
+
+                Path path = Paths.get(object.get("path").getAsString());
+                K k = mGson.fromJson(object.get("key"), mKeyType);
+                Key<K> key = new Key<>(path, k);
+                Entry old;
+                if (OP_PUT.equals(op)) {
+                    JsonElement hash = object.get("hash");
+                    V value = mGson.fromJson(object.get("value"), mValueType);
+                    old = mEntries.put(key, new Entry(hash.isJsonNull() ? null : hash.getAsString(),
+                            object.get("modified").getAsLong(), object.get("size").getAsLong(),
+                            value, line));
+                    mSize += line.length();
+                } else {
+                    old = mEntries.remove(key);
+                }
+                if (old != null) {
+                    mSize -= old.line.length();
+                }
+            }
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            // a corrupt journal only means that everything has to be rebuilt once
+            Log.w(TAG, "Discarding unreadable cache journal " + mJournal, e);
+            mEntries.clear();
+            mSize = 0;
+            if (!mJournal.delete()) {
+                Log.w(TAG, "Unable to delete cache journal " + mJournal);
+            }
+            mJournalLines = 0;
+        }
+    }
+
+    private static String hash(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return Files.asByteSource(file).hash(Hashing.murmur3_128()).toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class FileAdapter extends TypeAdapter<File> {
+
+        @Override
+        public void write(JsonWriter out, File value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.value(value.getPath());
+            }
+        }
+
+        @Override
+        public File read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return new File(in.nextString());
+        }
+    }
+}
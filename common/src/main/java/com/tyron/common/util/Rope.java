@@ -0,0 +1,284 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable {@link CharSequence} stored as a balanced tree of small chunks of text.
+ *
+ * Replacing a range of the text creates a new rope that shares every chunk outside of the
+ * range with the old one, so an edit only allocates the nodes on the path to the range instead
+ * of a copy of the whole text. {@link #subSequence(int, int)} returns a rope that shares the
+ * chunks in the same way. The string form is built once per rope and kept, so callers that
+ * need a {@link String} such as the compilers only copy each version of the text once.
+ */
+public abstract class Rope implements CharSequence {
+
+    /**
+     * The maximum number of characters in a chunk, chunks that are split by an edit are
+     * merged with their neighbours while they fit
+     */
+    private static final int LEAF_SIZE = 1024;
+
+    /**
+     * Edits at the same place make the tree lean to one side, it is rebuilt once it gets
+     * deeper than this
+     */
+    private static final int MAX_DEPTH = 48;
+
+    public static final Rope EMPTY = new Leaf("");
+
+    private volatile String mString;
+
+    private Rope() {
+
+    }
+
+    /**
+     * @return A rope with a copy of the given text, or the text itself if it is a rope
+     */
+    @NonNull
+    public static Rope of(@NonNull CharSequence text) {
+        if (text instanceof Rope) {
+            return (Rope) text;
+        }
+        String string = text.toString();
+        Rope rope = build(string, 0, string.length());
+        rope.mString = string;
+        return rope;
+    }
+
+    /**
+     * @return A rope with the text between start and end replaced with the given text
+     */
+    @NonNull
+    public Rope replace(int start, int end, @NonNull CharSequence text) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end +
+                    ", length " + length());
+        }
+        Rope inserted = text.length() == 0 ? EMPTY : of(text);
+        return concat(concat(sub(0, start), inserted), sub(end, length()));
+    }
+
+    @NonNull
+    public Rope insert(int index, @NonNull CharSequence text) {
+        return replace(index, index, text);
+    }
+
+    @NonNull
+    public Rope delete(int start, int end) {
+        return replace(start, end, "");
+    }
+
+    @NonNull
+    @Override
+    public Rope subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end +
+                    ", length " + length());
+        }
+        return sub(start, end);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        String string = mString;
+        if (string == null) {
+            StringBuilder builder = new StringBuilder(length());
+            appendTo(builder);
+            string = builder.toString();
+            mString = string;
+        }
+        return string;
+    }
+
+    abstract int depth();
+
+    abstract Rope sub(int start, int end);
+
+    abstract void appendTo(StringBuilder builder);
+
+    abstract void collectLeaves(List<Leaf> leaves);
+
+    private static Rope build(String text, int start, int end) {
+        int length = end - start;
+        if (length <= LEAF_SIZE) {
+            return new Leaf(text.substring(start, end));
+        }
+        int middle = start + length / 2;
+        return new Node(build(text, start, middle), build(text, middle, end));
+    }
+
+    private static Rope concat(Rope left, Rope right) {
+        if (left.length() == 0) {
+            return right;
+        }
+        if (right.length() == 0) {
+            return left;
+        }
+        if (left.length() + right.length() <= LEAF_SIZE) {
+            return new Leaf(left.toString() + right.toString());
+        }
+        // typing extends the chunk at the end of the left side instead of adding a new one
+        if (left instanceof Node && right instanceof Leaf) {
+            Node node = (Node) left;
+            if (node.mRight.length() + right.length() <= LEAF_SIZE) {
+                return concat(node.mLeft,
+                        new Leaf(node.mRight.toString() + right.toString()));
+            }
+        }
+        if (left instanceof Leaf && right instanceof Node) {
+            Node node = (Node) right;
+            if (left.length() + node.mLeft.length() <= LEAF_SIZE) {
+                return concat(new Leaf(left.toString() + node.mLeft.toString()),
+                        node.mRight);
+            }
+        }
+
+        Node node = new Node(left, right);
+        if (node.depth() > MAX_DEPTH) {
+            return rebalance(node);
+        }
+        return node;
+    }
+
+    private static Rope rebalance(Rope rope) {
+        List<Leaf> leaves = new ArrayList<>();
+        rope.collectLeaves(leaves);
+        return merge(leaves, 0, leaves.size());
+    }
+
+    private static Rope merge(List<Leaf> leaves, int start, int end) {
+        int count = end - start;
+        if (count == 1) {
+            return leaves.get(start);
+        }
+        int middle = start + count / 2;
+        return new Node(merge(leaves, start, middle), merge(leaves, middle, end));
+    }
+
+    static final class Leaf extends Rope {
+
+        private final String mText;
+
+        Leaf(String text) {
+            mText = text;
+        }
+
+        @Override
+        public int length() {
+            return mText.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return mText.charAt(index);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return mText;
+        }
+
+        @Override
+        int depth() {
+            return 0;
+        }
+
+        @Override
+        Rope sub(int start, int end) {
+            if (start == 0 && end == mText.length()) {
+                return this;
+            }
+            return new Leaf(mText.substring(start, end));
+        }
+
+        @Override
+        void appendTo(StringBuilder builder) {
+            builder.append(mText);
+        }
+
+        @Override
+        void collectLeaves(List<Leaf> leaves) {
+            if (!mText.isEmpty()) {
+                leaves.add(this);
+            }
+        }
+    }
+
+    static final class Node extends Rope {
+
+        private final Rope mLeft;
+        private final Rope mRight;
+        private final int mLength;
+        private final int mDepth;
+
+        Node(Rope left, Rope right) {
+            mLeft = left;
+            mRight = right;
+            mLength = left.length() + right.length();
+            mDepth = Math.max(left.depth(), right.depth()) + 1;
+        }
+
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= mLength) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + mLength);
+            }
+            Rope current = this;
+            while (current instanceof Node) {
+                Node node = (Node) current;
+                int leftLength = node.mLeft.length();
+                if (index < leftLength) {
+                    current = node.mLeft;
+                } else {
+                    index -= leftLength;
+                    current = node.mRight;
+                }
+            }
+            return current.charAt(index);
+        }
+
+        @Override
+        int depth() {
+            return mDepth;
+        }
+
+        @Override
+        Rope sub(int start, int end) {
+            if (start == 0 && end == mLength) {
+                return this;
+            }
+            int leftLength = mLeft.length();
+            if (end <= leftLength) {
+                return mLeft.sub(start, end);
+            }
+            if (start >= leftLength) {
+                return mRight.sub(start - leftLength, end - leftLength);
+            }
+            return concat(mLeft.sub(start, leftLength), mRight.sub(0, end - leftLength));
+        }
+
+        @Override
+        void appendTo(StringBuilder builder) {
+            mLeft.appendTo(builder);
+            mRight.appendTo(builder);
+        }
+
+        @Override
+        void collectLeaves(List<Leaf> leaves) {
+            mLeft.collectLeaves(leaves);
+            mRight.collectLeaves(leaves);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class PersistentCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testSurvivesRestart() throws IOException {
+        File journal = new File(mFolder.getRoot(), "caches/test.journal");
+        Path source = write("Main.java", "class Main {}");
+
+        PersistentCache<String, String> cache = create(journal, Long.MAX_VALUE);
+        assertTrue(cache.needs(source, "class"));
+        cache.load(source, "class", "Main.class");
+
+        PersistentCache<String, String> restored = create(journal, Long.MAX_VALUE);
+        assertFalse(restored.needs(source, "class"));
+        assertEquals("Main.class", restored.get(source, "class"));
+    }
+
+    @Test
+    public void testContentHash() throws IOException {
+        File journal = new File(mFolder.getRoot(), "test.journal");
+        Path source = write("Main.java", "class Main {}");
+
+        PersistentCache<String, String> cache = create(journal, Long.MAX_VALUE);
+        cache.load(source, "class", "Main.class");
+
+        // same contents with a different timestamp is still valid
+        assertTrue(source.toFile().setLastModified(source.toFile().lastModified() + 10_000));
+        assertFalse(cache.needs(source, "class"));
+
+        write("Main.java", "class Main { int field; }");
+        assertTrue(cache.needs(source, "class"));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File journal = new File(mFolder.getRoot(), "test.journal");
+        Path first = write("First.java", "class First {}");
+        Path second = write("Second.java", "class Second {}");
+
+        PersistentCache<String, String> cache = create(journal, 1);
+        cache.load(first, "class", "First.class");
+        cache.load(second, "class", "Second.class");
+        assertTrue(cache.needs(first, "class"));
+
+        cache.remove(second, "class");
+        assertTrue(create(journal, Long.MAX_VALUE).getKeys().isEmpty());
+    }
+
+    private PersistentCache<String, String> create(File journal, long maxSize) {
+        return new PersistentCache<>(journal, String.class, String.class, maxSize);
+    }
+
+    private Path write(String name, String contents) throws IOException {
+        File file = new File(mFolder.getRoot(), name);
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(contents);
+        }
+        return file.toPath();
+    }
+}
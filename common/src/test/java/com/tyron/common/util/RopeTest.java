@@ -0,0 +1,71 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RopeTest {
+
+    @Test
+    public void testReplace() {
+        Rope rope = Rope.of("Hello World");
+        Rope edited = rope.replace(6, 11, "Rope");
+        assertEquals("Hello Rope", edited.toString());
+        // the previous snapshot is not changed
+        assertEquals("Hello World", rope.toString());
+
+        assertEquals("Hello, Rope", edited.insert(5, ",").toString());
+        assertEquals("Rope", edited.delete(0, 6).toString());
+    }
+
+    @Test
+    public void testSubSequence() {
+        String text = createText(10_000);
+        Rope rope = Rope.of(text);
+        assertSame(rope, rope.subSequence(0, rope.length()));
+        assertEquals(text.substring(1500, 7300), rope.subSequence(1500, 7300).toString());
+        assertEquals(text.charAt(4321), rope.charAt(4321));
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder(createText(50_000));
+        Rope rope = Rope.of(expected);
+        for (int i = 0; i < 5_000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = Math.min(expected.length(), start + random.nextInt(8));
+            String text = random.nextBoolean() ? "" : createText(random.nextInt(16));
+            expected.replace(start, end, text);
+            rope = rope.replace(start, end, text);
+        }
+        assertEquals(expected.length(), rope.length());
+        assertEquals(expected.toString(), rope.toString());
+        for (int i = 0; i < 100; i++) {
+            int index = random.nextInt(expected.length());
+            assertEquals(expected.charAt(index), rope.charAt(index));
+        }
+    }
+
+    @Test
+    public void testTypingAtSamePlace() {
+        Rope rope = Rope.of(createText(100_000));
+        StringBuilder expected = new StringBuilder(rope);
+        for (int i = 0; i < 10_000; i++) {
+            rope = rope.insert(50_000 + i, "x");
+            expected.insert(50_000 + i, "x");
+        }
+        assertEquals(expected.toString(), rope.toString());
+    }
+
+    private static String createText(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(i % 80 == 79 ? '\n' : (char) ('a' + i % 26));
+        }
+        return builder.toString();
+    }
+}
@@ -1,8 +1,10 @@
 package com.tyron.completion.model;
 
 import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.util.CompletionFilter;
 
 import java.io.File;
+import java.util.List;
 
 public class CachedCompletion {
     private final File file;
@@ -11,6 +13,9 @@ public class CachedCompletion {
     private final String prefix;
     private final CompletionList completionList;
 
+    private String narrowedPrefix;
+    private List<CompletionItem> narrowedItems;
+
     public CachedCompletion(File file, int line, int column, String prefix, CompletionList completionList) {
         this.file = file;
         this.line = line;
@@ -38,4 +43,25 @@ public class CachedCompletion {
     public CompletionList getCompletionList() {
         return completionList;
     }
-}
\ No newline at end of file
+
+    /**
+     * Filters the cached items with {@link CompletionFilter#filter(java.util.Collection, String)}.
+     * If the partial identifier extends the one of the previous call, only the items that
+     * matched that call are filtered again.
+     *
+     * @param partial the identifier the user has typed so far
+     * @return the cached items that match the identifier, in their original order
+     */
+    public synchronized List<CompletionItem> narrow(String partial) {
+        List<CompletionItem> candidates = completionList.items;
+        if (narrowedPrefix != null && partial.startsWith(narrowedPrefix)) {
+            if (partial.equals(narrowedPrefix)) {
+                return narrowedItems;
+            }
+            candidates = narrowedItems;
+        }
+        narrowedItems = CompletionFilter.filter(candidates, partial);
+        narrowedPrefix = partial;
+        return narrowedItems;
+    }
+}
@@ -0,0 +1,106 @@
+package com.tyron.completion.util;
+
+import com.tyron.completion.model.CompletionItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+
+/**
+ * Filters and ranks completion items against the identifier the user is typing.
+ *
+ * Filtering only keeps the items whose label contains the characters of the identifier in
+ * order, ignoring case. An item that does not match a prefix will not match any longer prefix
+ * either, so the items that survived the previous keystroke can be filtered again instead of
+ * the whole list. The fuzzy score is only computed for those survivors.
+ */
+public class CompletionFilter {
+
+    /**
+     * @return the items whose label contains the characters of the partial identifier in order
+     */
+    public static List<CompletionItem> filter(Collection<CompletionItem> items, String partial) {
+        List<CompletionItem> result = new ArrayList<>();
+        for (CompletionItem item : items) {
+            if (isSubsequence(partial, getLabel(item))) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sorts the items by how well they match the partial identifier and only keeps the best
+     * ones, items with the same score keep their original order
+     *
+     * @param limit the maximum number of items to return
+     */
+    public static List<CompletionItem> rank(List<CompletionItem> items, String partial,
+                                            int limit) {
+        if (limit <= 0 || items.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // the worst item is at the head of the queue so it can be replaced by a better one
+        PriorityQueue<RankedItem> queue = new PriorityQueue<>(Math.min(limit, items.size()),
+                (a, b) -> a.score != b.score
+                        ? Integer.compare(a.score, b.score)
+                        : Integer.compare(b.index, a.index));
+        for (int i = 0; i < items.size(); i++) {
+            CompletionItem item = items.get(i);
+            RankedItem ranked = new RankedItem(item, FuzzySearch.ratio(getLabel(item), partial), i);
+            if (queue.size() < limit) {
+                queue.add(ranked);
+            } else if (queue.comparator().compare(ranked, queue.peek()) > 0) {
+                queue.poll();
+                queue.add(ranked);
+            }
+        }
+
+        CompletionItem[] result = new CompletionItem[queue.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = queue.poll().item;
+        }
+        List<CompletionItem> list = new ArrayList<>(result.length);
+        Collections.addAll(list, result);
+        return list;
+    }
+
+    public static boolean isSubsequence(String partial, String label) {
+        int index = 0;
+        for (int i = 0; i < label.length() && index < partial.length(); i++) {
+            if (Character.toLowerCase(label.charAt(i)) ==
+                    Character.toLowerCase(partial.charAt(index))) {
+                index++;
+            }
+        }
+        return index == partial.length();
+    }
+
+    /**
+     * @return the label of the item without the parameters of a method
+     */
+    public static String getLabel(CompletionItem item) {
+        String label = item.label;
+        int index = label.indexOf('(');
+        if (index != -1) {
+            label = label.substring(0, index);
+        }
+        return label;
+    }
+
+    private static class RankedItem {
+        final CompletionItem item;
+        final int score;
+        final int index;
+
+        RankedItem(CompletionItem item, int score, int index) {
+            this.item = item;
+            this.score = score;
+            this.index = index;
+        }
+    }
+}
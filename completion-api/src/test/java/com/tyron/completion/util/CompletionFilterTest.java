@@ -0,0 +1,69 @@
+package com.tyron.completion.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.completion.model.CachedCompletion;
+import com.tyron.completion.model.CompletionItem;
+import com.tyron.completion.model.CompletionList;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompletionFilterTest {
+
+    @Test
+    public void testSubsequence() {
+        assertTrue(CompletionFilter.isSubsequence("gtv", "getValue"));
+        assertTrue(CompletionFilter.isSubsequence("GETV", "getValue"));
+        assertTrue(CompletionFilter.isSubsequence("", "getValue"));
+        assertFalse(CompletionFilter.isSubsequence("vg", "getValue"));
+    }
+
+    @Test
+    public void testRankKeepsBestItems() {
+        List<CompletionItem> items = items("toString()", "getValue()", "getValues()", "get()");
+        List<CompletionItem> ranked = CompletionFilter.rank(items, "getValue", 2);
+        assertEquals(2, ranked.size());
+        assertEquals("getValue()", ranked.get(0).label);
+        assertEquals("getValues()", ranked.get(1).label);
+    }
+
+    @Test
+    public void testNarrow() {
+        CompletionList list = new CompletionList();
+        list.items = items("getValue()", "setValue()", "getName()", "toString()");
+        CachedCompletion cached = new CachedCompletion(new File("Test.java"), 0, 0, "", list);
+
+        assertEquals(labels(cached.narrow("get")), Arrays.asList("getValue()", "getName()"));
+        List<CompletionItem> narrowed = cached.narrow("getV");
+        assertEquals(labels(narrowed), Arrays.asList("getValue()"));
+        assertSame(narrowed, cached.narrow("getV"));
+
+        // a shorter identifier starts from the whole list again
+        assertEquals(labels(cached.narrow("e")),
+                Arrays.asList("getValue()", "setValue()", "getName()"));
+    }
+
+    private static List<CompletionItem> items(String... labels) {
+        List<CompletionItem> items = new ArrayList<>();
+        for (String label : labels) {
+            items.add(new CompletionItem(label));
+        }
+        return items;
+    }
+
+    private static List<String> labels(List<CompletionItem> items) {
+        List<String> labels = new ArrayList<>();
+        for (CompletionItem item : items) {
+            labels.add(item.label);
+        }
+        return labels;
+    }
+}
@@ -2,25 +2,69 @@ package com.tyron.resolver;
 
 import android.text.TextUtils;
 
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
 import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.Repository;
 import com.tyron.resolver.repository.RepositoryManager;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DependencyResolver {
 
+    /**
+     * The number of POMs and libraries that are downloaded at the same time
+     */
+    private static final int MAX_CONCURRENT_DOWNLOADS = 6;
+
+    private static ExecutorService sExecutor;
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (sExecutor == null) {
+            AtomicInteger count = new AtomicInteger();
+            sExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_DOWNLOADS, r -> {
+                Thread thread = new Thread(r, "dependency-resolver-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sExecutor;
+    }
+
     private final RepositoryManager repository;
+    private final ExecutorService executor;
     private final Map<Pom, String> resolvedPoms;
 
     private ResolveListener mListener;
 
     public DependencyResolver(RepositoryManager repository) {
+        this(repository, getDefaultExecutor());
+    }
+
+    /**
+     * @param executor The executor used to download the POMs and libraries in parallel
+     */
+    public DependencyResolver(RepositoryManager repository, ExecutorService executor) {
         this.repository = repository;
+        this.executor = executor;
         this.resolvedPoms = new HashMap<>();
     }
 
@@ -36,22 +80,206 @@ public class DependencyResolver {
 
     public List<Pom> resolveDependencies(List<Dependency> declaredDependencies) {
         List<Pom> poms = new ArrayList<>();
+        for (Pom pom : getDeclaredPoms(declaredDependencies)) {
+            if (pom != null) {
+                poms.add(pom);
+            }
+        }
+        return resolve(poms);
+    }
+
+    /**
+     * Resolves the declared dependencies using the graph that was stored in the given file.
+     *
+     * If the declared dependencies and the repositories are the same as when the graph was
+     * stored, its POMs are returned without resolving anything. Otherwise only the declared
+     * dependencies whose subtree is not in the graph are resolved. Each subtree is resolved on
+     * its own and the subtrees are then merged, the declared dependencies take priority over
+     * their transitive dependencies and conflicting transitive dependencies are resolved to
+     * their latest version.
+     *
+     * The returned graph is not written to the file, use {@link ResolvedGraph#write(File)}
+     * once the checksums of the libraries are recorded.
+     */
+    public ResolvedGraph resolveDependencies(List<Dependency> declaredDependencies,
+                                             File graphFile) {
+        List<String> declarations = new ArrayList<>(declaredDependencies.size());
+        for (Dependency dependency : declaredDependencies) {
+            declarations.add(getDeclarationKey(dependency));
+        }
+        String repositoriesKey = getRepositoriesKey();
+        String dependenciesKey = hash(String.join("\n", declarations));
+
+        ResolvedGraph previous = ResolvedGraph.read(graphFile);
+        if (previous != null && previous.matches(repositoriesKey, dependenciesKey)) {
+            if (mListener != null) {
+                mListener.onResolve("Dependencies are up to date");
+            }
+            previous.setUpToDate(true);
+            return previous;
+        }
+        // the subtrees may resolve to other POMs if the repositories changed
+        boolean reuseSubtrees = previous != null && previous.matchesRepositories(repositoriesKey);
+
+        List<List<Pom>> subtrees = new ArrayList<>(declaredDependencies.size());
+        List<Dependency> missing = new ArrayList<>();
+        for (int i = 0; i < declarations.size(); i++) {
+            List<Pom> subtree = reuseSubtrees ? previous.getSubtree(declarations.get(i)) : null;
+            subtrees.add(subtree);
+            if (subtree == null) {
+                missing.add(declaredDependencies.get(i));
+            }
+        }
+
+        List<Pom> missingPoms = getDeclaredPoms(missing);
+        boolean complete = true;
+        for (int i = 0, missingIndex = 0; i < subtrees.size(); i++) {
+            if (subtrees.get(i) != null) {
+                continue;
+            }
+            Pom pom = missingPoms.get(missingIndex++);
+            if (pom == null) {
+                complete = false;
+                subtrees.set(i, Collections.emptyList());
+                continue;
+            }
+            DependencyResolver resolver = new DependencyResolver(repository, executor);
+            resolver.setResolveListener(mListener);
+            List<Pom> subtree = resolver.resolve(Collections.singletonList(pom));
+            subtree.sort(Comparator.comparing(Pom::getDeclarationString));
+            subtrees.set(i, subtree);
+        }
+
+        // a dependency that could not be retrieved is resolved again the next time
+        ResolvedGraph graph = new ResolvedGraph(repositoriesKey,
+                complete ? dependenciesKey : null);
+        graph.copyChecksums(previous);
+        for (int i = 0; i < declarations.size(); i++) {
+            if (!subtrees.get(i).isEmpty()) {
+                graph.putSubtree(declarations.get(i), subtrees.get(i));
+            }
+        }
+        graph.setResolved(merge(declaredDependencies, subtrees));
+        return graph;
+    }
+
+    /**
+     * @return The POM of each declared dependency in the same order, null if it could not
+     * be retrieved
+     */
+    private List<Pom> getDeclaredPoms(List<Dependency> declaredDependencies) {
+        List<Future<Pom>> futures = new ArrayList<>();
         for (Dependency dependency : declaredDependencies) {
             if (mListener != null) {
                 mListener.onResolve("Getting POM: " + dependency);
             }
-            Pom pom = repository.getPom(dependency.toString());
+            futures.add(executor.submit(() -> repository.getPom(dependency.toString())));
+        }
+
+        List<Pom> poms = new ArrayList<>();
+        for (int i = 0; i < declaredDependencies.size(); i++) {
+            Dependency dependency = declaredDependencies.get(i);
+            Pom pom = getResult(futures.get(i));
             if (pom != null) {
                 pom.setExcludes(dependency.getExcludes());
                 pom.setUserDefined(true);
-                poms.add(pom);
             } else {
                 if (mListener != null) {
                     mListener.onFailure("Unable to retrieve POM of " + dependency);
                 }
             }
+            poms.add(pom);
         }
-        return resolve(poms);
+        return poms;
+    }
+
+    private List<Pom> merge(List<Dependency> declaredDependencies, List<List<Pom>> subtrees) {
+        Map<Pom, String> declaredVersions = new HashMap<>();
+        for (Dependency dependency : declaredDependencies) {
+            declaredVersions.put(Pom.valueOf(dependency.getGroupId(), dependency.getArtifactId(),
+                    dependency.getVersionName()), dependency.getVersionName());
+        }
+
+        // Pom is equal to the POMs of the other versions of the same library
+        Map<Pom, Pom> merged = new LinkedHashMap<>();
+        for (List<Pom> subtree : subtrees) {
+            for (Pom pom : subtree) {
+                String declaredVersion = declaredVersions.get(pom);
+                if (declaredVersion != null) {
+                    if (declaredVersion.equals(pom.getVersionName())) {
+                        merged.put(pom, pom);
+                    }
+                    continue;
+                }
+                Pom resolved = merged.get(pom);
+                if (resolved == null ||
+                        getHigherVersion(resolved.getVersionName(), pom.getVersionName()) < 0) {
+                    merged.put(pom, pom);
+                }
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private String getRepositoriesKey() {
+        StringBuilder sb = new StringBuilder();
+        for (Repository repository : repository.getRepositories()) {
+            sb.append(repository.getName()).append('=').append(repository.getUrl()).append('\n');
+        }
+        return hash(sb.toString());
+    }
+
+    private static String getDeclarationKey(Dependency dependency) {
+        StringBuilder sb = new StringBuilder(dependency.toString());
+        List<String> excludes = new ArrayList<>();
+        for (Dependency exclude : dependency.getExcludes()) {
+            if (exclude != null) {
+                excludes.add(exclude.toString());
+            }
+        }
+        Collections.sort(excludes);
+        for (String exclude : excludes) {
+            sb.append(" -").append(exclude);
+        }
+        return sb.toString();
+    }
+
+    private static String hash(String string) {
+        return Hashing.sha256().hashString(string, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Downloads the libraries of the given POMs in parallel
+     *
+     * @return The library of each POM in the order of the given list, POMs whose library
+     * could not be retrieved are not included.
+     */
+    public Map<Pom, File> getLibraries(List<Pom> poms) {
+        List<Future<File>> futures = new ArrayList<>();
+        for (Pom pom : poms) {
+            futures.add(executor.submit(() -> repository.getLibrary(pom)));
+        }
+
+        Map<Pom, File> libraries = new LinkedHashMap<>();
+        for (int i = 0; i < poms.size(); i++) {
+            Pom pom = poms.get(i);
+            try {
+                File file = futures.get(i).get();
+                if (file != null) {
+                    libraries.put(pom, file);
+                }
+            } catch (ExecutionException e) {
+                if (mListener != null) {
+                    mListener.onFailure("Unable to download " + pom + ": " +
+                            e.getCause().getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(futures);
+                break;
+            }
+        }
+        return libraries;
     }
 
     /**
@@ -59,6 +287,7 @@ public class DependencyResolver {
      * the conflicting libraries
      */
     public List<Pom> resolve(List<Pom> declaredDependencies) {
+        fetchPoms(declaredDependencies);
         for (Pom pom : declaredDependencies) {
             resolve(pom);
         }
@@ -95,20 +324,7 @@ public class DependencyResolver {
                 continue;
             }
 
-            boolean excluded = excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
-                if (!ex.getGroupId().equals(dependency.getGroupId())) {
-                    return false;
-                }
-                if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
-                    return false;
-                }
-                if (TextUtils.isEmpty(ex.getVersionName())) {
-                    return true;
-                }
-                return ex.getVersionName().equals(dependency.getVersionName());
-            });
-
-            if (excluded) {
+            if (isExcluded(excludes, dependency)) {
                 continue;
             }
 
@@ -127,6 +343,97 @@ public class DependencyResolver {
         resolvedPoms.put(pom, pom.getVersionName());
     }
 
+    /**
+     * Fetches the POMs of the whole dependency graph of the given POMs in parallel, one level
+     * of the graph at a time, so the resolution that follows finds every POM in the repository
+     * instead of downloading them one by one. Each coordinate is only requested once.
+     */
+    private void fetchPoms(List<Pom> poms) {
+        Set<String> requested = new HashSet<>();
+        List<Pom> level = new ArrayList<>();
+        List<List<Dependency>> levelExcludes = new ArrayList<>();
+        for (Pom pom : poms) {
+            level.add(pom);
+            levelExcludes.add(pom.getExcludes());
+        }
+
+        while (!level.isEmpty()) {
+            List<Future<Pom>> futures = new ArrayList<>();
+            List<List<Dependency>> excludes = new ArrayList<>();
+            for (int i = 0; i < level.size(); i++) {
+                List<Dependency> parentExcludes = levelExcludes.get(i);
+                for (Dependency dependency : level.get(i).getDependencies()) {
+                    if ("test".equals(dependency.getScope())) {
+                        continue;
+                    }
+                    if (isExcluded(parentExcludes, dependency)) {
+                        continue;
+                    }
+                    String declaration = dependency.toString();
+                    if (!requested.add(declaration)) {
+                        continue;
+                    }
+                    futures.add(executor.submit(() -> repository.getPom(declaration)));
+                    excludes.add(parentExcludes);
+                }
+            }
+
+            level = new ArrayList<>();
+            levelExcludes = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                Pom pom;
+                try {
+                    pom = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    // reported when the dependency is resolved
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel(futures);
+                    return;
+                }
+                if (pom != null) {
+                    level.add(pom);
+                    levelExcludes.add(excludes.get(i));
+                }
+            }
+        }
+    }
+
+    private static boolean isExcluded(List<Dependency> excludes, Dependency dependency) {
+        return excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
+            if (!ex.getGroupId().equals(dependency.getGroupId())) {
+                return false;
+            }
+            if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
+                return false;
+            }
+            if (TextUtils.isEmpty(ex.getVersionName())) {
+                return true;
+            }
+            return ex.getVersionName().equals(dependency.getVersionName());
+        });
+    }
+
+    @Nullable
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return null;
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
     private int getHigherVersion(String firstVersion, String secondVersion) {
         ComparableVersion firstComparableVersion = new ComparableVersion(firstVersion);
         ComparableVersion secondComparableVersion = new ComparableVersion(secondVersion);
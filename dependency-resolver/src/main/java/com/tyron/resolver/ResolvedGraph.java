@@ -0,0 +1,243 @@
+package com.tyron.resolver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.tyron.common.util.AndroidUtilities;
+import com.tyron.resolver.model.Pom;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of a dependency resolution stored on the disk.
+ *
+ * The snapshot is keyed by a hash of the declared dependencies and of the repositories, if
+ * neither of them changed the resolved POMs are read from it without resolving anything. The
+ * subtree of each declared dependency is stored separately so only the subtrees of the
+ * declarations that changed have to be resolved again. It also records the checksum of each
+ * downloaded library along with its size and modification time, so a library that has not
+ * changed does not have to be read again to compute its checksum.
+ */
+public class ResolvedGraph {
+
+    @SerializedName("repositoriesKey")
+    private String repositoriesKey;
+
+    @SerializedName("dependenciesKey")
+    private String dependenciesKey;
+
+    /**
+     * The POMs of the subtree of each declared dependency, resolved on its own
+     */
+    @SerializedName("subtrees")
+    private Map<String, List<Node>> subtrees = new LinkedHashMap<>();
+
+    @SerializedName("resolved")
+    private List<Node> resolved = new ArrayList<>();
+
+    /**
+     * The downloaded libraries keyed by their absolute path
+     */
+    @SerializedName("artifacts")
+    private Map<String, Artifact> artifacts = new LinkedHashMap<>();
+
+    private transient boolean mUpToDate;
+
+    ResolvedGraph() {
+
+    }
+
+    ResolvedGraph(String repositoriesKey, String dependenciesKey) {
+        this.repositoriesKey = repositoriesKey;
+        this.dependenciesKey = dependenciesKey;
+    }
+
+    /**
+     * @return The graph stored in the file, or null if the file does not exist or cannot be
+     * read
+     */
+    @Nullable
+    public static ResolvedGraph read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String contents = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+            ResolvedGraph graph = new Gson().fromJson(contents, ResolvedGraph.class);
+            if (graph == null || graph.subtrees == null || graph.resolved == null) {
+                return null;
+            }
+            if (graph.artifacts == null) {
+                graph.artifacts = new LinkedHashMap<>();
+            }
+            return graph;
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    public void write(File file) throws IOException {
+        FileUtils.writeStringToFile(file, new Gson().toJson(this), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Whether the POMs of this graph were read from the disk without resolving any
+     * dependency
+     */
+    public boolean isUpToDate() {
+        return mUpToDate;
+    }
+
+    void setUpToDate(boolean upToDate) {
+        mUpToDate = upToDate;
+    }
+
+    boolean matches(String repositoriesKey, String dependenciesKey) {
+        return matchesRepositories(repositoriesKey) &&
+                dependenciesKey.equals(this.dependenciesKey);
+    }
+
+    boolean matchesRepositories(String repositoriesKey) {
+        return repositoriesKey.equals(this.repositoriesKey);
+    }
+
+    @Nullable
+    List<Pom> getSubtree(String declaration) {
+        List<Node> nodes = subtrees.get(declaration);
+        if (nodes == null) {
+            return null;
+        }
+        return toPoms(nodes);
+    }
+
+    void putSubtree(String declaration, List<Pom> poms) {
+        subtrees.put(declaration, toNodes(poms));
+    }
+
+    void setResolved(List<Pom> poms) {
+        resolved = toNodes(poms);
+    }
+
+    /**
+     * Copies the recorded checksums of the previous graph, the libraries of the POMs that are
+     * no longer resolved are removed with {@link #retainChecksums(List)}
+     */
+    void copyChecksums(@Nullable ResolvedGraph previous) {
+        if (previous == null) {
+            return;
+        }
+        artifacts.putAll(previous.artifacts);
+    }
+
+    /**
+     * @return The resolved POMs, they only contain the information needed to retrieve
+     * their libraries
+     */
+    public List<Pom> getPoms() {
+        return toPoms(resolved);
+    }
+
+    /**
+     * Returns the MD5 checksum of the given library. The recorded checksum is returned if the
+     * size and modification time of the file are the same as when it was recorded, otherwise
+     * the checksum is computed and recorded.
+     */
+    @Nullable
+    public String getChecksum(File file) {
+        String path = file.getAbsolutePath();
+        Artifact artifact = artifacts.get(path);
+        if (artifact != null && artifact.matches(file)) {
+            return artifact.checksum;
+        }
+        String checksum = AndroidUtilities.calculateMD5(file);
+        if (checksum != null) {
+            artifacts.put(path, new Artifact(file, checksum));
+        }
+        return checksum;
+    }
+
+    /**
+     * Removes the checksums of libraries that are not in the given list
+     */
+    public void retainChecksums(List<File> files) {
+        List<String> paths = new ArrayList<>(files.size());
+        for (File file : files) {
+            paths.add(file.getAbsolutePath());
+        }
+        artifacts.keySet().retainAll(paths);
+    }
+
+    private static List<Node> toNodes(List<Pom> poms) {
+        List<Node> nodes = new ArrayList<>(poms.size());
+        for (Pom pom : poms) {
+            nodes.add(new Node(pom));
+        }
+        return nodes;
+    }
+
+    private static List<Pom> toPoms(List<Node> nodes) {
+        if (nodes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Pom> poms = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            Pom pom = Pom.valueOf(node.declaration);
+            pom.setPackaging(node.packaging);
+            pom.setUserDefined(node.userDefined);
+            poms.add(pom);
+        }
+        return poms;
+    }
+
+    private static class Node {
+
+        @SerializedName("declaration")
+        private String declaration;
+
+        @SerializedName("packaging")
+        private String packaging;
+
+        @SerializedName("userDefined")
+        private boolean userDefined;
+
+        Node(Pom pom) {
+            declaration = pom.getDeclarationString();
+            packaging = pom.getPackaging();
+            userDefined = pom.isUserDefined();
+        }
+    }
+
+    private static class Artifact {
+
+        @SerializedName("checksum")
+        private String checksum;
+
+        @SerializedName("length")
+        private long length;
+
+        @SerializedName("lastModified")
+        private long lastModified;
+
+        Artifact(@NonNull File file, String checksum) {
+            this.checksum = checksum;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean matches(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+}
@@ -83,11 +83,18 @@ public class LocalRepository extends DefaultRepository {
 
         File file = new File(rootDirectory, path);
         FileUtils.forceMkdirParent(file);
-        if (!file.exists() && !file.createNewFile()) {
-            throw new IOException("Failed to create file.");
-        }
 
-        FileUtils.copyInputStreamToFile(inputStream, file);
+        // files may be read by other threads while they are downloaded, write to a temporary
+        // file first so the file in the repository is always complete
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            FileUtils.copyInputStreamToFile(inputStream, temp);
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to create file.");
+            }
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
         return file;
     }
 
@@ -35,6 +35,11 @@ public class RemoteRepository extends DefaultRepository {
         return mName;
     }
 
+    @Override
+    public String getUrl() {
+        return mUrl;
+    }
+
     @Override
     public void setCacheDirectory(@NonNull File file) {
         super.setCacheDirectory(file);
@@ -71,8 +76,7 @@ public class RemoteRepository extends DefaultRepository {
     private File getFileInternal(String path) throws IOException {
         String downloadUrl = mUrl + path;
         URL url = new URL(downloadUrl);
-        try {
-            InputStream inputStream = url.openStream();
+        try (InputStream inputStream = url.openStream()) {
             if (inputStream != null) {
                 // save the file to cache, and then return the one from there
                 return mLocalRepository.save(path, inputStream);
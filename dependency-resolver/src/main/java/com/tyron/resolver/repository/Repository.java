@@ -25,6 +25,15 @@ public interface Repository {
 
     String getName();
 
+    /**
+     * @return The url this repository downloads files from, null if it only stores files
+     * on the disk
+     */
+    @Nullable
+    default String getUrl() {
+        return null;
+    }
+
     /**
      * Sets the directory where this repository can save files into.
      * @param file the directory, never null
@@ -7,6 +7,7 @@ import com.tyron.resolver.model.Pom;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 public interface RepositoryManager {
 
@@ -39,5 +40,10 @@ public interface RepositoryManager {
      */
     void addRepository(@NonNull Repository repository);
 
+    /**
+     * @return The repositories to search for, in the order they are searched
+     */
+    List<Repository> getRepositories();
+
     void initialize();
 }
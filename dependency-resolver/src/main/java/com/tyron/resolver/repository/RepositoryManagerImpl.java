@@ -8,33 +8,44 @@ import com.tyron.common.util.FileUtilsEx;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.parser.PomParser;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.SuffixFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
-import java.util.jar.JarFile;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.zip.ZipFile;
 
-import kotlin.text.Charsets;
-
 public class RepositoryManagerImpl implements RepositoryManager {
 
     private File cacheDir;
     private final List<Repository> repositories;
-    private final List<Pom> pomFiles;
+
+    /**
+     * The POMs that have been read, keyed by {@code groupId:artifactId:version}. POMs stored on
+     * the disk are only read once they are requested.
+     */
+    private final Map<String, Pom> pomFiles;
+
+    /**
+     * The POMs and libraries that are being retrieved, a thread that requests one of these
+     * waits for the thread retrieving it instead of downloading it again
+     */
+    private final Map<String, CompletableFuture<Pom>> pendingPoms;
+    private final Map<String, CompletableFuture<File>> pendingLibraries;
 
     public RepositoryManagerImpl() {
-        this.repositories = new ArrayList<>();
-        this.pomFiles = new ArrayList<>();
+        this.repositories = new CopyOnWriteArrayList<>();
+        this.pomFiles = new ConcurrentHashMap<>();
+        this.pendingPoms = new ConcurrentHashMap<>();
+        this.pendingLibraries = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -44,36 +55,65 @@ public class RepositoryManagerImpl implements RepositoryManager {
         if (pomNames == null) {
             return null;
         }
-        for (Pom pom : pomFiles) {
-            if (!pomNames[0].equals(pom.getGroupId())) {
-                continue;
-            }
-            if (!pomNames[1].equals(pom.getArtifactId())) {
+        String key = pomNames[0] + ":" + pomNames[1] + ":" + pomNames[2];
+        Pom pom = pomFiles.get(key);
+        if (pom != null) {
+            return pom;
+        }
+        try {
+            return loadOnce(pendingPoms, key, () -> {
+                // another thread may have finished loading it before this one started
+                Pom loaded = pomFiles.get(key);
+                if (loaded == null) {
+                    loaded = getCachedPom(pomNames);
+                }
+                if (loaded == null) {
+                    loaded = getPomFromUrls(pomNames);
+                }
+                if (loaded != null) {
+                    pomFiles.put(key, loaded);
+                }
+                return loaded;
+            });
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private Pom getCachedPom(String[] names) throws IOException {
+        String path = getPathFromDeclaration(names) + ".pom";
+        for (Repository repository : repositories) {
+            File file = repository.getCachedFile(path);
+            if (file == null || !file.exists()) {
                 continue;
             }
-            if (!pomNames[2].equals(pom.getVersionName())) {
-                continue;
+            try {
+                Pom parsed = new PomParser().parse(file);
+                parsed.setGroupId(names[0]);
+                parsed.setArtifactId(names[1]);
+                parsed.setVersionName(names[2]);
+                return parsed;
+            } catch (XmlPullParserException | IOException e) {
+                // ignored
+                // TODO: should the file be deleted if its corrupt?
             }
-            return pom;
         }
-        return getPomFromUrls(pomNames);
+        return null;
     }
 
     private Pom getPomFromUrls(String[] names) {
-        InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom");
-        if (is != null) {
-            String contents;
-            try {
-                contents = CharStreams.toString(new InputStreamReader(is));
+        try (InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom")) {
+            if (is != null) {
+                String contents = CharStreams.toString(new InputStreamReader(is));
                 Pom parsed = new PomParser().parse(contents);
                 parsed.setGroupId(names[0]);
                 parsed.setArtifactId(names[1]);
                 parsed.setVersionName(names[2]);
-                pomFiles.add(parsed);
                 return parsed;
-            } catch (IOException | XmlPullParserException e) {
-                // ignored
             }
+        } catch (IOException | XmlPullParserException e) {
+            // ignored
         }
         return null;
     }
@@ -96,6 +136,41 @@ public class RepositoryManagerImpl implements RepositoryManager {
         return null;
     }
 
+    /**
+     * Runs the loader unless another thread is already loading the same key, in which case
+     * the result of that thread is returned.
+     */
+    private static <T> T loadOnce(Map<String, CompletableFuture<T>> pending, String key,
+                                  Loader<T> loader) throws IOException {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = pending.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            T result = loader.load();
+            future.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            pending.remove(key, future);
+        }
+    }
+
+    private interface Loader<T> {
+        T load() throws IOException;
+    }
+
     private String getPathFromDeclaration(String[] pomNames) {
         String groupId = pomNames[0].replace('.', '/');
         String artifactId = pomNames[1];
@@ -133,21 +208,24 @@ public class RepositoryManagerImpl implements RepositoryManager {
             sb.append(".jar");
         }
 
+        String path = sb.toString();
         for (Repository repository : repositories) {
-            File file = repository.getCachedFile(sb.toString());
+            File file = repository.getCachedFile(path);
             if (file != null && file.exists()) {
                 return file;
             }
         }
 
         // cannot find file from disk, try from network
-        for (Repository repository : repositories) {
-            File file = repository.getFile(sb.toString());
-            if (file != null && file.exists()) {
-                return file;
+        return loadOnce(pendingLibraries, path, () -> {
+            for (Repository repository : repositories) {
+                File file = repository.getFile(path);
+                if (file != null && file.exists()) {
+                    return file;
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     private boolean isValidZipFile(File file) {
@@ -189,34 +267,20 @@ public class RepositoryManagerImpl implements RepositoryManager {
         addRepository(new RemoteRepository(name, url));
     }
 
+    @Override
+    public List<Repository> getRepositories() {
+        return Collections.unmodifiableList(repositories);
+    }
+
     @Override
     public void initialize() {
         if (cacheDir == null) {
             throw new IllegalStateException("Cache directory is not set.");
         }
 
+        // the POMs stored in the repositories are read when they are requested
         for (Repository repository : repositories) {
             repository.setCacheDirectory(cacheDir);
-
-            File rootDirectory = repository.getRootDirectory();
-            if (rootDirectory == null || !rootDirectory.exists()) {
-                continue;
-            }
-            Iterator<File> pomFiles = FileUtils.iterateFiles(rootDirectory,
-                    new SuffixFileFilter(".pom"), TrueFileFilter.INSTANCE);
-
-            // save pom files for later
-            while (pomFiles.hasNext()) {
-                File pom = pomFiles.next();
-                PomParser parser = new PomParser();
-                try {
-                    Pom parsed = parser.parse(pom);
-                    this.pomFiles.add(parsed);
-                } catch (XmlPullParserException | IOException e) {
-                    // ignored
-                    // TODO: should the file be deleted if its corrupt?
-                }
-            }
         }
     }
 }
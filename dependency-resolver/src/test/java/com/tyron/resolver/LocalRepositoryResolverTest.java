@@ -0,0 +1,234 @@
+package com.tyron.resolver;
+
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.RemoteRepository;
+import com.tyron.resolver.repository.RepositoryManagerImpl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves dependencies from a repository served from the disk through a file:// url
+ */
+public class LocalRepositoryResolverTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mRemoteDir;
+    private File mCacheDir;
+
+    @Before
+    public void setup() throws IOException {
+        mRemoteDir = mFolder.newFolder("remote");
+        mCacheDir = mFolder.newFolder("cache");
+
+        publish("com.example", "app", "1.0",
+                dependency("com.example", "lib-a", "1.0", null),
+                dependency("com.example", "lib-b", "1.0", null));
+        publish("com.example", "lib-a", "1.0",
+                dependency("com.example", "shared", "1.0", null));
+        publish("com.example", "lib-b", "1.0",
+                dependency("com.example", "shared", "2.0", null),
+                dependency("junit", "junit", "4.13", "test"));
+        publish("com.example", "shared", "1.0");
+        publish("com.example", "shared", "2.0");
+    }
+
+    @Test
+    public void testParallelResolution() {
+        CountingRepository remote = new CountingRepository(mRemoteDir, 0);
+        RepositoryManagerImpl repository = createRepository(remote);
+        DependencyResolver resolver = new DependencyResolver(repository);
+
+        List<Pom> resolved = resolver.resolveDependencies(
+                Collections.singletonList(new Dependency("com.example", "app", "1.0")));
+        assert resolved.size() == 4;
+        Pom shared = resolved.get(resolved.indexOf(Pom.valueOf("com.example", "shared", "0")));
+        assert shared.getVersionName().equals("2.0");
+
+        // every POM is downloaded once, test dependencies are not downloaded
+        for (Map.Entry<String, AtomicInteger> entry : remote.mRequests.entrySet()) {
+            assert entry.getValue().get() == 1 : entry.getKey();
+            assert !entry.getKey().startsWith("junit") : entry.getKey();
+        }
+
+        Map<Pom, File> libraries = resolver.getLibraries(resolved);
+        assert libraries.size() == 4;
+        for (File file : libraries.values()) {
+            assert file.exists();
+            assert file.getAbsolutePath().startsWith(mCacheDir.getAbsolutePath());
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsAreDownloadedOnce() throws Exception {
+        CountingRepository remote = new CountingRepository(mRemoteDir, 200);
+        RepositoryManagerImpl repository = createRepository(remote);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Pom>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return repository.getPom("com.example:lib-a:1.0");
+            }));
+        }
+        start.countDown();
+
+        Pom first = futures.get(0).get(10, TimeUnit.SECONDS);
+        assert first != null;
+        for (Future<Pom> future : futures) {
+            assert future.get(10, TimeUnit.SECONDS) == first;
+        }
+        executor.shutdown();
+
+        assert remote.mRequests.size() == 1;
+        assert remote.mRequests.values().iterator().next().get() == 1;
+    }
+
+    @Test
+    public void testCachedPomsAreReadWithoutNetwork() {
+        DependencyResolver resolver = new DependencyResolver(
+                createRepository(new CountingRepository(mRemoteDir, 0)));
+        resolver.resolveDependencies(
+                Collections.singletonList(new Dependency("com.example", "app", "1.0")));
+
+        // the remote repository no longer has the files, they are read from the cache
+        CountingRepository offline = new CountingRepository(mFolder.getRoot(), 0);
+        RepositoryManagerImpl repository = createRepository(offline);
+        Pom pom = repository.getPom("com.example:lib-b:1.0");
+        assert pom != null;
+        assert pom.getDependencies().size() == 2;
+        assert offline.mRequests.isEmpty();
+    }
+
+    @Test
+    public void testResolvedGraphIsReused() throws IOException {
+        publish("com.example", "extra", "1.0",
+                dependency("com.example", "shared", "3.0", null));
+        publish("com.example", "shared", "3.0");
+        File graphFile = new File(mFolder.getRoot(), "dependencies.lock");
+        List<Dependency> declared = new ArrayList<>();
+        declared.add(new Dependency("com.example", "app", "1.0"));
+
+        ResolvedGraph graph = new DependencyResolver(
+                createRepository(new CountingRepository(mRemoteDir, 0)))
+                .resolveDependencies(declared, graphFile);
+        assert !graph.isUpToDate();
+        assert graph.getPoms().size() == 4;
+        File library = new File(mRemoteDir, "com/example/shared/2.0/shared-2.0.jar");
+        String checksum = graph.getChecksum(library);
+        graph.write(graphFile);
+
+        // nothing changed, the graph is read without requesting anything
+        CountingRepository remote = new CountingRepository(mRemoteDir, 0);
+        graph = new DependencyResolver(createRepository(remote))
+                .resolveDependencies(declared, graphFile);
+        assert graph.isUpToDate();
+        assert graph.getPoms().size() == 4;
+        assert checksum.equals(graph.getChecksum(library));
+        assert remote.mRequests.isEmpty();
+
+        // only the subtree of the new declaration is resolved
+        declared.add(new Dependency("com.example", "extra", "1.0"));
+        remote = new CountingRepository(mRemoteDir, 0);
+        graph = new DependencyResolver(createRepository(remote))
+                .resolveDependencies(declared, graphFile);
+        assert !graph.isUpToDate();
+        for (String path : remote.mRequests.keySet()) {
+            assert path.contains("/extra/") || path.contains("/shared/3.0/") : path;
+        }
+        List<Pom> poms = graph.getPoms();
+        assert poms.size() == 5;
+        Pom shared = poms.get(poms.indexOf(Pom.valueOf("com.example", "shared", "0")));
+        assert shared.getVersionName().equals("3.0");
+    }
+
+    private RepositoryManagerImpl createRepository(CountingRepository remote) {
+        RepositoryManagerImpl repository = new RepositoryManagerImpl();
+        repository.addRepository(remote);
+        repository.setCacheDirectory(mCacheDir);
+        repository.initialize();
+        return repository;
+    }
+
+    private void publish(String groupId, String artifactId, String version,
+                         String... dependencies) throws IOException {
+        File dir = new File(mRemoteDir,
+                groupId.replace('.', '/') + "/" + artifactId + "/" + version);
+        String name = artifactId + "-" + version;
+
+        StringBuilder pom = new StringBuilder();
+        pom.append("<project>\n");
+        pom.append("  <groupId>").append(groupId).append("</groupId>\n");
+        pom.append("  <artifactId>").append(artifactId).append("</artifactId>\n");
+        pom.append("  <version>").append(version).append("</version>\n");
+        pom.append("  <dependencies>\n");
+        for (String dependency : dependencies) {
+            pom.append(dependency);
+        }
+        pom.append("  </dependencies>\n");
+        pom.append("</project>\n");
+        FileUtils.writeStringToFile(new File(dir, name + ".pom"), pom.toString(),
+                StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(dir, name + ".jar"), name, StandardCharsets.UTF_8);
+    }
+
+    private static String dependency(String groupId, String artifactId, String version,
+                                     String scope) {
+        return "    <dependency>\n" +
+                "      <groupId>" + groupId + "</groupId>\n" +
+                "      <artifactId>" + artifactId + "</artifactId>\n" +
+                "      <version>" + version + "</version>\n" +
+                (scope == null ? "" : "      <scope>" + scope + "</scope>\n") +
+                "    </dependency>\n";
+    }
+
+    /**
+     * Counts the files that are requested from the remote url
+     */
+    private static class CountingRepository extends RemoteRepository {
+
+        private final Map<String, AtomicInteger> mRequests = new ConcurrentHashMap<>();
+        private final long mDelay;
+
+        CountingRepository(File directory, long delay) {
+            super("remote", directory.toURI().toString());
+            mDelay = delay;
+        }
+
+        @Override
+        public InputStream getInputStream(String path) throws IOException {
+            mRequests.computeIfAbsent(path, it -> new AtomicInteger()).incrementAndGet();
+            try {
+                Thread.sleep(mDelay);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return super.getInputStream(path);
+        }
+    }
+}
@@ -34,8 +34,8 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
     }
 
     public void destroy() {
+        clear();
         mCachedPaths.clear();
-        mProvider = null;
     }
 
     public synchronized JavaCompilerService getCompiler(Project project, JavaModule module) {
@@ -54,6 +54,9 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
         }
 
         if (mProvider == null || changed(mCachedPaths, paths)) {
+            if (mProvider != null) {
+                mProvider.destroy();
+            }
             mProvider = new JavaCompilerService(project, paths, Collections.emptySet(),
                     Collections.emptySet());
 
@@ -85,7 +88,10 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
         return false;
     }
 
-    public void clear() {
+    public synchronized void clear() {
+        if (mProvider != null) {
+            mProvider.destroy();
+        }
         mProvider = null;
     }
 }
@@ -12,19 +12,19 @@ import com.tyron.completion.index.CompilerService;
 import com.tyron.completion.java.compiler.JavaCompilerService;
 import com.tyron.completion.java.provider.Completions;
 import com.tyron.completion.model.CachedCompletion;
-import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.util.CompletionFilter;
 
 import java.io.File;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
-
-import me.xdrop.fuzzywuzzy.FuzzySearch;
 
 public class JavaCompletionProvider extends CompletionProvider {
 
+    /**
+     * The maximum number of items returned when narrowing a cached completion list
+     */
+    private static final int MAX_RANKED_ITEMS = 150;
+
     private CachedCompletion mCachedCompletion;
 
     public JavaCompletionProvider() {
@@ -47,12 +47,9 @@ public class JavaCompletionProvider extends CompletionProvider {
             String partial = partialIdentifier(params.getPrefix(), params.getPrefix().length());
             CompletionList cachedList = mCachedCompletion.getCompletionList();
             if (!cachedList.items.isEmpty() && !cachedList.isIncomplete) {
-                List<CompletionItem> narrowedList =
-                        cachedList.items.stream()
-                                .sorted(Comparator.comparingInt((CompletionItem it) -> getRatio(it, partial)).reversed())
-                                .collect(Collectors.toList());
                 CompletionList completionList = new CompletionList();
-                completionList.items = narrowedList;
+                completionList.items = CompletionFilter.rank(mCachedCompletion.narrow(partial),
+                        partial, MAX_RANKED_ITEMS);
                 return completionList;
             }
         }
@@ -98,19 +95,6 @@ public class JavaCompletionProvider extends CompletionProvider {
         return contents.substring(start, end);
     }
 
-    private int getRatio(CompletionItem item, String partialIdentifier) {
-        String label = getLabel(item);
-        return FuzzySearch.ratio(label, partialIdentifier);
-    }
-
-    private String getLabel(CompletionItem item) {
-        String label = item.label;
-        if (label.contains("(")) {
-            label = label.substring(0, label.indexOf('('));
-        }
-        return label;
-    }
-
     private boolean isIncrementalCompletion(CachedCompletion cachedCompletion,
                                             CompletionParameters params) {
         String prefix = params.getPrefix();
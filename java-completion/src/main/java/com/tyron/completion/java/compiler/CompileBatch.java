@@ -4,6 +4,7 @@ import android.util.Log;
 
 import org.openjdk.source.tree.CompilationUnitTree;
 
+import com.tyron.builder.compiler.java.ReusableCompiler;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.common.util.StringSearch;
 import com.tyron.completion.java.CompletionModule;
@@ -50,10 +51,15 @@ public class CompileBatch implements AutoCloseable {
     public final Elements elements;
     public final Types types;
     public final List<CompilationUnitTree> roots;
+    /**
+     * The diagnostics reported while compiling this batch
+     */
+    public final List<Diagnostic<? extends JavaFileObject>> diagnostics;
 
-    public CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+    public CompileBatch(JavaCompilerService parent, ReusableCompiler compiler,
+                        Collection<? extends JavaFileObject> files) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.borrow = batchTask(parent, compiler, files);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
@@ -70,6 +76,7 @@ public class CompileBatch implements AutoCloseable {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        this.diagnostics = parent.getDiagnostics();
     }
 
     /**
@@ -84,7 +91,7 @@ public class CompileBatch implements AutoCloseable {
         JavaModule module = parent.getCurrentModule();
         // Check for "class not found errors" that refer to package private classes
         Set<Path> addFiles = new HashSet<>();
-        for (Diagnostic<? extends JavaFileObject> err : parent.getDiagnostics()) {
+        for (Diagnostic<? extends JavaFileObject> err : diagnostics) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) {
                 continue;
             }
@@ -155,11 +162,12 @@ public class CompileBatch implements AutoCloseable {
         closed = true;
     }
 
-    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent, Collection<?
-            extends JavaFileObject> sources) {
+    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent,
+                                                     ReusableCompiler compiler,
+                                                     Collection<? extends JavaFileObject> sources) {
         parent.clearDiagnostics();
         List<String> options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
+        return compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
                 Collections.emptyList(), sources);
     }
 
@@ -26,7 +26,7 @@ public class CompileTask implements AutoCloseable {
         mCompileBatch = batch;
         this.task = batch.task;
         this.roots = batch.roots;
-        this.diagnostics = batch.parent.getDiagnostics();
+        this.diagnostics = batch.diagnostics;
     }
 
     public CompilationUnitTree root() {
@@ -6,15 +6,23 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.compiler.java.ReusableCompiler;
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.listener.FileListener;
+import com.tyron.builder.project.listener.ModuleFileListener;
 import com.tyron.common.util.Cache;
-import com.tyron.common.util.StringSearch;
 import com.tyron.completion.java.CompilerProvider;
 import com.tyron.completion.java.Docs;
 import com.tyron.completion.java.FindTypeDeclarations;
+import com.tyron.completion.java.index.ClassNameIndex;
+import com.tyron.completion.java.index.SymbolIndex;
+import com.tyron.completion.progress.ProgressManager;
 
 import org.openjdk.javax.tools.Diagnostic;
 import org.openjdk.javax.tools.DiagnosticListener;
@@ -34,10 +42,18 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
@@ -55,12 +71,66 @@ public class JavaCompilerService implements CompilerProvider {
     private JavaModule mCurrentModule;
     public final Set<File> classPath, docPath;
     public final Set<String> addExports;
-    public final ReusableCompiler compiler = new ReusableCompiler();
     private final Docs docs;
 
+    /**
+     * The maximum number of compilations kept in memory, each of them keeps its own javac context
+     */
+    private static final int MAX_CACHED_COMPILES = 3;
+
+    private static final long PRE_ANALYZE_DELAY = 300;
+
     private final CompilerContainer mContainer = new CompilerContainer();
-    private CompileBatch cachedCompile;
-    private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+    private final Map<Set<JavaFileObject>, CachedCompile> mCompileCache =
+            new LinkedHashMap<>(MAX_CACHED_COMPILES, 0.75f, true);
+    private volatile CachedCompile mCurrentCompile;
+
+    /**
+     * Incremented whenever a java file of the project changes, a compilation made in an older
+     * generation may refer to the previous contents of the files it did not compile
+     */
+    private final AtomicLong mSourceGeneration = new AtomicLong();
+    private final List<Module> mWatchedModules = new ArrayList<>();
+    private final Set<FileManager> mWatchedFileManagers =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final FileListener mSnapshotListener = new FileListener() {
+        @Override
+        public void onSnapshotChanged(File file, CharSequence contents) {
+            onSourceChanged(file);
+        }
+    };
+
+    private final ModuleFileListener mModuleListener = new ModuleFileListener() {
+        @Override
+        public void onFileCreated(File file) {
+            onSourceChanged(file);
+        }
+
+        @Override
+        public void onFileDeleted(File file) {
+            onSourceChanged(file);
+        }
+
+        @Override
+        public void onFileModified(File file) {
+            onSourceChanged(file);
+        }
+    };
+
+    private ClassNameIndex mClassNameIndex = ClassNameIndex.empty();
+    private Set<String> mIndexedClassNames = Collections.emptySet();
+    private List<Long> mClassNameStamp;
+    private final Map<String, List<String>> mPackagePrivateTypes = new HashMap<>();
+    private List<Long> mPackagePrivateStamp;
+
+    private final ScheduledExecutorService mPreAnalyzeExecutor =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "JavaCompilerService pre-analyze");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private ScheduledFuture<?> mPendingPreAnalyze;
 
     public final ReentrantLock mLock = new ReentrantLock();
 
@@ -80,50 +150,160 @@ public class JavaCompilerService implements CompilerProvider {
     public void setCurrentModule(@NonNull JavaModule module) {
         mSourceFileManager.setCurrentModule(module);
         mCurrentModule = module;
+        watchModules();
+    }
+
+    /**
+     * Listens to the changes of the java files of the current module and of the modules it
+     * depends on
+     */
+    private synchronized void watchModules() {
+        unwatchModules();
+        Set<Module> modules = Collections.newSetFromMap(new IdentityHashMap<>());
+        modules.add(mCurrentModule);
+        if (mProject != null) {
+            modules.addAll(mProject.getDependencies(mCurrentModule));
+        }
+        for (Module module : modules) {
+            module.addFileListener(mModuleListener);
+            mWatchedModules.add(module);
+            FileManager fileManager = module.getFileManager();
+            if (fileManager != null && mWatchedFileManagers.add(fileManager)) {
+                fileManager.addSnapshotListener(mSnapshotListener);
+            }
+        }
+        mSourceGeneration.incrementAndGet();
+    }
+
+    /**
+     * Stops listening to the changes of the modules, the compilations are no longer
+     * invalidated when the java files change
+     */
+    public synchronized void unwatchModules() {
+        for (Module module : mWatchedModules) {
+            module.removeFileListener(mModuleListener);
+        }
+        mWatchedModules.clear();
+        for (FileManager fileManager : mWatchedFileManagers) {
+            fileManager.removeSnapshotListener(mSnapshotListener);
+        }
+        mWatchedFileManagers.clear();
+    }
+
+    private void onSourceChanged(File file) {
+        if (file.getName().endsWith(".java")) {
+            mSourceGeneration.incrementAndGet();
+        }
     }
 
     /**
      * Checks whether this list has been compiled before
      *
+     * @param cached  the previous compilation of the same files
      * @param sources list of java files to compile
      * @return true if there's a valid cache for it, false otherwise
      */
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
+    private boolean needsCompile(CachedCompile cached, Collection<? extends JavaFileObject> sources) {
+        if (cached.batch == null || cached.modified.size() != sources.size()) {
+            return true;
+        }
+        if (cached.generation != mSourceGeneration.get()) {
             return true;
         }
         for (JavaFileObject f : sources) {
-            if (!cachedModified.containsKey(f)) {
+            Long modified = cached.modified.get(f);
+            if (modified == null) {
                 return true;
             }
-            Long cached = cachedModified.get(f);
-            if (cached == null) {
-                return true;
+            if (f.getLastModified() == modified) {
+                continue;
             }
-            if (f.getLastModified() != cached) {
+            // sources from the editor are created with the current time as their modification
+            // time, compare their contents so switching between files does not recompile them
+            HashCode contents = hashContents(f);
+            if (contents == null || !contents.equals(cached.contents.get(f))) {
                 return true;
             }
         }
         return false;
     }
 
-    private void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
-                throw new RuntimeException("Compiler is still in-use!");
+    private static HashCode hashContents(JavaFileObject file) {
+        try {
+            CharSequence contents = file.getCharContent(true);
+            if (contents == null) {
+                return null;
             }
-            cachedCompile.borrow.close();
+            return Hashing.murmur3_128().hashUnencodedChars(contents);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached compilation of the given files. The compilations of other files made
+     * before the last change of the sources are dropped along with their javac contexts, the
+     * least recently used compilation is evicted if the cache is still full. The compiler of a
+     * dropped compilation is reused.
+     */
+    private CachedCompile getCachedCompile(Set<JavaFileObject> key) {
+        long generation = mSourceGeneration.get();
+        ReusableCompiler compiler = null;
+        Iterator<Map.Entry<Set<JavaFileObject>, CachedCompile>> entries =
+                mCompileCache.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Set<JavaFileObject>, CachedCompile> entry = entries.next();
+            CachedCompile stale = entry.getValue();
+            if (stale.generation == generation || entry.getKey().equals(key)) {
+                continue;
+            }
+            entries.remove();
+            releaseBatch(stale);
+            compiler = stale.compiler;
+        }
+
+        CachedCompile cached = mCompileCache.get(key);
+        if (cached != null) {
+            return cached;
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
+        if (compiler == null && mCompileCache.size() >= MAX_CACHED_COMPILES) {
+            Iterator<CachedCompile> iterator = mCompileCache.values().iterator();
+            CachedCompile eldest = iterator.next();
+            iterator.remove();
+            releaseBatch(eldest);
+            compiler = eldest.compiler;
+        }
+        cached = new CachedCompile(compiler != null ? compiler : new ReusableCompiler());
+        mCompileCache.put(key, cached);
+        return cached;
+    }
+
+    private void loadCompile(CachedCompile cached, Collection<? extends JavaFileObject> sources) {
+        releaseBatch(cached);
+        cached.modified.clear();
+        cached.contents.clear();
+        // a change made while compiling makes the compilation stale
+        cached.generation = mSourceGeneration.get();
+        cached.batch = doCompile(cached.compiler, sources);
         for (JavaFileObject f : sources) {
-            cachedModified.put(f, f.getLastModified());
+            cached.modified.put(f, f.getLastModified());
+            cached.contents.put(f, hashContents(f));
+        }
+    }
+
+    private void releaseBatch(CachedCompile cached) {
+        if (cached.batch != null) {
+            if (!cached.batch.closed) {
+                throw new RuntimeException("Compiler is still in-use!");
+            }
+            cached.batch.borrow.close();
+            cached.batch = null;
         }
     }
 
-    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
+    private CompileBatch doCompile(ReusableCompiler compiler, Collection<? extends JavaFileObject> sources) {
         if (sources.isEmpty()) throw new RuntimeException("empty sources");
-        CompileBatch firstAttempt = new CompileBatch(this, sources);
+        CompileBatch firstAttempt = new CompileBatch(this, compiler, sources);
         Set<Path> addFiles = firstAttempt.needsAdditionalSources();
         if (addFiles.isEmpty()) return firstAttempt;
         // If the compiler needs additional source files that contain package-private files
@@ -135,7 +315,7 @@ public class JavaCompilerService implements CompilerProvider {
         for (Path add : addFiles) {
             moreSources.add(new SourceFileObject(add, mCurrentModule));
         }
-        return new CompileBatch(this, moreSources);
+        return new CompileBatch(this, compiler, moreSources);
     }
 
     /**
@@ -146,17 +326,64 @@ public class JavaCompilerService implements CompilerProvider {
      */
     private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
         mContainer.initialize(() -> {
-            if (needsCompile(sources)) {
-                loadCompile(sources);
+            CachedCompile cached = getCachedCompile(new HashSet<>(sources));
+            if (needsCompile(cached, sources)) {
+                loadCompile(cached, sources);
             } else {
                 Log.d("JavaCompilerService", "Using cached compile");
+                // the diagnostics belong to the compilation that was used last
+                clearDiagnostics();
+                for (Diagnostic<? extends JavaFileObject> diagnostic : cached.batch.diagnostics) {
+                    addDiagnostic(diagnostic);
+                }
             }
-            CompileTask task = new CompileTask(cachedCompile);
+            mCurrentCompile = cached;
+            CompileTask task = new CompileTask(cached.batch);
             mContainer.setCompileTask(task);
         });
         return mContainer;
     }
-    
+
+    /**
+     * Compiles the given files in the background once no other call to this method has been
+     * made for {@link #PRE_ANALYZE_DELAY} milliseconds, so the next completion or diagnostics
+     * request of the files can use the cached compilation.
+     */
+    public void preAnalyze(Collection<? extends JavaFileObject> sources) {
+        synchronized (mPreAnalyzeExecutor) {
+            if (mPreAnalyzeExecutor.isShutdown()) {
+                // the service has been destroyed
+                return;
+            }
+            if (mPendingPreAnalyze != null) {
+                mPendingPreAnalyze.cancel(false);
+            }
+            List<JavaFileObject> copy = new ArrayList<>(sources);
+            mPendingPreAnalyze = mPreAnalyzeExecutor.schedule(() -> {
+                if (mProject != null && mProject.isCompiling()) {
+                    return;
+                }
+                try {
+                    compile(copy);
+                } catch (Throwable e) {
+                    Log.w("JavaCompilerService", "Unable to pre-analyze " + copy, e);
+                }
+            }, PRE_ANALYZE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the javac context of the compilation that was used last, may be null if nothing
+     * has been compiled yet
+     */
+    public ReusableCompiler.ReusableContext getCurrentContext() {
+        CachedCompile current = mCurrentCompile;
+        if (current == null) {
+            return null;
+        }
+        return current.compiler.getCurrentContext();
+    }
+
     public void clearDiagnostics() {
         diagnostics.clear();
         if (mDiagnosticListener != null) {
@@ -184,7 +411,24 @@ public class JavaCompilerService implements CompilerProvider {
         return null;
     }
 
-    // TODO: This doesn't list all the public types
+    /**
+     * @return the symbol indexes of the current module and the java modules it depends on, they
+     * are updated in the background as the files of the modules change
+     */
+    private List<SymbolIndex> getSymbolIndexes() {
+        List<SymbolIndex> indexes = new ArrayList<>();
+        indexes.add(SymbolIndex.getInstance(mCurrentModule));
+        for (Module module : mProject.getDependencies(mCurrentModule)) {
+            if (module instanceof JavaModule && module != mCurrentModule) {
+                indexes.add(SymbolIndex.getInstance((JavaModule) module));
+            }
+        }
+        for (SymbolIndex index : indexes) {
+            index.watch(mProject);
+        }
+        return indexes;
+    }
+
     @Override
     public Set<String> publicTopLevelTypes() {
         Set<String> classes = new HashSet<>(mCurrentModule.getAllClasses());
@@ -193,12 +437,73 @@ public class JavaCompilerService implements CompilerProvider {
                 classes.addAll(((JavaModule) module).getAllClasses());
             }
         }
+        for (SymbolIndex index : getSymbolIndexes()) {
+            classes.addAll(index.getPublicTypes());
+        }
         return classes;
     }
 
+    /**
+     * @return an index of {@link #publicTopLevelTypes()} for class name completion, it is only
+     * updated when the files of the modules have changed since the last call
+     */
+    public synchronized ClassNameIndex getClassNameIndex() {
+        List<Long> stamp = getClassNameStamp();
+        if (!stamp.equals(mClassNameStamp)) {
+            Set<String> classes = publicTopLevelTypes();
+            Set<String> added = new HashSet<>(classes);
+            added.removeAll(mIndexedClassNames);
+            Set<String> removed = new HashSet<>(mIndexedClassNames);
+            removed.removeAll(classes);
+            mClassNameIndex = mClassNameIndex.update(added, removed);
+            mIndexedClassNames = classes;
+            mClassNameStamp = stamp;
+        }
+        return mClassNameIndex;
+    }
+
+    /**
+     * @return a stamp that changes whenever the types of the modules may have changed, the
+     * symbol indexes are updated from the edits of the editor as well as from the disk
+     */
+    private List<Long> getClassNameStamp() {
+        List<Long> stamp = new ArrayList<>();
+        List<Module> modules = new ArrayList<>();
+        modules.add(mCurrentModule);
+        modules.addAll(mProject.getDependencies(mCurrentModule));
+        for (Module module : modules) {
+            if (module instanceof JavaModule) {
+                JavaModule javaModule = (JavaModule) module;
+                stamp.add((long) System.identityHashCode(javaModule));
+                stamp.add((long) javaModule.getJavaFiles().size());
+                stamp.add((long) javaModule.getLibraries().size());
+                stamp.add(SymbolIndex.getInstance(javaModule).getModificationCount());
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * @return the simple names of the top level types of the package that are not public, the
+     * names of a package are only looked up again when the files of the modules have changed
+     */
     @Override
-    public List<String> packagePrivateTopLevelTypes(String packageName) {
-        return Collections.emptyList();
+    public synchronized List<String> packagePrivateTopLevelTypes(String packageName) {
+        List<Long> stamp = getClassNameStamp();
+        if (!stamp.equals(mPackagePrivateStamp)) {
+            mPackagePrivateTypes.clear();
+            mPackagePrivateStamp = stamp;
+        }
+        List<String> classes = mPackagePrivateTypes.get(packageName);
+        if (classes == null) {
+            classes = new ArrayList<>();
+            for (SymbolIndex index : getSymbolIndexes()) {
+                classes.addAll(index.getPackagePrivateTypes(packageName));
+            }
+            classes = Collections.unmodifiableList(classes);
+            mPackagePrivateTypes.put(packageName, classes);
+        }
+        return classes;
     }
 
     @Override
@@ -244,16 +549,6 @@ public class JavaCompilerService implements CompilerProvider {
         }
     }
 
-    private static final Pattern PACKAGE_EXTRACTOR = Pattern.compile("^([a-z][_a-zA-Z0-9]*\\.)*[a-z][_a-zA-Z0-9]*");
-
-    private String packageName(String className) {
-        Matcher m = PACKAGE_EXTRACTOR.matcher(className);
-        if (m.find()) {
-            return m.group();
-        }
-        return "";
-    }
-
     private static final Pattern SIMPLE_EXTRACTOR = Pattern.compile("[A-Z][_a-zA-Z0-9]*$");
 
     private String simpleName(String className) {
@@ -264,15 +559,6 @@ public class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
-
-    private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
-        }
-        return cacheContainsWord.get(file, word);
-    }
-
     private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
 
     private boolean containsType(Path file, String className) {
@@ -293,28 +579,14 @@ public class JavaCompilerService implements CompilerProvider {
             return fastFind;
         }
 
-        List<Module> dependencies = mProject.getDependencies(mCurrentModule);
-        String packageName = packageName(className);
-        String simpleName = simpleName(className);
-
-        for (Module dependency : dependencies) {
-            Path path = findPublicTypeDeclarationInModule(dependency, packageName, simpleName, className);
-            if (path != NOT_FOUND) {
-                return path;
-            }
-        }
-
-        return NOT_FOUND;
-    }
-
-    private Path findPublicTypeDeclarationInModule(Module module, String packageName, String simpleName, String className) {
-        for (File file : SourceFileManager.list(module, packageName)) {
-            if (containsWord(file.toPath(), simpleName) && containsType(file.toPath(), className)) {
-                if (file.getName().endsWith(".java")) {
-                    return file.toPath();
+        for (SymbolIndex index : getSymbolIndexes()) {
+            for (Path path : index.findDeclarations(className)) {
+                if (path.getFileName().toString().endsWith(".java")) {
+                    return path;
                 }
             }
         }
+
         return NOT_FOUND;
     }
 
@@ -345,14 +617,40 @@ public class JavaCompilerService implements CompilerProvider {
         return Optional.ofNullable(source);
     }
 
+    /**
+     * Finds the source files that may reference the class, the files still have to be compiled
+     * to know whether the class is actually referenced
+     *
+     * @param className fully qualified name of the class
+     */
     @Override
     public Path[] findTypeReferences(String className) {
-        return null;
+        Set<Path> files = new HashSet<>();
+        for (SymbolIndex index : getSymbolIndexes()) {
+            files.addAll(index.findIdentifiers(simpleName(className)));
+        }
+        return files.toArray(new Path[0]);
     }
 
+    /**
+     * Finds the source files that may reference the member of the class, the files still have
+     * to be compiled to know whether the member is actually referenced
+     *
+     * @param className  fully qualified name of the class
+     * @param memberName name of the field or method
+     */
     @Override
     public Path[] findMemberReferences(String className, String memberName) {
-        return null;
+        Set<Path> files = new HashSet<>();
+        for (SymbolIndex index : getSymbolIndexes()) {
+            files.addAll(index.findIdentifiers(memberName));
+            for (Path declaration : index.findDeclarations(className)) {
+                if (index.declaresMember(declaration, className, memberName)) {
+                    files.add(declaration);
+                }
+            }
+        }
+        return files.toArray(new Path[0]);
     }
 
     private final Cache<String, ParseTask> parseCache = new Cache<>();
@@ -444,8 +742,9 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public synchronized void close() {
-        if (cachedCompile != null && !cachedCompile.closed) {
-            cachedCompile.close();
+        CachedCompile current = mCurrentCompile;
+        if (current != null && current.batch != null && !current.batch.closed) {
+            current.batch.close();
         }
         if (mLock.isHeldByCurrentThread() && mLock.isLocked()) {
             mLock.unlock();
@@ -456,12 +755,54 @@ public class JavaCompilerService implements CompilerProvider {
         return mCurrentModule;
     }
 
+    /**
+     * Stops the background work of this service and releases its compilations, the service
+     * should not be used afterwards. This may be called while a compilation of this service is
+     * being read, the compilations are released in the background once nothing reads them.
+     */
     public void destroy() {
-        cachedCompile = null;
+        unwatchModules();
+        synchronized (mPreAnalyzeExecutor) {
+            if (mPendingPreAnalyze != null) {
+                mPendingPreAnalyze.cancel(false);
+                mPendingPreAnalyze = null;
+            }
+            mPreAnalyzeExecutor.shutdownNow();
+        }
+        ProgressManager.getInstance().runNonCancelableAsync(() -> mContainer.initialize(() -> {
+            for (CachedCompile cached : mCompileCache.values()) {
+                if (cached.batch != null && !cached.batch.closed) {
+                    cached.batch.close();
+                }
+                releaseBatch(cached);
+            }
+            mCompileCache.clear();
+            mCurrentCompile = null;
+            try {
+                mSourceFileManager.close();
+            } catch (IOException e) {
+                Log.w("JavaCompilerService", "Unable to close the file manager", e);
+            }
+        }));
     }
 
     @NonNull
     public CompilerContainer getCachedContainer() {
         return mContainer;
     }
+
+    /**
+     * A compilation of a set of files along with the state of the files when they were compiled
+     */
+    private static class CachedCompile {
+        final ReusableCompiler compiler;
+        final Map<JavaFileObject, Long> modified = new HashMap<>();
+        final Map<JavaFileObject, HashCode> contents = new HashMap<>();
+        long generation;
+        CompileBatch batch;
+
+        CachedCompile(ReusableCompiler compiler) {
+            this.compiler = compiler;
+        }
+    }
 }
@@ -16,6 +16,7 @@ import org.openjdk.javax.tools.JavaFileObject;
 import org.openjdk.javax.tools.StandardJavaFileManager;
 import org.openjdk.javax.tools.StandardLocation;
 import org.openjdk.tools.javac.api.JavacTool;
+import org.openjdk.tools.javac.file.JavacFileManager;
 
 import java.io.File;
 import java.io.IOException;
@@ -40,7 +41,13 @@ public class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFil
 	
 	private static StandardJavaFileManager createDelegateFileManager() {
         JavacTool compiler = JavacTool.create();
-        return compiler.getStandardFileManager(SourceFileManager::logError, Locale.getDefault(), Charset.defaultCharset());
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(
+                SourceFileManager::logError, Locale.getDefault(), Charset.defaultCharset());
+        if (fileManager instanceof JavacFileManager) {
+            // library jars are shared with other file managers and read without a zip file system
+            ((JavacFileManager) fileManager).setMappedArchivesEnabled(true);
+        }
+        return fileManager;
     }
 	
 	private static void logError(Diagnostic<?> error) {
@@ -0,0 +1,314 @@
+package com.tyron.completion.java.index;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable index of fully qualified class names that can be searched by a prefix of the
+ * simple name or by its camel humps, for example {@code ArrLi} or {@code AL} for
+ * {@code ArrayList}.
+ *
+ * The names are kept in arrays sorted by simple name along with a second ordering sorted by the
+ * initials of the humps, so both kinds of queries are a binary search followed by a scan of the
+ * matching range. Instances can be shared between threads, {@link #update(Collection, Collection)}
+ * returns a new index and leaves this one untouched.
+ */
+public final class ClassNameIndex {
+
+    private static final ClassNameIndex EMPTY =
+            new ClassNameIndex(new String[0], new String[0], new String[0], new int[0]);
+
+    private static final Comparator<String> BY_SIMPLE_NAME = (a, b) -> {
+        int result = getSimpleName(a).compareTo(getSimpleName(b));
+        return result != 0 ? result : a.compareTo(b);
+    };
+
+    public static ClassNameIndex empty() {
+        return EMPTY;
+    }
+
+    public static ClassNameIndex create(Collection<String> classNames) {
+        return EMPTY.update(classNames, Collections.emptySet());
+    }
+
+    /**
+     * Class names sorted by their simple names, ties are broken by the fully qualified name
+     */
+    private final String[] mClassNames;
+    private final String[] mSimpleNames;
+    /**
+     * Hump initials of each class name, in the same order as {@link #mClassNames}
+     */
+    private final String[] mInitials;
+    /**
+     * Positions in {@link #mClassNames} sorted by the hump initials
+     */
+    private final int[] mByInitials;
+
+    private ClassNameIndex(String[] classNames, String[] simpleNames, String[] initials,
+                           int[] byInitials) {
+        mClassNames = classNames;
+        mSimpleNames = simpleNames;
+        mInitials = initials;
+        mByInitials = byInitials;
+    }
+
+    public int size() {
+        return mClassNames.length;
+    }
+
+    /**
+     * Creates a new index with the given names added and removed, the existing names are not
+     * sorted again so this takes linear time in the size of the index.
+     */
+    public ClassNameIndex update(Collection<String> added, Collection<String> removed) {
+        Set<String> removedSet = new HashSet<>();
+        for (String name : removed) {
+            if (contains(name)) {
+                removedSet.add(name);
+            }
+        }
+        Set<String> addedSet = new HashSet<>();
+        List<String> addedList = new ArrayList<>();
+        for (String name : added) {
+            if ((removedSet.contains(name) || !contains(name)) && addedSet.add(name)) {
+                addedList.add(name);
+            }
+        }
+        // names that are removed and added again stay where they are
+        removedSet.removeAll(addedSet);
+        addedList.removeIf(name -> contains(name));
+        if (addedList.isEmpty() && removedSet.isEmpty()) {
+            return this;
+        }
+        addedList.sort(BY_SIMPLE_NAME);
+
+        int capacity = mClassNames.length + addedList.size();
+        String[] classNames = new String[capacity];
+        String[] simpleNames = new String[capacity];
+        String[] initials = new String[capacity];
+        int[] oldToNew = new int[mClassNames.length];
+        int[] addedToNew = new int[addedList.size()];
+
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < mClassNames.length || j < addedList.size()) {
+            if (i < mClassNames.length && removedSet.contains(mClassNames[i])) {
+                oldToNew[i++] = -1;
+                continue;
+            }
+            boolean takeOld = j >= addedList.size() || (i < mClassNames.length &&
+                    BY_SIMPLE_NAME.compare(mClassNames[i], addedList.get(j)) <= 0);
+            if (takeOld) {
+                classNames[size] = mClassNames[i];
+                simpleNames[size] = mSimpleNames[i];
+                initials[size] = mInitials[i];
+                oldToNew[i++] = size++;
+            } else {
+                String name = addedList.get(j);
+                classNames[size] = name;
+                simpleNames[size] = getSimpleName(name);
+                initials[size] = getInitials(simpleNames[size]);
+                addedToNew[j++] = size++;
+            }
+        }
+
+        // the relative order of the existing names by initials does not change, only the
+        // added names have to be sorted and merged in
+        Integer[] addedByInitials = new Integer[addedToNew.length];
+        for (int k = 0; k < addedToNew.length; k++) {
+            addedByInitials[k] = addedToNew[k];
+        }
+        Comparator<Integer> byInitials = (a, b) -> compareByInitials(initials, simpleNames,
+                classNames, a, b);
+        Arrays.sort(addedByInitials, byInitials);
+
+        int[] byInitialsArray = new int[size];
+        int count = 0;
+        i = 0;
+        j = 0;
+        while (i < mByInitials.length || j < addedByInitials.length) {
+            if (i < mByInitials.length && oldToNew[mByInitials[i]] == -1) {
+                i++;
+                continue;
+            }
+            boolean takeOld = j >= addedByInitials.length || (i < mByInitials.length &&
+                    byInitials.compare(oldToNew[mByInitials[i]], addedByInitials[j]) <= 0);
+            if (takeOld) {
+                byInitialsArray[count++] = oldToNew[mByInitials[i++]];
+            } else {
+                byInitialsArray[count++] = addedByInitials[j++];
+            }
+        }
+
+        return new ClassNameIndex(Arrays.copyOf(classNames, size),
+                Arrays.copyOf(simpleNames, size), Arrays.copyOf(initials, size),
+                byInitialsArray);
+    }
+
+    public boolean contains(String className) {
+        return Arrays.binarySearch(mClassNames, className, BY_SIMPLE_NAME) >= 0;
+    }
+
+    /**
+     * Finds the class names whose simple name starts with the query, followed by the ones whose
+     * humps match the query
+     *
+     * @param query the partial simple name typed by the user
+     * @param limit the maximum number of results
+     * @return fully qualified names of the matching classes
+     */
+    @NonNull
+    public List<String> find(String query, int limit) {
+        List<String> result = new ArrayList<>();
+        int start = lowerBound(mSimpleNames, query);
+        for (int i = start; i < mSimpleNames.length && result.size() < limit; i++) {
+            if (!mSimpleNames[i].startsWith(query)) {
+                break;
+            }
+            result.add(mClassNames[i]);
+        }
+
+        List<String> segments = getQuerySegments(query);
+        if (segments.size() < 2 || result.size() >= limit) {
+            // a query with a single hump only matches names that start with it
+            return result;
+        }
+
+        StringBuilder queryInitials = new StringBuilder();
+        for (String segment : segments) {
+            queryInitials.append(segment.charAt(0));
+        }
+        String prefix = queryInitials.toString();
+        int low = 0;
+        int high = mByInitials.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mInitials[mByInitials[mid]].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < mByInitials.length && result.size() < limit; i++) {
+            int position = mByInitials[i];
+            if (!mInitials[position].startsWith(prefix)) {
+                break;
+            }
+            String simpleName = mSimpleNames[position];
+            if (!simpleName.startsWith(query) && matchesHumps(simpleName, segments)) {
+                result.add(mClassNames[position]);
+            }
+        }
+        return result;
+    }
+
+    private static boolean matchesHumps(String simpleName, List<String> segments) {
+        List<String> humps = getHumps(simpleName);
+        if (humps.size() < segments.size()) {
+            return false;
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            if (!humps.get(i).startsWith(segments.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lowerBound(String[] array, String key) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (array[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int compareByInitials(String[] initials, String[] simpleNames,
+                                         String[] classNames, int a, int b) {
+        int result = initials[a].compareTo(initials[b]);
+        if (result != 0) {
+            return result;
+        }
+        result = simpleNames[a].compareTo(simpleNames[b]);
+        return result != 0 ? result : classNames[a].compareTo(classNames[b]);
+    }
+
+    private static String getSimpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    static String getInitials(String simpleName) {
+        StringBuilder initials = new StringBuilder();
+        for (String hump : getHumps(simpleName)) {
+            initials.append(hump.charAt(0));
+        }
+        return initials.toString();
+    }
+
+    /**
+     * Splits the query at every upper case letter and after an underscore, so both {@code AL}
+     * and {@code ArrLi} are split in two
+     */
+    static List<String> getQuerySegments(String query) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if ((Character.isUpperCase(c) || query.charAt(i - 1) == '_') && c != '_') {
+                segments.add(query.substring(start, i));
+                start = i;
+            }
+        }
+        if (start < query.length()) {
+            segments.add(query.substring(start));
+        }
+        return segments;
+    }
+
+    /**
+     * Splits the name into its humps, a hump starts at an upper case letter that follows a
+     * lower case letter or that is followed by one, and after an underscore. For example
+     * {@code URLConnection} is split into {@code URL} and {@code Connection}.
+     */
+    static List<String> getHumps(String name) {
+        List<String> humps = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            char previous = name.charAt(i - 1);
+            boolean humpStart;
+            if (previous == '_') {
+                humpStart = c != '_';
+            } else if (Character.isUpperCase(c)) {
+                humpStart = !Character.isUpperCase(previous) ||
+                        (i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1)));
+            } else {
+                humpStart = false;
+            }
+            if (humpStart && i > start) {
+                humps.add(name.substring(start, i));
+                start = i;
+            }
+        }
+        if (start < name.length()) {
+            humps.add(name.substring(start));
+        }
+        return humps;
+    }
+}
@@ -0,0 +1,683 @@
+package com.tyron.completion.java.index;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.FileManager;
+import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.builder.project.listener.FileListener;
+import com.tyron.builder.project.listener.ModuleFileListener;
+import com.tyron.common.util.Cache;
+import com.tyron.completion.java.compiler.Parser;
+
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
+import org.openjdk.javax.lang.model.element.Modifier;
+import org.openjdk.source.tree.ClassTree;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.IdentifierTree;
+import org.openjdk.source.tree.MemberReferenceTree;
+import org.openjdk.source.tree.MemberSelectTree;
+import org.openjdk.source.tree.MethodTree;
+import org.openjdk.source.tree.Tree;
+import org.openjdk.source.tree.VariableTree;
+import org.openjdk.source.util.TreeScanner;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of the types, members and identifiers declared and used by the java sources of a module,
+ * along with the classes of its libraries.
+ *
+ * The symbols of every file are stored in a persistent cache of the module so they are only
+ * read again when the contents of the file change. Once {@link #watch(Project)} is called the
+ * module is indexed in the background, afterwards only the files reported by the file events of
+ * the module and the edits of its file manager are indexed again. Lookups are answered from maps
+ * kept in memory and never index files themselves.
+ */
+public class SymbolIndex {
+
+    private static final String TAG = SymbolIndex.class.getSimpleName();
+
+    public static final CacheHolder.CacheKey<String, FileSymbols> CACHE_KEY =
+            new CacheHolder.CacheKey<>("javaSymbolIndex", String.class, FileSymbols.class);
+
+    private static final Key<SymbolIndex> KEY = Key.create("javaSymbolIndex");
+
+    private static final String SOURCE = "source";
+    private static final String LIBRARY = "library";
+
+    /**
+     * The time to wait after a file changes before it is indexed, so typing in the editor does
+     * not index the file on every key stroke
+     */
+    private static final long UPDATE_DELAY = 300;
+
+    private static final ScheduledExecutorService sUpdateExecutor =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "SymbolIndex update");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public static SymbolIndex getInstance(JavaModule module) {
+        SymbolIndex index = module.getUserData(KEY);
+        if (index == null) {
+            index = module.putUserDataIfAbsent(KEY, new SymbolIndex(module));
+        }
+        return index;
+    }
+
+    /**
+     * The symbols of a single source file or library
+     */
+    public static class FileSymbols {
+        public String packageName = "";
+        /**
+         * Fully qualified names of the public top level types
+         */
+        public List<String> publicTypes = new ArrayList<>();
+        /**
+         * Fully qualified names of the top level types that are not public
+         */
+        public List<String> packagePrivateTypes = new ArrayList<>();
+        /**
+         * Fully qualified names of every type including nested types, only for sources
+         */
+        public List<String> types = new ArrayList<>();
+        /**
+         * Declared fields and methods in the form of {@code type#name}, only for sources
+         */
+        public List<String> members = new ArrayList<>();
+        /**
+         * Every identifier the file uses, only for sources
+         */
+        public List<String> identifiers = new ArrayList<>();
+    }
+
+    private final JavaModule mModule;
+    private final Cache<String, FileSymbols> mCache;
+
+    private final Map<Path, FileSymbols> mFiles = new HashMap<>();
+    private final Map<String, Set<Path>> mDeclarations = new HashMap<>();
+    private final Map<String, Set<Path>> mIdentifiers = new HashMap<>();
+    /**
+     * Simple names of the package private types of each package, counted by the number of
+     * files that declare them since a file may still be declaring a name that is removed
+     */
+    private final Map<String, Multiset<String>> mPackagePrivateTypes = new HashMap<>();
+    private Set<String> mPublicTypes;
+    private long mModificationCount;
+
+    /**
+     * Serializes the updates, the cache is only accessed while holding it
+     */
+    private final Object mUpdateLock = new Object();
+
+    private final Set<Path> mChangedFiles = new HashSet<>();
+    private boolean mFullUpdate;
+    private boolean mWatching;
+    private Project mProject;
+    private ScheduledFuture<?> mPendingUpdate;
+    /**
+     * The libraries of the module when the last full update was requested
+     */
+    private Set<File> mLibraries;
+
+    private final ModuleFileListener mModuleListener = new ModuleFileListener() {
+        @Override
+        public void onFileCreated(File file) {
+            onFileChanged(file);
+        }
+
+        @Override
+        public void onFileDeleted(File file) {
+            onFileChanged(file);
+        }
+
+        @Override
+        public void onFileModified(File file) {
+            onFileChanged(file);
+        }
+    };
+
+    private final FileListener mSnapshotListener = new FileListener() {
+        @Override
+        public void onSnapshotChanged(File file, CharSequence contents) {
+            onFileChanged(file);
+        }
+    };
+
+    private SymbolIndex(JavaModule module) {
+        mModule = module;
+        mCache = module.getCache(CACHE_KEY, new Cache<>());
+    }
+
+    /**
+     * Starts following the changes of the files of the module. The whole module is indexed in
+     * the background the first time this is called and whenever its libraries have changed.
+     */
+    public void watch(Project project) {
+        synchronized (mChangedFiles) {
+            mProject = project;
+            if (!mWatching) {
+                mWatching = true;
+                mModule.addFileListener(mModuleListener);
+                FileManager fileManager = mModule.getFileManager();
+                if (fileManager != null) {
+                    fileManager.addSnapshotListener(mSnapshotListener);
+                }
+            }
+            Set<File> libraries = new HashSet<>(mModule.getLibraries());
+            if (libraries.equals(mLibraries)) {
+                return;
+            }
+            mLibraries = libraries;
+            mFullUpdate = true;
+            scheduleUpdate(0);
+        }
+    }
+
+    private void onFileChanged(File file) {
+        if (!file.getName().endsWith(".java")) {
+            return;
+        }
+        synchronized (mChangedFiles) {
+            mChangedFiles.add(file.toPath());
+            scheduleUpdate(UPDATE_DELAY);
+        }
+    }
+
+    private void scheduleUpdate(long delay) {
+        if (mPendingUpdate != null) {
+            mPendingUpdate.cancel(false);
+        }
+        mPendingUpdate = sUpdateExecutor.schedule(this::runUpdate, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runUpdate() {
+        Set<Path> changed;
+        boolean fullUpdate;
+        Project project;
+        synchronized (mChangedFiles) {
+            changed = new HashSet<>(mChangedFiles);
+            mChangedFiles.clear();
+            fullUpdate = mFullUpdate;
+            mFullUpdate = false;
+            project = mProject;
+        }
+        try {
+            if (fullUpdate) {
+                update(project);
+            } else {
+                update(project, changed);
+            }
+        } catch (Throwable e) {
+            Log.w(TAG, "Unable to update the index of " + mModule.getRootFile(), e);
+        }
+    }
+
+    /**
+     * Indexes the sources and libraries of the module that have been added or modified since
+     * the last update and forgets the ones that no longer exist.
+     */
+    public void update(Project project) {
+        synchronized (mUpdateLock) {
+            Map<Path, FileSymbols> updated = new HashMap<>();
+            Set<Path> files = new HashSet<>();
+            for (File file : mModule.getJavaFiles().values()) {
+                Path path = file.toPath();
+                files.add(path);
+                FileSymbols symbols = indexSourceIfNeeded(project, path);
+                if (symbols != null) {
+                    updated.put(path, symbols);
+                }
+            }
+            for (File library : mModule.getLibraries()) {
+                Path path = library.toPath();
+                files.add(path);
+                FileSymbols symbols = indexIfNeeded(path, LIBRARY, () -> indexLibrary(library));
+                if (symbols != null) {
+                    updated.put(path, symbols);
+                }
+            }
+
+            Set<Path> removed = new HashSet<>();
+            synchronized (this) {
+                for (Path path : mFiles.keySet()) {
+                    if (!files.contains(path)) {
+                        removed.add(path);
+                    }
+                }
+            }
+            for (Path path : removed) {
+                mCache.remove(path, SOURCE, LIBRARY);
+            }
+            apply(updated, removed);
+        }
+    }
+
+    /**
+     * Indexes the given source files again, the ones that are no longer sources of the module
+     * are removed from the index
+     */
+    private void update(Project project, Set<Path> changed) {
+        synchronized (mUpdateLock) {
+            Set<Path> sources = new HashSet<>();
+            for (File file : mModule.getJavaFiles().values()) {
+                sources.add(file.toPath());
+            }
+            Map<Path, FileSymbols> updated = new HashMap<>();
+            Set<Path> removed = new HashSet<>();
+            for (Path path : changed) {
+                if (!sources.contains(path)) {
+                    removed.add(path);
+                    mCache.remove(path, SOURCE);
+                    continue;
+                }
+                FileSymbols symbols = indexSourceIfNeeded(project, path);
+                if (symbols != null) {
+                    updated.put(path, symbols);
+                }
+            }
+            apply(updated, removed);
+        }
+    }
+
+    private synchronized void apply(Map<Path, FileSymbols> updated, Set<Path> removed) {
+        for (Path path : removed) {
+            FileSymbols previous = mFiles.remove(path);
+            if (previous != null) {
+                removeSymbols(path, previous);
+            }
+        }
+        for (Map.Entry<Path, FileSymbols> entry : updated.entrySet()) {
+            FileSymbols previous = mFiles.put(entry.getKey(), entry.getValue());
+            if (previous != null) {
+                removeSymbols(entry.getKey(), previous);
+            }
+            addSymbols(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private interface Indexer {
+        FileSymbols index() throws IOException;
+    }
+
+    /**
+     * Indexes the contents of the source file that are opened in the file manager, they are
+     * not cached because they may not have been saved yet
+     */
+    private FileSymbols indexSourceIfNeeded(Project project, Path path) {
+        FileManager fileManager = mModule.getFileManager();
+        if (fileManager == null || !fileManager.isOpened(path.toFile())) {
+            return indexIfNeeded(path, SOURCE, () -> indexSource(project, path));
+        }
+        mCache.remove(path, SOURCE);
+        Optional<CharSequence> contents = fileManager.getFileContent(path.toFile());
+        if (!contents.isPresent()) {
+            return new FileSymbols();
+        }
+        try {
+            return indexSource(project, new SourceFileObject(path,
+                    contents.get().toString(), Instant.now()));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to index " + path, e);
+            return new FileSymbols();
+        }
+    }
+
+    /**
+     * @return the symbols of the file, or null if it has already been indexed and has not
+     * changed since
+     */
+    private FileSymbols indexIfNeeded(Path path, String kind, Indexer indexer) {
+        if (!mCache.needs(path, kind)) {
+            synchronized (this) {
+                if (mFiles.containsKey(path)) {
+                    return null;
+                }
+            }
+            return mCache.get(path, kind);
+        }
+        FileSymbols symbols;
+        try {
+            symbols = indexer.index();
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to index " + path, e);
+            symbols = new FileSymbols();
+        }
+        mCache.load(path, kind, symbols);
+        return symbols;
+    }
+
+    private void addSymbols(Path path, FileSymbols symbols) {
+        for (String type : symbols.types) {
+            add(mDeclarations, type, path);
+        }
+        for (String identifier : symbols.identifiers) {
+            add(mIdentifiers, identifier, path);
+        }
+        for (String type : symbols.packagePrivateTypes) {
+            String packageName = getPackageName(type);
+            Multiset<String> types = mPackagePrivateTypes.get(packageName);
+            if (types == null) {
+                types = HashMultiset.create();
+                mPackagePrivateTypes.put(packageName, types);
+            }
+            types.add(getSimpleName(type));
+        }
+        mPublicTypes = null;
+        mModificationCount++;
+    }
+
+    private void removeSymbols(Path path, FileSymbols symbols) {
+        for (String type : symbols.types) {
+            remove(mDeclarations, type, path);
+        }
+        for (String identifier : symbols.identifiers) {
+            remove(mIdentifiers, identifier, path);
+        }
+        for (String type : symbols.packagePrivateTypes) {
+            String packageName = getPackageName(type);
+            Multiset<String> types = mPackagePrivateTypes.get(packageName);
+            if (types != null) {
+                types.remove(getSimpleName(type));
+                if (types.isEmpty()) {
+                    mPackagePrivateTypes.remove(packageName);
+                }
+            }
+        }
+        mPublicTypes = null;
+        mModificationCount++;
+    }
+
+    /**
+     * @return a number that changes every time a file is indexed or removed from this index
+     */
+    public synchronized long getModificationCount() {
+        return mModificationCount;
+    }
+
+    /**
+     * @return the fully qualified names of the public top level types of the sources and
+     * libraries of this module
+     */
+    @NonNull
+    public synchronized Set<String> getPublicTypes() {
+        if (mPublicTypes == null) {
+            Set<String> types = new HashSet<>();
+            for (FileSymbols symbols : mFiles.values()) {
+                types.addAll(symbols.publicTypes);
+            }
+            mPublicTypes = Collections.unmodifiableSet(types);
+        }
+        return mPublicTypes;
+    }
+
+    /**
+     * @return the simple names of the top level types in the given package that are not public
+     */
+    @NonNull
+    public synchronized List<String> getPackagePrivateTypes(String packageName) {
+        Multiset<String> types = mPackagePrivateTypes.get(packageName);
+        if (types == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(types.elementSet());
+    }
+
+    /**
+     * @param className the fully qualified name of the class, nested classes are separated
+     *                  with a dot
+     * @return the source files that declare the class
+     */
+    @NonNull
+    public synchronized List<Path> findDeclarations(String className) {
+        Set<Path> files = mDeclarations.get(className);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * @return the source files that use the given identifier, for example as the name of a type,
+     * a variable or the member of a select expression
+     */
+    @NonNull
+    public synchronized List<Path> findIdentifiers(String identifier) {
+        Set<Path> files = mIdentifiers.get(identifier);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * @return whether the given source file declares a field or a method with the name
+     */
+    public synchronized boolean declaresMember(Path file, String className, String memberName) {
+        FileSymbols symbols = mFiles.get(file);
+        return symbols != null && symbols.members.contains(className + "#" + memberName);
+    }
+
+    private static FileSymbols indexSource(Project project, Path file) {
+        return indexSource(project, new SourceFileObject(file));
+    }
+
+    private static FileSymbols indexSource(Project project, SourceFileObject file) {
+        CompilationUnitTree root = Parser.parseJavaFileObject(project, file).root;
+        FileSymbols symbols = new FileSymbols();
+        symbols.packageName = Objects.toString(root.getPackageName(), "");
+        Set<String> identifiers = new TreeSet<>();
+        new SymbolScanner(symbols, identifiers).scan(root, null);
+        symbols.identifiers.addAll(identifiers);
+        return symbols;
+    }
+
+    private static FileSymbols indexLibrary(File library) throws IOException {
+        FileSymbols symbols = new FileSymbols();
+        try (ZipFile zipFile = new ZipFile(library)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.indexOf('$') != -1 ||
+                        name.endsWith("module-info.class") || name.endsWith("package-info.class")) {
+                    continue;
+                }
+                String className = name.substring(0, name.length() - ".class".length())
+                        .replace('/', '.');
+                boolean isPublic;
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    isPublic = isPublicClass(inputStream);
+                }
+                if (isPublic) {
+                    symbols.publicTypes.add(className);
+                } else {
+                    symbols.packagePrivateTypes.add(className);
+                }
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Reads the access flags of the class file, which come right after its constant pool
+     */
+    private static boolean isPublicClass(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.skipBytes(4);
+        int count = in.readUnsignedShort();
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    in.skipBytes(in.readUnsignedShort());
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.skipBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.skipBytes(4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        return (in.readUnsignedShort() & 0x0001) != 0;
+    }
+
+    /**
+     * @param className the fully qualified name of a top level class
+     */
+    private static String getPackageName(String className) {
+        int index = className.lastIndexOf('.');
+        return index == -1 ? "" : className.substring(0, index);
+    }
+
+    private static String getSimpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static void add(Map<String, Set<Path>> map, String key, Path path) {
+        Set<Path> paths = map.get(key);
+        if (paths == null) {
+            paths = new HashSet<>();
+            map.put(key, paths);
+        }
+        paths.add(path);
+    }
+
+    private static void remove(Map<String, Set<Path>> map, String key, Path path) {
+        Set<Path> paths = map.get(key);
+        if (paths != null) {
+            paths.remove(path);
+            if (paths.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static class SymbolScanner extends TreeScanner<Void, Void> {
+
+        private final FileSymbols mSymbols;
+        private final Set<String> mIdentifiers;
+        private final List<String> mQualifiedName = new ArrayList<>();
+
+        SymbolScanner(FileSymbols symbols, Set<String> identifiers) {
+            mSymbols = symbols;
+            mIdentifiers = identifiers;
+        }
+
+        @Override
+        public Void visitCompilationUnit(CompilationUnitTree root, Void unused) {
+            mQualifiedName.add(mSymbols.packageName);
+            return super.visitCompilationUnit(root, unused);
+        }
+
+        @Override
+        public Void visitClass(ClassTree tree, Void unused) {
+            if (tree.getSimpleName().length() == 0) {
+                // anonymous classes cannot be referenced, only the identifiers they use are kept
+                return super.visitClass(tree, unused);
+            }
+            boolean topLevel = mQualifiedName.size() == 1;
+            mQualifiedName.add(tree.getSimpleName().toString());
+            String className = mSymbols.packageName.isEmpty()
+                    ? String.join(".", mQualifiedName.subList(1, mQualifiedName.size()))
+                    : String.join(".", mQualifiedName);
+            mSymbols.types.add(className);
+            if (topLevel) {
+                if (tree.getModifiers().getFlags().contains(Modifier.PUBLIC)) {
+                    mSymbols.publicTypes.add(className);
+                } else {
+                    mSymbols.packagePrivateTypes.add(className);
+                }
+            }
+
+            for (Tree member : tree.getMembers()) {
+                if (member instanceof MethodTree) {
+                    String name = ((MethodTree) member).getName().toString();
+                    if (!name.equals("<init>")) {
+                        mSymbols.members.add(className + "#" + name);
+                    }
+                } else if (member instanceof VariableTree) {
+                    mSymbols.members.add(className + "#" + ((VariableTree) member).getName());
+                }
+            }
+
+            super.visitClass(tree, unused);
+            mQualifiedName.remove(mQualifiedName.size() - 1);
+            return null;
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree tree, Void unused) {
+            mIdentifiers.add(tree.getName().toString());
+            return super.visitIdentifier(tree, unused);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+            mIdentifiers.add(tree.getIdentifier().toString());
+            return super.visitMemberSelect(tree, unused);
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree tree, Void unused) {
+            mIdentifiers.add(tree.getName().toString());
+            return super.visitMemberReference(tree, unused);
+        }
+    }
+}
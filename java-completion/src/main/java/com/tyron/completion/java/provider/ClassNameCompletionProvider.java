@@ -8,7 +8,6 @@ import com.tyron.completion.java.JavaCompletionProvider;
 import com.tyron.completion.java.compiler.CompileTask;
 import com.tyron.completion.java.compiler.JavaCompilerService;
 import com.tyron.completion.java.insert.ClassImportInsertHandler;
-import com.tyron.completion.java.util.ActionUtil;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 
@@ -20,8 +19,6 @@ import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
-import me.xdrop.fuzzywuzzy.FuzzySearch;
-
 public class ClassNameCompletionProvider extends BaseCompletionProvider {
 
     public ClassNameCompletionProvider(JavaCompilerService service) {
@@ -41,20 +38,19 @@ public class ClassNameCompletionProvider extends BaseCompletionProvider {
 
         String packageName = Objects.toString(root.getPackageName(), "");
         Set<String> uniques = new HashSet<>();
-        for (String className : compiler.packagePrivateTopLevelTypes(packageName)) {
-            if (!StringSearch.matchesPartialName(className, partial)) {
+        for (String simpleName : compiler.packagePrivateTopLevelTypes(packageName)) {
+            if (!StringSearch.matchesPartialName(simpleName, partial)) {
                 continue;
             }
+            String className = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
             list.items.add(classItem(className));
             uniques.add(className);
         }
 
-        for (String className : compiler.publicTopLevelTypes()) {
-            // more strict on matching class names
-            String simpleName = ActionUtil.getSimpleName(className);
-            if (!StringSearch.matchesPartialName(simpleName, partial)) {
-                continue;
-            }
+        // one more than needed to know whether the list is incomplete
+        int limit = Completions.MAX_COMPLETION_ITEMS - list.items.size() + 1;
+        String query = partial.equals(".") ? "" : partial;
+        for (String className : compiler.getClassNameIndex().find(query, Math.max(limit, 1))) {
             if (uniques.contains(className)) {
                 continue;
             }
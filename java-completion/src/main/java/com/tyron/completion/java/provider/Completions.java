@@ -81,7 +81,7 @@ public class Completions {
             StringBuilder pruned = new PruneMethodBodies(task.task).scan(task.root, index);
             int end = StringSearch.endOfLine(pruned, (int) index);
             pruned.insert(end, ';');
-            contents = new FileContentFixer(compiler.compiler.getCurrentContext())
+            contents = new FileContentFixer(compiler.getCurrentContext())
                     .fixFileContent(pruned);
         } catch (IndexOutOfBoundsException e) {
             Log.w(TAG, "Unable to fix file content", e);
@@ -0,0 +1,164 @@
+package com.tyron.completion.java.compiler;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.FileManager;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.java.CompletionModule;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class JavaCompilerServiceTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mMain;
+    private File mMainSecond;
+    private WatchedModule mModule;
+    private JavaCompilerService mService;
+
+    @Before
+    public void setup() {
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs" + ".jar"));
+
+        File root = new File(resolveBasePath(), "EmptyProject");
+        mModule = new WatchedModule(new File(root, "app"), new MockFileManager(root));
+        mMain = new File(root, "classes/Main.java");
+        mMainSecond = new File(root, "classes/MainSecond.java");
+        mModule.addJavaFile(mMain);
+        mModule.addJavaFile(mMainSecond);
+
+        Set<File> paths = new HashSet<>();
+        paths.add(mMain);
+        paths.add(mMainSecond);
+        mService = new JavaCompilerService(new Project(root), paths, Collections.emptySet(),
+                Collections.emptySet());
+        mService.setCurrentModule(mModule);
+    }
+
+    @After
+    public void tearDown() {
+        mService.destroy();
+    }
+
+    @Test
+    public void testCachedCompileIsReused() {
+        CompilationUnitTree first = root(mService.compile(mMain.toPath()));
+        // compiling other files does not evict the compilation while the sources are unchanged
+        root(mService.compile(mMainSecond.toPath()));
+        assertThat(root(mService.compile(mMain.toPath()))).isSameInstanceAs(first);
+    }
+
+    @Test
+    public void testChangedSourceInvalidatesOtherCompiles() {
+        CompilationUnitTree first = root(mService.compile(mMain.toPath()));
+        root(mService.compile(mMainSecond.toPath()));
+
+        // Main was compiled against the previous contents of MainSecond
+        mModule.notifyFileModified(mMainSecond);
+        CompilationUnitTree second = root(mService.compile(mMain.toPath()));
+        assertThat(second).isNotSameInstanceAs(first);
+
+        // only java files invalidate the compilations
+        mModule.notifyFileModified(new File(mModule.getRootFile(), "src/main/res/values.xml"));
+        assertThat(root(mService.compile(mMain.toPath()))).isSameInstanceAs(second);
+    }
+
+    @Test
+    public void testPreAnalyzeIsDebounced() throws InterruptedException {
+        mService.preAnalyze(Collections.singletonList(new SourceFileObject(mMain.toPath(), mModule)));
+        mService.preAnalyze(
+                Collections.singletonList(new SourceFileObject(mMainSecond.toPath(), mModule)));
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (mService.getCurrentContext() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        // only the last request is analyzed
+        CompilationUnitTree analyzed = root(mService.getCachedContainer());
+        assertThat(analyzed.getSourceFile().getName()).endsWith("MainSecond.java");
+        assertThat(root(mService.compile(mMainSecond.toPath()))).isSameInstanceAs(analyzed);
+    }
+
+    @Test
+    public void testDestroyWhileReading() throws InterruptedException {
+        CompilerContainer container = mService.compile(mMain.toPath());
+        // a service may be dropped by its provider while one of its compilations is read
+        container.run(task -> mService.destroy());
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (mService.getCurrentContext() != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(mService.getCurrentContext()).isNull();
+
+        // requests made after the service is destroyed are ignored
+        mService.preAnalyze(Collections.singletonList(new SourceFileObject(mMain.toPath(), mModule)));
+    }
+
+    @Test
+    public void testPackagePrivateTypesAreCached() throws Exception {
+        List<String> types = mService.packagePrivateTopLevelTypes("com.test");
+        assertThat(mService.packagePrivateTopLevelTypes("com.test")).isSameInstanceAs(types);
+
+        // the names are looked up again once the index has the new file
+        File helper = mFolder.newFile("Helper.java");
+        FileUtils.writeStringToFile(helper, "package com.test;\nclass Helper {}\n",
+                StandardCharsets.UTF_8);
+        mModule.addJavaFile(helper);
+        mModule.notifyFileCreated(helper);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!mService.packagePrivateTopLevelTypes("com.test").contains("Helper")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(mService.packagePrivateTopLevelTypes("com.test")).containsExactly("Helper");
+    }
+
+    private static CompilationUnitTree root(CompilerContainer container) {
+        return container.get(CompileTask::root);
+    }
+
+    private static class WatchedModule extends MockAndroidModule {
+
+        WatchedModule(File root, FileManager fileManager) {
+            super(root, fileManager);
+        }
+
+        @Override
+        public void notifyFileCreated(File file) {
+            super.notifyFileCreated(file);
+        }
+
+        @Override
+        public void notifyFileModified(File file) {
+            super.notifyFileModified(file);
+        }
+    }
+}
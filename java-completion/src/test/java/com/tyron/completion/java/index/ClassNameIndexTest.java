@@ -0,0 +1,56 @@
+package com.tyron.completion.java.index;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ClassNameIndexTest {
+
+    private final ClassNameIndex mIndex = ClassNameIndex.create(Arrays.asList(
+            "java.util.ArrayList",
+            "java.util.HashMap",
+            "java.util.concurrent.ArrayBlockingQueue",
+            "java.net.URLConnection",
+            "com.example.Array"));
+
+    @Test
+    public void testPrefix() {
+        assertThat(mIndex.find("Array", 10)).containsExactly(
+                "com.example.Array",
+                "java.util.concurrent.ArrayBlockingQueue",
+                "java.util.ArrayList").inOrder();
+        assertThat(mIndex.find("Array", 1)).hasSize(1);
+        assertThat(mIndex.find("array", 10)).isEmpty();
+    }
+
+    @Test
+    public void testCamelHumps() {
+        assertThat(mIndex.find("AL", 10)).containsExactly("java.util.ArrayList");
+        assertThat(mIndex.find("ArrLi", 10)).containsExactly("java.util.ArrayList");
+        assertThat(mIndex.find("ABQ", 10))
+                .containsExactly("java.util.concurrent.ArrayBlockingQueue");
+        assertThat(mIndex.find("UC", 10)).containsExactly("java.net.URLConnection");
+        assertThat(mIndex.find("HM", 10)).containsExactly("java.util.HashMap");
+    }
+
+    @Test
+    public void testUpdate() {
+        ClassNameIndex updated = mIndex.update(
+                Arrays.asList("java.util.LinkedList", "java.util.ArrayList"),
+                Collections.singletonList("java.util.HashMap"));
+
+        assertThat(updated.size()).isEqualTo(5);
+        assertThat(updated.contains("java.util.LinkedList")).isTrue();
+        assertThat(updated.contains("java.util.HashMap")).isFalse();
+        assertThat(updated.find("LL", 10)).containsExactly("java.util.LinkedList");
+        assertThat(updated.find("HM", 10)).isEmpty();
+        assertThat(updated.find("AL", 10)).containsExactly("java.util.ArrayList");
+
+        // the original index is left untouched
+        assertThat(mIndex.contains("java.util.HashMap")).isTrue();
+        assertThat(mIndex.contains("java.util.LinkedList")).isFalse();
+    }
+}
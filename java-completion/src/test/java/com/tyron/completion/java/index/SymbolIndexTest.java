@@ -0,0 +1,188 @@
+package com.tyron.completion.java.index;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.java.CompletionModule;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class SymbolIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Project mProject;
+    private WatchedModule mModule;
+    private SymbolIndex mIndex;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs" + ".jar"));
+
+        File root = mFolder.newFolder("project");
+        mProject = new Project(root);
+        mModule = new WatchedModule(new File(root, "app"));
+        mIndex = SymbolIndex.getInstance(mModule);
+    }
+
+    @Test
+    public void testSourceSymbols() throws IOException {
+        mModule.addJavaFile(write("Main.java", "package com.test;\n" +
+                "public class Main {\n" +
+                "    private int mField;\n" +
+                "    public void method() {\n" +
+                "        Helper helper = new Helper();\n" +
+                "        helper.help();\n" +
+                "    }\n" +
+                "    static class Nested {}\n" +
+                "}\n"));
+        mModule.addJavaFile(write("Helper.java", "package com.test;\n" +
+                "class Helper {\n" +
+                "    void help() {}\n" +
+                "}\n"));
+        mIndex.update(mProject);
+
+        File main = mModule.getJavaFile("com.test.Main");
+        File helper = mModule.getJavaFile("com.test.Helper");
+        assertThat(mIndex.getPublicTypes()).containsExactly("com.test.Main");
+        // the package private types are matched against the simple name that is typed
+        assertThat(mIndex.getPackagePrivateTypes("com.test")).containsExactly("Helper");
+        assertThat(mIndex.getPackagePrivateTypes("com.other")).isEmpty();
+        assertThat(mIndex.findDeclarations("com.test.Main.Nested")).containsExactly(main.toPath());
+        assertThat(mIndex.findIdentifiers("help")).containsExactly(main.toPath());
+        assertThat(mIndex.declaresMember(main.toPath(), "com.test.Main", "mField")).isTrue();
+        assertThat(mIndex.declaresMember(helper.toPath(), "com.test.Helper", "help")).isTrue();
+        assertThat(mIndex.declaresMember(main.toPath(), "com.test.Main", "help")).isFalse();
+    }
+
+    @Test
+    public void testAnonymousClassesAreNotIndexed() throws IOException {
+        File main = write("Main.java", "package com.test;\n" +
+                "public class Main {\n" +
+                "    Runnable mRunnable = new Runnable() {\n" +
+                "        int mCount;\n" +
+                "        public void run() { Helper.help(); }\n" +
+                "    };\n" +
+                "}\n");
+        mModule.addJavaFile(main);
+        mIndex.update(mProject);
+
+        assertThat(mIndex.findDeclarations("com.test.Main.")).isEmpty();
+        assertThat(mIndex.declaresMember(main.toPath(), "com.test.Main.", "run")).isFalse();
+        assertThat(mIndex.declaresMember(main.toPath(), "com.test.Main", "mRunnable")).isTrue();
+        // the identifiers used in the anonymous class are still indexed
+        assertThat(mIndex.findIdentifiers("help")).containsExactly(main.toPath());
+    }
+
+    @Test
+    public void testUpdatedFromFileEvents() throws Exception {
+        File main = write("Main.java", "package com.test;\npublic class Main {}\n");
+        mModule.addJavaFile(main);
+        mIndex.watch(mProject);
+        await(() -> !mIndex.findDeclarations("com.test.Main").isEmpty());
+
+        File created = write("Created.java", "package com.test;\nclass Created {}\n");
+        mModule.addJavaFile(created);
+        long count = mIndex.getModificationCount();
+        mModule.notifyFileCreated(created);
+        await(() -> mIndex.getPackagePrivateTypes("com.test").contains("Created"));
+        assertThat(mIndex.getModificationCount()).isGreaterThan(count);
+
+        FileUtils.writeStringToFile(main, "package com.test;\npublic class Renamed {}\n",
+                StandardCharsets.UTF_8);
+        main.setLastModified(System.currentTimeMillis() + 2000);
+        mModule.notifyFileModified(main);
+        await(() -> mIndex.getPublicTypes().contains("com.test.Renamed"));
+        assertThat(mIndex.getPublicTypes()).doesNotContain("com.test.Main");
+
+        mModule.removeJavaFile("com.test.Created");
+        mModule.notifyFileDeleted(created);
+        await(() -> mIndex.getPackagePrivateTypes("com.test").isEmpty());
+    }
+
+    @Test
+    public void testPackagePrivateTypeDeclaredTwice() throws IOException {
+        File first = write("First.java", "package com.test;\nclass Helper {}\n");
+        File second = write("Second.java", "package com.test;\nclass Helper {}\n");
+        mModule.addJavaFile(first);
+        mModule.addJavaFile(second);
+        mIndex.update(mProject);
+        assertThat(mIndex.getPackagePrivateTypes("com.test")).containsExactly("Helper");
+
+        // the other file still declares the name
+        FileUtils.writeStringToFile(first, "package com.test;\nclass Other {}\n",
+                StandardCharsets.UTF_8);
+        first.setLastModified(System.currentTimeMillis() + 2000);
+        mIndex.update(mProject);
+        assertThat(mIndex.getPackagePrivateTypes("com.test")).containsExactly("Helper", "Other");
+    }
+
+    @Test
+    public void testLookupsDoNotIndex() throws IOException {
+        mModule.addJavaFile(write("Main.java", "package com.test;\npublic class Main {}\n"));
+        mIndex.update(mProject);
+        long count = mIndex.getModificationCount();
+
+        // files that are not reported to have changed are not indexed by the lookups
+        mModule.addJavaFile(write("Other.java", "package com.test;\npublic class Other {}\n"));
+        assertThat(mIndex.getPublicTypes()).containsExactly("com.test.Main");
+        assertThat(mIndex.findDeclarations("com.test.Other")).isEmpty();
+        assertThat(mIndex.getModificationCount()).isEqualTo(count);
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File file = new File(mModule.getRootFile(), "src/main/java/com/test/" + name);
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static class WatchedModule extends MockAndroidModule {
+
+        WatchedModule(File root) {
+            super(root, new MockFileManager(root));
+        }
+
+        @Override
+        public void notifyFileCreated(File file) {
+            super.notifyFileCreated(file);
+        }
+
+        @Override
+        public void notifyFileDeleted(File file) {
+            super.notifyFileDeleted(file);
+        }
+
+        @Override
+        public void notifyFileModified(File file) {
+            super.notifyFileModified(file);
+        }
+    }
+}
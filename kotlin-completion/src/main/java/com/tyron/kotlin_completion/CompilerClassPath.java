@@ -3,13 +3,10 @@ package com.tyron.kotlin_completion;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.completion.java.CompletionModule;
 import com.tyron.kotlin_completion.classpath.ClassPathEntry;
-import com.tyron.kotlin_completion.classpath.DefaultClassPathResolver;
 import com.tyron.kotlin_completion.compiler.Compiler;
-import com.tyron.kotlin_completion.util.AsyncExecutor;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.Set;
@@ -29,51 +26,58 @@ public class CompilerClassPath implements Closeable {
 
     private Compiler compiler;
 
-    private final AsyncExecutor asyncExecutor = new AsyncExecutor();
-
     public CompilerClassPath(AndroidModule project) {
         //mConfiguration = config;
         mProject = project;
 
         mJavaSourcePath = project.getJavaFiles().values().stream().map(File::toPath).collect(Collectors.toSet());
         mJavaSourcePath.addAll(project.getJavaFiles().values().stream().map(File::toPath).collect(Collectors.toSet()));
-        mClassPath = project.getLibraries().stream().map(file -> new ClassPathEntry(file.toPath(), null)).collect(Collectors.toSet());
-        mClassPath.add(new ClassPathEntry(CompletionModule.getAndroidJar().toPath(), null));
+        mClassPath = getModuleClassPath();
 
-        compiler = new Compiler(mJavaSourcePath, mClassPath.stream().map(ClassPathEntry::getCompiledJar).collect(Collectors.toSet()));
+        compiler = new Compiler(mJavaSourcePath, getCompiledJars());
         //compiler.updateConfiguration(mConfiguration);
     }
 
-    private boolean refresh(boolean updateClassPath, boolean updateJavaSourcePath) {
-        DefaultClassPathResolver resolver = new DefaultClassPathResolver(mProject.getLibraries());
-        boolean refreshCompiler = updateJavaSourcePath;
-
-        if (updateClassPath) {
-            Set<ClassPathEntry> newClassPath = resolver.getClassPathOrEmpty();
-            if (newClassPath != mClassPath) {
-                synchronized (mClassPath) {
-                    syncPaths(mClassPath, newClassPath, "class paths", ClassPathEntry::getCompiledJar);
-                }
-
-                refreshCompiler = true;
+    /**
+     * Updates the class path with the current libraries of the module. The compiler is created
+     * again if they changed, the files that were parsed by the previous compiler have to be
+     * parsed again.
+     *
+     * @return whether the class path changed
+     */
+    public synchronized boolean refresh() {
+        Set<ClassPathEntry> newClassPath = getModuleClassPath();
+        synchronized (mClassPath) {
+            if (newClassPath.equals(mClassPath)) {
+                return false;
             }
+            syncPaths(mClassPath, newClassPath, "class paths", ClassPathEntry::getCompiledJar);
         }
 
-        asyncExecutor.compute(() -> {
-            Set<ClassPathEntry> newClassPathWithSources = resolver.getClassPathWithSources();
-            synchronized (mClassPath) {
-                syncPaths(mClassPath, newClassPathWithSources, "Source paths", ClassPathEntry::getSourceJar);
-            }
-            return null;
-        });
+        Compiler previous = compiler;
+        compiler = new Compiler(mJavaSourcePath, getCompiledJars());
+        updateCompilerConfiguration();
+        previous.close();
+        return true;
+    }
 
-        if (refreshCompiler) {
-            compiler.close();
-            compiler = new Compiler(mJavaSourcePath, mClassPath.stream().map(ClassPathEntry::getCompiledJar).collect(Collectors.toSet()));
-            updateCompilerConfiguration();
+    /**
+     * @return the jars of the current class path
+     */
+    public Set<Path> getCompiledJars() {
+        synchronized (mClassPath) {
+            return mClassPath.stream()
+                    .map(ClassPathEntry::getCompiledJar)
+                    .collect(Collectors.toSet());
         }
+    }
 
-        return refreshCompiler;
+    private Set<ClassPathEntry> getModuleClassPath() {
+        Set<ClassPathEntry> classPath = mProject.getLibraries().stream()
+                .map(file -> new ClassPathEntry(file.toPath(), null))
+                .collect(Collectors.toSet());
+        classPath.add(new ClassPathEntry(CompletionModule.getAndroidJar().toPath(), null));
+        return classPath;
     }
 
     private void updateCompilerConfiguration() {
@@ -88,12 +92,16 @@ public class CompilerClassPath implements Closeable {
         dest.addAll(added);
     }
 
-    public Compiler getCompiler() {
+    public AndroidModule getModule() {
+        return mProject;
+    }
+
+    public synchronized Compiler getCompiler() {
         return compiler;
     }
 
     @Override
-    public void close() throws IOException {
-
+    public synchronized void close() {
+        compiler.close();
     }
 }
@@ -3,8 +3,12 @@ package com.tyron.kotlin_completion;
 import android.util.Log;
 import android.util.Pair;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.listener.FileListener;
+import com.tyron.builder.project.listener.ModuleFileListener;
 import com.tyron.common.util.Debouncer;
 import com.tyron.completion.model.CachedCompletion;
 import com.tyron.completion.model.CompletionItem;
@@ -14,16 +18,22 @@ import com.tyron.kotlin_completion.diagnostic.ConvertDiagnosticKt;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
 import com.tyron.kotlin_completion.util.StringUtilsKt;
 
+import org.apache.commons.io.FileUtils;
 import org.jetbrains.kotlin.diagnostics.Diagnostic;
 import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
@@ -48,10 +58,94 @@ public class CompletionEngine {
     private Set<File> lintTodo = new HashSet<>();
     private int lintCount = 0;
 
+    /**
+     * The versions of the file manager snapshots that the source path has, the contents given
+     * by the editor do not have to be compared with the source path while they match. Guarded
+     * by itself so an edit that is applied late never replaces newer contents.
+     */
+    private final Map<File, Long> mSnapshotVersions = new HashMap<>();
+
+    /**
+     * Applies the edits of the editor to the source path, so only the range that changed has
+     * to be analyzed again. The listener is called on the thread that edits the snapshot,
+     * usually the UI thread, so the edits are queued in order on the {@link #async} thread
+     * instead of waiting for a parse of the file to finish.
+     */
+    private final FileListener mSnapshotListener = new FileListener() {
+        @Override
+        public void onSnapshotChanged(File file, CharSequence contents) {
+            if (!isKotlinFile(file)) {
+                return;
+            }
+            long version = mProject.getFileManager().getSnapshotVersion(file);
+            async.execute(() -> applySnapshot(file, version, -1, -1, null, contents));
+        }
+
+        @Override
+        public void onSnapshotEdited(File file, int start, int end, CharSequence text,
+                                     CharSequence contents) {
+            if (!isKotlinFile(file)) {
+                return;
+            }
+            long version = mProject.getFileManager().getSnapshotVersion(file);
+            String inserted = text.toString();
+            async.execute(() -> applySnapshot(file, version, start, end, inserted, contents));
+        }
+    };
+
+    /**
+     * Keeps the source path and its index in sync with the kotlin files that are changed on
+     * the disk, the files that are opened in the editor are updated by their snapshots instead
+     */
+    private final ModuleFileListener mModuleListener = new ModuleFileListener() {
+        @Override
+        public void onFileCreated(File file) {
+            reload(file);
+        }
+
+        @Override
+        public void onFileDeleted(File file) {
+            if (isKotlinFile(file)) {
+                synchronized (mSnapshotVersions) {
+                    mSnapshotVersions.remove(file);
+                }
+                sp.delete(file);
+            }
+        }
+
+        @Override
+        public void onFileModified(File file) {
+            reload(file);
+        }
+
+        private void reload(File file) {
+            if (!isKotlinFile(file) || mProject.getFileManager().isOpened(file)) {
+                return;
+            }
+            async.execute(() -> {
+                String contents;
+                try {
+                    contents = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    Log.w("CompletionEngine", "Unable to read " + file, e);
+                    return;
+                }
+                synchronized (mSnapshotVersions) {
+                    mSnapshotVersions.remove(file);
+                }
+                sp.put(file, contents.replace("\r", ""), false);
+                // compiling the file updates its symbols in the index
+                sp.compileFiles(Collections.singletonList(file));
+            });
+        }
+    };
+
     private CompletionEngine(AndroidModule project) {
         mProject = project;
         classPath = new CompilerClassPath(project);
         sp = new SourcePath(classPath);
+        mProject.getFileManager().addSnapshotListener(mSnapshotListener);
+        mProject.addFileListener(mModuleListener);
     }
 
     private static volatile CompletionEngine INSTANCE = null;
@@ -62,12 +156,27 @@ public class CompletionEngine {
         } else {
             if (project != INSTANCE.mProject) {
                 Log.d("CompletionEngine", "Creating new instance");
+                INSTANCE.close();
                 INSTANCE = new CompletionEngine(project);
             }
         }
         return INSTANCE;
     }
 
+    /**
+     * Releases the compiler and stops the threads of this engine, it can no longer be used
+     * after this is called
+     */
+    public void close() {
+        mProject.getFileManager().removeSnapshotListener(mSnapshotListener);
+        mProject.removeFileListener(mModuleListener);
+        debounceLint.cancel();
+        debounceLint.shutdown(false);
+        async.shutdown(false);
+        sp.close();
+        classPath.close();
+    }
+
     public boolean isIndexing() {
         return sp.getIndex().getIndexing();
     }
@@ -76,8 +185,12 @@ public class CompletionEngine {
         return sp;
     }
 
-    public synchronized Pair<CompiledFile, Integer> recover(File file, String contents,
-                                                            Recompile recompile, int offset) {
+    /**
+     * @return the compiled file paired with the offset, the compiled file is null if the file
+     * could not be compiled
+     */
+    public Pair<CompiledFile, Integer> recover(File file, String contents,
+                                               Recompile recompile, int offset) {
         boolean shouldRecompile = true;
         switch (recompile) {
             case NEVER:
@@ -89,35 +202,32 @@ public class CompletionEngine {
             case AFTER_DOT:
                 shouldRecompile = offset > 0 && contents.charAt(offset - 1) == '.';
         }
-        sp.put(file, contents, false);
+        // the libraries of the module change when its dependencies are resolved
+        sp.refreshClassPath();
+        put(file, contents);
 
         CompiledFile compiled;
         if (shouldRecompile) {
-            compiled = sp.currentVersion(file);
+            compiled = sp.currentVersion(file, offset);
         } else {
-            compiled = sp.latestCompiledVersion(file);
+            compiled = sp.latestCompiledVersion(file, offset);
         }
 
         return Pair.create(compiled, offset);
     }
 
     public CompletableFuture<CompletionList> complete(File file, String contents, int cursor) {
-        if (isIndexing()) {
-            return CompletableFuture.completedFuture(CompletionList.EMPTY);
-        }
-
         return async.compute(() -> {
             Pair<CompiledFile, Integer> pair = recover(file, contents, Recompile.NEVER, cursor);
+            if (pair.first == null) {
+                return CompletionList.EMPTY;
+            }
             return new Completions().completions(pair.first, cursor, sp.getIndex());
         });
     }
 
     public CompletionList complete(File file, String contents, String prefix, int line,
                                    int column, int cursor) {
-        if (isIndexing()) {
-            return CompletionList.EMPTY;
-        }
-
         if (isIncrementalCompletion(cachedCompletion, file, prefix, line, column)) {
             String partialIdentifier = partialIdentifier(prefix, prefix.length());
             CompletionList cachedList = cachedCompletion.getCompletionList();
@@ -140,7 +250,10 @@ public class CompletionEngine {
 
         debounceLint.cancel();
 
-        Pair<CompiledFile, Integer> recover = recover(file, contents, Recompile.NEVER, cursor);
+        Pair<CompiledFile, Integer> recover = recover(file, contents, Recompile.AFTER_DOT, cursor);
+        if (recover.first == null) {
+            return CompletionList.EMPTY;
+        }
         CompletionList completions = new Completions().completions(recover.first, cursor,
                 sp.getIndex());
         String partialIdentifier = partialIdentifier(contents, cursor);
@@ -148,6 +261,56 @@ public class CompletionEngine {
         return completions;
     }
 
+    /**
+     * Gives the contents of the file to the source path, unless it already has them from the
+     * edits of the editor
+     */
+    private void put(File file, String contents) {
+        synchronized (mSnapshotVersions) {
+            long current = mProject.getFileManager().getSnapshotVersion(file);
+            Long version = mSnapshotVersions.get(file);
+            if (version != null && version == current) {
+                return;
+            }
+            sp.put(file, contents, false);
+            // the edits that are still queued are older than the contents of the editor
+            Optional<CharSequence> snapshot = mProject.getFileManager().getFileContent(file);
+            if (current != -1 && snapshot.isPresent() &&
+                    contents.equals(snapshot.get().toString())) {
+                mSnapshotVersions.put(file, current);
+            }
+        }
+    }
+
+    /**
+     * Applies a snapshot of the file manager to the source path unless it already has a newer
+     * one
+     *
+     * @param text the text that replaced the range between start and end, null if the whole
+     *             contents have changed
+     */
+    private void applySnapshot(File file, long version, int start, int end,
+                               @Nullable String text, CharSequence contents) {
+        synchronized (mSnapshotVersions) {
+            Long applied = mSnapshotVersions.get(file);
+            if (applied != null && applied >= version) {
+                return;
+            }
+            if (text == null || !sp.put(file, start, end, text, contents.length())) {
+                sp.put(file, contents.toString(), false);
+            }
+            if (version == -1) {
+                mSnapshotVersions.remove(file);
+            } else {
+                mSnapshotVersions.put(file, version);
+            }
+        }
+    }
+
+    private static boolean isKotlinFile(File file) {
+        return file.getName().endsWith(".kt");
+    }
+
     private String partialIdentifier(String contents, int end) {
         int start = end;
         while (start > 0 && Character.isJavaIdentifierPart(contents.charAt(start - 1))) {
@@ -231,8 +394,9 @@ public class CompletionEngine {
             return;
         }
 
-        sp.put(file, contents, false);
-        BindingContext context = sp.compileFiles(Collections.singletonList(file));
+        sp.refreshClassPath();
+        put(file, contents);
+        BindingContext context = sp.compileFiles(Collections.singletonList(file), cancelCallback);
         if (cancelCallback.invoke()) {
            return;
         }
@@ -248,7 +412,8 @@ public class CompletionEngine {
 
     public List<DiagnosticWrapper> doLint(Function0<Boolean> cancelCallback) {
         List<File> files = clearLint();
-        BindingContext context = sp.compileFiles(files);
+        sp.refreshClassPath();
+        BindingContext context = sp.compileFiles(files, cancelCallback);
         if (!cancelCallback.invoke()) {
             List<DiagnosticWrapper> diagnosticWrappers = new ArrayList<>();
             Diagnostics diagnostics = context.getDiagnostics();
@@ -2,6 +2,10 @@ package com.tyron.kotlin_completion;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.common.util.Rope;
 import com.tyron.kotlin_completion.compiler.CompletionKind;
 import com.tyron.kotlin_completion.index.SymbolIndex;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
@@ -9,9 +13,11 @@ import com.tyron.kotlin_completion.util.UtilKt;
 
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.kotlin.com.intellij.lang.Language;
+import org.jetbrains.kotlin.com.intellij.openapi.util.TextRange;
 import org.jetbrains.kotlin.container.ComponentProvider;
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.psi.KtDeclaration;
 import org.jetbrains.kotlin.psi.KtFile;
 import org.jetbrains.kotlin.resolve.BindingContext;
 
@@ -21,16 +27,22 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
-import kotlin.collections.CollectionsKt;
-import kotlin.sequences.Sequence;
-import kotlin.sequences.SequencesKt;
+import kotlin.jvm.functions.Function0;
 import kotlin.Pair;
 
 public class SourcePath {
@@ -38,22 +50,28 @@ public class SourcePath {
     private static final String TAG = "SourcePath";
 
     private final CompilerClassPath cp;
-    private final Map<URI, SourceFile> files = new HashMap<>();
-    private final FakeLock parsedDataWriteLock = new FakeLock();
-
-    public static class FakeLock {
-        public void lock() {}
-        public void unlock() {}
-    }
+    private final Map<URI, SourceFile> files = new ConcurrentHashMap<>();
 
     private final AsyncExecutor indexAsync = new AsyncExecutor();
-    private final SymbolIndex index = new SymbolIndex();
-    private boolean indexEnabled = false;
-    private boolean indexInitialized;
+    private final ExecutorService compileExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+                Thread thread = new Thread(runnable, "kotlin-compile");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final SymbolIndex index;
+    private boolean indexEnabled = true;
+
+    /**
+     * The jars of the class path that the libraries of the index were built from, null if
+     * they have not been indexed yet
+     */
+    private volatile Set<Path> indexedJars;
 
 
     public SourcePath(CompilerClassPath classPath) {
         cp = classPath;
+        index = new SymbolIndex(classPath.getModule());
     }
 
     public CompilerClassPath getCompilerClassPath() {
@@ -64,36 +82,103 @@ public class SourcePath {
         return index;
     }
 
+    @VisibleForTesting
+    @Nullable
+    Set<Path> getIndexedJars() {
+        return indexedJars;
+    }
+
+    /**
+     * The result of compiling a source file. It is replaced as a whole so readers never see
+     * the parsed file of one compilation together with the binding context of another.
+     */
+    private static class CompileResult {
+        final KtFile file;
+        final BindingContext context;
+        final ComponentProvider container;
+        final long version;
+
+        /**
+         * The range of the declaration that was analyzed if only the declaration that was
+         * edited has been analyzed, the context does not have the scopes and the diagnostics
+         * of the rest of the file. Null if the whole file has been analyzed.
+         */
+        @Nullable
+        final TextRange partialRange;
+
+        CompileResult(KtFile file, BindingContext context, ComponentProvider container,
+                      long version, @Nullable TextRange partialRange) {
+            this.file = file;
+            this.context = context;
+            this.container = container;
+            this.version = version;
+            this.partialRange = partialRange;
+        }
+
+        boolean isPartial() {
+            return partialRange != null;
+        }
+
+        /**
+         * @return whether the context has the scopes at the given offset of the file
+         */
+        boolean covers(int offset) {
+            return partialRange == null || partialRange.containsOffset(offset);
+        }
+    }
+
     public class SourceFile {
 
         private final URI uri;
-        private String content;
+        /**
+         * Edits share the unchanged parts of the previous content, the string given to the
+         * parser is built once per version by {@link Rope#toString()}
+         */
+        private volatile Rope content;
         private final Path path;
-        private KtFile parsed;
-        private KtFile compiledFile;
-        public BindingContext compiledContext;
-        private ComponentProvider compiledcontainer;
+        private volatile KtFile parsed;
+        private volatile CompileResult compiled;
+
+        /**
+         * Incremented on every change of the content, a parse or a compilation is stale when
+         * its version is not the current one
+         */
+        private volatile long version;
+        private long parsedVersion = -1;
+
+        /**
+         * The range of the content that changed since the last compilation, -1 if nothing did
+         */
+        private int changedStart = -1;
+        private int changedEnd = -1;
         private final Language language;
         private final boolean isTemporary;
 
+        /**
+         * Held while this file is parsed, compiling a file parses all the other files so this
+         * lock must never be held while waiting for {@link #compileLock}
+         */
+        private final ReentrantLock parseLock = new ReentrantLock();
+
+        /**
+         * Held while this file is compiled, different files are compiled in parallel
+         */
+        private final ReentrantLock compileLock = new ReentrantLock();
+
         private final String extension;
         private final CompletionKind kind = CompletionKind.DEFAULT;
 
         public SourceFile(URI uri, String content, Language language, boolean isTemporary) {
-            this(uri, content, Paths.get(uri), null, null, null, null, language, isTemporary);
+            this(uri, content, Paths.get(uri), language, isTemporary);
         }
         public SourceFile(URI uri, String content, Language language) {
-            this(uri, content, Paths.get(uri), null, null, null, null, language, false);
+            this(uri, content, Paths.get(uri), language, false);
         }
 
-        private SourceFile(URI uri, String content, Path path, KtFile parsed, KtFile compiledFile, BindingContext compiledContext, ComponentProvider compiledcontainer, Language language, boolean isTemporary) {
+        private SourceFile(URI uri, String content, Path path, Language language, boolean isTemporary) {
             this.uri = uri;
-            this.content = content;
+            this.content = Rope.of(content);
             this.path = path;
-            this.parsed = parsed;
-            this.compiledFile = compiledFile;
-            this.compiledContext = compiledContext;
-            this.compiledcontainer = compiledcontainer;
             this.language = language;
             this.isTemporary = isTemporary;
 
@@ -101,88 +186,275 @@ public class SourcePath {
         }
 
         public void put(String newContent) {
-            content = newContent;
+            parseLock.lock();
+            try {
+                String oldContent = content.toString();
+                int length = Math.min(oldContent.length(), newContent.length());
+                int prefix = 0;
+                while (prefix < length && oldContent.charAt(prefix) == newContent.charAt(prefix)) {
+                    prefix++;
+                }
+                if (prefix == oldContent.length() && prefix == newContent.length()) {
+                    return;
+                }
+                int suffix = 0;
+                while (suffix < length - prefix &&
+                        oldContent.charAt(oldContent.length() - suffix - 1) ==
+                                newContent.charAt(newContent.length() - suffix - 1)) {
+                    suffix++;
+                }
+                recordChange(prefix, oldContent.length() - suffix, newContent.length() - suffix);
+                content = Rope.of(newContent);
+            } finally {
+                parseLock.unlock();
+            }
+        }
+
+        /**
+         * Replaces the range of the content between start and end with the given text
+         *
+         * @param newLength the length of the content after the edit
+         * @return false if the edit does not apply to the current content, the content is
+         * left unchanged
+         */
+        public boolean put(int start, int end, String text, int newLength) {
+            parseLock.lock();
+            try {
+                Rope oldContent = content;
+                if (start < 0 || start > end || end > oldContent.length() ||
+                        oldContent.length() - (end - start) + text.length() != newLength) {
+                    return false;
+                }
+                recordChange(start, end, start + text.length());
+                content = oldContent.replace(start, end, text);
+                return true;
+            } finally {
+                parseLock.unlock();
+            }
+        }
+
+        private void recordChange(int start, int oldEnd, int newEnd) {
+            if (changedStart == -1) {
+                changedStart = start;
+                changedEnd = newEnd;
+            } else {
+                int end;
+                if (changedEnd <= start) {
+                    end = changedEnd;
+                } else if (changedEnd >= oldEnd) {
+                    end = changedEnd + newEnd - oldEnd;
+                } else {
+                    end = newEnd;
+                }
+                changedStart = Math.min(changedStart, start);
+                changedEnd = Math.max(end, newEnd);
+            }
+            version++;
+        }
+
+        private void clearChanges(long compiledVersion) {
+            parseLock.lock();
+            try {
+                // edits made while compiling are still pending
+                if (version == compiledVersion) {
+                    changedStart = -1;
+                    changedEnd = -1;
+                }
+            } finally {
+                parseLock.unlock();
+            }
         }
 
         public void clean() {
-            parsed = null;
-            compiledFile = null;
-            compiledContext = null;
-            compiledcontainer = null;
+            parseLock.lock();
+            try {
+                parsed = null;
+                compiled = null;
+                // a compilation that is still running is stale
+                version++;
+                changedStart = -1;
+                changedEnd = -1;
+            } finally {
+                parseLock.unlock();
+            }
+        }
+
+        @Nullable
+        public BindingContext getCompiledContext() {
+            CompileResult result = compiled;
+            return result == null ? null : result.context;
         }
 
         public void parse() {
-            Log.d(TAG, "Parsing file " + path);
-            parsed = cp.getCompiler().createKtFile(content, (path == null ? Paths.get("sourceFile.virtual" + extension) : path), kind);
+            parseLock.lock();
+            try {
+                Log.d(TAG, "Parsing file " + path);
+                parsedVersion = version;
+                parsed = cp.getCompiler().createKtFile(content.toString(), (path == null ? Paths.get("sourceFile.virtual" + extension) : path), kind);
+            } finally {
+                parseLock.unlock();
+            }
         }
 
-        public void parseIfChanged() {
-            if (parsed == null || !content.equals(parsed.getText())) {
-                Log.d(TAG, "Parse has changed, parsing.");
-                parse();
+        public KtFile parseIfChanged() {
+            parseLock.lock();
+            try {
+                if (parsed == null || parsedVersion != version) {
+                    Log.d(TAG, "Parse has changed, parsing.");
+                    parse();
+                }
+                return parsed;
+            } finally {
+                parseLock.unlock();
             }
         }
 
         public void compileIfNull() {
-            if (compiledFile == null) {
-                parseIfChanged();
-                doCompileIfChanged();
+            if (compiled == null) {
+                compileIfChanged();
             }
         }
 
-        private void compile() {
-            parse();
-            doCompile();
+        private boolean isCompiled() {
+            CompileResult result = compiled;
+            return result != null && !result.isPartial() && result.version == version;
         }
 
         private void compileIfChanged() {
-            parseIfChanged();
-            doCompileIfChanged();
-        }
-
-        private void doCompileIfChanged() {
-            if (parsed == null || compiledFile == null || !parsed.getText().equals(compiledFile.getText())) {
-                doCompile();;
+            compileLock.lock();
+            try {
+                if (isCompiled()) {
+                    return;
+                }
+                KtFile file;
+                long fileVersion;
+                parseLock.lock();
+                try {
+                    file = parseIfChanged();
+                    fileVersion = parsedVersion;
+                } finally {
+                    parseLock.unlock();
+                }
+                doCompile(file, fileVersion);
+            } finally {
+                compileLock.unlock();
             }
         }
 
-        private void doCompile() {
-            if (this.path.toFile().getName().endsWith(".kt")) {
-                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtFile(parsed, allIncludingThis());
-                parsedDataWriteLock.lock();
+        /**
+         * Analyzes only the top level declaration that contains the changes since the last
+         * compilation. The whole file is compiled if it has not been compiled yet, if the
+         * changes are not inside a single declaration or if the offset is outside of the
+         * declaration, as the scopes of the other declarations are not in the result.
+         *
+         * @param offset the offset the compilation is needed for, -1 if it is needed for the
+         *               whole file
+         */
+        private void compileChangedDeclaration(int offset) {
+            compileLock.lock();
+            try {
+                CompileResult result = compiled;
+                if (result == null) {
+                    compileIfChanged();
+                    return;
+                }
+                if (result.version == version) {
+                    return;
+                }
+
+                KtFile file;
+                long fileVersion;
+                int start;
+                int end;
+                parseLock.lock();
                 try {
-                    compiledContext = pair.getFirst();
-                    compiledcontainer = pair.getSecond();
-                    compiledFile = parsed;
+                    file = parseIfChanged();
+                    fileVersion = parsedVersion;
+                    start = changedStart;
+                    end = changedEnd;
                 } finally {
-                    parsedDataWriteLock.unlock();
+                    parseLock.unlock();
+                }
+
+                KtDeclaration declaration = start == -1 ? null : findDeclaration(file, start, end);
+                if (declaration == null || !this.path.toFile().getName().endsWith(".kt") ||
+                        !declaration.getTextRange().containsOffset(offset)) {
+                    doCompile(file, fileVersion);
+                    return;
                 }
+                Log.d(TAG, "Compiling changed declaration of " + path);
+                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtDeclaration(declaration, allIncludingThis(file));
+                compiled = new CompileResult(file, pair.getFirst(), pair.getSecond(), fileVersion,
+                        declaration.getTextRange());
+                clearChanges(fileVersion);
+            } finally {
+                compileLock.unlock();
             }
-            initializeIndexAsyncIfNeeded(compiledcontainer);
         }
-        public CompiledFile prepareCompiledFile() {
-            parseIfChanged();
+
+        private void doCompile(KtFile file, long fileVersion) {
+            if (this.path.toFile().getName().endsWith(".kt")) {
+                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtFile(file, allIncludingThis(file));
+                compiled = new CompileResult(file, pair.getFirst(), pair.getSecond(), fileVersion, null);
+                clearChanges(fileVersion);
+                updateIndexAsync(this);
+                refreshLibrariesAsyncIfNeeded(pair.getSecond());
+            }
+        }
+
+        /**
+         * @param offset the offset the compilation is needed for, a compilation of only the
+         *               declaration that was edited is used only if it contains the offset.
+         *               -1 if the compilation is needed for the whole file
+         * @return the last compilation of this file, null if the file could not be compiled
+         */
+        @Nullable
+        public CompiledFile prepareCompiledFile(int offset) {
             compileIfNull();
+            CompileResult result = compiled;
+            if (result != null && !result.covers(offset)) {
+                compileIfChanged();
+            }
             return doPrepareCompiledFile();
         }
 
+        @Nullable
         public CompiledFile doPrepareCompiledFile() {
-            return new CompiledFile(content, compiledFile, compiledContext, compiledcontainer, allIncludingThis(), cp);
+            CompileResult result = compiled;
+            if (result == null) {
+                return null;
+            }
+            return new CompiledFile(content.toString(), result.file, result.context, result.container, allIncludingThis(result.file), cp);
         }
 
-        private Collection<KtFile> allIncludingThis() {
-            parseIfChanged();
-            if (isTemporary) {
-                Set<KtFile> all = all(false);
-                Sequence<KtFile> plus = SequencesKt.plus(SequencesKt.asSequence(all.iterator()), SequencesKt.sequenceOf(parsed));
-                return SequencesKt.toList(plus);
-            } else {
-                return all(false);
+        /**
+         * @param file the parse of this file to compile, the file may have been parsed again
+         * by another thread since so the current parse is not used
+         */
+        private Collection<KtFile> allIncludingThis(KtFile file) {
+            List<KtFile> all = new ArrayList<>();
+            for (SourceFile sourceFile : files.values()) {
+                if (sourceFile != this && !sourceFile.isTemporary) {
+                    all.add(sourceFile.parseIfChanged());
+                }
             }
+            all.add(file);
+            return all;
         }
 
     }
 
+    @Nullable
+    private static KtDeclaration findDeclaration(KtFile file, int start, int end) {
+        for (KtDeclaration declaration : file.getDeclarations()) {
+            TextRange range = declaration.getTextRange();
+            if (range.getStartOffset() <= start && end <= range.getEndOffset()) {
+                return declaration;
+            }
+        }
+        return null;
+    }
+
     public void put(File file, String content, boolean temp) {
         assert !content.contains("\r");
 
@@ -191,13 +463,25 @@ public class SourcePath {
             Log.d(TAG, "Adding temporary file");
         }
 
-        if (files.containsKey(file.toURI())) {
-            sourceFile(file).put(content);
-        } else {
-            files.put(file.toURI(), new SourceFile(file.toURI(), content, KotlinLanguage.INSTANCE, temp));
+        SourceFile existing = files.putIfAbsent(file.toURI(), new SourceFile(file.toURI(), content, KotlinLanguage.INSTANCE, temp));
+        if (existing != null) {
+            existing.put(content);
         }
     }
 
+    /**
+     * Applies an edit to a file that has been put before, only the range that was replaced is
+     * analyzed again the next time the current version of the file is requested
+     *
+     * @param newLength the length of the file after the edit
+     * @return false if the file has not been put or if its content is out of sync with the
+     * edit, the whole content has to be put instead
+     */
+    public boolean put(File file, int start, int end, String text, int newLength) {
+        SourceFile sourceFile = files.get(file.toURI());
+        return sourceFile != null && sourceFile.put(start, end, text, newLength);
+    }
+
     public boolean deleteIfTemporary(File uri) {
         if (sourceFile(uri).isTemporary) {
             delete(uri);
@@ -209,63 +493,137 @@ public class SourcePath {
 
     public void delete(File file) {
         files.remove(file.toURI());
+        indexAsync.execute(() -> index.removeSource(file.toPath()));
     }
 
     public BindingContext compileFiles(Collection<File> all) {
-        Set<SourceFile> sources = all.stream().map(o -> files.get(o.toURI())).collect(Collectors.toSet());
-        Set<SourceFile> allChanged = sources.stream().filter(it -> !it.content.equals(it.compiledFile.getText()))
-                .collect(Collectors.toSet());
-        BindingContext sourcesContext = compileAndUpdate(allChanged);
-        return UtilKt.util(sourcesContext, sources, allChanged);
+        return compileFiles(all, () -> false);
     }
 
-    private void initializeIndexAsyncIfNeeded(ComponentProvider container) {
-        indexAsync.execute(() -> {
-            if (indexEnabled && !indexInitialized) {
-                ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
-                index.refresh(module, true);
-                indexInitialized = true;
+    /**
+     * Compiles the files whose contents changed since they were last compiled. Each file is
+     * compiled in its own container on the compile threads so independent files are analyzed
+     * in parallel, files that have not started compiling yet are skipped once the compilation
+     * is cancelled.
+     *
+     * @return the combined binding context of the given files
+     */
+    public BindingContext compileFiles(Collection<File> all, Function0<Boolean> cancelled) {
+        Set<SourceFile> sources = all.stream()
+                .map(this::sourceFile)
+                .collect(Collectors.toSet());
+        Set<SourceFile> allChanged = sources.stream()
+                .filter(it -> !it.isCompiled())
+                .collect(Collectors.toSet());
+
+        if (allChanged.size() == 1) {
+            allChanged.iterator().next().compileIfChanged();
+        } else if (!allChanged.isEmpty()) {
+            List<Future<?>> futures = new ArrayList<>();
+            try {
+                for (SourceFile sourceFile : allChanged) {
+                    futures.add(compileExecutor.submit(() -> {
+                        if (!cancelled.invoke()) {
+                            sourceFile.compileIfChanged();
+                        }
+                    }));
+                }
+            } catch (RejectedExecutionException e) {
+                // the source path has been closed
+                futures.forEach(it -> it.cancel(false));
+                return UtilKt.util(null, Collections.emptySet(), Collections.emptySet());
             }
-        });
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Unable to compile file", e.getCause());
+                } catch (InterruptedException e) {
+                    futures.forEach(it -> it.cancel(false));
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return UtilKt.util(null, sources, Collections.emptySet());
     }
 
+    /**
+     * Updates the class path with the current libraries of the module. If they changed, the
+     * files are parsed and compiled again by the new compiler and the libraries are indexed
+     * again after the next compilation.
+     *
+     * @return whether the class path changed
+     */
+    public boolean refreshClassPath() {
+        if (!cp.refresh()) {
+            return false;
+        }
+        files.values().forEach(SourceFile::clean);
+        return true;
+    }
 
-    private BindingContext compileAndUpdate(Set<SourceFile> changed) {
-        if (changed.isEmpty()) return null;
-        Map<SourceFile, KtFile> parse = CollectionsKt.associateWith(changed, sourceFile -> {
-            sourceFile.parseIfChanged();
-            return sourceFile.parsed;
-        });
-        Set<KtFile> all = all(false);
-        Pair<BindingContext, ComponentProvider> pair = cp.getCompiler()
-                .compileKtFiles(parse.values(), all, CompletionKind.DEFAULT);
-
-        parse.forEach((f, parsed) -> {
-            parsedDataWriteLock.lock();
-            try {
-                if (f.parsed.equals(parsed)) {
-                    f.compiledFile = parsed;
-                    f.compiledContext = pair.getFirst();
-                    f.compiledcontainer = pair.getSecond();
-                }
-            } finally {
-                parsedDataWriteLock.unlock();
+    /**
+     * Indexes the libraries if the jars of the class path are not the ones that were indexed
+     */
+    private void refreshLibrariesAsyncIfNeeded(ComponentProvider container) {
+        if (!indexEnabled || cp.getCompiledJars().equals(indexedJars)) {
+            return;
+        }
+        indexAsync.execute(() -> {
+            Set<Path> jars = cp.getCompiledJars();
+            if (indexEnabled && !jars.equals(indexedJars)) {
+                ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
+                index.refreshLibraries(module, jars);
+                indexedJars = jars;
             }
         });
+    }
 
-        initializeIndexAsyncIfNeeded(pair.getSecond());
-        return pair.getFirst();
+    /**
+     * Replaces the symbols of the file in the index with the ones of its last compilation,
+     * the libraries are indexed again only when the class path changes
+     */
+    private void updateIndexAsync(SourceFile sourceFile) {
+        if (!indexEnabled || sourceFile.isTemporary) {
+            return;
+        }
+        CompileResult result = sourceFile.compiled;
+        if (result == null) {
+            return;
+        }
+        indexAsync.execute(() -> index.updateSource(sourceFile.path, result.file, result.context));
     }
 
+    @Nullable
     public CompiledFile currentVersion(File file) {
+        return currentVersion(file, -1);
+    }
+
+    /**
+     * @param offset the offset of the file the compilation is needed for, only the
+     *               declaration that was edited is analyzed if the offset is inside it
+     */
+    @Nullable
+    public CompiledFile currentVersion(File file, int offset) {
         SourceFile sourceFile = sourceFile(file);
-        sourceFile.compileIfChanged();
-        return sourceFile.prepareCompiledFile();
+        sourceFile.compileChangedDeclaration(offset);
+        return sourceFile.prepareCompiledFile(offset);
     }
 
+    @Nullable
     public CompiledFile latestCompiledVersion(File file) {
+        return latestCompiledVersion(file, -1);
+    }
+
+    /**
+     * @param offset the offset of the file the compilation is needed for, the file is
+     *               compiled again if its last compilation does not cover the offset
+     */
+    @Nullable
+    public CompiledFile latestCompiledVersion(File file, int offset) {
         SourceFile sourceFile = sourceFile(file);
-        return sourceFile.prepareCompiledFile();
+        return sourceFile.prepareCompiledFile(offset);
     }
 
     private SourceFile sourceFile(File file) {
@@ -277,17 +635,19 @@ public class SourcePath {
             } catch (IOException e) {
                 string = "";
             }
-            put(file, string, true);
+            files.putIfAbsent(file.toURI(), new SourceFile(file.toURI(), string, KotlinLanguage.INSTANCE, true));
         }
         return files.get(file.toURI());
     }
-    private Set<KtFile> all(boolean includeHidden) {
-        return files.values().stream()
-                .filter(it -> includeHidden || !it.isTemporary)
-                .map(it -> {
-                    it.parseIfChanged();
-                    return it.parsed;
-                }).collect(Collectors.toSet());
+
+    /**
+     * Stops the compile and index threads of this source path, files that are still being
+     * compiled are interrupted and their results discarded
+     */
+    public void close() {
+        compileExecutor.shutdownNow();
+        indexAsync.shutdown(false);
+        files.clear();
     }
 
 }
@@ -14,6 +14,7 @@ import org.jetbrains.kotlin.com.intellij.psi.PsiJavaFile;
 import org.jetbrains.kotlin.config.CompilerConfiguration;
 import org.jetbrains.kotlin.container.ComponentProvider;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.psi.KtDeclaration;
 import org.jetbrains.kotlin.psi.KtExpression;
 import org.jetbrains.kotlin.psi.KtFile;
 import org.jetbrains.kotlin.resolve.BindingContext;
@@ -32,7 +33,7 @@ import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import kotlin.Pair;
 
@@ -43,18 +44,12 @@ public class Compiler implements Closeable {
 
     private final CompilationEnvironment mDefaultCompileEnvironment;
     private final VirtualFileSystem mLocalFileSystem;
-    private final FakeLock mCompileLock = new FakeLock();
-
-    public class FakeLock {
-        public void lock() {
-
-        }
-
-        public void unlock() {
-
-        }
-    }
-    private boolean closed = false;
+    /**
+     * Every compilation creates its own container so they can run in parallel, they only
+     * have to be excluded while the environment they share is being changed or closed.
+     */
+    private final ReentrantReadWriteLock mCompileLock = new ReentrantReadWriteLock();
+    private volatile boolean closed = false;
 
 
     public Compiler(Set<Path> javaSourcePath, Set<Path> classPath) {
@@ -94,14 +89,30 @@ public class Compiler implements Closeable {
     }
 
     public Pair<BindingContext, ComponentProvider> compileKtFiles(Collection<? extends KtFile> files, Collection<KtFile> sourcePath, CompletionKind kind) {
-        mCompileLock.lock();
+        mCompileLock.readLock().lock();
         try {
             Pair<ComponentProvider, BindingTraceContext> pair = mDefaultCompileEnvironment.createContainer(sourcePath);
             ((LazyTopDownAnalyzer) pair.getFirst().resolve(LazyTopDownAnalyzer.class).getValue())
                     .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, files, DataFlowInfo.Companion.getEMPTY(), null);
             return new Pair<>(pair.getSecond().getBindingContext(), pair.getFirst());
         } finally {
-            mCompileLock.unlock();
+            mCompileLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Analyzes a single top level declaration, the other declarations of the source path are
+     * only resolved as far as the declaration refers to them.
+     */
+    public Pair<BindingContext, ComponentProvider> compileKtDeclaration(KtDeclaration declaration, Collection<KtFile> sourcePath) {
+        mCompileLock.readLock().lock();
+        try {
+            Pair<ComponentProvider, BindingTraceContext> pair = mDefaultCompileEnvironment.createContainer(sourcePath);
+            ((LazyTopDownAnalyzer) pair.getFirst().resolve(LazyTopDownAnalyzer.class).getValue())
+                    .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, Collections.singletonList(declaration), DataFlowInfo.Companion.getEMPTY(), null);
+            return new Pair<>(pair.getSecond().getBindingContext(), pair.getFirst());
+        } finally {
+            mCompileLock.readLock().unlock();
         }
     }
 
@@ -110,7 +121,7 @@ public class Compiler implements Closeable {
     }
 
     public Pair<BindingContext, ComponentProvider> compileJavaFiles(Collection<? extends PsiJavaFile> files, Collection<KtFile> sourcePath, CompletionKind kind) {
-        mCompileLock.lock();
+        mCompileLock.readLock().lock();
         try {
             Pair<ComponentProvider, BindingTraceContext> pair = mDefaultCompileEnvironment.createContainer(sourcePath);
             ((LazyTopDownAnalyzer) pair.getFirst().resolve(LazyTopDownAnalyzer.class).getValue())
@@ -118,13 +129,13 @@ public class Compiler implements Closeable {
                             files, DataFlowInfo.Companion.getEMPTY(), null);
             return new Pair<>(pair.getSecond().getBindingContext(), pair.getFirst());
         } finally {
-            mCompileLock.unlock();
+            mCompileLock.readLock().unlock();
         }
     }
 
     public Pair<BindingContext, ComponentProvider> compileKtExpression(KtExpression expression, LexicalScope scopeWithImports, Collection<KtFile> sourcePath) {
         Log.d(null, "Compiling kt expression: " + expression.getText());
-        mCompileLock.lock();
+        mCompileLock.readLock().lock();
         try {
             Pair<ComponentProvider, BindingTraceContext> pair = mDefaultCompileEnvironment.createContainer(sourcePath);
             ExpressionTypingServices incrementalCompiler = pair.getFirst().create(ExpressionTypingServices.class);
@@ -138,21 +149,31 @@ public class Compiler implements Closeable {
                     true);
             return new Pair<>(pair.getSecond().getBindingContext(), pair.getFirst());
         } finally {
-            mCompileLock.unlock();
+            mCompileLock.readLock().unlock();
         }
     }
 
     public void updateConfiguration(CompilerConfiguration config) {
-        mDefaultCompileEnvironment.updateConfiguration(config);
+        mCompileLock.writeLock().lock();
+        try {
+            mDefaultCompileEnvironment.updateConfiguration(config);
+        } finally {
+            mCompileLock.writeLock().unlock();
+        }
     }
 
     @Override
     public void close()  {
-        if (!closed) {
-            mDefaultCompileEnvironment.close();
-            closed = true;
-        } else {
-            Log.w(null, "Compiler is already closed!");
+        mCompileLock.writeLock().lock();
+        try {
+            if (!closed) {
+                mDefaultCompileEnvironment.close();
+                closed = true;
+            } else {
+                Log.w(null, "Compiler is already closed!");
+            }
+        } finally {
+            mCompileLock.writeLock().unlock();
         }
     }
 }
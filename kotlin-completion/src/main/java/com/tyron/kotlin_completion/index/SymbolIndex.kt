@@ -1,130 +1,276 @@
 package com.tyron.kotlin_completion.index
 
 import android.util.Log
+import com.tyron.builder.project.api.Module
+import com.tyron.builder.project.cache.CacheHolder
+import com.tyron.common.util.Cache
 import com.tyron.kotlin_completion.util.PsiUtils
-import org.jetbrains.exposed.sql.*
-import org.jetbrains.exposed.sql.transactions.transaction
+import org.jetbrains.kotlin.descriptors.ClassDescriptor
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
+import org.jetbrains.kotlin.load.kotlin.JvmPackagePartSource
 import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.resolve.descriptorUtil.classId
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
-import java.lang.IllegalStateException
+import org.jetbrains.kotlin.serialization.deserialization.descriptors.DescriptorWithContainerSource
+import java.nio.file.Path
 import java.time.Duration
 import java.time.Instant
-import kotlin.sequences.Sequence
+import java.util.zip.ZipFile
 
-private const val MAX_FQNAME_LENGTH = 255
-private const val MAX_SHORT_NAME_LENGTH = 80
+private const val TAG = "SymbolIndex"
+private const val LIBRARY = "library"
 
-private object Symbols : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH) references FqNames.fqName
-    val kind = integer("kind")
-    val visibility = integer("visibility")
-    val extensionReceiverType = varchar("extensionreceivertype", length = MAX_FQNAME_LENGTH).nullable()
-
-    override val primaryKey = PrimaryKey(fqName)
+/**
+ * The symbols of a library as they are stored in the cache of the module, each symbol is
+ * encoded as `kind|visibility|fqName|extensionReceiverType`
+ */
+class LibrarySymbols {
+    var symbols: List<String> = emptyList()
 }
 
-private object FqNames : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
-    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
+/**
+ * Index of the top level declarations of the sources and libraries of a module, used to
+ * suggest symbols that have not been imported yet.
+ *
+ * The symbols are kept in immutable segments sorted by their short name, one for each library
+ * and one for each source file, so a query is a binary search in every segment. The segments of
+ * the libraries are stored in the cache of the module keyed by the contents of the jar and are
+ * only built again when a jar changes, the segment of a source file is replaced when the file
+ * is compiled. Queries run against the last complete set of segments, completions keep working
+ * while the index is being updated.
+ */
+class SymbolIndex(module: Module?) {
 
-    override val primaryKey = PrimaryKey(fqName)
-}
-class SymbolIndex {
-    private val db = Database.connect("jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1", "org.h2.Driver")
+    companion object {
+        @JvmField
+        val CACHE_KEY = CacheHolder.CacheKey<String, LibrarySymbols>("kotlinSymbolIndex", String::class.java,
+            LibrarySymbols::class.java)
+    }
 
-    var indexing: Boolean = false
+    private val cache: Cache<String, LibrarySymbols> =
+        module?.getCache(CACHE_KEY, Cache()) ?: Cache()
 
-    init {
-       transaction (db) {
-           SchemaUtils.create(Symbols, FqNames)
-       }
-    }
+    @Volatile
+    private var libraries: Map<Path, Segment> = emptyMap()
 
-    fun refresh(module: ModuleDescriptor, forced: Boolean = true) {
-        val started = System.currentTimeMillis()
-        Log.d("SymbolIndex", "Updating symbol index...");
+    @Volatile
+    private var sources: Map<Path, Segment> = emptyMap()
 
+    @Volatile
+    var indexing: Boolean = false
+        private set
+
+    /**
+     * Indexes the given jars, the segments of jars that have not changed since they were last
+     * indexed are read from the cache. Jars that are not in the list are removed from the index.
+     */
+    @Synchronized
+    fun refreshLibraries(module: ModuleDescriptor, jars: Collection<Path>) {
+        val started = System.currentTimeMillis()
         indexing = true
         try {
-            transaction(db) {
-                if (forced) {
-                    Symbols.deleteAll()
-                }
-                for (descriptor in allDescriptors(module)) {
-                    val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
-                    val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
-
-                    if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
-
-                        for (fqn in listOfNotNull(descriptorFqn, extensionReceiverFqn)) {
-                            FqNames.replace {
-                                it[fqName] = fqn.toString()
-                                it[shortName] = fqn.shortName().toString()
-                            }
-                        }
-
-
-                        Symbols.replace {
-                            it[fqName] = descriptorFqn.toString()
-                            it[kind] = descriptor.accept(ExtractSymbolKind, Unit).rawValue
-                            it[visibility] = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue
-                            it[extensionReceiverType] = extensionReceiverFqn?.toString()
-                        }
-                    } else {
-                        Log.w("SymbolIndex",
-                            "Excluding symbol $descriptorFqn from index since its name is too long"
-                        );
-                    }
+            val updated = HashMap<Path, Segment>()
+            for (jar in jars) {
+                val current = libraries[jar]
+                if (current != null && !cache.needs(jar, LIBRARY)) {
+                    updated[jar] = current
+                    continue
                 }
+                val segment = loadLibrary(module, jar) ?: continue
+                updated[jar] = segment
+            }
+            libraries.keys.filter { !jars.contains(it) }.forEach { cache.remove(it, LIBRARY) }
+            libraries = updated
+        } finally {
+            indexing = false
+        }
+        Log.d(TAG, "Indexing libraries took ${System.currentTimeMillis() - started} ms")
+    }
 
-                indexing = false
+    private fun loadLibrary(module: ModuleDescriptor, jar: Path): Segment? {
+        if (!cache.needs(jar, LIBRARY)) {
+            val cached = cache.get(jar, LIBRARY)
+            if (cached != null) {
+                return Segment.create(cached.symbols.mapNotNull(::decode))
             }
+        }
+        return try {
+            val symbols = indexLibrary(module, jar)
+            cache.load(jar, LIBRARY, LibrarySymbols().apply { this.symbols = symbols.map(::encode) })
+            Segment.create(symbols)
         } catch (e: Exception) {
-            Log.e("SymbolIndex", "Error while updating symbol index", e);
+            Log.w(TAG, "Unable to index $jar", e)
+            null
+        }
+    }
+
+    /**
+     * Replaces the symbols of a source file with the declarations it has after compiling it
+     */
+    fun updateSource(path: Path, file: KtFile, context: BindingContext) {
+        val symbols = file.declarations
+            .mapNotNull { context[BindingContext.DECLARATION_TO_DESCRIPTOR, it] }
+            .mapNotNull(::toSymbol)
+        synchronized(this) {
+            sources = HashMap(sources).apply { put(path, Segment.create(symbols)) }
+        }
+    }
+
+    fun removeSource(path: Path) {
+        synchronized(this) {
+            if (sources.containsKey(path)) {
+                sources = HashMap(sources).apply { remove(path) }
+            }
         }
     }
 
     fun query(prefix: String, receiverType: FqName? = null, limit: Int = 20): List<Symbol> {
         val start = Instant.now()
         try {
-            return transaction(db) {
-                (Symbols innerJoin FqNames)
-                    .select { FqNames.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
-                    .limit(limit)
-                    .map {
-                        Symbol(
-                            fqName = FqName(it[Symbols.fqName]),
-                            kind = Symbol.Kind.fromRaw(it[Symbols.kind]),
-                            visibility = Symbol.Visibility.fromRaw(it[Symbols.visibility]),
-                            extensionReceiverType = it[Symbols.extensionReceiverType]?.let(::FqName)
-                        )
-                    }
+            val receiver = receiverType?.toString()
+            val result = ArrayList<Symbol>()
+            for (segment in sources.values) {
+                segment.query(prefix, receiver, limit, result)
+            }
+            for (segment in libraries.values) {
+                segment.query(prefix, receiver, limit, result)
             }
+            result.sortWith(BY_SHORT_NAME)
+            return if (result.size > limit) result.subList(0, limit) else result
         } finally {
-            Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
+            Log.d(TAG, "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
+        }
+    }
+
+    private fun indexLibrary(module: ModuleDescriptor, jar: Path): List<Symbol> {
+        val classFiles = HashSet<String>()
+        val packages = HashSet<String>()
+        ZipFile(jar.toFile()).use { zip ->
+            for (entry in zip.entries()) {
+                val name = entry.name
+                if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+                    classFiles.add(name)
+                    packages.add(name.substringBeforeLast('/', ""))
+                }
+            }
         }
+
+        // a package may be split between several jars and the sources, only the declarations
+        // whose class files are in this jar belong to its segment
+        return packages.asSequence()
+            .flatMap { packageDescriptors(module, FqName(it.replace('/', '.'))) }
+            .filter { isDeclaredIn(it, classFiles) }
+            .mapNotNull(::toSymbol)
+            .toList()
     }
 
-    private fun canStoreFqName(fqName: FqName) =
-        fqName.toString().length <= MAX_FQNAME_LENGTH
-                && fqName.shortName().toString().length <= MAX_SHORT_NAME_LENGTH
-
-    private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> = allPackages(module)
-        .map(module::getPackage)
-        .flatMap {
-            try {
-                it.memberScope.getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
-            } catch (e: IllegalStateException) {
-                Log.w("SymbolIndex", "Couldn't query descriptors in package $it")
-                emptyList()
+    private fun packageDescriptors(module: ModuleDescriptor, fqName: FqName) : Sequence<DeclarationDescriptor> =
+        try {
+            module.getPackage(fqName).memberScope
+                .getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
+                .asSequence()
+        } catch (e: IllegalStateException) {
+            Log.w(TAG, "Couldn't query descriptors in package $fqName")
+            emptySequence()
+        }
+
+    private fun isDeclaredIn(descriptor: DeclarationDescriptor, classFiles: Set<String>): Boolean {
+        val classFile = when (descriptor) {
+            is ClassDescriptor -> descriptor.classId?.let {
+                val packagePath = it.packageFqName.asString().replace('.', '/')
+                val className = it.relativeClassName.asString().replace('.', '$')
+                if (packagePath.isEmpty()) "$className.class" else "$packagePath/$className.class"
             }
+            is DescriptorWithContainerSource ->
+                (descriptor.containerSource as? JvmPackagePartSource)?.let {
+                    it.className.internalName + ".class"
+                }
+            else -> null
+        }
+        return classFile != null && classFiles.contains(classFile)
+    }
+
+    private fun toSymbol(descriptor: DeclarationDescriptor): Symbol? = try {
+        Symbol(
+            fqName = PsiUtils.getFqNameSafe(descriptor),
+            kind = descriptor.accept(ExtractSymbolKind, Unit),
+            visibility = descriptor.accept(ExtractSymbolVisibility, Unit),
+            extensionReceiverType = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+        )
+    } catch (e: RuntimeException) {
+        Log.w(TAG, "Unable to index $descriptor", e)
+        null
+    }
+
+    private fun encode(symbol: Symbol): String =
+        "${symbol.kind.rawValue}|${symbol.visibility.rawValue}|${symbol.fqName}|" +
+                (symbol.extensionReceiverType?.toString() ?: "")
+
+    private fun decode(line: String): Symbol? {
+        val parts = line.split('|', limit = 4)
+        if (parts.size != 4) {
+            return null
         }
+        return Symbol(
+            fqName = FqName(parts[2]),
+            kind = Symbol.Kind.fromRaw(parts[0].toIntOrNull() ?: -1),
+            visibility = Symbol.Visibility.fromRaw(parts[1].toIntOrNull() ?: -1),
+            extensionReceiverType = if (parts[3].isEmpty()) null else FqName(parts[3])
+        )
+    }
+}
+
+private val BY_SHORT_NAME = compareBy<Symbol>({ it.fqName.shortName().asString() },
+    { it.fqName.asString() })
+
+/**
+ * Symbols sorted by their short name
+ */
+internal class Segment private constructor(
+    private val shortNames: Array<String>,
+    private val symbols: Array<Symbol>,
+    private val receivers: Array<String?>
+) {
+
+    companion object {
+        @JvmStatic
+        fun create(symbols: Collection<Symbol>): Segment {
+            val sorted = symbols.sortedWith(BY_SHORT_NAME)
+            return Segment(
+                sorted.map { it.fqName.shortName().asString() }.toTypedArray(),
+                sorted.toTypedArray(),
+                sorted.map { it.extensionReceiverType?.toString() }.toTypedArray()
+            )
+        }
+    }
 
-    private fun allPackages(module: ModuleDescriptor, pkgName: FqName = FqName.ROOT) : Sequence<FqName> = module
-        .getSubPackagesOf(pkgName) { it.toString()  != "META-INF"}
-        .asSequence()
-        .flatMap { sequenceOf(it) + allPackages(module, it) }
-}
\ No newline at end of file
+    /**
+     * Adds up to [limit] symbols whose short name starts with the prefix and whose extension
+     * receiver is the given type, or that are not extensions if it is null
+     */
+    fun query(prefix: String, receiverType: String?, limit: Int, result: MutableList<Symbol>) {
+        var low = 0
+        var high = shortNames.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (shortNames[mid] < prefix) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        var count = 0
+        var i = low
+        while (i < shortNames.size && count < limit && shortNames[i].startsWith(prefix)) {
+            if (receivers[i] == receiverType) {
+                result.add(symbols[i])
+                count++
+            }
+            i++
+        }
+    }
+}
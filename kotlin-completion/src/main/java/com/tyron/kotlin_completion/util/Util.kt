@@ -6,6 +6,6 @@ import org.jetbrains.kotlin.resolve.CompositeBindingContext
 
 fun util(sourcesContext: BindingContext?, sources: Set<SourcePath.SourceFile>, allChanged: Set<SourcePath.SourceFile>): BindingContext {
     val same = sources - allChanged
-    val combined = listOf(sourcesContext).filterNotNull() + same.map { it.compiledContext!! }
+    val combined = listOf(sourcesContext).filterNotNull() + same.mapNotNull { it.compiledContext }
     return CompositeBindingContext.create(combined)
 }
\ No newline at end of file
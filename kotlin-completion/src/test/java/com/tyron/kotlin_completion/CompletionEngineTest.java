@@ -0,0 +1,149 @@
+package com.tyron.kotlin_completion;
+
+import static org.junit.Assert.assertEquals;
+
+import com.tyron.builder.project.api.FileManager;
+import com.tyron.builder.project.impl.FileManagerImpl;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.completion.java.CompletionModule;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import kotlin.Unit;
+
+public class CompletionEngineTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private WatchedModule mModule;
+    private CompletionEngine mEngine;
+
+    @Before
+    public void setup() throws Exception {
+        File stdlib = new File(Unit.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        CompletionModule.setAndroidJar(stdlib);
+
+        File root = mFolder.newFolder("module");
+        mModule = new WatchedModule(root);
+        mEngine = CompletionEngine.getInstance(mModule);
+    }
+
+    @After
+    public void tearDown() {
+        mEngine.close();
+        mModule.getFileManager().shutdown();
+    }
+
+    @Test
+    public void testFilesChangedOnTheDisk() throws Exception {
+        File file = mFolder.newFile("Disk.kt");
+        FileUtils.writeStringToFile(file, "fun diskFunction() = 1\n", StandardCharsets.UTF_8);
+        mModule.notifyFileCreated(file);
+        awaitIndex("diskFunction", true);
+
+        FileUtils.writeStringToFile(file, "fun renamedFunction() = 1\n", StandardCharsets.UTF_8);
+        mModule.notifyFileModified(file);
+        awaitIndex("renamedFunction", true);
+        awaitIndex("diskFunction", false);
+
+        mModule.notifyFileDeleted(file);
+        awaitIndex("renamedFunction", false);
+    }
+
+    @Test
+    public void testOpenedFilesAreNotReloaded() throws Exception {
+        File file = mFolder.newFile("Opened.kt");
+        FileUtils.writeStringToFile(file, "fun onDisk() = 1\n", StandardCharsets.UTF_8);
+        mModule.getFileManager().openFileForSnapshot(file, "fun inEditor() = 1\n");
+        mEngine.getSourcePath().put(file, "fun inEditor() = 1\n", false);
+        mModule.notifyFileModified(file);
+
+        // the files are reloaded in order, the opened file would be reloaded before this one
+        File other = mFolder.newFile("Other.kt");
+        FileUtils.writeStringToFile(other, "fun otherFunction() = 1\n", StandardCharsets.UTF_8);
+        mModule.notifyFileCreated(other);
+        awaitIndex("otherFunction", true);
+
+        CompiledFile compiled = mEngine.getSourcePath().currentVersion(file);
+        assertEquals("fun inEditor() = 1\n", compiled.getParse().getText());
+    }
+
+    @Test
+    public void testSnapshotEditsAreAppliedInOrder() throws Exception {
+        File file = mFolder.newFile("Edited.kt");
+        String text = "fun edited() = 0\n";
+        FileManager fileManager = mModule.getFileManager();
+        fileManager.openFileForSnapshot(file, text);
+        mEngine.getSourcePath().put(file, text, false);
+
+        // the editor reads its contents while the edits are still queued
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 20; i++) {
+                String contents = fileManager.getFileContent(file).get().toString();
+                mEngine.recover(file, contents, CompletionEngine.Recompile.NEVER, 0);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200; i++) {
+            int offset = text.indexOf('=') + 2;
+            if (i % 10 == 9) {
+                fileManager.editSnapshotContent(file, offset, offset + 1, "", true);
+                text = text.substring(0, offset) + text.substring(offset + 1);
+            } else {
+                String digit = String.valueOf(i % 10);
+                fileManager.editSnapshotContent(file, offset, offset, digit, true);
+                text = text.substring(0, offset) + digit + text.substring(offset);
+            }
+        }
+        reader.join();
+
+        long deadline = System.currentTimeMillis() + 60_000;
+        String parsed = null;
+        while (!text.equals(parsed) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            parsed = mEngine.getSourcePath().currentVersion(file).getParse().getText();
+        }
+        assertEquals(text, parsed);
+    }
+
+    private void awaitIndex(String prefix, boolean found) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        boolean indexed = !found;
+        while (indexed != found && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            indexed = !mEngine.getSourcePath().getIndex().query(prefix, null, 20).isEmpty();
+        }
+        assertEquals(prefix, found, indexed);
+    }
+
+    private static class WatchedModule extends MockAndroidModule {
+
+        WatchedModule(File root) {
+            super(root, new FileManagerImpl(root));
+        }
+
+        @Override
+        public void notifyFileCreated(File file) {
+            super.notifyFileCreated(file);
+        }
+
+        @Override
+        public void notifyFileDeleted(File file) {
+            super.notifyFileDeleted(file);
+        }
+
+        @Override
+        public void notifyFileModified(File file) {
+            super.notifyFileModified(file);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.tyron.kotlin_completion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.java.CompletionModule;
+
+import org.jetbrains.kotlin.resolve.BindingContext;
+import org.jetbrains.kotlin.resolve.scopes.LexicalScope;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import kotlin.Unit;
+
+public class SourcePathTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<File> mLibraries = new ArrayList<>();
+    private CompilerClassPath mClassPath;
+    private SourcePath mSourcePath;
+
+    @Before
+    public void setup() throws Exception {
+        // the kotlin standard library takes the place of the android jar
+        File stdlib = new File(Unit.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        CompletionModule.setAndroidJar(stdlib);
+
+        File root = mFolder.newFolder("module");
+        MockAndroidModule module = new MockAndroidModule(root, new MockFileManager(root)) {
+            @Override
+            public List<File> getLibraries() {
+                return new ArrayList<>(mLibraries);
+            }
+        };
+        mClassPath = new CompilerClassPath(module);
+        mSourcePath = new SourcePath(mClassPath);
+    }
+
+    @After
+    public void tearDown() {
+        mSourcePath.close();
+        mClassPath.close();
+    }
+
+    @Test
+    public void testCompileFilesInParallel() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            File file = mFolder.newFile("File" + i + ".kt");
+            String next = "f" + ((i + 1) % 6);
+            mSourcePath.put(file, "fun f" + i + "(): Int = if (true) 1 else " + next + "()\n", false);
+            files.add(file);
+        }
+
+        BindingContext context = mSourcePath.compileFiles(files);
+        assertFalse(context.getDiagnostics().iterator().hasNext());
+        for (File file : files) {
+            assertNotNull(mSourcePath.latestCompiledVersion(file));
+        }
+
+        // a file that refers to a function that no longer exists has an error
+        mSourcePath.put(files.get(0), "fun f0(): Int = missing()\n", false);
+        context = mSourcePath.compileFiles(files);
+        assertTrue(context.getDiagnostics().iterator().hasNext());
+    }
+
+    @Test
+    public void testConcurrentEditsAndCompilations() throws Exception {
+        File file = mFolder.newFile("Edited.kt");
+        File other = mFolder.newFile("Other.kt");
+        mSourcePath.put(file, "fun edited() = 0\n", false);
+        mSourcePath.put(other, "fun other() = edited()\n", false);
+
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 10; j++) {
+                        if (thread == 0) {
+                            mSourcePath.put(file, "fun edited() = " + j + "\n", false);
+                        } else if (thread == 1) {
+                            // only this thread edits the other file
+                            int length = "fun other() = edited()\n".length() + j;
+                            assertTrue(mSourcePath.put(other, 0, 0, " ", length + 1));
+                        } else {
+                            assertNotNull(mSourcePath.currentVersion(other));
+                            mSourcePath.compileFiles(Arrays.asList(file, other));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        mSourcePath.put(file, "fun edited() = \"last\"\n", false);
+        CompiledFile compiled = mSourcePath.currentVersion(file);
+        assertNotNull(compiled);
+        assertEquals("fun edited() = \"last\"\n", compiled.getParse().getText());
+    }
+
+    @Test
+    public void testEdits() throws Exception {
+        File file = mFolder.newFile("Edits.kt");
+        // files that have not been put are not edited
+        assertFalse(mSourcePath.put(file, 0, 0, "fun", 3));
+
+        mSourcePath.put(file, "fun a() = 1\n", false);
+        assertTrue(mSourcePath.put(file, 4, 5, "b", 12));
+        // the length after the edit does not match, the edit is from another version
+        assertFalse(mSourcePath.put(file, 4, 5, "cc", 12));
+        assertFalse(mSourcePath.put(file, 20, 20, "c", 13));
+
+        CompiledFile compiled = mSourcePath.currentVersion(file);
+        assertNotNull(compiled);
+        assertEquals("fun b() = 1\n", compiled.getParse().getText());
+    }
+
+    @Test
+    public void testCompileChangedDeclaration() throws Exception {
+        File file = mFolder.newFile("Declarations.kt");
+        String contents = "fun a(): Int {\n    return 1\n}\n\nfun b(): Int {\n    return 2\n}\n";
+        mSourcePath.put(file, contents, false);
+        assertNotNull(mSourcePath.currentVersion(file));
+
+        // only the declaration that contains the edit is analyzed again
+        int inA = contents.indexOf("1");
+        assertTrue(mSourcePath.put(file, inA, inA + 1, "3", contents.length()));
+        contents = contents.replace("return 1", "return 3");
+        CompiledFile compiled = mSourcePath.currentVersion(file, inA);
+        assertNotNull(compiled);
+        assertEquals("a", scopeOwner(compiled, inA));
+
+        // the other declarations are compiled when they are needed
+        int inB = contents.indexOf("2");
+        compiled = mSourcePath.latestCompiledVersion(file, inB);
+        assertNotNull(compiled);
+        assertEquals("b", scopeOwner(compiled, inB));
+
+        assertTrue(mSourcePath.put(file, inA, inA + 1, "4", contents.length()));
+        contents = contents.replace("return 3", "return 4");
+        compiled = mSourcePath.currentVersion(file, inB);
+        assertNotNull(compiled);
+        assertEquals("b", scopeOwner(compiled, inB));
+        assertEquals("a", scopeOwner(compiled, inA));
+        assertEquals(contents, compiled.getParse().getText());
+    }
+
+    @Test
+    public void testLibrariesAreIndexedWhenTheClassPathChanges() throws Exception {
+        File file = mFolder.newFile("Libraries.kt");
+        mSourcePath.put(file, "fun libraries() = 1\n", false);
+        assertFalse(mSourcePath.refreshClassPath());
+        assertNotNull(mSourcePath.currentVersion(file));
+        Path stdlib = CompletionModule.getAndroidJar().toPath();
+        awaitIndexedJars(Collections.singleton(stdlib));
+
+        Path junit = Paths.get(Assert.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        mLibraries.add(junit.toFile());
+        assertTrue(mSourcePath.refreshClassPath());
+        assertFalse(mSourcePath.refreshClassPath());
+        assertNotNull(mSourcePath.currentVersion(file));
+        awaitIndexedJars(new HashSet<>(Arrays.asList(stdlib, junit)));
+
+        mLibraries.clear();
+        assertTrue(mSourcePath.refreshClassPath());
+        assertNotNull(mSourcePath.currentVersion(file));
+        awaitIndexedJars(Collections.singleton(stdlib));
+    }
+
+    private void awaitIndexedJars(Set<Path> jars) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (!jars.equals(mSourcePath.getIndexedJars())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(jars, mSourcePath.getIndexedJars());
+    }
+
+    @Test
+    public void testFileThatCannotBeCompiled() throws Exception {
+        File script = mFolder.newFile("build.gradle.kts");
+        mSourcePath.put(script, "plugins {}\n", false);
+        assertNull(mSourcePath.latestCompiledVersion(script));
+        assertNull(mSourcePath.currentVersion(script));
+    }
+
+    @Test
+    public void testCloseStopsCompileThreads() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File file = mFolder.newFile("Closed" + i + ".kt");
+            mSourcePath.put(file, "fun closed" + i + "() = " + i + "\n", false);
+            files.add(file);
+        }
+        mSourcePath.compileFiles(files);
+        mSourcePath.close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hasCompileThreads() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(hasCompileThreads());
+    }
+
+    private static String scopeOwner(CompiledFile compiled, int offset) {
+        LexicalScope scope = compiled.scopeAtPoint(offset);
+        assertNotNull(scope);
+        return scope.getOwnerDescriptor().getName().asString();
+    }
+
+    private static boolean hasCompileThreads() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("kotlin-compile".equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
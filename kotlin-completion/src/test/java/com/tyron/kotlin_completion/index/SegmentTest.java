@@ -0,0 +1,83 @@
+package com.tyron.kotlin_completion.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jetbrains.kotlin.name.FqName;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SegmentTest {
+
+    private static final Segment SEGMENT = Segment.create(Arrays.asList(
+            symbol("com.test.listOf", null),
+            symbol("com.test.List", null),
+            symbol("com.other.List", null),
+            symbol("com.test.lazy", null),
+            symbol("com.test.letters", "kotlin.String"),
+            symbol("com.test.length", "kotlin.String"),
+            symbol("com.test.map", null),
+            symbol("com.test.Map", null),
+            symbol("Top", null)));
+
+    @Test
+    public void testPrefix() {
+        assertEquals(Arrays.asList("com.test.lazy", "com.test.listOf"), query("l", null, 10));
+        assertEquals(Arrays.asList("com.other.List", "com.test.List"), query("List", null, 10));
+        assertEquals(Arrays.asList("com.test.Map"), query("M", null, 10));
+        assertEquals(Arrays.asList("Top"), query("Top", null, 10));
+    }
+
+    @Test
+    public void testNoMatches() {
+        assertTrue(query("Listing", null, 10).isEmpty());
+        assertTrue(query("z", null, 10).isEmpty());
+        // before the first and after the last short name
+        assertTrue(query("A", null, 10).isEmpty());
+        assertTrue(query("zz", null, 10).isEmpty());
+    }
+
+    @Test
+    public void testEmptyPrefix() {
+        assertEquals(7, query("", null, 20).size());
+
+        List<Symbol> result = new ArrayList<>();
+        Segment.create(new ArrayList<>()).query("", null, 10, result);
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void testReceiverType() {
+        assertEquals(Arrays.asList("com.test.length", "com.test.letters"),
+                query("le", "kotlin.String", 10));
+        assertTrue(query("le", null, 10).isEmpty());
+        assertTrue(query("le", "kotlin.Int", 10).isEmpty());
+    }
+
+    @Test
+    public void testLimit() {
+        assertEquals(Arrays.asList("com.other.List"), query("L", null, 1));
+        assertEquals(Arrays.asList("com.other.List", "com.test.List", "com.test.Map"),
+                query("", null, 3));
+        // only the symbols with the receiver type count towards the limit
+        assertEquals(Arrays.asList("com.test.length"), query("l", "kotlin.String", 1));
+    }
+
+    private static List<String> query(String prefix, String receiverType, int limit) {
+        List<Symbol> result = new ArrayList<>();
+        SEGMENT.query(prefix, receiverType, limit, result);
+        List<String> names = new ArrayList<>();
+        for (Symbol symbol : result) {
+            names.add(symbol.getFqName().asString());
+        }
+        return names;
+    }
+
+    private static Symbol symbol(String fqName, String receiverType) {
+        return new Symbol(new FqName(fqName), Symbol.Kind.FUNCTION, Symbol.Visibility.PUBLIC,
+                receiverType == null ? null : new FqName(receiverType));
+    }
+}
@@ -0,0 +1,354 @@
+package com.flipkart.android.proteus;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.flipkart.android.proteus.managers.ViewGroupManager;
+import com.flipkart.android.proteus.value.Array;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Value;
+import com.flipkart.android.proteus.view.UnknownView;
+import com.flipkart.android.proteus.view.UnknownViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Updates an inflated view to a new version of its layout without inflating it again.
+ * <p>
+ * The layout of each view is compared with the new layout, only the attributes whose values
+ * have changed are handled again and only the children that have been added or removed are
+ * inflated or removed. Attributes that have been applied to a view cannot be undone, so a
+ * view whose type, style or theme has changed or which lost an attribute is inflated again
+ * with its children.
+ * <p>
+ * The layouts held by the view managers are updated to a copy of the new layout so the view
+ * can be patched again, the new layout and its values are never held by the views.
+ */
+public class LayoutPatcher {
+
+    private static final String STYLE = "style";
+    private static final String THEME = "android:theme";
+    private static final String CHILDREN = "children";
+
+    @NonNull
+    private final ProteusContext context;
+
+    public LayoutPatcher(@NonNull ProteusContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Updates the view to the given layout
+     *
+     * @param view   a view inflated by proteus
+     * @param layout the new layout of the view
+     * @return the view that shows the new layout, if the view had to be inflated again the new
+     * view replaces the old one in its parent
+     */
+    @NonNull
+    public ProteusView patch(@NonNull ProteusView view, @NonNull Layout layout) {
+        ProteusView.Manager manager = view.getViewManager();
+        Layout current = manager.getLayout();
+        if (current == layout) {
+            return view;
+        }
+        if (!canPatch(view, current, layout)) {
+            return replace(view, layout);
+        }
+
+        //noinspection unchecked
+        ViewTypeParser<View> parser = manager.getViewTypeParser();
+        View asView = view.getAsView();
+        ViewGroup parent = getParent(asView);
+        int children = asView instanceof ViewGroup ? parser.getAttributeId(CHILDREN) : -1;
+
+        List<Layout.Attribute> attributes = new ArrayList<>(layout.getAttributes().size());
+        for (Layout.Attribute attribute : layout.getAttributes()) {
+            if (children != -1 && attribute.id == children) {
+                Layout.Attribute old = current.getAttribute(children);
+                Array patched = patchChildren((ViewGroup) asView,
+                        old != null ? old.value.getAsArray() : new Array(),
+                        attribute.value.getAsArray());
+                attributes.add(new Layout.Attribute(children, patched));
+                continue;
+            }
+
+            // the values may be changed by the view, the new layout is kept as is
+            Layout.Attribute copy = new Layout.Attribute(attribute.id, attribute.value.copy());
+            Layout.Attribute old = current.getAttribute(attribute.id);
+            if (old == null || !isSameValue(old.value, copy.value)) {
+                parser.handleAttribute(parent, asView, copy.id, copy.value);
+            }
+            attributes.add(copy);
+        }
+        if (children != -1 && layout.getAttribute(children) == null) {
+            Layout.Attribute old = current.getAttribute(children);
+            if (old != null) {
+                patchChildren((ViewGroup) asView, old.value.getAsArray(), new Array());
+            }
+        }
+
+        ObjectValue extras = layout.extras != null ? layout.extras.copy() : null;
+        if (extras != null && parent instanceof ProteusView) {
+            ViewTypeParser<View> parentParser =
+                    ((ProteusView) parent).getViewManager().getViewTypeParser();
+            if (parentParser != null) {
+                for (Map.Entry<String, Value> entry : extras.entrySet()) {
+                    Value old = current.extras != null ? current.extras.get(entry.getKey()) : null;
+                    if (old != null && isSameValue(old, entry.getValue())) {
+                        continue;
+                    }
+                    int id = parentParser.getAttributeId(entry.getKey());
+                    if (id != -1) {
+                        parentParser.handleAttribute(parent, asView, id, entry.getValue());
+                    }
+                }
+            }
+        }
+
+        current.attributes = attributes;
+        current.extras = extras;
+        return view;
+    }
+
+    /**
+     * Patches the children with a common prefix and suffix of the same types in place, the
+     * children in between are patched in pairs and the remaining ones are removed or inflated.
+     *
+     * @return the layouts of the children after they have been patched
+     */
+    private Array patchChildren(ViewGroup group, Array oldChildren, Array newChildren) {
+        int oldCount = oldChildren.size();
+        int newCount = newChildren.size();
+        int min = Math.min(oldCount, newCount);
+
+        int prefix = 0;
+        while (prefix < min && isSameType(oldChildren.get(prefix), newChildren.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < min - prefix && isSameType(oldChildren.get(oldCount - 1 - suffix),
+                newChildren.get(newCount - 1 - suffix))) {
+            suffix++;
+        }
+
+        int paired = Math.min(oldCount, newCount) - suffix;
+        for (int i = 0; i < paired; i++) {
+            patch((ProteusView) group.getChildAt(i), newChildren.get(i).getAsLayout());
+        }
+        for (int i = oldCount - suffix - 1; i >= paired; i--) {
+            group.removeViewAt(i);
+        }
+        for (int i = paired; i < newCount - suffix; i++) {
+            ProteusView child = inflate(newChildren.get(i).getAsLayout(), group);
+            group.addView(child.getAsView(), i);
+        }
+        for (int i = newCount - suffix; i < newCount; i++) {
+            patch((ProteusView) group.getChildAt(i), newChildren.get(i).getAsLayout());
+        }
+
+        Array patched = new Array();
+        for (int i = 0; i < newCount; i++) {
+            patched.add(((ProteusView) group.getChildAt(i)).getViewManager().getLayout());
+        }
+        return patched;
+    }
+
+    private boolean canPatch(ProteusView view, Layout current, Layout layout) {
+        if (!current.type.equals(layout.type)) {
+            return false;
+        }
+        View asView = view.getAsView();
+        if (asView instanceof UnknownView || asView instanceof UnknownViewGroup) {
+            return false;
+        }
+        ProteusView.Manager manager = view.getViewManager();
+        ViewTypeParser<?> parser = manager.getViewTypeParser();
+        if (parser == null) {
+            return false;
+        }
+
+        if (!isSameAttribute(current, layout, parser.getAttributeId(STYLE)) ||
+                !isSameAttribute(current, layout, parser.getAttributeId(THEME))) {
+            return false;
+        }
+
+        int children = -1;
+        if (asView instanceof ViewGroup) {
+            if (manager instanceof ViewGroupManager &&
+                    ((ViewGroupManager) manager).hasDataBoundChildren) {
+                return false;
+            }
+            children = parser.getAttributeId(CHILDREN);
+            if (!canPatchChildren((ViewGroup) asView, current.getAttribute(children),
+                    layout.getAttribute(children))) {
+                return false;
+            }
+        }
+
+        for (Layout.Attribute attribute : current.getAttributes()) {
+            if (attribute.id == children) {
+                continue;
+            }
+            Layout.Attribute updated = layout.getAttribute(attribute.id);
+            if (updated == null) {
+                return false;
+            }
+            // the bound attributes of the manager are only collected when it is created
+            if ((attribute.value.isBinding() || updated.value.isBinding()) &&
+                    !isSameValue(attribute.value, updated.value)) {
+                return false;
+            }
+        }
+        for (Layout.Attribute attribute : layout.getAttributes()) {
+            if (attribute.value.isBinding() && current.getAttribute(attribute.id) == null) {
+                return false;
+            }
+        }
+
+        if (current.extras != null) {
+            for (Map.Entry<String, Value> entry : current.extras.entrySet()) {
+                if (layout.extras == null || !layout.extras.has(entry.getKey())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean canPatchChildren(ViewGroup group, @Nullable Layout.Attribute current,
+                                     @Nullable Layout.Attribute updated) {
+        if (current == null && updated == null) {
+            // the view may have children of its own which are not in the layout
+            return true;
+        }
+        if (current != null && !current.value.isArray()) {
+            return false;
+        }
+        if (updated != null && !updated.value.isArray()) {
+            return false;
+        }
+        int count = current != null ? current.value.getAsArray().size() : 0;
+        if (group.getChildCount() != count) {
+            // the views have been changed since the layout was inflated
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!(group.getChildAt(i) instanceof ProteusView)) {
+                return false;
+            }
+        }
+        if (updated != null) {
+            Array children = updated.value.getAsArray();
+            for (int i = 0; i < children.size(); i++) {
+                if (!children.get(i).isLayout()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private ProteusView replace(ProteusView view, Layout layout) {
+        ProteusView.Manager manager = view.getViewManager();
+        View.OnClickListener onClickListener = manager.getOnClickListener();
+        View.OnLongClickListener onLongClickListener = manager.getOnLongClickListener();
+        View.OnDragListener onDragListener = manager.getOnDragListener();
+
+        View asView = view.getAsView();
+        ViewGroup parent = getParent(asView);
+        ProteusView replacement = inflate(layout, parent);
+        if (parent != null) {
+            int index = parent.indexOfChild(asView);
+            parent.removeViewAt(index);
+            parent.addView(replacement.getAsView(), index);
+        }
+
+        setListeners(replacement, onClickListener, onLongClickListener, onDragListener);
+        return replacement;
+    }
+
+    private ProteusView inflate(Layout layout, @Nullable ViewGroup parent) {
+        ObjectValue data = new ObjectValue();
+        int dataIndex = -1;
+        if (parent instanceof ProteusView && ((ProteusView) parent).getViewManager() != null) {
+            DataContext dataContext = ((ProteusView) parent).getViewManager().getDataContext();
+            data = dataContext.getData();
+            dataIndex = dataContext.getIndex();
+        }
+        // the views may change their layouts, they get a copy so the given layout is kept as is
+        return context.getInflater().inflate(layout.copy(), data, parent, dataIndex);
+    }
+
+    private void setListeners(ProteusView view,
+                              View.OnClickListener onClickListener,
+                              View.OnLongClickListener onLongClickListener,
+                              View.OnDragListener onDragListener) {
+        ProteusView.Manager manager = view.getViewManager();
+        if (onClickListener != null) {
+            manager.setOnClickListener(onClickListener);
+        }
+        if (onLongClickListener != null) {
+            manager.setOnLongClickListener(onLongClickListener);
+        }
+
+        if (view.getAsView() instanceof ViewGroup) {
+            if (onDragListener != null) {
+                manager.setOnDragListener(onDragListener);
+            }
+
+            ViewGroup group = (ViewGroup) view.getAsView();
+            for (int i = 0; i < group.getChildCount(); i++) {
+                View child = group.getChildAt(i);
+                if (child instanceof ProteusView) {
+                    setListeners((ProteusView) child,
+                            onClickListener, onLongClickListener, onDragListener);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private static ViewGroup getParent(View view) {
+        ViewParent parent = view.getParent();
+        return parent instanceof ViewGroup ? (ViewGroup) parent : null;
+    }
+
+    private static boolean isSameType(Value current, Value updated) {
+        return current.isLayout() && updated.isLayout() &&
+                current.getAsLayout().type.equals(updated.getAsLayout().type);
+    }
+
+    private static boolean isSameAttribute(Layout current, Layout layout, int id) {
+        Layout.Attribute old = current.getAttribute(id);
+        Layout.Attribute updated = layout.getAttribute(id);
+        if (old == null || updated == null) {
+            return old == updated;
+        }
+        return isSameValue(old.value, updated.value);
+    }
+
+    /**
+     * Values that do not implement equals are compared by their string form, which is what
+     * they are written back to xml as
+     */
+    private static boolean isSameValue(Value current, Value updated) {
+        if (current == updated) {
+            return true;
+        }
+        if (current.getClass() != updated.getClass()) {
+            return false;
+        }
+        if (current.isPrimitive() || current.isNull() || current.isArray() || current.isObject()) {
+            return current.equals(updated);
+        }
+        return current.toString().equals(updated.toString());
+    }
+}
@@ -113,40 +113,25 @@ public class SimpleLayoutInflater implements ProteusLayoutInflater {
             }
 
             // handle theme attribute or style first so children can inherit from it
-            int theme = parser.getAttributeId("style");
-            int index = layout.attributes.indexOf(new Layout.Attribute(theme, null));
-            if (index != -1) {
-                Layout.Attribute themeAttribute = layout.attributes.get(index);
-                if (themeAttribute != null) {
-                    handleAttribute(parser, view, parent, themeAttribute.id, themeAttribute.value);
-                }
+            int style = parser.getAttributeId("style");
+            Layout.Attribute styleAttribute = layout.getAttribute(style);
+            if (styleAttribute != null) {
+                handleAttribute(parser, view, parent, styleAttribute.id, styleAttribute.value);
             }
 
-            boolean applyStyle = index == -1;
-
-            theme = parser.getAttributeId("android:theme");
-            index = layout.attributes.indexOf(new Layout.Attribute(theme, null));
-            if (index != -1) {
-                Layout.Attribute themeAttribute = layout.attributes.get(index);
-                if (themeAttribute != null) {
-                    handleAttribute(parser, view, parent, themeAttribute.id, themeAttribute.value);
-                }
+            int theme = parser.getAttributeId("android:theme");
+            Layout.Attribute themeAttribute = layout.getAttribute(theme);
+            if (themeAttribute != null) {
+                handleAttribute(parser, view, parent, themeAttribute.id, themeAttribute.value);
             }
 
             // then handle the children
-            ViewTypeParser<View> viewGroupParser = context.getParser(ViewGroup.class.getName());
-            // never null
-            assert viewGroupParser != null;
-
             int children = -1;
             if (view instanceof ViewGroup) {
                 children = parser.getAttributeId("children");
-                index = layout.attributes.indexOf(new Layout.Attribute(children, null));
-                if (index != -1) {
-                    Layout.Attribute childrenAttribute = layout.attributes.get(index);
-                    if (childrenAttribute != null) {
-                        handleAttribute(parser, view, parent, childrenAttribute.id, childrenAttribute.value);
-                    }
+                Layout.Attribute childrenAttribute = layout.getAttribute(children);
+                if (childrenAttribute != null) {
+                    handleAttribute(parser, view, parent, childrenAttribute.id, childrenAttribute.value);
                 }
             }
 
@@ -158,14 +143,17 @@ public class SimpleLayoutInflater implements ProteusLayoutInflater {
                 if (theme != -1 && attribute.id == theme) {
                     continue;
                 }
+                if (style != -1 && attribute.id == style) {
+                    continue;
+                }
                 handleAttribute(parser, view, parent, attribute.id, attribute.value);
             }
         }
 
         if (layout.extras != null && parent != null) {
-            for (Map.Entry<String, Value> entry : layout.extras.entrySet()) {
-                ViewTypeParser<View> parentParser = context.getParser(getType(parent));
-                if (parentParser != null) {
+            ViewTypeParser<View> parentParser = context.getParser(getType(parent));
+            if (parentParser != null) {
+                for (Map.Entry<String, Value> entry : layout.extras.entrySet()) {
                     int id = parentParser.getAttributeId(entry.getKey());
                     if (id != -1) {
                         parentParser.handleAttribute(parent, view.getAsView(), id, entry.getValue());
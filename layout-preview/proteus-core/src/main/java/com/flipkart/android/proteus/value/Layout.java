@@ -48,6 +48,18 @@ public class Layout extends Value {
   @Nullable
   public ObjectValue extras;
 
+  /**
+   * The position of each attribute in {@link #attributes} by its id, built the first time an
+   * attribute is looked up by its id.
+   */
+  @Nullable
+  private Map<Integer, Integer> index;
+  @Nullable
+  private List<Attribute> indexedAttributes;
+  private int indexedSize;
+  @Nullable
+  private Attribute indexedLast;
+
   public Layout(@NonNull String type) {
     this(type, new ArrayList<>(), new HashMap<>(), new ObjectValue());
   }
@@ -72,7 +84,7 @@ public class Layout extends Value {
       }
     }
 
-    return new Layout(type, attributes, data, extras);
+    return new Layout(type, attributes, data, extras != null ? extras.copy() : null);
   }
 
   public Layout merge(Layout include) {
@@ -128,6 +140,53 @@ public class Layout extends Value {
     return attributes;
   }
 
+  /**
+   * Returns the attribute with the given id without scanning the attributes. The index is
+   * built again when the list of attributes is replaced or when attributes have been added
+   * to or removed from it.
+   *
+   * @param id the id of the attribute
+   * @return the attribute or null if this layout does not have it
+   */
+  @Nullable
+  public Attribute getAttribute(int id) {
+    List<Attribute> attributes = this.attributes;
+    if (attributes == null || attributes.isEmpty()) {
+      return null;
+    }
+    if (index == null || indexedAttributes != attributes || indexedSize != attributes.size()
+        || indexedLast != attributes.get(attributes.size() - 1)) {
+      buildIndex(attributes);
+    }
+
+    Integer position = index.get(id);
+    if (position == null) {
+      return null;
+    }
+    Attribute attribute = attributes.get(position);
+    if (attribute.id != id) {
+      // an attribute was removed and another one added since the index was built
+      buildIndex(attributes);
+      position = index.get(id);
+      return position != null ? attributes.get(position) : null;
+    }
+    return attribute;
+  }
+
+  private void buildIndex(@NonNull List<Attribute> attributes) {
+    Map<Integer, Integer> index = new HashMap<>(attributes.size() * 2);
+    for (int i = 0; i < attributes.size(); i++) {
+      Integer id = attributes.get(i).id;
+      if (!index.containsKey(id)) {
+        index.put(id, i);
+      }
+    }
+    this.index = index;
+    this.indexedAttributes = attributes;
+    this.indexedSize = attributes.size();
+    this.indexedLast = attributes.get(attributes.size() - 1);
+  }
+
   /**
    * Attribute
    *
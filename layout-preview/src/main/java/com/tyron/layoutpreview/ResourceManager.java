@@ -6,24 +6,42 @@ import com.flipkart.android.proteus.value.Layout;
 import com.flipkart.android.proteus.value.Value;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.api.FileManager;
+import com.tyron.layoutpreview.convert.LayoutCompiler;
 import com.tyron.layoutpreview.resource.ResourceDrawableParser;
 import com.tyron.layoutpreview.resource.ResourceLayoutParser;
 import com.tyron.layoutpreview.resource.ResourceStringParser;
+import com.tyron.layoutpreview.resource.ResourceTable;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class ResourceManager {
 
+    private static final int MAX_CACHED_DRAWABLES = 128;
+    private static final int MAX_CACHED_LAYOUTS = 32;
+
     private final AndroidModule mAndroidModule;
     private final ProteusContext mContext;
     private final FileManager mFileManager;
+    private final LayoutCompiler mLayoutCompiler;
 
     public ResourceManager(ProteusContext context, AndroidModule module, FileManager fileManager) {
+        this(context, module, fileManager, new LayoutCompiler(context));
+    }
+
+    /**
+     * @param layoutCompiler The compiler of the layouts, layouts that have not changed since
+     *                       the last time they were compiled with it are taken from its cache
+     */
+    public ResourceManager(ProteusContext context, AndroidModule module, FileManager fileManager,
+                           LayoutCompiler layoutCompiler) {
         mAndroidModule = module;
         mContext = context;
         mFileManager = fileManager;
+        mLayoutCompiler = layoutCompiler;
     }
 
     /**
@@ -34,11 +52,58 @@ public class ResourceManager {
         return Collections.emptyMap();
     }
 
+    /**
+     * @return The drawables of the project and its libraries, only their names are indexed
+     * and each drawable is parsed when it is first used
+     */
+    public ResourceTable<DrawableValue> getDrawableTable() {
+        ResourceDrawableParser parser = new ResourceDrawableParser(mContext,
+                mAndroidModule.getAndroidResourcesDirectory(), mFileManager);
+        ResourceTable<DrawableValue> table = new ResourceTable<>("drawable",
+                file -> ResourceDrawableParser.isImageFile(file) ||
+                        ResourceDrawableParser.isXmlFile(file),
+                parser::parse, MAX_CACHED_DRAWABLES);
+        for (File directory : getResourceDirectories()) {
+            table.addDirectory(directory);
+        }
+        return table;
+    }
+
+    /**
+     * @return The layouts of the project, only their names are indexed and each layout is
+     * compiled when it is first used
+     */
+    public ResourceTable<Layout> getLayoutTable() {
+        ResourceLayoutParser parser = new ResourceLayoutParser(mContext,
+                mAndroidModule.getAndroidResourcesDirectory(), mFileManager, mLayoutCompiler);
+        ResourceTable<Layout> table = new ResourceTable<>("layout",
+                file -> file.getName().endsWith(".xml"), parser::parse, MAX_CACHED_LAYOUTS);
+        table.addDirectory(mAndroidModule.getAndroidResourcesDirectory());
+        return table;
+    }
+
+    /**
+     * @deprecated This parses every drawable, use {@link #getDrawableTable()} instead
+     */
+    @Deprecated
     public Map<String, DrawableValue> getDrawables() {
-        ResourceDrawableParser parser = new ResourceDrawableParser(mContext, mAndroidModule.getAndroidResourcesDirectory(),
-                mFileManager);
-        Map<String, DrawableValue> defaultDrawables = parser.getDefaultDrawables();
+        return getDrawableTable().getAll();
+    }
 
+    /**
+     * @deprecated This compiles every layout, use {@link #getLayoutTable()} instead
+     */
+    @Deprecated
+    public Map<String, Layout> getLayouts() {
+        return getLayoutTable().getAll();
+    }
+
+    /**
+     * @return The res directories of the libraries followed by the one of the project, so
+     * the resources of the project replace those of the libraries
+     */
+    private List<File> getResourceDirectories() {
+        List<File> directories = new ArrayList<>();
         for (File library : mAndroidModule.getLibraries()) {
             File parent = library.getParentFile();
             if (parent == null) {
@@ -47,17 +112,11 @@ public class ResourceManager {
 
             File resourcesDir = new File(parent, "res");
             if (resourcesDir.exists()) {
-                parser = new ResourceDrawableParser(mContext, resourcesDir, mFileManager);
-                defaultDrawables.putAll(parser.getDefaultDrawables());
+                directories.add(resourcesDir);
             }
         }
-
-        return defaultDrawables;
-    }
-
-    public Map<String, Layout> getLayouts() {
-        ResourceLayoutParser parser = new ResourceLayoutParser(mContext, mAndroidModule.getAndroidResourcesDirectory(), mFileManager);
-        return parser.getLayouts();
+        directories.add(mAndroidModule.getAndroidResourcesDirectory());
+        return directories;
     }
 
 }
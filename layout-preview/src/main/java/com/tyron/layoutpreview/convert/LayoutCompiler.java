@@ -0,0 +1,191 @@
+package com.tyron.layoutpreview.convert;
+
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.flipkart.android.proteus.FunctionManager;
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.ViewTypeParser;
+import com.flipkart.android.proteus.value.Array;
+import com.flipkart.android.proteus.value.Binding;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Primitive;
+import com.flipkart.android.proteus.value.Value;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an XML layout to a proteus {@link Layout} straight from the pull parser.
+ *
+ * The result is the same as converting the XML with {@link XmlToJsonConverter} and reading
+ * the JSON with the {@code ProteusTypeAdapterFactory}, without building the JSON tree and
+ * reading it back. The ids of the attributes known by the parser of each view are resolved
+ * and their values are precompiled, the other attributes are stored in the extras of the
+ * layout. The children are an array of layouts stored like an attribute named
+ * {@code children}, which is handled by the parsers of view groups.
+ *
+ * The compiled layouts are cached by the hash of their contents, the values are compiled
+ * against the {@link ProteusContext} of this compiler so the cache is not shared between
+ * contexts.
+ */
+public class LayoutCompiler {
+
+    private static final int MAX_CACHED_LAYOUTS = 64;
+
+    private static final String CHILDREN = "children";
+
+    private final ProteusContext mContext;
+    private final Map<HashCode, Layout> mCache =
+            new LinkedHashMap<HashCode, Layout>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<HashCode, Layout> eldest) {
+                    return size() > MAX_CACHED_LAYOUTS;
+                }
+            };
+
+    public LayoutCompiler(@NonNull ProteusContext context) {
+        mContext = context;
+    }
+
+    /**
+     * Compiles the layout, the same layout is returned for the same contents until it is
+     * evicted from the cache
+     *
+     * @param contents The xml string to compile
+     * @throws IOException if an error has occurred while reading the string content
+     * @throws XmlPullParserException if the XML content is malformed
+     * @throws ConvertException if the XML has no root element
+     */
+    @NonNull
+    public Layout compile(@NonNull String contents)
+            throws IOException, XmlPullParserException, ConvertException {
+        HashCode hash = Hashing.sha256().hashString(contents, StandardCharsets.UTF_8);
+        synchronized (mCache) {
+            Layout cached = mCache.get(hash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+        parser.setInput(new StringReader(contents));
+        Layout layout = compile(parser);
+
+        synchronized (mCache) {
+            mCache.put(hash, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Compiles the first element of the parser and its children, the result is not cached
+     */
+    @NonNull
+    public Layout compile(@NonNull XmlPullParser parser)
+            throws IOException, XmlPullParserException, ConvertException {
+        int type;
+        while ((type = parser.next()) != XmlPullParser.START_TAG &&
+                type != XmlPullParser.END_DOCUMENT) {
+            // Empty
+        }
+
+        if (type != XmlPullParser.START_TAG) {
+            throw new ConvertException(parser.getPositionDescription()
+                    + ": No start tag found!");
+        }
+        return compileElement(parser, mContext.getFunctionManager(), new HashMap<>());
+    }
+
+    public void clearCache() {
+        synchronized (mCache) {
+            mCache.clear();
+        }
+    }
+
+    private Layout compileElement(XmlPullParser parser, FunctionManager functionManager,
+                                  Map<String, ViewTypeParser.AttributeSet> attributeSets)
+            throws IOException, XmlPullParserException {
+        String type = parser.getName();
+        ViewTypeParser.AttributeSet attributeSet = getAttributeSet(type, attributeSets);
+
+        List<Layout.Attribute> attributes = new ArrayList<>();
+        ObjectValue extras = new ObjectValue();
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            String name = parser.getAttributeName(i);
+            Value value = compileString(parser.getAttributeValue(i), functionManager);
+            addAttribute(attributeSet, name, value, attributes, extras, functionManager);
+        }
+
+        Array children = null;
+        final int depth = parser.getDepth();
+        int next;
+        while (((next = parser.next()) != XmlPullParser.END_TAG ||
+                parser.getDepth() > depth) && next != XmlPullParser.END_DOCUMENT) {
+            if (next != XmlPullParser.START_TAG) {
+                continue;
+            }
+            if (children == null) {
+                children = new Array();
+            }
+            children.add(compileElement(parser, functionManager, attributeSets));
+        }
+        if (children != null) {
+            addAttribute(attributeSet, CHILDREN, children, attributes, extras, functionManager);
+        }
+
+        return new Layout(type, attributes.isEmpty() ? null : attributes, null,
+                extras.entrySet().isEmpty() ? null : extras);
+    }
+
+    private void addAttribute(@Nullable ViewTypeParser.AttributeSet attributeSet,
+                              String name, Value value,
+                              List<Layout.Attribute> attributes, ObjectValue extras,
+                              FunctionManager functionManager) {
+        ViewTypeParser.AttributeSet.Attribute attribute = attributeSet != null
+                ? attributeSet.getAttribute(name)
+                : null;
+        if (attribute != null) {
+            value = attribute.processor.precompile(value, mContext, functionManager);
+            attributes.add(new Layout.Attribute(attribute.id, value));
+        } else {
+            extras.add(name, value);
+        }
+    }
+
+    @Nullable
+    private ViewTypeParser.AttributeSet getAttributeSet(
+            String type, Map<String, ViewTypeParser.AttributeSet> attributeSets) {
+        if (attributeSets.containsKey(type)) {
+            return attributeSets.get(type);
+        }
+        ViewTypeParser<View> parser = mContext.getParser(type);
+        ViewTypeParser.AttributeSet attributeSet = parser != null
+                ? parser.getAttributeSet()
+                : null;
+        attributeSets.put(type, attributeSet);
+        return attributeSet;
+    }
+
+    private Value compileString(String string, FunctionManager functionManager) {
+        if (Binding.isBindingValue(string)) {
+            return Binding.valueOf(string, mContext, functionManager);
+        }
+        return new Primitive(string);
+    }
+}
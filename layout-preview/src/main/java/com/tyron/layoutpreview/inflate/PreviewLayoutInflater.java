@@ -8,6 +8,7 @@ import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 
+import com.flipkart.android.proteus.LayoutPatcher;
 import com.flipkart.android.proteus.Proteus;
 import com.flipkart.android.proteus.ProteusBuilder;
 import com.flipkart.android.proteus.ProteusContext;
@@ -33,10 +34,11 @@ import com.tyron.layout.appcompat.AppCompatModule;
 import com.tyron.layout.cardview.CardViewModule;
 import com.tyron.layout.constraintlayout.ConstraintLayoutModule;
 import com.tyron.layoutpreview.ResourceManager;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
+import com.tyron.layoutpreview.convert.LayoutCompiler;
 import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
 import com.tyron.layoutpreview.manager.ResourceDrawableManager;
 import com.tyron.layoutpreview.manager.ResourceLayoutManager;
+import com.tyron.layoutpreview.resource.ResourceTable;
 import com.tyron.layoutpreview.resource.ResourceValueParser;
 
 import java.io.File;
@@ -125,6 +127,10 @@ public class PreviewLayoutInflater {
     private final ResourceValueParser mParser = new ResourceValueParser();
     private final ResourceDrawableManager mDrawableManager = new ResourceDrawableManager();
     private final ResourceLayoutManager mLayoutManager = new ResourceLayoutManager();
+    private final LayoutCompiler mLayoutCompiler;
+    private final LayoutPatcher mLayoutPatcher;
+    private volatile ResourceTable<DrawableValue> mDrawableTable;
+    private volatile ResourceTable<Layout> mLayoutTable;
 
     private ProteusLayoutInflater.ImageLoader mImageLoader = (view, name, callback) -> {
         if (name.startsWith("@drawable")) {
@@ -159,6 +165,8 @@ public class PreviewLayoutInflater {
                 .build();
         mContext.setParserFactory(new MaterialParserFactory(mContext));
         ProteusTypeAdapterFactory.PROTEUS_INSTANCE_HOLDER.setProteus(mProteus);
+        mLayoutCompiler = new LayoutCompiler(mContext);
+        mLayoutPatcher = new LayoutPatcher(mContext);
 
         mParser.setProteusContext(mContext);
     }
@@ -166,9 +174,11 @@ public class PreviewLayoutInflater {
     public CompletableFuture<PreviewLayoutInflater> parseResources(Executor executor) {
         return CompletableFuture.supplyAsync(() -> {
             ResourceManager resourceManager = new ResourceManager(mContext,
-                    mProject, mProject.getFileManager());
-            mDrawableManager.setDrawables(resourceManager.getDrawables());
-            mLayoutManager.setLayouts(resourceManager.getLayouts());
+                    mProject, mProject.getFileManager(), mLayoutCompiler);
+            mDrawableTable = resourceManager.getDrawableTable();
+            mLayoutTable = resourceManager.getLayoutTable();
+            mDrawableManager.setDrawables(mDrawableTable);
+            mLayoutManager.setLayouts(mLayoutTable);
 
 
             mParser.parse(mProject);
@@ -205,26 +215,64 @@ public class PreviewLayoutInflater {
         return mContext;
     }
 
+    /**
+     * Called when a resource file has been changed, created or deleted so its drawable or
+     * layout is parsed again the next time it is used
+     */
+    public void invalidate(@NonNull File file) {
+        ResourceTable<DrawableValue> drawableTable = mDrawableTable;
+        if (drawableTable != null) {
+            drawableTable.invalidate(file);
+        }
+        ResourceTable<Layout> layoutTable = mLayoutTable;
+        if (layoutTable != null) {
+            layoutTable.invalidate(file);
+        }
+    }
+
     public Optional<ProteusView> inflateLayout(@NonNull String name) {
         ProteusLayoutInflater inflater = mContext.getInflater();
-        if (mContext.getLayout(name) == null) {
+        Layout layout = mContext.getLayout(name);
+        if (layout == null) {
             return Optional.empty();
         }
         ObjectValue value = new ObjectValue();
         value.add("layout_name", new Primitive(name));
+        // the compiled layouts are shared, the views are given a copy they can edit
         return Optional.of(inflater.
-                inflate(name, value));
+                inflate(layout.copy(), value));
     }
 
-    @Deprecated
+    /**
+     * Inflates the given xml, the compiled layout is reused if the same xml has been
+     * inflated before
+     */
     public ProteusView inflate(String xml) throws InflateException {
+        Layout layout;
+        try {
+            layout = mLayoutCompiler.compile(xml);
+        } catch (Exception e) {
+            throw new InflateException("Unable to inflate layout: " + e.getMessage());
+        }
+        return inflate(layout.copy());
+    }
+
+    /**
+     * Updates a view inflated from a previous version of the xml to the given xml. Only the
+     * attributes that have changed are set and only the children that have been added or
+     * removed are inflated or removed.
+     *
+     * @return The view that shows the new xml, a new view is returned if the root view could
+     * not be updated
+     */
+    public ProteusView update(@NonNull ProteusView view, String xml) throws InflateException {
+        Layout layout;
         try {
-            JsonObject object = new XmlToJsonConverter()
-                    .convert(xml);
-            return inflate(object);
+            layout = mLayoutCompiler.compile(xml);
         } catch (Exception e) {
             throw new InflateException("Unable to inflate layout: " + e.getMessage());
         }
+        return mLayoutPatcher.patch(view, layout);
     }
 
     /**
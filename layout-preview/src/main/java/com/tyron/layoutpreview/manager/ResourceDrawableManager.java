@@ -1,9 +1,11 @@
 package com.tyron.layoutpreview.manager;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.flipkart.android.proteus.DrawableManager;
 import com.flipkart.android.proteus.value.DrawableValue;
+import com.tyron.layoutpreview.resource.ResourceTable;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -11,13 +13,31 @@ import java.util.Map;
 public class ResourceDrawableManager extends DrawableManager {
 
     private final Map<String, DrawableValue> mDrawables = new HashMap<>();
+    private ResourceTable<DrawableValue> mTable;
 
     public void setDrawables(@NonNull Map<String, DrawableValue> map) {
         mDrawables.clear();
         mDrawables.putAll(map);
     }
+
+    /**
+     * Drawables that are not in the map are looked up in the table
+     */
+    public void setDrawables(@Nullable ResourceTable<DrawableValue> table) {
+        mTable = table;
+    }
+
     @Override
     protected Map<String, DrawableValue> getDrawables() {
         return mDrawables;
     }
+
+    @Override
+    public DrawableValue get(String name) {
+        DrawableValue value = mDrawables.get(name);
+        if (value == null && mTable != null) {
+            value = mTable.get(name);
+        }
+        return value;
+    }
 }
@@ -1,9 +1,11 @@
 package com.tyron.layoutpreview.manager;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.flipkart.android.proteus.LayoutManager;
 import com.flipkart.android.proteus.value.Layout;
+import com.tyron.layoutpreview.resource.ResourceTable;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -11,6 +13,7 @@ import java.util.Map;
 public class ResourceLayoutManager extends LayoutManager {
 
     private final Map<String, Layout> mLayouts = new HashMap<>();
+    private ResourceTable<Layout> mTable;
 
     @Nullable
     @Override
@@ -22,4 +25,21 @@ public class ResourceLayoutManager extends LayoutManager {
         mLayouts.clear();
         mLayouts.putAll(map);
     }
+
+    /**
+     * Layouts that are not in the map are looked up in the table
+     */
+    public void setLayouts(@Nullable ResourceTable<Layout> table) {
+        mTable = table;
+    }
+
+    @Nullable
+    @Override
+    public Layout get(@NonNull String name) {
+        Layout layout = mLayouts.get(name);
+        if (layout == null && mTable != null) {
+            layout = mTable.get(name);
+        }
+        return layout;
+    }
 }
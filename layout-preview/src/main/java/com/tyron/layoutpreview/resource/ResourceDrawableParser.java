@@ -28,13 +28,11 @@ public class ResourceDrawableParser {
     private final ProteusContext mContext;
     private final File mResourceDirectory;
     private final FileManager mFileManager;
-    private final Map<String, DrawableValue> drawableValueMap = new HashMap<>();
 
     public ResourceDrawableParser(ProteusContext context, File dir, FileManager fileManager) {
         mContext = context;
         mResourceDirectory = dir;
         mFileManager = fileManager;
-        drawableValueMap.putAll(getDefaultDrawables());
     }
 
     public Map<String, DrawableValue> getDefaultDrawables() {
@@ -46,21 +44,7 @@ public class ResourceDrawableParser {
         }
 
         for (File file : xmlFiles) {
-            DrawableValue value = null;
-
-            if (isImageFile(file)) {
-                value = parseFile(file);
-            } else if (file.getName().endsWith(".xml")) {
-                try {
-                    value = parseXml(file);
-                    if (value != null) {
-                        map.put(getName(file), value);
-                    }
-                } catch (IOException | ConvertException | XmlPullParserException ignore) {
-
-                }
-            }
-
+            DrawableValue value = parse(file);
             if (value != null) {
                 map.put(getName(file), value);
             }
@@ -69,6 +53,24 @@ public class ResourceDrawableParser {
         return map;
     }
 
+    /**
+     * @return The drawable of an image or xml file, null if it cannot be parsed
+     */
+    @Nullable
+    public DrawableValue parse(File file) {
+        if (isImageFile(file)) {
+            return parseFile(file);
+        }
+        if (isXmlFile(file)) {
+            try {
+                return parseXml(file);
+            } catch (IOException | ConvertException | XmlPullParserException ignore) {
+
+            }
+        }
+        return null;
+    }
+
     private DrawableValue parseFile(File file) {
         try {
             return DrawableValue.valueOf(file);
@@ -80,7 +82,7 @@ public class ResourceDrawableParser {
 
     @Nullable
     private DrawableValue parseXml(File file) throws IOException, ConvertException, XmlPullParserException {
-        Optional<CharSequence> contents = mFileManager.getFileContent(file);
+        Optional<CharSequence> contents = ResourceTable.getContents(mFileManager, file);
         if (contents.isPresent()) {
             String contentsString = contents.get().toString();
             JsonObject converted = new XmlToJsonConverter()
@@ -102,11 +104,15 @@ public class ResourceDrawableParser {
         return null;
     }
 
-    private boolean isImageFile(File file) {
+    public static boolean isImageFile(File file) {
         String n = file.getName();
         return n.endsWith(".png") || n.endsWith(".jpg") || n.endsWith(".jpeg");
     }
 
+    public static boolean isXmlFile(File file) {
+        return file.getName().endsWith(".xml");
+    }
+
     private String getName(File file) {
         return file.getName().substring(0, file.getName().lastIndexOf("."));
     }
@@ -6,20 +6,15 @@ import androidx.annotation.Nullable;
 
 import com.flipkart.android.proteus.ProteusContext;
 import com.flipkart.android.proteus.value.Layout;
-import com.flipkart.android.proteus.value.Value;
-import com.google.gson.JsonObject;
-import com.google.gson.stream.JsonReader;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.layoutpreview.BuildConfig;
 import com.tyron.layoutpreview.convert.ConvertException;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
-import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+import com.tyron.layoutpreview.convert.LayoutCompiler;
 
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -32,20 +27,47 @@ public class ResourceLayoutParser {
     private final File mResourceDirectory;
     private final FileManager mFileManager;
 
-    private final Map<String, Layout> layoutMap = new HashMap<>();
+    private final LayoutCompiler mCompiler;
+
+    private Map<String, Layout> layoutMap;
 
     public ResourceLayoutParser(ProteusContext context, File dir, FileManager fileManager) {
+        this(context, dir, fileManager, new LayoutCompiler(context));
+    }
+
+    public ResourceLayoutParser(ProteusContext context, File dir, FileManager fileManager,
+                                LayoutCompiler compiler) {
         mContext = context;
         mResourceDirectory = dir;
         mFileManager = fileManager;
-
-        layoutMap.putAll(getDefaultLayouts());
+        mCompiler = compiler;
     }
 
+    /**
+     * Compiles every layout of the resource directory the first time it is called
+     */
     public Map<String, Layout> getLayouts() {
+        if (layoutMap == null) {
+            layoutMap = getDefaultLayouts();
+        }
         return layoutMap;
     }
 
+    /**
+     * @return The compiled layout of the file, null if it cannot be compiled
+     */
+    @Nullable
+    public Layout parse(File file) {
+        try {
+            return parseLayout(file);
+        } catch (IOException | XmlPullParserException | ConvertException e) {
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Unable to parse file: " + file.getName(), e);
+            }
+            return null;
+        }
+    }
+
     private Map<String, Layout> getDefaultLayouts() {
         File defaultValues = new File(mResourceDirectory, "layout");
         File[] xmlFiles = defaultValues.listFiles(c -> c.getName().endsWith(".xml"));
@@ -56,15 +78,9 @@ public class ResourceLayoutParser {
         Map<String, Layout> map = new HashMap<>();
 
         for (File file : xmlFiles) {
-            try {
-                Value layout = parseLayout(file);
-                if (layout != null && layout.isLayout()) {
-                    map.put(getName(file), layout.getAsLayout());
-                }
-            } catch (IOException | XmlPullParserException | ConvertException e) {
-                if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "Unable to parse file: " + file.getName(), e);
-                }
+            Layout layout = parse(file);
+            if (layout != null) {
+                map.put(getName(file), layout);
             }
         }
 
@@ -72,14 +88,10 @@ public class ResourceLayoutParser {
     }
 
     @Nullable
-    private Value parseLayout(File file) throws ConvertException, XmlPullParserException, IOException {
-        Optional<CharSequence> fileContent = mFileManager.getFileContent(file);
+    private Layout parseLayout(File file) throws ConvertException, XmlPullParserException, IOException {
+        Optional<CharSequence> fileContent = ResourceTable.getContents(mFileManager, file);
         if (fileContent.isPresent()) {
-            String contents = fileContent.get().toString();
-            JsonObject jsonObject = new XmlToJsonConverter()
-                    .convert(contents);
-            return new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER
-                    .read(new JsonReader(new StringReader(jsonObject.toString())), false);
+            return mCompiler.compile(fileContent.get().toString());
         }
         return null;
     }
@@ -0,0 +1,179 @@
+package com.tyron.layoutpreview.resource;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.project.api.FileManager;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The resources of one type, e.g. the drawables of the project and of its libraries.
+ *
+ * Only the names of the resources are indexed to their files when a directory is added, a
+ * resource is parsed the first time it is requested and the most recently used values are
+ * kept. A resource with the same name in a directory that is added later replaces the earlier
+ * one, so the directories of the libraries should be added before the one of the project.
+ */
+public class ResourceTable<T> {
+
+    public interface Parser<T> {
+
+        /**
+         * @return The value of the resource, null if the file cannot be parsed
+         */
+        @Nullable
+        T parse(@NonNull File file);
+    }
+
+    private final String mFolderName;
+    private final FileFilter mFilter;
+    private final Parser<T> mParser;
+
+    /**
+     * The res directories in the order they were added
+     */
+    private final List<File> mDirectories = new ArrayList<>();
+    private final Map<String, File> mFiles = new HashMap<>();
+    private final Map<String, Optional<T>> mValues;
+
+    /**
+     * @param folderName The name of the folder in the res directories, e.g. {@code drawable}
+     * @param filter     The files of the folder that are resources
+     * @param maxValues  The number of parsed values that are kept
+     */
+    public ResourceTable(@NonNull String folderName, @NonNull FileFilter filter,
+                         @NonNull Parser<T> parser, int maxValues) {
+        mFolderName = folderName;
+        mFilter = filter;
+        mParser = parser;
+        mValues = new LinkedHashMap<String, Optional<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Optional<T>> eldest) {
+                return size() > maxValues;
+            }
+        };
+    }
+
+    /**
+     * Indexes the resources of the res directory without parsing them
+     */
+    public synchronized void addDirectory(@NonNull File resDirectory) {
+        mDirectories.add(resDirectory);
+
+        File[] files = new File(resDirectory, mFolderName).listFiles(mFilter);
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = getName(file);
+            mFiles.put(name, file);
+            mValues.remove(name);
+        }
+    }
+
+    /**
+     * @return The value of the resource, parsed now if it has not been parsed before or if it
+     * has been evicted
+     */
+    @Nullable
+    public synchronized T get(@NonNull String name) {
+        Optional<T> value = mValues.get(name);
+        if (value == null) {
+            File file = mFiles.get(name);
+            if (file == null) {
+                return null;
+            }
+            // failures are kept too so a broken file is not parsed on every lookup
+            value = Optional.ofNullable(mParser.parse(file));
+            mValues.put(name, value);
+        }
+        return value.orElse(null);
+    }
+
+    public synchronized boolean contains(@NonNull String name) {
+        return mFiles.containsKey(name);
+    }
+
+    @NonNull
+    public synchronized Set<String> getNames() {
+        return Collections.unmodifiableSet(new HashSet<>(mFiles.keySet()));
+    }
+
+    /**
+     * Parses all the resources of this table, the result is not cached
+     */
+    @NonNull
+    public Map<String, T> getAll() {
+        Map<String, T> values = new HashMap<>();
+        for (String name : getNames()) {
+            T value = get(name);
+            if (value != null) {
+                values.put(name, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Called when the file has been changed, created or deleted. The resource of the file is
+     * parsed again the next time it is requested.
+     */
+    public synchronized void invalidate(@NonNull File file) {
+        File folder = file.getParentFile();
+        if (folder == null || !mFolderName.equals(folder.getName()) ||
+                !mDirectories.contains(folder.getParentFile())) {
+            return;
+        }
+
+        String name = getName(file);
+        mValues.remove(name);
+
+        // the file may have replaced or uncovered a resource with the same name
+        mFiles.remove(name);
+        for (File directory : mDirectories) {
+            File[] files = new File(directory, mFolderName)
+                    .listFiles(f -> mFilter.accept(f) && name.equals(getName(f)));
+            if (files != null && files.length > 0) {
+                mFiles.put(name, files[0]);
+            }
+        }
+    }
+
+    /**
+     * @return The contents of the file in the editor if it is opened, otherwise the contents
+     * on the disk
+     */
+    static Optional<CharSequence> getContents(@NonNull FileManager fileManager,
+                                              @NonNull File file) {
+        Optional<CharSequence> contents = fileManager.getFileContent(file);
+        if (contents.isPresent()) {
+            return contents;
+        }
+        try {
+            return Optional.of(new String(Files.readAllBytes(file.toPath()),
+                    StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String getName(File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        return dot == -1 ? name : name.substring(0, dot);
+    }
+}
@@ -0,0 +1,109 @@
+package com.tyron.layoutpreview.convert;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.view.ViewGroup;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.flipkart.android.proteus.Proteus;
+import com.flipkart.android.proteus.ProteusBuilder;
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.ProteusView;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Value;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.StringReader;
+
+@RunWith(RobolectricTestRunner.class)
+public class TestLayoutCompiler {
+
+    private static final String TEST_LAYOUT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+            "    android:layout_width=\"match_parent\"\n" +
+            "    android:layout_height=\"match_parent\"\n" +
+            "    android:orientation=\"vertical\">\n" +
+            "\n" +
+            "    <TextView\n" +
+            "        android:id=\"@+id/text\"\n" +
+            "        android:layout_width=\"wrap_content\"\n" +
+            "        android:layout_height=\"wrap_content\"\n" +
+            "        android:text=\"Hello\" />\n" +
+            "\n" +
+            "    <com.example.UnknownView\n" +
+            "        android:layout_width=\"match_parent\"\n" +
+            "        android:layout_height=\"48dp\"\n" +
+            "        unknownAttribute=\"value\">\n" +
+            "\n" +
+            "        <View\n" +
+            "            android:layout_width=\"match_parent\"\n" +
+            "            android:layout_height=\"1dp\" />\n" +
+            "    </com.example.UnknownView>\n" +
+            "</LinearLayout>";
+
+    private ProteusContext mContext;
+
+    @Before
+    public void setup() {
+        Proteus proteus = new ProteusBuilder().build();
+        mContext = proteus.createContextBuilder(ApplicationProvider.getApplicationContext())
+                .build();
+        ProteusTypeAdapterFactory.PROTEUS_INSTANCE_HOLDER.setProteus(proteus);
+    }
+
+    @Test
+    public void testSameAsJson() throws Exception {
+        JsonObject object = new XmlToJsonConverter().convert(TEST_LAYOUT);
+        Value read = new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER.read(new JsonReader(
+                new StringReader(object.toString())), false);
+        Layout expected = read.getAsLayout();
+
+        Layout compiled = new LayoutCompiler(mContext).compile(TEST_LAYOUT);
+
+        LayoutToXmlConverter converter = new LayoutToXmlConverter(mContext);
+        assertThat(converter.convert(compiled))
+                .isEqualTo(converter.convert(expected));
+    }
+
+    @Test
+    public void testChildrenAreAnAttribute() throws Exception {
+        Layout compiled = new LayoutCompiler(mContext).compile(TEST_LAYOUT);
+
+        // the parsers of view groups add the children from their attribute
+        int id = mContext.getParser("LinearLayout").getAttributeId("children");
+        Layout.Attribute children = null;
+        for (Layout.Attribute attribute : compiled.attributes) {
+            if (attribute.id == id) {
+                children = attribute;
+            }
+        }
+        assertThat(children).isNotNull();
+        assertThat(children.value.isArray()).isTrue();
+        assertThat(children.value.getAsArray().size()).isEqualTo(2);
+        assertThat(compiled.extras == null || !compiled.extras.has("children")).isTrue();
+
+        ProteusView view = mContext.getInflater().inflate(compiled.copy(), new ObjectValue());
+        assertThat(((ViewGroup) view.getAsView()).getChildCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCompiledLayoutIsCached() throws Exception {
+        LayoutCompiler compiler = new LayoutCompiler(mContext);
+        Layout first = compiler.compile(TEST_LAYOUT);
+        assertThat(compiler.compile(TEST_LAYOUT))
+                .isSameInstanceAs(first);
+
+        Layout edited = compiler.compile(TEST_LAYOUT.replace("Hello", "World"));
+        assertThat(edited)
+                .isNotSameInstanceAs(first);
+    }
+}
@@ -0,0 +1,149 @@
+package com.tyron.layoutpreview.convert;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.flipkart.android.proteus.LayoutPatcher;
+import com.flipkart.android.proteus.Proteus;
+import com.flipkart.android.proteus.ProteusBuilder;
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.ProteusView;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Value;
+import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class TestLayoutPatcher {
+
+    private static final String TEST_LAYOUT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+            "    android:layout_width=\"match_parent\"\n" +
+            "    android:layout_height=\"match_parent\"\n" +
+            "    android:orientation=\"vertical\">\n" +
+            "\n" +
+            "    <TextView\n" +
+            "        android:layout_width=\"wrap_content\"\n" +
+            "        android:layout_height=\"wrap_content\"\n" +
+            "        android:text=\"Hello\" />\n" +
+            "\n" +
+            "    <View\n" +
+            "        android:layout_width=\"match_parent\"\n" +
+            "        android:layout_height=\"1dp\" />\n" +
+            "</LinearLayout>";
+
+    private ProteusContext mContext;
+    private LayoutCompiler mCompiler;
+    private LayoutPatcher mPatcher;
+
+    @Before
+    public void setup() {
+        Proteus proteus = new ProteusBuilder().build();
+        mContext = proteus.createContextBuilder(ApplicationProvider.getApplicationContext())
+                .build();
+        ProteusTypeAdapterFactory.PROTEUS_INSTANCE_HOLDER.setProteus(proteus);
+        mCompiler = new LayoutCompiler(mContext);
+        mPatcher = new LayoutPatcher(mContext);
+    }
+
+    @Test
+    public void testChangedAttributeIsPatched() throws Exception {
+        ProteusView view = inflate(TEST_LAYOUT);
+        View text = ((ViewGroup) view.getAsView()).getChildAt(0);
+
+        ProteusView patched = mPatcher.patch(view,
+                mCompiler.compile(TEST_LAYOUT.replace("Hello", "World")));
+        assertThat(patched)
+                .isSameInstanceAs(view);
+
+        ViewGroup root = (ViewGroup) patched.getAsView();
+        assertThat(root.getChildAt(0))
+                .isSameInstanceAs(text);
+        assertThat(((TextView) text).getText().toString())
+                .isEqualTo("World");
+    }
+
+    @Test
+    public void testOnlyChangedChildrenAreInflated() throws Exception {
+        ProteusView view = inflate(TEST_LAYOUT);
+        ViewGroup root = (ViewGroup) view.getAsView();
+        View text = root.getChildAt(0);
+        View divider = root.getChildAt(1);
+
+        String inserted = TEST_LAYOUT.replace("    <View\n",
+                "    <Button\n" +
+                "        android:layout_width=\"wrap_content\"\n" +
+                "        android:layout_height=\"wrap_content\" />\n" +
+                "\n" +
+                "    <View\n");
+        mPatcher.patch(view, mCompiler.compile(inserted));
+        assertThat(root.getChildCount())
+                .isEqualTo(3);
+        assertThat(root.getChildAt(0))
+                .isSameInstanceAs(text);
+        assertThat(root.getChildAt(2))
+                .isSameInstanceAs(divider);
+
+        // a removed attribute cannot be undone, only that view is inflated again
+        mPatcher.patch(view, mCompiler.compile(inserted.replace(
+                "        android:text=\"Hello\" />\n", "        />\n")));
+        assertThat(root.getChildCount())
+                .isEqualTo(3);
+        assertThat(root.getChildAt(0))
+                .isNotSameInstanceAs(text);
+        assertThat(root.getChildAt(2))
+                .isSameInstanceAs(divider);
+    }
+
+    @Test
+    public void testCompiledValuesAreNotShared() throws Exception {
+        ProteusView view = inflate(TEST_LAYOUT);
+        TextView text = (TextView) ((ViewGroup) view.getAsView()).getChildAt(0);
+
+        // the compiled layout is cached and returned again for the same xml
+        String edited = TEST_LAYOUT.replace("Hello", "World");
+        Layout compiled = mCompiler.compile(edited);
+        mPatcher.patch(view, compiled);
+        assertThat(mCompiler.compile(edited))
+                .isSameInstanceAs(compiled);
+
+        Layout patched = ((ProteusView) text).getViewManager().getLayout();
+        Layout compiledText = compiled.getAttribute(
+                mContext.getParser("LinearLayout").getAttributeId("children"))
+                .value.getAsArray().get(0).getAsLayout();
+        assertThat(patched)
+                .isNotSameInstanceAs(compiledText);
+        for (Layout.Attribute attribute : patched.getAttributes()) {
+            Value value = compiledText.getAttribute(attribute.id).value;
+            assertThat(attribute)
+                    .isNotSameInstanceAs(compiledText.getAttribute(attribute.id));
+            // only the values that cannot be changed are shared
+            if (value.copy() != value) {
+                assertThat(attribute.value)
+                        .isNotSameInstanceAs(value);
+            }
+        }
+
+        // editing the view in the editor does not change the cached layout
+        ((ProteusView) text).getViewManager().updateAttribute("android:text", "Changed");
+        assertThat(text.getText().toString())
+                .isEqualTo("Changed");
+        mPatcher.patch(view, compiled);
+        assertThat(text.getText().toString())
+                .isEqualTo("World");
+    }
+
+    private ProteusView inflate(String xml) throws Exception {
+        return mContext.getInflater().inflate(mCompiler.compile(xml).copy(), new ObjectValue());
+    }
+}
@@ -0,0 +1,100 @@
+package com.tyron.layoutpreview.resource;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestResourceTable {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<File> mParsed = new ArrayList<>();
+
+    @Test
+    public void testResourcesAreParsedOnFirstUse() throws IOException {
+        File library = createResDirectory("library", "icon.xml", "divider.xml");
+        File project = createResDirectory("project", "icon.xml");
+
+        ResourceTable<File> table = createTable(2);
+        table.addDirectory(library);
+        table.addDirectory(project);
+        assertThat(table.getNames())
+                .containsExactly("icon", "divider");
+        assertThat(mParsed)
+                .isEmpty();
+
+        // the project replaces the resources of the library
+        assertThat(table.get("icon"))
+                .isEqualTo(new File(project, "drawable/icon.xml"));
+        table.get("icon");
+        assertThat(mParsed)
+                .hasSize(1);
+        assertThat(table.get("missing"))
+                .isNull();
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        File library = createResDirectory("library", "icon.xml");
+        File project = createResDirectory("project", "icon.xml");
+
+        ResourceTable<File> table = createTable(2);
+        table.addDirectory(library);
+        table.addDirectory(project);
+        table.get("icon");
+
+        File file = new File(project, "drawable/icon.xml");
+        table.invalidate(file);
+        table.get("icon");
+        assertThat(mParsed)
+                .hasSize(2);
+
+        assertThat(file.delete())
+                .isTrue();
+        table.invalidate(file);
+        assertThat(table.get("icon"))
+                .isEqualTo(new File(library, "drawable/icon.xml"));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File project = createResDirectory("project", "a.xml", "b.xml", "c.xml");
+
+        ResourceTable<File> table = createTable(2);
+        table.addDirectory(project);
+        table.get("a");
+        table.get("b");
+        table.get("c");
+        table.get("a");
+        assertThat(mParsed)
+                .hasSize(4);
+    }
+
+    private ResourceTable<File> createTable(int maxValues) {
+        return new ResourceTable<>("drawable", file -> file.getName().endsWith(".xml"),
+                file -> {
+                    mParsed.add(file);
+                    return file;
+                }, maxValues);
+    }
+
+    private File createResDirectory(String name, String... files) throws IOException {
+        File res = mFolder.newFolder(name, "res");
+        File drawable = new File(res, "drawable");
+        assertThat(drawable.mkdirs())
+                .isTrue();
+        for (String file : files) {
+            assertThat(new File(drawable, file).createNewFile())
+                    .isTrue();
+        }
+        return res;
+    }
+}
@@ -1,149 +1,187 @@
 package com.tyron.completion.xml;
 
-import android.content.Context;
-import android.util.AttributeSet;
-import android.view.View;
-import android.view.ViewGroup;
-
-import com.tyron.builder.BuildModule;
-
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.ClassParser;
-import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.Type;
-import org.jetbrains.org.objectweb.asm.ClassReader;
+import com.google.common.io.ByteStreams;
+import com.tyron.completion.xml.model.ClassHeader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
- * Scans jar files and saves all the class files that extends {@link View} and has the
- * appropriate constructors to be inflated in XML.
+ * Reads the headers of the class files in a jar. Only the constant pool, the names of the
+ * class and its super class and the descriptors of the methods are read, the code and the
+ * attributes of the members are skipped without being parsed.
  */
 public class BytecodeScanner {
 
-    public static void loadJar(File jar) throws IOException {
-        try (JarFile jarFile = new JarFile(jar)) {
-            Enumeration<JarEntry> entries = jarFile.entries();
+    private static final byte[] CONSTRUCTOR_NAME = "<init>".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The descriptor of the constructor used by the layout inflater
+     */
+    private static final byte[] VIEW_CONSTRUCTOR_DESCRIPTOR =
+            "(Landroid/content/Context;Landroid/util/AttributeSet;)V"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    public static List<ClassHeader> scan(File jar) throws IOException {
+        List<ClassHeader> headers = new ArrayList<>();
+        byte[] buffer = new byte[8192];
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
             while (entries.hasMoreElements()) {
-                JarEntry element = entries.nextElement();
-                if (!element.getName().endsWith(".class")) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/")) {
                     continue;
                 }
-                ClassParser classParser = new ClassParser(jar.getAbsolutePath(), element.getName());
-                JavaClass parse = classParser.parse();
-                Repository.addClass(parse);
-            }
-        }
-    }
 
-    public static List<JavaClass> scan(File file) throws IOException {
-        String path = file.getAbsolutePath();
-        List<JavaClass> viewClasses = new ArrayList<>();
-        try (JarFile jarFile = new JarFile(file)) {
-            Enumeration<JarEntry> entries = jarFile.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry element = entries.nextElement();
-                if (!element.getName().endsWith(".class")) {
-                    continue;
+                byte[] bytes;
+                int length;
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    long size = entry.getSize();
+                    if (size < 0 || size > Integer.MAX_VALUE) {
+                        bytes = ByteStreams.toByteArray(inputStream);
+                        length = bytes.length;
+                    } else {
+                        length = (int) size;
+                        if (buffer.length < length) {
+                            buffer = new byte[Math.max(length, buffer.length * 2)];
+                        }
+                        ByteStreams.readFully(inputStream, buffer, 0, length);
+                        bytes = buffer;
+                    }
                 }
-                ClassParser classParser = new ClassParser(path, element.getName());
-                JavaClass parse = classParser.parse();
-                if (isViewClass(parse)) {
-                    viewClasses.add(parse);
+
+                try {
+                    headers.add(readHeader(bytes, length));
+                } catch (IOException | IndexOutOfBoundsException e) {
+                    // not a valid class file, ignored
                 }
             }
         }
-        return viewClasses;
+        return headers;
     }
 
-    public static boolean isViewGroup(JavaClass javaClass) {
-        JavaClass[] superClasses;
-        try {
-            superClasses = javaClass.getSuperClasses();
-        } catch (ClassNotFoundException e) {
-            return false;
+    /**
+     * Reads the header of the class file stored in the first {@code length} bytes
+     */
+    public static ClassHeader readHeader(byte[] bytes, int length) throws IOException {
+        if (length < 10 || readInt(bytes, 0) != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
         }
-        for (JavaClass superClass : superClasses) {
-            if (ViewGroup.class.getName().equals(superClass.getClassName())) {
-                return true;
+
+        int count = readUnsignedShort(bytes, 8);
+        int[] offsets = new int[count];
+        int position = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = position;
+            int tag = bytes[position] & 0xFF;
+            switch (tag) {
+                case 1: // Utf8
+                    position += 3 + readUnsignedShort(bytes, position + 1);
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    position += 3;
+                    break;
+                case 15: // MethodHandle
+                    position += 4;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    position += 5;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    position += 9;
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
             }
         }
-        return false;
-    }
 
-    public static void scanBootstrapIfNeeded() {
-        if (!needScanBootstrap()) {
-            return;
+        // access flags
+        position += 2;
+        String className = readClassName(bytes, offsets, readUnsignedShort(bytes, position));
+        int superClassIndex = readUnsignedShort(bytes, position + 2);
+        String superClassName = superClassIndex == 0
+                ? null
+                : readClassName(bytes, offsets, superClassIndex);
+        position += 4;
+
+        // interfaces
+        position += 2 + 2 * readUnsignedShort(bytes, position);
+
+        // fields
+        int fieldCount = readUnsignedShort(bytes, position);
+        position += 2;
+        for (int i = 0; i < fieldCount; i++) {
+            position = skipAttributes(bytes, position + 6);
         }
 
-        File androidJar = BuildModule.getAndroidJar();
-        if (androidJar != null && androidJar.exists()) {
-            try (JarFile jarFile = new JarFile(androidJar)) {
-                Enumeration<JarEntry> entries = jarFile.entries();
-                while (entries.hasMoreElements()) {
-                    JarEntry element = entries.nextElement();
-                    if (!element.getName().endsWith(".class")) {
-                        continue;
-                    }
-                    ClassParser classParser = new ClassParser(androidJar.getAbsolutePath(),
-                            element.getName());
-                    JavaClass parse = classParser.parse();
-                    Repository.addClass(parse);
-                }
-            } catch (IOException e) {
-                // ignored
-            }
+        boolean viewConstructor = false;
+        int methodCount = readUnsignedShort(bytes, position);
+        position += 2;
+        for (int i = 0; i < methodCount && !viewConstructor; i++) {
+            int nameIndex = readUnsignedShort(bytes, position + 2);
+            int descriptorIndex = readUnsignedShort(bytes, position + 4);
+            viewConstructor = utf8Equals(bytes, offsets[nameIndex], CONSTRUCTOR_NAME) &&
+                    utf8Equals(bytes, offsets[descriptorIndex], VIEW_CONSTRUCTOR_DESCRIPTOR);
+            position = skipAttributes(bytes, position + 6);
         }
+        return new ClassHeader(className, superClassName, viewConstructor);
     }
 
-    private static boolean needScanBootstrap() {
-        try {
-            Repository.getRepository().loadClass(View.class);
-            return false;
-        } catch (ClassNotFoundException e) {
-            return true;
+    private static int skipAttributes(byte[] bytes, int position) {
+        int count = readUnsignedShort(bytes, position);
+        position += 2;
+        for (int i = 0; i < count; i++) {
+            position += 6 + readInt(bytes, position + 2);
         }
+        return position;
     }
 
-    private static boolean isViewClass(JavaClass javaClass) {
-        try {
-            JavaClass[] superClasses = javaClass.getSuperClasses();
-            for (JavaClass superClass : superClasses) {
-                if (View.class.getName().equals(superClass.getClassName())) {
-                    Method[] methods = javaClass.getMethods();
-                    if (containsViewConstructors(methods)) {
-                        return true;
-                    }
-                }
-            }
-            return false;
-        } catch (ClassNotFoundException e) {
+    private static String readClassName(byte[] bytes, int[] offsets, int classIndex) {
+        int nameIndex = readUnsignedShort(bytes, offsets[classIndex] + 1);
+        int offset = offsets[nameIndex];
+        int length = readUnsignedShort(bytes, offset + 1);
+        return new String(bytes, offset + 3, length, StandardCharsets.UTF_8).replace('/', '.');
+    }
+
+    private static boolean utf8Equals(byte[] bytes, int offset, byte[] expected) {
+        if (readUnsignedShort(bytes, offset + 1) != expected.length) {
             return false;
         }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[offset + 3 + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private static boolean containsViewConstructors(Method[] methods) {
-        for (Method method : methods) {
-            if (!"<init>".equals(method.getName())) {
-                continue;
-            }
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
 
-            Type[] argumentTypes = method.getArgumentTypes();
-            if (argumentTypes.length == 2) {
-                if (Context.class.getName().equals(argumentTypes[0].toString())) {
-                    if (AttributeSet.class.getName().equals(argumentTypes[1].toString())) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) |
+                ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
     }
 }
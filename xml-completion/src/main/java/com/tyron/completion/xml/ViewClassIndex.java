@@ -0,0 +1,191 @@
+package com.tyron.completion.xml;
+
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.common.util.Cache;
+import com.tyron.completion.xml.model.ClassHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Index of the class hierarchy of android.jar and the libraries of a module, used to find the
+ * views that can be used in layout files.
+ *
+ * Only the headers of the class files are read, see {@link BytecodeScanner}. The headers of
+ * each jar are stored in the cache of the module keyed by the contents of the jar so a jar is
+ * only read again when it changes. The jars that are not in the cache are read in parallel.
+ */
+public class ViewClassIndex {
+
+    private static final String TAG = ViewClassIndex.class.getSimpleName();
+    private static final String CLASSES = "classes";
+
+    public static final CacheHolder.CacheKey<String, JarClasses> CACHE_KEY =
+            new CacheHolder.CacheKey<>("xmlViewClassIndex", String.class, JarClasses.class);
+
+    /**
+     * The classes of a jar as they are stored in the cache, each class is encoded as
+     * {@code className|superClassName|viewConstructor}
+     */
+    public static class JarClasses {
+        public List<String> classes = Collections.emptyList();
+    }
+
+    private final Map<String, ClassHeader> mClasses = new HashMap<>();
+    private final Map<File, List<ClassHeader>> mJarClasses = new HashMap<>();
+
+    private ViewClassIndex() {
+
+    }
+
+    public static ViewClassIndex create(@Nullable Module module, Collection<File> jars) {
+        Cache<String, JarClasses> cache = module == null
+                ? new Cache<>()
+                : module.getCache(CACHE_KEY, new Cache<>());
+
+        ViewClassIndex index = new ViewClassIndex();
+        int threads = Math.max(1, Math.min(jars.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<File> files = new ArrayList<>(jars);
+            List<Future<List<ClassHeader>>> futures = new ArrayList<>(files.size());
+            for (File jar : files) {
+                futures.add(executor.submit(() -> loadJar(cache, jar)));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                List<ClassHeader> headers;
+                try {
+                    headers = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Unable to read " + files.get(i), e.getCause());
+                    continue;
+                }
+                index.mJarClasses.put(files.get(i), headers);
+                for (ClassHeader header : headers) {
+                    // the first jar that declares a class wins, like in the class path
+                    index.mClasses.putIfAbsent(header.getClassName(), header);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return index;
+    }
+
+    private static List<ClassHeader> loadJar(Cache<String, JarClasses> cache, File jar)
+            throws IOException {
+        Path path = jar.toPath();
+        // a cache that is not persisted is not thread safe
+        synchronized (cache) {
+            if (!cache.needs(path, CLASSES)) {
+                JarClasses cached = cache.get(path, CLASSES);
+                if (cached != null) {
+                    return decode(cached);
+                }
+            }
+        }
+
+        List<ClassHeader> headers = BytecodeScanner.scan(jar);
+        JarClasses classes = new JarClasses();
+        classes.classes = new ArrayList<>(headers.size());
+        for (ClassHeader header : headers) {
+            classes.classes.add(encode(header));
+        }
+        synchronized (cache) {
+            cache.load(path, CLASSES, classes);
+        }
+        return headers;
+    }
+
+    /**
+     * @return The classes declared in the given jar, empty if it is not in this index
+     */
+    @NonNull
+    public List<ClassHeader> getClasses(File jar) {
+        List<ClassHeader> headers = mJarClasses.get(jar);
+        if (headers == null) {
+            return Collections.emptyList();
+        }
+        return headers;
+    }
+
+    @Nullable
+    public ClassHeader getClass(String className) {
+        return mClasses.get(className);
+    }
+
+    /**
+     * @return The names of the super classes of the given class starting from its direct
+     * super class, stops at the first class that is not in this index
+     */
+    public List<String> getSuperClasses(String className) {
+        List<String> superClasses = new ArrayList<>();
+        ClassHeader current = mClasses.get(className);
+        while (current != null && current.getSuperClassName() != null) {
+            String superClassName = current.getSuperClassName();
+            if (superClasses.contains(superClassName)) {
+                break;
+            }
+            superClasses.add(superClassName);
+            current = mClasses.get(superClassName);
+        }
+        return superClasses;
+    }
+
+    public boolean isSubclassOf(String className, String superClassName) {
+        return getSuperClasses(className).contains(superClassName);
+    }
+
+    public boolean isViewGroup(String className) {
+        return isSubclassOf(className, ViewGroup.class.getName());
+    }
+
+    /**
+     * @return Whether the class extends {@link View} and can be inflated from XML
+     */
+    public boolean isInflatableView(ClassHeader header) {
+        return header.hasViewConstructor() &&
+                isSubclassOf(header.getClassName(), View.class.getName());
+    }
+
+    private static String encode(ClassHeader header) {
+        return header.getClassName() + "|" +
+                (header.getSuperClassName() == null ? "" : header.getSuperClassName()) + "|" +
+                (header.hasViewConstructor() ? "1" : "0");
+    }
+
+    private static List<ClassHeader> decode(JarClasses classes) {
+        List<ClassHeader> headers = new ArrayList<>(classes.classes.size());
+        for (String line : classes.classes) {
+            String[] parts = line.split("\\|", 3);
+            if (parts.length != 3) {
+                continue;
+            }
+            headers.add(new ClassHeader(parts[0], parts[1].isEmpty() ? null : parts[1],
+                    "1".equals(parts[2])));
+        }
+        return headers;
+    }
+}
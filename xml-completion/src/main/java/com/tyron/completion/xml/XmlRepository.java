@@ -21,16 +21,16 @@ import android.widget.TextView;
 import android.widget.ViewFlipper;
 import android.widget.ViewSwitcher;
 
+import com.tyron.builder.BuildModule;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.common.ApplicationProvider;
 import com.tyron.common.util.Decompress;
 import com.tyron.completion.xml.model.AttributeInfo;
+import com.tyron.completion.xml.model.ClassHeader;
 import com.tyron.completion.xml.model.DeclareStyleable;
 import com.tyron.completion.xml.model.Format;
 import com.tyron.completion.xml.util.StyleUtils;
 
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.JavaClass;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -40,6 +40,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,7 +53,8 @@ public class XmlRepository {
     private final Map<String, DeclareStyleable> mDeclareStyleables = new TreeMap<>();
     private final Map<String, DeclareStyleable> mManifestAttrs = new TreeMap<>();
     private final Map<String, AttributeInfo> mExtraAttributes = new TreeMap<>();
-    private final Map<String, JavaClass> mJavaViewClasses = new TreeMap<>();
+    private final Map<String, ClassHeader> mJavaViewClasses = new TreeMap<>();
+    private ViewClassIndex mViewClassIndex;
 
     private boolean mInitialized = false;
 
@@ -64,10 +66,14 @@ public class XmlRepository {
         return mDeclareStyleables;
     }
 
-    public Map<String, JavaClass> getJavaViewClasses() {
+    public Map<String, ClassHeader> getJavaViewClasses() {
         return mJavaViewClasses;
     }
 
+    public ViewClassIndex getViewClassIndex() {
+        return mViewClassIndex;
+    }
+
     public AttributeInfo getExtraAttribute(String name) {
         return mExtraAttributes.get(name);
     }
@@ -76,11 +82,17 @@ public class XmlRepository {
         if (mInitialized) {
             return;
         }
-        BytecodeScanner.scanBootstrapIfNeeded();
-
         mAttrsFile = getOrExtractFiles();
 
+        Set<File> jars = new LinkedHashSet<>();
+        File androidJar = BuildModule.getAndroidJar();
+        if (androidJar != null && androidJar.exists()) {
+            jars.add(androidJar);
+        }
+
         for (File library : module.getLibraries()) {
+            jars.add(library);
+
             File parent = library.getParentFile();
             if (parent == null) {
                 continue;
@@ -100,13 +112,10 @@ public class XmlRepository {
 
             File classesFile = new File(parent, "classes.jar");
             if (classesFile.exists()) {
-                try {
-                    BytecodeScanner.loadJar(classesFile);
-                } catch (IOException ignored) {
-
-                }
+                jars.add(classesFile);
             }
         }
+        mViewClassIndex = ViewClassIndex.create(module, jars);
 
         try {
             Map<String, DeclareStyleable> android = parse(mAttrsFile, "android");
@@ -123,22 +132,16 @@ public class XmlRepository {
         }
 
         for (File library : module.getLibraries()) {
-            try {
-                List<JavaClass> scan =
-                        BytecodeScanner.scan(library);
-                for (JavaClass javaClass : scan) {
-                    StyleUtils.putStyles(javaClass);
-                    mJavaViewClasses.put(javaClass.getClassName(), javaClass);
+            for (ClassHeader header : mViewClassIndex.getClasses(library)) {
+                if (mViewClassIndex.isInflatableView(header)) {
+                    StyleUtils.putStyles(mViewClassIndex, header);
+                    mJavaViewClasses.put(header.getClassName(), header);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
         }
 
         addFrameworkViews();
 
-        Repository.clearCache();
-
         mInitialized = true;
     }
 
@@ -166,14 +169,9 @@ public class XmlRepository {
     }
 
     private void addFrameworkView(Class<? extends View> viewClass) {
-        org.apache.bcel.util.Repository repository = Repository.getRepository();
-        try {
-            JavaClass javaClass = repository.loadClass(viewClass);
-            if (javaClass != null) {
-                mJavaViewClasses.put(javaClass.getClassName(), javaClass);
-            }
-        } catch (ClassNotFoundException e) {
-            // ignored
+        ClassHeader header = mViewClassIndex.getClass(viewClass.getName());
+        if (header != null) {
+            mJavaViewClasses.put(header.getClassName(), header);
         }
     }
 
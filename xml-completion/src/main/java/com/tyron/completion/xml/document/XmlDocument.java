@@ -0,0 +1,378 @@
+package com.tyron.completion.xml.document;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.project.api.FileManager;
+import com.tyron.builder.project.listener.FileListener;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The elements of an XML file that is opened in the editor, used to answer which element is
+ * at an offset without parsing the whole file on every completion.
+ *
+ * When the contents change, only the changed region is scanned again. If the edit is inside a
+ * start tag only that tag is scanned, otherwise the content of the innermost element that
+ * contains the edit is scanned. The enclosing elements are tried from the innermost until the
+ * scanned part does not change the structure around it, the offsets of the elements after the
+ * edit are moved without reading their text.
+ *
+ * The range of the edits is taken from the snapshot edits of the {@link FileManager}, the
+ * contents are only compared with the previous text when the edits are not known, e.g. when
+ * the snapshot has been replaced without notifying the listeners.
+ */
+public class XmlDocument {
+
+    private static final int MAX_DOCUMENTS = 8;
+
+    private static final Map<File, XmlDocument> sDocuments =
+            new LinkedHashMap<File, XmlDocument>(MAX_DOCUMENTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<File, XmlDocument> eldest) {
+                    return size() > MAX_DOCUMENTS;
+                }
+            };
+
+    private static final Set<FileManager> sFileManagers =
+            Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * @param contents The contents of the file, the same as the snapshot of the file manager
+     * @return The document of the file updated to the given contents
+     */
+    @NonNull
+    public static XmlDocument get(@NonNull FileManager fileManager, @NonNull File file,
+                                  @NonNull String contents) {
+        watch(fileManager);
+        long version = fileManager.getSnapshotVersion(file);
+        XmlDocument document;
+        synchronized (sDocuments) {
+            document = sDocuments.get(file);
+            if (document == null) {
+                document = new XmlDocument(contents);
+                document.mVersion = version;
+                sDocuments.put(file, document);
+                return document;
+            }
+        }
+        document.update(contents, version);
+        return document;
+    }
+
+    public static void remove(@NonNull File file) {
+        synchronized (sDocuments) {
+            sDocuments.remove(file);
+        }
+    }
+
+    @Nullable
+    private static XmlDocument getCached(@NonNull File file) {
+        synchronized (sDocuments) {
+            return sDocuments.get(file);
+        }
+    }
+
+    private static void watch(@NonNull FileManager fileManager) {
+        synchronized (sFileManagers) {
+            if (sFileManagers.add(fileManager)) {
+                fileManager.addSnapshotListener(new SnapshotListener(fileManager));
+            }
+        }
+    }
+
+    /**
+     * Records the edits of the snapshots of the opened documents
+     */
+    private static class SnapshotListener implements FileListener {
+
+        private final FileManager mFileManager;
+
+        SnapshotListener(FileManager fileManager) {
+            mFileManager = fileManager;
+        }
+
+        @Override
+        public void onSnapshotChanged(File file, CharSequence contents) {
+            XmlDocument document = getCached(file);
+            if (document != null) {
+                document.discardEdits();
+            }
+        }
+
+        @Override
+        public void onSnapshotEdited(File file, int start, int end, CharSequence text,
+                                     CharSequence contents) {
+            XmlDocument document = getCached(file);
+            if (document != null) {
+                document.edit(start, end, text.length(), contents.length(),
+                        mFileManager.getSnapshotVersion(file));
+            }
+        }
+    }
+
+    /**
+     * The document itself, its children are the root elements
+     */
+    private final XmlElement mRoot = new XmlElement();
+    private String mText;
+
+    /**
+     * The snapshot version that the text and the recorded edits are at, -1 if it is not known
+     */
+    private long mVersion = -1;
+
+    /**
+     * The range of the text that has been replaced by the recorded edits, in the offsets of
+     * the current text. The start is -1 if nothing has been edited.
+     */
+    private int mEditStart = -1;
+    private int mEditEnd;
+    private int mEditDelta;
+
+    public XmlDocument(@NonNull String contents) {
+        mText = contents;
+        scanContent(mRoot, contents.length());
+    }
+
+    @NonNull
+    public synchronized String getText() {
+        return mText;
+    }
+
+    @NonNull
+    public synchronized List<XmlElement> getRootElements() {
+        return mRoot.getChildren();
+    }
+
+    /**
+     * @return The innermost element that contains the offset, null if the offset is outside
+     * of the root elements
+     */
+    @Nullable
+    public synchronized XmlElement findElementAt(int offset) {
+        XmlElement found = null;
+        XmlElement current = mRoot;
+        while (true) {
+            XmlElement child = findChildBefore(current, offset);
+            if (child == null || offset > child.getEnd()) {
+                return found;
+            }
+            found = child;
+            current = child;
+        }
+    }
+
+    /**
+     * Records that the text from {@code start} to {@code end} has been replaced with text of the
+     * given length, the elements are updated on the next {@link #update(String, long)}
+     *
+     * @param length The length of the contents after the edit
+     * @param version The snapshot version after the edit
+     */
+    @VisibleForTesting
+    synchronized void edit(int start, int end, int textLength, int length, long version) {
+        int currentLength = mText.length() + mEditDelta;
+        if (mVersion == -1 || end > currentLength ||
+                currentLength - (end - start) + textLength != length) {
+            // an edit is missing, the contents have to be compared
+            discardEdits();
+            return;
+        }
+        if (mEditStart == -1) {
+            mEditStart = start;
+            mEditEnd = end;
+        } else {
+            // the edit is in the offsets after the previous edits, the end of the range in the
+            // current text is moved by the previous edits
+            mEditEnd = Math.max(mEditEnd, end - mEditDelta);
+            mEditStart = Math.min(mEditStart, start);
+        }
+        mEditDelta += textLength - (end - start);
+        mVersion = version;
+    }
+
+    private synchronized void discardEdits() {
+        mVersion = -1;
+        mEditStart = -1;
+        mEditEnd = 0;
+        mEditDelta = 0;
+    }
+
+    /**
+     * Updates the document to the contents of the given snapshot version, only the range of the
+     * recorded edits is scanned if they lead to that version
+     */
+    public synchronized void update(@NonNull String contents, long version) {
+        if (version != -1 && version == mVersion &&
+                mText.length() + mEditDelta == contents.length()) {
+            if (mEditStart != -1) {
+                mText = contents;
+                update(mEditStart, mEditEnd, mEditDelta);
+            }
+        } else {
+            compare(contents);
+        }
+        mVersion = version;
+        mEditStart = -1;
+        mEditEnd = 0;
+        mEditDelta = 0;
+    }
+
+    public void update(@NonNull String contents) {
+        update(contents, -1);
+    }
+
+    /**
+     * Finds the changed range by comparing the contents with the previous text
+     */
+    private void compare(@NonNull String contents) {
+        String old = mText;
+        int oldLength = old.length();
+        int newLength = contents.length();
+        int minLength = Math.min(oldLength, newLength);
+
+        int prefix = 0;
+        while (prefix < minLength && old.charAt(prefix) == contents.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            return;
+        }
+        int suffix = 0;
+        while (suffix < minLength - prefix &&
+                old.charAt(oldLength - 1 - suffix) == contents.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+
+        mText = contents;
+        update(prefix, oldLength - suffix, newLength - oldLength);
+    }
+
+    /**
+     * Updates the elements after the text from {@code start} to {@code oldEnd} has been
+     * replaced, {@code delta} is the difference between the new and the old length
+     */
+    private void update(int start, int oldEnd, int delta) {
+        XmlElement element = mRoot;
+        while (true) {
+            XmlElement child = findChildBefore(element, start);
+            if (child == null || oldEnd > child.getEnd()) {
+                break;
+            }
+            element = child;
+        }
+
+        for (; element != mRoot; element = element.mParent) {
+            if (updateStartTag(element, start, oldEnd, delta) ||
+                    updateContent(element, start, oldEnd, delta)) {
+                return;
+            }
+        }
+
+        scanContent(mRoot, mText.length());
+    }
+
+    private boolean updateStartTag(XmlElement element, int start, int oldEnd, int delta) {
+        if (!element.mStartTagClosed) {
+            return false;
+        }
+        // the character after < decides whether this is a start tag
+        int terminator = element.mSelfClosing ? 2 : 1;
+        if (start <= element.mStart + 1 || oldEnd > element.getStartTagEnd() - terminator) {
+            return false;
+        }
+
+        XmlScanner scanner = new XmlScanner(mText, mText.length());
+        XmlElement scanned = scanner.scanStartTag(element.mStart);
+        if (!scanned.mStartTagClosed ||
+                scanned.mSelfClosing != element.mSelfClosing ||
+                scanned.mStartTagLength != element.mStartTagLength + delta ||
+                !scanned.mName.equals(element.mName)) {
+            return false;
+        }
+
+        shift(mRoot, oldEnd, delta);
+        element.mStartTagLength = scanned.mStartTagLength;
+        element.mValueRanges = scanned.mValueRanges;
+        resize(element, delta);
+        return true;
+    }
+
+    private boolean updateContent(XmlElement element, int start, int oldEnd, int delta) {
+        if (!element.mStartTagClosed || element.mSelfClosing || element.mEndTagLength == 0) {
+            return false;
+        }
+        int contentEnd = element.getContentEnd();
+        if (start < element.getContentStart() || oldEnd > contentEnd) {
+            return false;
+        }
+
+        XmlScanner scanner = new XmlScanner(mText, contentEnd + delta);
+        List<XmlElement> children = scanner.scanContent(element, element.getContentStart());
+        if (!scanner.isBalanced()) {
+            return false;
+        }
+
+        shift(mRoot, oldEnd, delta);
+        element.mChildren = children;
+        resize(element, delta);
+        return true;
+    }
+
+    private void scanContent(XmlElement element, int limit) {
+        element.mLength = limit;
+        element.mChildren = new XmlScanner(mText, limit).scanContent(element, 0);
+    }
+
+    /**
+     * Moves the elements that start at or after the offset
+     */
+    private static void shift(XmlElement element, int offset, int delta) {
+        List<XmlElement> children = element.mChildren;
+        for (int i = 0; i < children.size(); i++) {
+            XmlElement child = children.get(i);
+            if (child.mStart >= offset) {
+                child.mStart += delta;
+            } else if (child.getEnd() <= offset) {
+                continue;
+            }
+            shift(child, offset, delta);
+        }
+    }
+
+    private void resize(XmlElement element, int delta) {
+        for (XmlElement current = element; current != null; current = current.mParent) {
+            current.mLength += delta;
+        }
+    }
+
+    /**
+     * @return The last child that starts before the offset
+     */
+    @Nullable
+    private static XmlElement findChildBefore(XmlElement element, int offset) {
+        List<XmlElement> children = element.mChildren;
+        int low = 0;
+        int high = children.size() - 1;
+        XmlElement found = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            XmlElement child = children.get(middle);
+            if (child.mStart < offset) {
+                found = child;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,144 @@
+package com.tyron.completion.xml.document;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An element of a {@link XmlDocument}. The start of the element is the offset of its
+ * {@code <} in the document, the other positions are stored relative to it so only the start
+ * has to be moved when the text before the element is edited.
+ */
+public class XmlElement {
+
+    private static final int[] NO_VALUES = new int[0];
+
+    String mName = "";
+    int mStart;
+    int mLength;
+
+    int mStartTagLength;
+    boolean mStartTagClosed;
+    boolean mSelfClosing;
+
+    /**
+     * The length of the end tag, 0 if the element has no end tag
+     */
+    int mEndTagLength;
+
+    /**
+     * Pairs of the offset of the opening quote and of the closing quote of each attribute
+     * value. If the value is not closed, the second offset is where the value stops.
+     */
+    int[] mValueRanges = NO_VALUES;
+
+    XmlElement mParent;
+    List<XmlElement> mChildren = Collections.emptyList();
+
+    XmlElement() {
+
+    }
+
+    @NonNull
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return The parent element, null if this is a root element of the document
+     */
+    @Nullable
+    public XmlElement getParent() {
+        if (mParent == null || mParent.mParent == null) {
+            // the parent of root elements is the document itself
+            return null;
+        }
+        return mParent;
+    }
+
+    @NonNull
+    public List<XmlElement> getChildren() {
+        return Collections.unmodifiableList(mChildren);
+    }
+
+    public int getStart() {
+        return mStart;
+    }
+
+    public int getEnd() {
+        return mStart + mLength;
+    }
+
+    public int getNameEnd() {
+        return mStart + 1 + mName.length();
+    }
+
+    public int getStartTagEnd() {
+        return mStart + mStartTagLength;
+    }
+
+    /**
+     * @return Whether the start tag ends with {@code >} or {@code />}
+     */
+    public boolean isStartTagClosed() {
+        return mStartTagClosed;
+    }
+
+    public boolean isSelfClosing() {
+        return mSelfClosing;
+    }
+
+    /**
+     * @return Whether the element is self closing or has an end tag
+     */
+    public boolean isClosed() {
+        return mSelfClosing || mEndTagLength > 0;
+    }
+
+    /**
+     * @return Whether the offset is in the name of the start tag, e.g. {@code <Text|}
+     */
+    public boolean isInTagName(int offset) {
+        return mStart < offset && offset <= getNameEnd();
+    }
+
+    /**
+     * @return Whether the offset is after the name of the start tag and before its end,
+     * e.g. {@code <TextView |>}
+     */
+    public boolean isInStartTag(int offset) {
+        if (offset <= getNameEnd()) {
+            return false;
+        }
+        return mStartTagClosed ? offset < getStartTagEnd() : offset <= getStartTagEnd();
+    }
+
+    /**
+     * @return Whether the offset is inside an attribute value, e.g. {@code attribute="|"}
+     */
+    public boolean isInAttributeValue(int offset) {
+        int relative = offset - mStart;
+        for (int i = 0; i < mValueRanges.length; i += 2) {
+            if (mValueRanges[i] < relative && relative <= mValueRanges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getContentStart() {
+        return mStart + mStartTagLength;
+    }
+
+    int getContentEnd() {
+        return mStart + mLength - mEndTagLength;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "<" + mName + "> [" + mStart + ", " + getEnd() + ")";
+    }
+}
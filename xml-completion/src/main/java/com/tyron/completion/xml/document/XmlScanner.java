@@ -0,0 +1,230 @@
+package com.tyron.completion.xml.document;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A tolerant scanner that only reads the structure of the elements, the text content is
+ * skipped. Broken XML is handled the way it is typed in the editor: a start tag that is not
+ * closed ends before the next {@code <}, and an end tag closes the nearest open element with
+ * the same name.
+ *
+ * When only a part of the document is scanned, {@link #isBalanced()} tells whether the result
+ * is the same as if the whole document was scanned.
+ */
+class XmlScanner {
+
+    private final String mText;
+    private final int mLimit;
+
+    private boolean mBalanced = true;
+
+    XmlScanner(String text, int limit) {
+        mText = text;
+        mLimit = limit;
+    }
+
+    /**
+     * @return Whether the scanned part is well formed on its own, there are no unclosed
+     * elements, unmatched end tags and nothing that is cut at the limit
+     */
+    boolean isBalanced() {
+        return mBalanced;
+    }
+
+    /**
+     * Scans the content from {@code start} to the limit of this scanner
+     * @return The elements that are direct children of the parent
+     */
+    List<XmlElement> scanContent(XmlElement parent, int start) {
+        List<XmlElement> elements = new ArrayList<>();
+        Deque<XmlElement> stack = new ArrayDeque<>();
+        int position = start;
+        while (position < mLimit) {
+            int open = mText.indexOf('<', position);
+            if (open == -1 || open >= mLimit) {
+                break;
+            }
+
+            if (mText.startsWith("<!--", open)) {
+                position = skip(open + 4, "-->");
+            } else if (mText.startsWith("<![CDATA[", open)) {
+                position = skip(open + 9, "]]>");
+            } else if (mText.startsWith("<?", open)) {
+                position = skip(open + 2, "?>");
+            } else if (mText.startsWith("<!", open)) {
+                position = skip(open + 2, ">");
+            } else if (mText.startsWith("</", open)) {
+                position = scanEndTag(stack, open);
+            } else {
+                XmlElement element = scanStartTag(open);
+                XmlElement owner = stack.isEmpty() ? parent : stack.peek();
+                element.mParent = owner;
+                if (owner == parent) {
+                    elements.add(element);
+                } else {
+                    addChild(owner, element);
+                }
+
+                if (element.mStartTagClosed && !element.mSelfClosing) {
+                    stack.push(element);
+                } else {
+                    element.mLength = element.mStartTagLength;
+                }
+                position = element.getStartTagEnd();
+            }
+        }
+
+        while (!stack.isEmpty()) {
+            XmlElement element = stack.pop();
+            element.mLength = mLimit - element.mStart;
+            mBalanced = false;
+        }
+        return elements;
+    }
+
+    /**
+     * Scans the start tag at the given offset, the element is not added to any parent
+     */
+    XmlElement scanStartTag(int start) {
+        XmlElement element = new XmlElement();
+        element.mStart = start;
+
+        int position = start + 1;
+        while (position < mLimit && isNameChar(mText.charAt(position))) {
+            position++;
+        }
+        element.mName = mText.substring(start + 1, position);
+
+        int[] values = null;
+        int valueCount = 0;
+        while (true) {
+            if (position >= mLimit) {
+                // cut at the limit, the rest of the document decides where it ends
+                mBalanced = false;
+                break;
+            }
+
+            char c = mText.charAt(position);
+            if (c == '>') {
+                element.mStartTagClosed = true;
+                position++;
+                break;
+            }
+            if (c == '/' && position + 1 < mLimit && mText.charAt(position + 1) == '>') {
+                element.mStartTagClosed = true;
+                element.mSelfClosing = true;
+                position += 2;
+                break;
+            }
+            if (c == '<') {
+                break;
+            }
+
+            if (c == '"' || c == '\'') {
+                int quote = position++;
+                while (position < mLimit && mText.charAt(position) != c &&
+                        mText.charAt(position) != '<') {
+                    position++;
+                }
+
+                if (values == null) {
+                    values = new int[8];
+                } else if (valueCount == values.length) {
+                    values = Arrays.copyOf(values, valueCount * 2);
+                }
+                values[valueCount++] = quote - start;
+                values[valueCount++] = position - start;
+
+                if (position < mLimit && mText.charAt(position) == c) {
+                    position++;
+                }
+            } else {
+                position++;
+            }
+        }
+
+        element.mStartTagLength = position - start;
+        if (values != null) {
+            element.mValueRanges = Arrays.copyOf(values, valueCount);
+        }
+        return element;
+    }
+
+    private int scanEndTag(Deque<XmlElement> stack, int start) {
+        int position = start + 2;
+        while (position < mLimit && isNameChar(mText.charAt(position))) {
+            position++;
+        }
+        String name = mText.substring(start + 2, position);
+        while (position < mLimit && mText.charAt(position) != '>' &&
+                mText.charAt(position) != '<') {
+            position++;
+        }
+        if (position >= mLimit) {
+            mBalanced = false;
+        } else if (mText.charAt(position) == '>') {
+            position++;
+        }
+
+        boolean matched = false;
+        for (Iterator<XmlElement> it = stack.iterator(); it.hasNext(); ) {
+            if (it.next().mName.equals(name)) {
+                matched = true;
+                break;
+            }
+        }
+        if (!matched) {
+            // the element may have been opened before the scanned part
+            mBalanced = false;
+            return position;
+        }
+
+        while (true) {
+            XmlElement element = stack.pop();
+            if (element.mName.equals(name)) {
+                element.mEndTagLength = position - start;
+                element.mLength = position - element.mStart;
+                break;
+            }
+            // not closed, it ends where its parent is closed
+            element.mLength = start - element.mStart;
+            mBalanced = false;
+        }
+        return position;
+    }
+
+    private int skip(int position, String end) {
+        int index = mText.indexOf(end, position);
+        if (index == -1 || index + end.length() > mLimit) {
+            mBalanced = false;
+            return mLimit;
+        }
+        return index + end.length();
+    }
+
+    private static void addChild(XmlElement parent, XmlElement child) {
+        if (parent.mChildren.isEmpty()) {
+            parent.mChildren = new ArrayList<>();
+        }
+        parent.mChildren.add(child);
+    }
+
+    private static boolean isNameChar(char c) {
+        switch (c) {
+            case '>':
+            case '<':
+            case '/':
+            case '=':
+            case '"':
+            case '\'':
+                return false;
+            default:
+                return !Character.isWhitespace(c);
+        }
+    }
+}
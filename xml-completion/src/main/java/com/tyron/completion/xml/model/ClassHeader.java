@@ -0,0 +1,56 @@
+package com.tyron.completion.xml.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The name and super class of a class file, and whether it has the constructor that is
+ * used to inflate views from XML.
+ */
+public class ClassHeader {
+
+    private final String className;
+    private final String superClassName;
+    private final boolean viewConstructor;
+
+    public ClassHeader(@NonNull String className, @Nullable String superClassName,
+                       boolean viewConstructor) {
+        this.className = className;
+        this.superClassName = superClassName;
+        this.viewConstructor = viewConstructor;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getPackageName() {
+        int index = className.lastIndexOf('.');
+        if (index == -1) {
+            return "";
+        }
+        return className.substring(0, index);
+    }
+
+    /**
+     * @return null if this is {@code java.lang.Object}
+     */
+    @Nullable
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    /**
+     * @return Whether this class has a constructor that takes a {@code Context} and an
+     * {@code AttributeSet}
+     */
+    public boolean hasViewConstructor() {
+        return viewConstructor;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return className;
+    }
+}
@@ -3,11 +3,9 @@ package com.tyron.completion.xml.providers;
 import static com.tyron.completion.xml.util.XmlUtils.fullIdentifier;
 import static com.tyron.completion.xml.util.XmlUtils.getAttributeItem;
 import static com.tyron.completion.xml.util.XmlUtils.getAttributeNameFromPrefix;
-import static com.tyron.completion.xml.util.XmlUtils.getElementNode;
 import static com.tyron.completion.xml.util.XmlUtils.isInAttributeValue;
 import static com.tyron.completion.xml.util.XmlUtils.isIncrementalCompletion;
 import static com.tyron.completion.xml.util.XmlUtils.isTag;
-import static com.tyron.completion.xml.util.XmlUtils.newPullParser;
 import static com.tyron.completion.xml.util.XmlUtils.partialIdentifier;
 
 import com.tyron.builder.project.Project;
@@ -22,26 +20,22 @@ import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.model.DrawableKind;
 import com.tyron.completion.xml.XmlIndexProvider;
 import com.tyron.completion.xml.XmlRepository;
+import com.tyron.completion.xml.document.XmlDocument;
+import com.tyron.completion.xml.document.XmlElement;
 import com.tyron.completion.xml.model.AttributeInfo;
 import com.tyron.completion.xml.model.DeclareStyleable;
 import com.tyron.completion.xml.model.XmlCachedCompletion;
 import com.tyron.completion.xml.util.StyleUtils;
 import com.tyron.completion.xml.util.XmlUtils;
 
-import org.eclipse.lemminx.dom.DOMDocument;
-import org.eclipse.lemminx.dom.DOMNode;
-import org.eclipse.lemminx.dom.DOMParser;
 import org.openjdk.javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
-import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -170,26 +164,21 @@ public class AndroidManifestCompletionProvider extends CompletionProvider {
         String fixedPrefix = partialIdentifier(contents, (int) index);
         String fullPrefix = fullIdentifier(contents, (int) index);
 
-        XmlPullParser parser = newPullParser();
-        parser.setInput(new StringReader(contents));
-
         XmlIndexProvider indexProvider =
                 CompilerService.getInstance().getIndex(XmlIndexProvider.KEY);
         XmlRepository repository = indexProvider.get(project, module);
         repository.initialize((AndroidModule) module);
         Map<String, DeclareStyleable> manifestAttrs = repository.getManifestAttrs();
 
-        DOMDocument parsed = DOMParser.getInstance().parse(contents, "", null);
-        DOMNode node = parsed.findNodeAt((int) index);
+        XmlDocument document = XmlDocument.get(module.getFileManager(), file, contents);
+        XmlElement element = document.findElementAt((int) index);
 
         String parentTag = "";
         String tag = "";
-        Element ownerNode = getElementNode(node);
-        if (ownerNode != null) {
-            parentTag = ownerNode.getParentNode() == null
-                    ? ""
-                    : ownerNode.getParentNode().getNodeName();
-            tag = ownerNode.getTagName();
+        if (element != null) {
+            XmlElement parent = element.getParent();
+            parentTag = parent == null ? "" : parent.getName();
+            tag = element.getName();
         }
         tag = getTag(tag);
         if (tag == null) {
@@ -197,9 +186,9 @@ public class AndroidManifestCompletionProvider extends CompletionProvider {
         }
         Set<DeclareStyleable> styles = StyleUtils.getStyles(manifestAttrs, tag);
 
-        if (isTag(node, index)) {
+        if (element != null && isTag(element, index)) {
             addTagItems(prefix, list, xmlCachedCompletion);
-        } if (isInAttributeValue(contents, (int) index)) {
+        } if (isInAttributeValue(document, (int) index)) {
             addAttributeValueItems(styles, repository, prefix, fixedPrefix, list,
                     xmlCachedCompletion);
         } else {
@@ -3,8 +3,6 @@ package com.tyron.completion.xml.providers;
 import static com.tyron.completion.xml.util.XmlUtils.fullIdentifier;
 import static com.tyron.completion.xml.util.XmlUtils.getAttributeItem;
 import static com.tyron.completion.xml.util.XmlUtils.getAttributeNameFromPrefix;
-import static com.tyron.completion.xml.util.XmlUtils.getElementNode;
-import static com.tyron.completion.xml.util.XmlUtils.getTagAtPosition;
 import static com.tyron.completion.xml.util.XmlUtils.isInAttribute;
 import static com.tyron.completion.xml.util.XmlUtils.isInAttributeValue;
 import static com.tyron.completion.xml.util.XmlUtils.isIncrementalCompletion;
@@ -30,11 +28,14 @@ import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.model.DrawableKind;
 import com.tyron.completion.xml.XmlIndexProvider;
 import com.tyron.completion.xml.XmlRepository;
+import com.tyron.completion.xml.document.XmlDocument;
+import com.tyron.completion.xml.document.XmlElement;
 import com.tyron.completion.xml.insert.AttributeInsertHandler;
 import com.tyron.completion.xml.insert.LayoutTagInsertHandler;
 import com.tyron.completion.xml.insert.ValueInsertHandler;
 import com.tyron.completion.xml.lexer.XMLLexer;
 import com.tyron.completion.xml.model.AttributeInfo;
+import com.tyron.completion.xml.model.ClassHeader;
 import com.tyron.completion.xml.model.DeclareStyleable;
 import com.tyron.completion.xml.model.XmlCachedCompletion;
 import com.tyron.completion.xml.util.AndroidResourcesUtils;
@@ -43,14 +44,9 @@ import com.tyron.completion.xml.util.XmlUtils;
 
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.Token;
-import org.apache.bcel.classfile.JavaClass;
-import org.eclipse.lemminx.dom.DOMDocument;
-import org.eclipse.lemminx.dom.DOMNode;
-import org.eclipse.lemminx.dom.DOMParser;
 import org.openjdk.javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 import org.xmlpull.v1.XmlPullParser;
@@ -156,26 +152,24 @@ public class LayoutXmlCompletionProvider extends CompletionProvider {
         String fixedPrefix = partialIdentifier(contents, (int) index);
         String fullPrefix = fullIdentifier(contents, (int) index);
 
-        DOMDocument parsed = DOMParser.getInstance().parse(contents, "", null);
-        DOMNode node = parsed.findNodeAt((int) index);
+        XmlDocument document = XmlDocument.get(module.getFileManager(), file, contents);
+        XmlElement element = document.findElementAt((int) index);
 
         String parentTag = "";
         String tag = "";
-        Element ownerNode = getElementNode(node);
-        if (ownerNode != null) {
-            parentTag = ownerNode.getParentNode() == null
-                    ? ""
-                    : ownerNode.getParentNode().getNodeName();
-            tag = ownerNode.getTagName();
+        if (element != null) {
+            XmlElement parent = element.getParent();
+            parentTag = parent == null ? "" : parent.getName();
+            tag = element.getName();
         }
 
         // first get the attributes based on the current tag
         Set<DeclareStyleable> styles = StyleUtils.getStyles(declareStyleables, tag, parentTag);
         list.items = new ArrayList<>();
 
-        if (isTag(node, index)) {
+        if (element != null && isTag(element, index)) {
             addTagItems(repository, prefix, list, xmlCachedCompletion);
-        } if (isInAttributeValue(contents, (int) index)) {
+        } if (isInAttributeValue(document, (int) index)) {
             addAttributeValueItems(styles, prefix, fixedPrefix, repository, list, xmlCachedCompletion);
         } else {
             addAttributeItems(styles, fullPrefix, fixedPrefix, repository, list, xmlCachedCompletion);
@@ -211,7 +205,7 @@ public class LayoutXmlCompletionProvider extends CompletionProvider {
             return FuzzySearch.partialRatio(prefixSet, className) >= 30;
 
         });
-        for (Map.Entry<String, JavaClass> entry :
+        for (Map.Entry<String, ClassHeader> entry :
                 repository.getJavaViewClasses().entrySet()) {
             CompletionItem item = new CompletionItem();
             String commitPrefix = "<";
@@ -25,11 +25,10 @@ import android.widget.ViewSwitcher;
 import androidx.annotation.NonNull;
 
 import com.google.common.collect.ImmutableSet;
-import com.tyron.completion.xml.BytecodeScanner;
+import com.tyron.completion.xml.ViewClassIndex;
+import com.tyron.completion.xml.model.ClassHeader;
 import com.tyron.completion.xml.model.DeclareStyleable;
 
-import org.apache.bcel.classfile.JavaClass;
-
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -72,45 +71,35 @@ public class StyleUtils {
         putStyle(ViewSwitcher.class);
     }
 
-    public static void putStyles(JavaClass javaClass) {
+    public static void putStyles(ViewClassIndex index, ClassHeader header) {
         ImmutableSet.Builder<String> builder = ImmutableSet.builder();
-        try {
-            JavaClass[] superClasses = javaClass.getSuperClasses();
-            for (JavaClass superClass : superClasses) {
-                if (Object.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
-                builder.add(getSimpleName(superClass.getClassName()));
+        for (String superClass : index.getSuperClasses(header.getClassName())) {
+            if (Object.class.getName().equals(superClass)) {
+                continue;
             }
-        } catch (ClassNotFoundException e) {
-            // ignored
+            builder.add(getSimpleName(superClass));
         }
-        sViewStyleMap.put(getSimpleName(javaClass.getClassName()), builder.build());
+        sViewStyleMap.put(getSimpleName(header.getClassName()), builder.build());
 
-        if (BytecodeScanner.isViewGroup(javaClass)) {
-            putLayoutParams(javaClass);
+        if (index.isViewGroup(header.getClassName())) {
+            putLayoutParams(index, header);
         }
     }
 
-    public static void putLayoutParams(JavaClass javaClass) {
+    public static void putLayoutParams(ViewClassIndex index, ClassHeader header) {
         ImmutableSet.Builder<String> builder = ImmutableSet.builder();
-        try {
-            JavaClass[] superClasses = javaClass.getSuperClasses();
-            for (JavaClass superClass : superClasses) {
-                if (Object.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
-
-                if (View.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
+        for (String superClass : index.getSuperClasses(header.getClassName())) {
+            if (Object.class.getName().equals(superClass)) {
+                continue;
+            }
 
-                builder.add(getSimpleName(superClass.getClassName()) + "_Layout");
+            if (View.class.getName().equals(superClass)) {
+                continue;
             }
-            sLayoutParamsMap.put(getSimpleName(javaClass.getClassName()) + "_Layout", builder.build());
-        } catch (ClassNotFoundException e) {
-            // ignored
+
+            builder.add(getSimpleName(superClass) + "_Layout");
         }
+        sLayoutParamsMap.put(getSimpleName(header.getClassName()) + "_Layout", builder.build());
     }
 
     public static void putLayoutParams(@NonNull Class<? extends ViewGroup> viewGroup) {
@@ -13,6 +13,8 @@ import com.tyron.completion.model.DrawableKind;
 import com.tyron.completion.progress.ProgressManager;
 import com.tyron.completion.xml.XmlCharacter;
 import com.tyron.completion.xml.XmlRepository;
+import com.tyron.completion.xml.document.XmlDocument;
+import com.tyron.completion.xml.document.XmlElement;
 import com.tyron.completion.xml.lexer.XMLLexer;
 import com.tyron.completion.xml.model.AttributeInfo;
 import com.tyron.completion.xml.model.Format;
@@ -149,6 +151,27 @@ public class XmlUtils {
         return false;
     }
 
+    /**
+     * @return Whether the index is inside a start tag, after its name
+     */
+    public static boolean isInAttribute(XmlDocument document, int index) {
+        XmlElement element = document.findElementAt(index);
+        return element != null && element.isInStartTag(index);
+    }
+
+    /**
+     * @return pair of the parent tag and the current tag at the index, the tags are empty
+     * if there is no element at the index
+     */
+    public static Pair<String, String> getTagAtPosition(XmlDocument document, int index) {
+        XmlElement element = document.findElementAt(index);
+        if (element == null) {
+            return Pair.create("", "");
+        }
+        XmlElement parent = element.getParent();
+        return Pair.create(parent == null ? "" : parent.getName(), element.getName());
+    }
+
     /**
      * @return pair of the parent tag and the current tag at the current position
      */
@@ -201,6 +224,13 @@ public class XmlUtils {
         return node.getStart() < index && index <= node.getStart() + name.length();
     }
 
+    /**
+     * @return Whether the index is at the name of the start tag of the element
+     */
+    public static boolean isTag(XmlElement element, long index) {
+        return element.isInTagName((int) index);
+    }
+
     /**
      * Return the owner element of an attribute node
      * @param element The element
@@ -252,6 +282,15 @@ public class XmlUtils {
         return false;
     }
 
+    /**
+     * @return whether the current index is inside an attribute value,
+     * e.g {@code attribute="CURSOR"}
+     */
+    public static boolean isInAttributeValue(XmlDocument document, int index) {
+        XmlElement element = document.findElementAt(index);
+        return element != null && element.isInAttributeValue(index);
+    }
+
     public static boolean isIncrementalCompletion(CachedCompletion cachedCompletion,
                                                   CompletionParameters parameters) {
         File file = parameters.getFile();
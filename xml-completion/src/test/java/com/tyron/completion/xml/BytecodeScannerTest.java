@@ -0,0 +1,167 @@
+package com.tyron.completion.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.completion.xml.model.ClassHeader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+public class BytecodeScannerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompiledClasses() throws Exception {
+        File sources = mFolder.newFolder("src");
+        write(sources, "android/content/Context.java",
+                "package android.content; public class Context {}");
+        write(sources, "android/util/AttributeSet.java",
+                "package android.util; public interface AttributeSet {}");
+        write(sources, "com/test/Base.java",
+                "package com.test; public class Base {}");
+        write(sources, "com/test/CustomView.java", "package com.test;\n" +
+                "import android.content.Context;\n" +
+                "import android.util.AttributeSet;\n" +
+                "public class CustomView extends Base {\n" +
+                "    private static final long LONG = 1L << 40;\n" +
+                "    private static final double DOUBLE = 0.5;\n" +
+                "    private final String mName = \"name\";\n" +
+                "    public CustomView(Context context) {}\n" +
+                "    public CustomView(Context context, AttributeSet attrs) {\n" +
+                "        Runnable runnable = () -> System.out.println(LONG + DOUBLE);\n" +
+                "        runnable.run();\n" +
+                "    }\n" +
+                "    public static class Nested extends CustomView {\n" +
+                "        public Nested(Context context, AttributeSet attrs, int style) {\n" +
+                "            super(context, attrs);\n" +
+                "        }\n" +
+                "    }\n" +
+                "}\n");
+        File jar = compile(sources);
+
+        Map<String, ClassHeader> headers = new HashMap<>();
+        for (ClassHeader header : BytecodeScanner.scan(jar)) {
+            headers.put(header.getClassName(), header);
+        }
+        assertEquals(5, headers.size());
+
+        ClassHeader view = headers.get("com.test.CustomView");
+        assertNotNull(view);
+        assertEquals("com.test", view.getPackageName());
+        assertEquals("com.test.Base", view.getSuperClassName());
+        assertTrue(view.hasViewConstructor());
+
+        // only the constructor with the context and the attribute set is used by the inflater
+        ClassHeader nested = headers.get("com.test.CustomView$Nested");
+        assertNotNull(nested);
+        assertEquals("com.test.CustomView", nested.getSuperClassName());
+        assertFalse(nested.hasViewConstructor());
+
+        ClassHeader base = headers.get("com.test.Base");
+        assertNotNull(base);
+        assertEquals("java.lang.Object", base.getSuperClassName());
+        assertFalse(base.hasViewConstructor());
+
+        ClassHeader attributeSet = headers.get("android.util.AttributeSet");
+        assertNotNull(attributeSet);
+        assertEquals("java.lang.Object", attributeSet.getSuperClassName());
+    }
+
+    @Test
+    public void testLibraryJar() throws Exception {
+        // the jar of junit is read like any library of a project
+        File jar = new File(Assert.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<ClassHeader> headers = BytecodeScanner.scan(jar);
+
+        int classes = 0;
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+                    classes++;
+                }
+            }
+        }
+        assertEquals(classes, headers.size());
+
+        Map<String, ClassHeader> byName = new HashMap<>();
+        for (ClassHeader header : headers) {
+            byName.put(header.getClassName(), header);
+        }
+        ClassHeader comparisonFailure = byName.get("org.junit.ComparisonFailure");
+        assertNotNull(comparisonFailure);
+        assertEquals("java.lang.AssertionError", comparisonFailure.getSuperClassName());
+        assertFalse(comparisonFailure.hasViewConstructor());
+    }
+
+    @Test
+    public void testInvalidClassFile() throws Exception {
+        File jar = mFolder.newFile("invalid.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("com/test/Invalid.class"));
+            out.write("not a class".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        assertTrue(BytecodeScanner.scan(jar).isEmpty());
+    }
+
+    private static void write(File root, String path, String contents) throws IOException {
+        File file = new File(root, path);
+        assertTrue(file.getParentFile().mkdirs() || file.getParentFile().isDirectory());
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private File compile(File sources) throws IOException {
+        File classes = mFolder.newFolder("classes");
+        List<String> arguments = new ArrayList<>(Arrays.asList("-d", classes.getPath()));
+        try (Stream<Path> files = Files.walk(sources.toPath())) {
+            arguments.addAll(files.filter(path -> path.toString().endsWith(".java"))
+                    .map(Path::toString)
+                    .collect(Collectors.toList()));
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(compiler);
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+
+        File jar = mFolder.newFile("classes.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+             Stream<Path> files = Files.walk(classes.toPath())) {
+            for (Path path : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                String name = classes.toPath().relativize(path).toString().replace('\\', '/');
+                out.putNextEntry(new ZipEntry(name));
+                out.write(Files.readAllBytes(path));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
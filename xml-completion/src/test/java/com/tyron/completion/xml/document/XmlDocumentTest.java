@@ -0,0 +1,223 @@
+package com.tyron.completion.xml.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.tyron.builder.project.impl.FileManagerImpl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+public class XmlDocumentTest {
+
+    private static final String LAYOUT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+            "    android:orientation=\"vertical\">\n" +
+            "    <!-- <Ignored/> -->\n" +
+            "    <TextView\n" +
+            "        android:id=\"@+id/text\"\n" +
+            "        android:text=\"a > b\" />\n" +
+            "    <FrameLayout android:id=\"@+id/frame\">\n" +
+            "        <Button android:text=\"button\"/>\n" +
+            "        text\n" +
+            "    </FrameLayout>\n" +
+            "    <View/>\n" +
+            "</LinearLayout>\n";
+
+    private static final String[] INSERTIONS = {"<", ">", "/>", "</", "\"", "'", "=", " ",
+            "\n", "a", "<A", "<B ", "</A>", "</B>", "<C/>", "x=\"", "<!--", "-->", "<![CDATA[",
+            "]]>", "<?", "?>"};
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testEditInStartTag() {
+        XmlDocument document = new XmlDocument(LAYOUT);
+        String text = insert(document, LAYOUT.indexOf("android:text=\"a"), "android:hint=\"b\" ");
+        XmlElement element = document.findElementAt(text.indexOf("android:hint"));
+        assertNotNull(element);
+        assertEquals("TextView", element.getName());
+
+        // the button after the edited tag has been moved
+        element = document.findElementAt(text.indexOf("\"button\""));
+        assertNotNull(element);
+        assertEquals("Button", element.getName());
+
+        // the tag is no longer closed
+        text = replace(document, text.indexOf(" />"), text.indexOf(" />") + 3, "");
+        text = insert(document, text.indexOf("android:hint"), "android:");
+        text = replace(document, text.indexOf("<TextView"), text.indexOf("<TextView") + 9,
+                "<EditText");
+        insert(document, text.indexOf(" android:id=\"@+id/frame"), " a");
+    }
+
+    @Test
+    public void testEditInAttributeValue() {
+        XmlDocument document = new XmlDocument(LAYOUT);
+        String text = insert(document, LAYOUT.indexOf("/text\"") + 5, "_view");
+        int offset = text.indexOf("@+id/text_view") + 3;
+        XmlElement element = document.findElementAt(offset);
+        assertNotNull(element);
+        assertEquals("TextView", element.getName());
+        assertEquals(true, element.isInAttributeValue(offset));
+
+        // characters that end tags inside of a value
+        text = insert(document, text.indexOf("button\""), "<a>/>");
+        text = insert(document, text.indexOf("vertical\""), "\"");
+        replace(document, text.indexOf("vertical\""), text.indexOf("vertical\"") + 10, "");
+    }
+
+    @Test
+    public void testEditInText() {
+        XmlDocument document = new XmlDocument(LAYOUT);
+        String text = insert(document, LAYOUT.indexOf("text\n"), "more ");
+        text = insert(document, text.indexOf("    <View/>"), "<Spinner/>\n");
+        XmlElement element = document.findElementAt(text.indexOf("<Spinner") + 2);
+        assertNotNull(element);
+        assertEquals("Spinner", element.getName());
+        assertEquals("LinearLayout", element.getParent().getName());
+
+        // an element around existing elements
+        text = insert(document, text.indexOf("<Spinner"), "<ScrollView>");
+        text = insert(document, text.indexOf("</LinearLayout>"), "</ScrollView>");
+        element = document.findElementAt(text.indexOf("<View") + 2);
+        assertNotNull(element);
+        assertEquals("ScrollView", element.getParent().getName());
+
+        text = replace(document, text.indexOf("<!--"), text.indexOf("-->") + 3, "");
+        assertNull(document.findElementAt(0));
+        replace(document, 0, text.indexOf("<LinearLayout"), "");
+    }
+
+    @Test
+    public void testUnclosedTags() {
+        XmlDocument document = new XmlDocument(LAYOUT);
+        String text = LAYOUT;
+        // the tag is typed one character at a time
+        int offset = LAYOUT.indexOf("    <View/>");
+        for (char c : "<ImageView android:src=\"@drawable/icon\"></ImageView>\n".toCharArray()) {
+            text = insert(document, offset++, String.valueOf(c));
+        }
+
+        text = replace(document, text.indexOf("</FrameLayout>"),
+                text.indexOf("</FrameLayout>") + 14, "");
+        XmlElement element = document.findElementAt(text.indexOf("<View") + 2);
+        assertNotNull(element);
+        assertEquals("FrameLayout", element.getParent().getName());
+
+        text = replace(document, text.indexOf("</LinearLayout>"), text.length(), "");
+        insert(document, text.length(), "</FrameLayout>");
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(42);
+        XmlDocument compared = new XmlDocument(LAYOUT);
+        XmlDocument recorded = new XmlDocument(LAYOUT);
+        recorded.update(LAYOUT, 0);
+        String text = LAYOUT;
+        long version = 0;
+        for (int i = 0; i < 2000; i++) {
+            // a few edits are made between the updates of the recorded document
+            int edits = 1 + random.nextInt(3);
+            for (int j = 0; j < edits; j++) {
+                int start = random.nextInt(text.length() + 1);
+                int end = start;
+                if (random.nextInt(3) == 0) {
+                    end = Math.min(text.length(), start + random.nextInt(12));
+                }
+                String inserted = random.nextInt(4) == 0
+                        ? "" : INSERTIONS[random.nextInt(INSERTIONS.length)];
+                if (start == end && inserted.isEmpty()) {
+                    continue;
+                }
+                text = text.substring(0, start) + inserted + text.substring(end);
+                recorded.edit(start, end, inserted.length(), text.length(), ++version);
+            }
+            if (text.length() < LAYOUT.length() / 2) {
+                int length = text.length();
+                text = text + LAYOUT;
+                recorded.edit(length, length, LAYOUT.length(), text.length(), ++version);
+            }
+
+            compared.update(text);
+            recorded.update(text, version);
+            String expected = dump(new XmlDocument(text));
+            assertEquals(text, expected, dump(compared));
+            assertEquals(text, expected, dump(recorded));
+        }
+    }
+
+    @Test
+    public void testSnapshotEdits() throws Exception {
+        File file = mFolder.newFile("layout.xml");
+        FileManagerImpl fileManager = new FileManagerImpl(mFolder.getRoot());
+        fileManager.openFileForSnapshot(file, LAYOUT);
+        XmlDocument document = XmlDocument.get(fileManager, file, LAYOUT);
+
+        int offset = LAYOUT.indexOf("    <View/>");
+        fileManager.editSnapshotContent(file, offset, offset, "<Button/>", true);
+        fileManager.editSnapshotContent(file, 0, LAYOUT.indexOf("<LinearLayout"), "", true);
+        String text = fileManager.getFileContent(file).get().toString();
+        assertSame(document, XmlDocument.get(fileManager, file, text));
+        assertEquals(dump(new XmlDocument(text)), dump(document));
+
+        // the snapshot is replaced without an edit, the contents are compared
+        text = text.replace("<Button/>", "<Switch/>");
+        fileManager.setSnapshotContent(file, text, false);
+        assertSame(document, XmlDocument.get(fileManager, file, text));
+        assertEquals(dump(new XmlDocument(text)), dump(document));
+
+        text = text.replace("<Switch/>", "");
+        fileManager.setSnapshotContent(file, text, true);
+        XmlDocument.get(fileManager, file, text);
+        assertEquals(dump(new XmlDocument(text)), dump(document));
+        XmlDocument.remove(file);
+    }
+
+    /**
+     * Replaces the text of the document and checks that it has the same elements as the text
+     * scanned again
+     */
+    private static String replace(XmlDocument document, int start, int end, String inserted) {
+        String old = document.getText();
+        String text = old.substring(0, start) + inserted + old.substring(end);
+        document.update(text);
+        assertEquals(text, dump(new XmlDocument(text)), dump(document));
+        return text;
+    }
+
+    private static String insert(XmlDocument document, int offset, String inserted) {
+        return replace(document, offset, offset, inserted);
+    }
+
+    private static String dump(XmlDocument document) {
+        StringBuilder builder = new StringBuilder();
+        for (XmlElement element : document.getRootElements()) {
+            dump(element, "", builder);
+        }
+        return builder.toString();
+    }
+
+    private static void dump(XmlElement element, String indent, StringBuilder builder) {
+        builder.append(indent)
+                .append(element)
+                .append(" tag=").append(element.mStartTagLength)
+                .append(element.mStartTagClosed ? " closed" : "")
+                .append(element.mSelfClosing ? " self-closing" : "")
+                .append(" end=").append(element.mEndTagLength)
+                .append(" values=").append(Arrays.toString(element.mValueRanges))
+                .append('\n');
+        for (XmlElement child : element.mChildren) {
+            dump(child, indent + "  ", builder);
+        }
+    }
+}